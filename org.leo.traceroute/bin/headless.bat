@@ -0,0 +1 @@
+java -Xmx256m -Djava.awt.headless=true -Dlogback.configurationFile=%~dp0resources\logback-headless.xml -cp %~dp0org.leo.traceroute.jar org.leo.traceroute.headless.Headless %*
\ No newline at end of file
@@ -0,0 +1,4 @@
+#!/bin/sh
+SCRIPT=$(readlink -f "$0")
+DIR=$(dirname "$SCRIPT")
+export PATH="$PATH:/usr/sbin/"; exec java -Xmx256m -Djava.awt.headless=true -Dlogback.configurationFile=$DIR/resources/logback-headless.xml -cp $DIR/org.leo.traceroute.jar org.leo.traceroute.headless.Headless "$@"
@@ -18,33 +18,28 @@
  */
 package org.leo.traceroute.core;
 
-import org.leo.traceroute.ui.AbstractPanel;
-import org.leo.traceroute.ui.util.SwingUtilities4;
+import java.util.List;
+import java.util.concurrent.Executor;
 
-import javax.swing.*;
-import java.lang.reflect.InvocationTargetException;
-import java.util.HashSet;
-import java.util.Set;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import org.leo.traceroute.core.EventBus.QueueStats;
 
 /**
  * AbstractListener $Id: AbstractObject.java 241 2016-02-20 21:23:52Z leolewis $
  * <pre>
  * Generic listeners provider class
+ * The listeners are notified asynchronously through an event bus, the UI listeners on the EDT.
  * </pre>
  * @author Leo Lewis
  */
 public abstract class AbstractObject<T> implements IDisposable {
 
-	/**
-	 * Threads pool
-	 */
-	protected ExecutorService _threadPool = Executors.newFixedThreadPool(5, r -> {
-		final Thread t = new Thread(r);
-		t.setDaemon(true);
-		return t;
-	});
+	/** Threads of the services, given by the init */
+	protected ExecutionRuntime _runtime;
+	/** Executor of the blocking tasks of the runtime */
+	protected Executor _executor;
+
+	/** Key of the focus events, only the last pending focus is delivered */
+	protected static final Object FOCUS_EVENT = "focus";
 
 	protected ServiceFactory _factory;
 
@@ -55,12 +50,15 @@ public abstract class AbstractObject<T> implements IDisposable {
 	 */
 	public void init(final ServiceFactory factory) throws Exception {
 		_factory = factory;
+		_runtime = factory.getRuntime();
+		_executor = _runtime.io();
+		_bus.setRuntime(_runtime);
 	}
 
 	/**
-	 * Set of listeners
+	 * Listeners and their pending events
 	 */
-	private final Set<T> _listeners = new HashSet<>();
+	private final EventBus<T> _bus = new EventBus<>(getClass().getSimpleName(), EventBus.DEFAULT_CAPACITY);
 
 	/**
 	 * Add listener
@@ -68,7 +66,7 @@ public abstract class AbstractObject<T> implements IDisposable {
 	 * @param listener
 	 */
 	public void addListener(final T listener) {
-		_listeners.add(listener);
+		_bus.addListener(listener);
 	}
 
 	/**
@@ -77,7 +75,7 @@ public abstract class AbstractObject<T> implements IDisposable {
 	 * @param listener
 	 */
 	public void removeListener(final T listener) {
-		_listeners.remove(listener);
+		_bus.removeListener(listener);
 	}
 
 	/**
@@ -85,27 +83,33 @@ public abstract class AbstractObject<T> implements IDisposable {
 	 */
 	@Override
 	public void dispose() {
-		_listeners.clear();
-		_threadPool.shutdown();
+		_bus.clear();
+	}
+
+	/**
+	 * Notify the listeners, asynchronously
+	 * @param notify the event
+	 */
+	public void notifyListeners(final INotifyRunnable<T> notify) {
+		_bus.post(null, notify);
 	}
 
-	public void notifyListeners(INotifyRunnable<T> notify) {
-		for (T listener : _listeners) {
-			if (listener instanceof AbstractPanel) {
-				if (SwingUtilities.isEventDispatchThread()) {
-					notify.run(listener);
-				} else {
-					try {
-						SwingUtilities.invokeAndWait(() -> notify.run(listener));
-					} catch (Exception e) {
-						e.printStackTrace();
-					}
-				}
-			} else {
-				notify.run(listener);
-			}
-		}
+	/**
+	 * Notify the listeners, asynchronously, replacing the pending event of the same key
+	 * @param key key of the event
+	 * @param notify the event
+	 */
+	public void notifyListeners(final Object key, final INotifyRunnable<T> notify) {
+		_bus.post(key, notify);
 	}
+
+	/**
+	 * @return the metrics of the queues of the listeners
+	 */
+	public List<QueueStats> getEventStats() {
+		return _bus.getStats();
+	}
+
 	@FunctionalInterface
 	public interface INotifyRunnable<T> {
 		void run(T listener);
@@ -0,0 +1,462 @@
+/**
+ * Open Visual Trace Route
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.leo.traceroute.core;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.swing.SwingUtilities;
+
+import org.leo.traceroute.core.AbstractObject.INotifyRunnable;
+import org.leo.traceroute.ui.AbstractPanel;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * EventBus $Id$
+ * <pre>
+ * Asynchronous delivery of the events of a service to its listeners.
+ * Each listener has its own queue, the events of a listener are delivered in order, one at a time.
+ * The events of the UI listeners are delivered on the EDT, all the pending events of the bus
+ * in one runnable, at most once per frame. An event posted on the EDT is delivered in place after the pending ones,
+ * or queued behind them when posted by a listener handling an event.
+ * The events of the other listeners are delivered by an io thread of the runtime,
+ * the ones posted before the runtime is set (init of the service) wait for it.
+ * An event posted with a key replaces the pending event of the same key (focus, progress...).
+ * The producers only block when the queue of a listener is full.
+ * </pre>
+ * @author Leo Lewis
+ */
+public class EventBus<T> {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(EventBus.class);
+
+	/** Pending events of a listener before blocking the producers */
+	public static final int DEFAULT_CAPACITY = 65536;
+	/** Minimum delay between two deliveries on the EDT */
+	private static final long FRAME_NANOS = TimeUnit.MILLISECONDS.toNanos(16);
+	/** No UI listener, Swing is not loaded */
+	private static final boolean HEADLESS = Boolean.getBoolean("java.awt.headless");
+
+	private final String _name;
+	private final int _capacity;
+	private final List<ListenerQueue> _queues = new CopyOnWriteArrayList<>();
+	/** Delivery on the EDT scheduled */
+	private final AtomicBoolean _uiScheduled = new AtomicBoolean();
+	private volatile ExecutionRuntime _runtime;
+	private volatile long _lastUiDelivery;
+	private volatile long _uiBatches;
+
+	/**
+	 * Constructor
+	 * @param name name of the bus, for the metrics
+	 * @param capacity pending events of a listener before blocking the producers
+	 */
+	public EventBus(final String name, final int capacity) {
+		_name = name;
+		_capacity = capacity;
+	}
+
+	/**
+	 * Set the runtime delivering the events, deliver the ones waiting for it
+	 * @param runtime the runtime
+	 */
+	public void setRuntime(final ExecutionRuntime runtime) {
+		_runtime = runtime;
+		for (final ListenerQueue queue : _queues) {
+			synchronized (queue) {
+				if (!queue._waitingRuntime) {
+					continue;
+				}
+				queue._waitingRuntime = false;
+			}
+			runtime.io().execute(() -> queue.drain(Integer.MAX_VALUE));
+		}
+	}
+
+	/**
+	 * @param listener the listener to add, ignored if already registered
+	 */
+	public synchronized void addListener(final T listener) {
+		if (find(listener) == null) {
+			_queues.add(new ListenerQueue(listener));
+		}
+	}
+
+	/**
+	 * @param listener the listener to remove, its pending events are dropped
+	 */
+	public synchronized void removeListener(final T listener) {
+		final ListenerQueue queue = find(listener);
+		if (queue != null) {
+			_queues.remove(queue);
+			queue.clear();
+		}
+	}
+
+	/**
+	 * Remove all the listeners
+	 */
+	public synchronized void clear() {
+		for (final ListenerQueue queue : _queues) {
+			queue.clear();
+		}
+		_queues.clear();
+	}
+
+	private ListenerQueue find(final T listener) {
+		for (final ListenerQueue queue : _queues) {
+			if (queue._listener == listener) {
+				return queue;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Post an event to all the listeners
+	 * @param key key of the event, the pending event of the same key is replaced, null to keep all the events
+	 * @param notify the event
+	 */
+	public void post(final Object key, final INotifyRunnable<T> notify) {
+		final boolean edt = !HEADLESS && SwingUtilities.isEventDispatchThread();
+		for (final ListenerQueue queue : _queues) {
+			if (queue._ui && edt && !queue._delivering) {
+				// keep the order with the pending events, then deliver in place as before
+				queue.drain(Integer.MAX_VALUE);
+				queue.deliver(notify);
+			} else {
+				// posted by a UI listener while it handles an event : behind the pending events, without blocking the EDT
+				queue.offer(key, notify, !(queue._ui && edt));
+			}
+		}
+	}
+
+	/**
+	 * Schedule the delivery of the pending events of the UI listeners
+	 */
+	private void scheduleUi() {
+		if (!_uiScheduled.compareAndSet(false, true)) {
+			return;
+		}
+		final long wait = _lastUiDelivery + FRAME_NANOS - System.nanoTime();
+		final ExecutionRuntime runtime = _runtime;
+		if (wait <= 0 || runtime == null) {
+			SwingUtilities.invokeLater(this::deliverUi);
+		} else {
+			runtime.schedule(() -> SwingUtilities.invokeLater(this::deliverUi), wait, TimeUnit.NANOSECONDS);
+		}
+	}
+
+	/**
+	 * Deliver the pending events of all the UI listeners, on the EDT
+	 */
+	private void deliverUi() {
+		_uiScheduled.set(false);
+		_lastUiDelivery = System.nanoTime();
+		_uiBatches++;
+		for (final ListenerQueue queue : _queues) {
+			if (queue._ui) {
+				// only the events pending now, the ones posted by the listeners go to the next frame
+				queue.drain(queue.depth());
+			}
+		}
+	}
+
+	/**
+	 * @return the metrics of the queues of the listeners
+	 */
+	public List<QueueStats> getStats() {
+		final List<QueueStats> stats = new ArrayList<>();
+		for (final ListenerQueue queue : _queues) {
+			synchronized (queue) {
+				stats.add(new QueueStats(_name + " > " + queue._listener.getClass().getSimpleName(), queue._events.size(), queue._maxDepth,
+						queue._posted, queue._coalesced, queue._delivered, queue._blocked, queue._ui ? _uiBatches : queue._batches));
+			}
+		}
+		return stats;
+	}
+
+	/**
+	 * Queue of the pending events of a listener
+	 */
+	private final class ListenerQueue {
+
+		private final T _listener;
+		private final boolean _ui;
+		private final ArrayDeque<Event> _events = new ArrayDeque<>();
+		private final Map<Object, Event> _keyed = new HashMap<>();
+		/** Delivery in progress or scheduled (not UI) */
+		private boolean _scheduled;
+		/** Delivery scheduled once the runtime is set (not UI) */
+		private boolean _waitingRuntime;
+		private boolean _cleared;
+		/** An event is being delivered, the events posted meanwhile on the EDT are queued */
+		private boolean _delivering;
+		private int _maxDepth;
+		private long _posted;
+		private long _coalesced;
+		private long _delivered;
+		private long _blocked;
+		private long _batches;
+
+		private ListenerQueue(final T listener) {
+			_listener = listener;
+			_ui = !HEADLESS && listener instanceof AbstractPanel;
+		}
+
+		/**
+		 * Queue an event
+		 * @param key key of the event, null if none
+		 * @param notify the event
+		 * @param block true to wait while the queue is full, false to go over the capacity
+		 */
+		private void offer(final Object key, final INotifyRunnable<T> notify, final boolean block) {
+			boolean schedule;
+			final ExecutionRuntime runtime;
+			synchronized (this) {
+				if (block && _events.size() >= _capacity) {
+					_blocked++;
+					while (_events.size() >= _capacity && !_cleared) {
+						try {
+							wait();
+						} catch (final InterruptedException e) {
+							Thread.currentThread().interrupt();
+							return;
+						}
+					}
+				}
+				if (_cleared) {
+					return;
+				}
+				_posted++;
+				final Event event = new Event(key, notify);
+				if (key != null) {
+					final Event previous = _keyed.put(key, event);
+					if (previous != null) {
+						previous._notify = null;
+						_coalesced++;
+					}
+				}
+				_events.add(event);
+				_maxDepth = Math.max(_maxDepth, _events.size());
+				schedule = !_scheduled;
+				_scheduled = true;
+				if (schedule && !_ui) {
+					_batches++;
+				}
+				runtime = _runtime;
+				if (schedule && !_ui && runtime == null) {
+					// delivered by setRuntime
+					_waitingRuntime = true;
+					schedule = false;
+				}
+			}
+			if (schedule) {
+				if (_ui) {
+					scheduleUi();
+				} else {
+					runtime.io().execute(() -> drain(Integer.MAX_VALUE));
+				}
+			}
+		}
+
+		private synchronized int depth() {
+			return _events.size();
+		}
+
+		/**
+		 * Deliver the pending events
+		 * @param max maximum number of events to deliver
+		 */
+		private void drain(final int max) {
+			for (int i = 0; i < max; i++) {
+				final Event event;
+				synchronized (this) {
+					event = _events.poll();
+					if (event == null) {
+						_scheduled = false;
+						return;
+					}
+					if (event._key != null && _keyed.get(event._key) == event) {
+						_keyed.remove(event._key);
+					}
+					notifyAll();
+				}
+				if (event._notify != null) {
+					deliver(event._notify);
+				}
+			}
+			synchronized (this) {
+				if (_events.isEmpty()) {
+					_scheduled = false;
+				} else if (_ui) {
+					_scheduled = true;
+					scheduleUi();
+				}
+			}
+		}
+
+		private void deliver(final INotifyRunnable<T> notify) {
+			final boolean delivering = _delivering;
+			_delivering = true;
+			try {
+				notify.run(_listener);
+			} catch (final Throwable e) {
+				LOGGER.error("Listener " + _listener.getClass().getName() + " failed", e);
+			} finally {
+				_delivering = delivering;
+			}
+			synchronized (this) {
+				_delivered++;
+			}
+		}
+
+		private synchronized void clear() {
+			_cleared = true;
+			_waitingRuntime = false;
+			_events.clear();
+			_keyed.clear();
+			notifyAll();
+		}
+	}
+
+	/**
+	 * A pending event
+	 */
+	private final class Event {
+		private final Object _key;
+		/** null when replaced by a more recent event of the same key */
+		private INotifyRunnable<T> _notify;
+
+		private Event(final Object key, final INotifyRunnable<T> notify) {
+			_key = key;
+			_notify = notify;
+		}
+	}
+
+	/**
+	 * QueueStats $Id$
+	 * <pre>
+	 * Metrics of the queue of a listener.
+	 * </pre>
+	 * @author Leo Lewis
+	 */
+	public static class QueueStats {
+
+		private final String _name;
+		private final int _depth;
+		private final int _maxDepth;
+		private final long _posted;
+		private final long _coalesced;
+		private final long _delivered;
+		private final long _blocked;
+		private final long _batches;
+
+		QueueStats(final String name, final int depth, final int maxDepth, final long posted, final long coalesced, final long delivered,
+				final long blocked, final long batches) {
+			_name = name;
+			_depth = depth;
+			_maxDepth = maxDepth;
+			_posted = posted;
+			_coalesced = coalesced;
+			_delivered = delivered;
+			_blocked = blocked;
+			_batches = batches;
+		}
+
+		/**
+		 * Return the value of the field name
+		 * @return the value of name
+		 */
+		public String getName() {
+			return _name;
+		}
+
+		/**
+		 * Return the value of the field depth
+		 * @return the value of depth
+		 */
+		public int getDepth() {
+			return _depth;
+		}
+
+		/**
+		 * Return the value of the field maxDepth
+		 * @return the value of maxDepth
+		 */
+		public int getMaxDepth() {
+			return _maxDepth;
+		}
+
+		/**
+		 * Return the value of the field posted
+		 * @return the value of posted
+		 */
+		public long getPosted() {
+			return _posted;
+		}
+
+		/**
+		 * Return the value of the field coalesced
+		 * @return the value of coalesced
+		 */
+		public long getCoalesced() {
+			return _coalesced;
+		}
+
+		/**
+		 * Return the value of the field delivered
+		 * @return the value of delivered
+		 */
+		public long getDelivered() {
+			return _delivered;
+		}
+
+		/**
+		 * Return the value of the field blocked
+		 * @return the value of blocked
+		 */
+		public long getBlocked() {
+			return _blocked;
+		}
+
+		/**
+		 * Return the value of the field batches
+		 * @return the value of batches
+		 */
+		public long getBatches() {
+			return _batches;
+		}
+
+		/**
+		 * @see java.lang.Object#toString()
+		 */
+		@Override
+		public String toString() {
+			return String.format("%s : depth=%d max=%d posted=%d coalesced=%d delivered=%d blocked=%d batches=%d", _name, _depth, _maxDepth,
+					_posted, _coalesced, _delivered, _blocked, _batches);
+		}
+	}
+}
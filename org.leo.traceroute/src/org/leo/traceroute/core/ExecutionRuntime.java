@@ -0,0 +1,358 @@
+/**
+ * Open Visual Trace Route
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.leo.traceroute.core;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * ExecutionRuntime $Id$
+ * <pre>
+ * The threads of the services, owned by their ServiceFactory and given to them by their init :
+ *  - io : blocking tasks (traceroute, whois, listeners), on virtual threads when the JVM supports them
+ *  - cpu : a small pool for parsing and aggregation
+ *  - scheduler : delayed and periodic tasks, they must be short or hand over to the other pools
+ *  - dedicated threads for the long running loops (capture)
+ * The pools do not keep idle threads, and count their tasks.
+ * </pre>
+ * @author Leo Lewis
+ */
+public class ExecutionRuntime {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(ExecutionRuntime.class);
+
+	private static final long KEEP_ALIVE_SECONDS = 30;
+
+	private final MeteredExecutor _io;
+	private final MeteredExecutor _cpu;
+	private final MeteredExecutor _scheduled;
+	private final ScheduledThreadPoolExecutor _scheduler;
+	private final PoolStats.Counters _threads = new PoolStats.Counters();
+	private final boolean _virtualThreads;
+
+	/**
+	 * Constructor, the pools start their threads on demand
+	 */
+	public ExecutionRuntime() {
+		ExecutorService io = newVirtualThreadExecutor("io-");
+		_virtualThreads = io != null;
+		if (io == null) {
+			io = new ThreadPoolExecutor(0, Integer.MAX_VALUE, KEEP_ALIVE_SECONDS, TimeUnit.SECONDS, new SynchronousQueue<>(), factory("io-"));
+		}
+		_io = new MeteredExecutor("io", io);
+		final int cpus = Math.max(2, Math.min(4, Runtime.getRuntime().availableProcessors() / 2));
+		final ThreadPoolExecutor cpu = new ThreadPoolExecutor(cpus, cpus, KEEP_ALIVE_SECONDS, TimeUnit.SECONDS, new LinkedBlockingQueue<>(),
+				factory("cpu-"));
+		cpu.allowCoreThreadTimeOut(true);
+		_cpu = new MeteredExecutor("cpu", cpu);
+		_scheduler = new ScheduledThreadPoolExecutor(1, factory("scheduler-"));
+		_scheduler.setKeepAliveTime(KEEP_ALIVE_SECONDS, TimeUnit.SECONDS);
+		_scheduler.allowCoreThreadTimeOut(true);
+		_scheduler.setRemoveOnCancelPolicy(true);
+		_scheduled = new MeteredExecutor("scheduler", _scheduler);
+		LOGGER.info("Execution runtime : io on {} threads, {} cpu threads", _virtualThreads ? "virtual" : "platform", cpus);
+	}
+
+	/**
+	 * Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name(prefix, 0).factory()), by reflection to still run on older JVMs
+	 * @return the executor, null if the JVM does not support virtual threads
+	 */
+	private static ExecutorService newVirtualThreadExecutor(final String prefix) {
+		try {
+			final Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+			Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+			builder = builderClass.getMethod("name", String.class, long.class).invoke(builder, prefix, 0L);
+			final ThreadFactory factory = (ThreadFactory) builderClass.getMethod("factory").invoke(builder);
+			return (ExecutorService) Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class).invoke(null, factory);
+		} catch (final Exception | LinkageError e) {
+			// older JVM, or preview feature not enabled
+			return null;
+		}
+	}
+
+	private static ThreadFactory factory(final String prefix) {
+		final AtomicInteger count = new AtomicInteger();
+		return r -> {
+			final Thread t = new Thread(r, prefix + count.getAndIncrement());
+			t.setDaemon(true);
+			return t;
+		};
+	}
+
+	/**
+	 * @return the executor of the blocking tasks
+	 */
+	public Executor io() {
+		return _io;
+	}
+
+	/**
+	 * @return the executor of the computing tasks
+	 */
+	public Executor cpu() {
+		return _cpu;
+	}
+
+	/**
+	 * @return true if the io tasks run on virtual threads
+	 */
+	public boolean isVirtualThreads() {
+		return _virtualThreads;
+	}
+
+	/**
+	 * Run a task after a delay
+	 * @param task the task
+	 * @param delay the delay
+	 * @param unit unit of the delay
+	 * @return the future of the task
+	 */
+	public ScheduledFuture<?> schedule(final Runnable task, final long delay, final TimeUnit unit) {
+		return _scheduler.schedule(_scheduled.wrap(task), delay, unit);
+	}
+
+	/**
+	 * Run a task periodically, each run is counted as a submitted task
+	 * @param task the task
+	 * @param initialDelay delay of the first run
+	 * @param period period
+	 * @param unit unit of the delays
+	 * @return the future of the task, to cancel it
+	 */
+	public ScheduledFuture<?> scheduleAtFixedRate(final Runnable task, final long initialDelay, final long period, final TimeUnit unit) {
+		return _scheduler.scheduleAtFixedRate(_scheduled.wrapPeriodic(task), initialDelay, period, unit);
+	}
+
+	/**
+	 * Start a dedicated platform thread, for a loop that blocks for its whole life (native calls)
+	 * @param name name of the thread
+	 * @param task the loop
+	 * @return the started thread
+	 */
+	public Thread startThread(final String name, final Runnable task) {
+		_threads.submitted();
+		final Thread t = new Thread(() -> _threads.run(task), name);
+		t.setDaemon(true);
+		t.start();
+		return t;
+	}
+
+	/**
+	 * @return the metrics of the pools
+	 */
+	public List<PoolStats> getStats() {
+		return Arrays.asList(_io.getStats(), _cpu.getStats(), _scheduled.getStats(), _threads.toStats("threads"));
+	}
+
+	/**
+	 * Stop the pools, the running tasks are not interrupted
+	 */
+	public void shutdown() {
+		getStats().forEach(stats -> LOGGER.info(stats.toString()));
+		_io._delegate.shutdown();
+		_cpu._delegate.shutdown();
+		_scheduler.shutdown();
+	}
+
+	/**
+	 * Executor counting its tasks
+	 */
+	private static class MeteredExecutor implements Executor {
+
+		private final String _name;
+		private final ExecutorService _delegate;
+		private final PoolStats.Counters _counters = new PoolStats.Counters();
+
+		private MeteredExecutor(final String name, final ExecutorService delegate) {
+			_name = name;
+			_delegate = delegate;
+		}
+
+		@Override
+		public void execute(final Runnable command) {
+			_delegate.execute(wrap(command));
+		}
+
+		private Runnable wrap(final Runnable command) {
+			_counters.submitted();
+			return () -> _counters.run(command);
+		}
+
+		private Runnable wrapPeriodic(final Runnable command) {
+			_counters.submitted();
+			final AtomicBoolean first = new AtomicBoolean(true);
+			return () -> {
+				if (!first.compareAndSet(true, false)) {
+					// the next periods are new runs, completed as well
+					_counters.submitted();
+				}
+				_counters.run(command);
+			};
+		}
+
+		private PoolStats getStats() {
+			return _counters.toStats(_name);
+		}
+	}
+
+	/**
+	 * PoolStats $Id$
+	 * <pre>
+	 * Counters of a pool of the runtime.
+	 * </pre>
+	 * @author Leo Lewis
+	 */
+	public static class PoolStats {
+
+		private final String _name;
+		private final long _submitted;
+		private final long _completed;
+		private final long _failed;
+		private final int _active;
+		private final int _maxActive;
+		private final long _busyNanos;
+
+		PoolStats(final String name, final long submitted, final long completed, final long failed, final int active, final int maxActive,
+				final long busyNanos) {
+			_name = name;
+			_submitted = submitted;
+			_completed = completed;
+			_failed = failed;
+			_active = active;
+			_maxActive = maxActive;
+			_busyNanos = busyNanos;
+		}
+
+		/**
+		 * Return the value of the field name
+		 * @return the value of name
+		 */
+		public String getName() {
+			return _name;
+		}
+
+		/**
+		 * Return the value of the field submitted
+		 * @return the value of submitted
+		 */
+		public long getSubmitted() {
+			return _submitted;
+		}
+
+		/**
+		 * Return the value of the field completed
+		 * @return the value of completed
+		 */
+		public long getCompleted() {
+			return _completed;
+		}
+
+		/**
+		 * Return the value of the field failed
+		 * @return the value of failed
+		 */
+		public long getFailed() {
+			return _failed;
+		}
+
+		/**
+		 * Return the number of tasks running
+		 * @return the value of active
+		 */
+		public int getActive() {
+			return _active;
+		}
+
+		/**
+		 * Return the maximum number of tasks that ran at the same time
+		 * @return the value of maxActive
+		 */
+		public int getMaxActive() {
+			return _maxActive;
+		}
+
+		/**
+		 * Return the time spent running the completed tasks
+		 * @return the value of busyNanos
+		 */
+		public long getBusyNanos() {
+			return _busyNanos;
+		}
+
+		/**
+		 * @see java.lang.Object#toString()
+		 */
+		@Override
+		public String toString() {
+			return String.format("%s : submitted=%d completed=%d failed=%d active=%d maxActive=%d busy=%dms", _name, _submitted, _completed,
+					_failed, _active, _maxActive, TimeUnit.NANOSECONDS.toMillis(_busyNanos));
+		}
+
+		/**
+		 * Counters updated by the pool threads
+		 */
+		static class Counters {
+			private final AtomicLong _submitted = new AtomicLong();
+			private final AtomicLong _completed = new AtomicLong();
+			private final AtomicLong _failed = new AtomicLong();
+			private final AtomicInteger _active = new AtomicInteger();
+			private final AtomicInteger _maxActive = new AtomicInteger();
+			private final AtomicLong _busyNanos = new AtomicLong();
+
+			void submitted() {
+				_submitted.incrementAndGet();
+			}
+
+			void run(final Runnable task) {
+				final int active = _active.incrementAndGet();
+				_maxActive.accumulateAndGet(active, Math::max);
+				final long start = System.nanoTime();
+				try {
+					task.run();
+				} catch (final RuntimeException | Error e) {
+					_failed.incrementAndGet();
+					throw e;
+				} finally {
+					_busyNanos.addAndGet(System.nanoTime() - start);
+					_completed.incrementAndGet();
+					_active.decrementAndGet();
+				}
+			}
+
+			PoolStats toStats(final String name) {
+				return new PoolStats(name, _submitted.get(), _completed.get(), _failed.get(), _active.get(), _maxActive.get(), _busyNanos.get());
+			}
+		}
+	}
+}
@@ -17,19 +17,28 @@
  */
 package org.leo.traceroute.core;
 
+import org.leo.traceroute.core.api.ApiServer;
 import org.leo.traceroute.core.autocomplete.AutoCompleteProvider;
 import org.leo.traceroute.core.geo.GeoService;
+import org.leo.traceroute.core.monitor.MonitorScheduler;
 import org.leo.traceroute.core.network.*;
 import org.leo.traceroute.core.route.ITraceRoute;
 import org.leo.traceroute.core.route.impl.OSTraceRoute;
 import org.leo.traceroute.core.sniffer.IPacketsSniffer;
 import org.leo.traceroute.core.sniffer.impl.EmptyPacketsSniffer;
+import org.leo.traceroute.core.sniffer.impl.LinuxPacketSniffer;
+import org.leo.traceroute.core.sniffer.impl.LinuxPacketSocket;
 import org.leo.traceroute.core.whois.WhoIs;
 import org.leo.traceroute.install.Env;
-import org.leo.traceroute.ui.TraceRouteFrame;
+import org.leo.traceroute.install.Env.OS;
+import org.leo.traceroute.resources.CountryFlagManager;
 import org.leo.traceroute.ui.util.SplashScreen;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import javax.swing.*;
+import java.io.IOException;
+import java.net.InetSocketAddress;
 import java.util.Arrays;
 
 /**
@@ -40,6 +49,8 @@ import java.util.Arrays;
  */
 public class ServiceFactory {
 
+	private static final Logger LOGGER = LoggerFactory.getLogger(ServiceFactory.class);
+
 	public enum Mode {
 		TRACE_ROUTE,
 		SNIFFER,
@@ -58,8 +69,18 @@ public class ServiceFactory {
 
 	private final AutoCompleteProvider _autocomplete;
 
+	/** Embedded API, null if disabled */
+	private ApiServer _api;
+	/** Monitor of the targets, null if none */
+	private volatile MonitorScheduler _monitor;
+
+	/** Threads of the services */
+	private final ExecutionRuntime _runtime = new ExecutionRuntime();
+
 	private final SplashScreen _splash;
-	private TraceRouteFrame _main;
+	private JFrame _main;
+	/** No UI, the flags are not loaded */
+	private final boolean _headless;
 
 	public ServiceFactory(final ITraceRoute traceroute, final IPacketsSniffer sniffer, final INetworkService<?> networkService,
 			final DNSLookupService dnsLookup, final GeoService geo, final AutoCompleteProvider autoComplete, final WhoIs whois) {
@@ -72,19 +93,42 @@ public class ServiceFactory {
 		_autocomplete = autoComplete;
 		_whois = whois;
 		_splash = null;
+		_headless = false;
+	}
+
+	/**
+	 * Constructor of the headless mode : the traceroute with its dns and geo services, without the UI,
+	 * the sniffer nor the history
+	 */
+	public ServiceFactory() {
+		_splash = null;
+		_headless = true;
+		_networkService = new EmptyNetworkService();
+		_sniffer = new EmptyPacketsSniffer();
+		_traceroute = new OSTraceRoute();
+		_dnsLookup = new DNSLookupService();
+		_geo = new GeoService();
+		_autocomplete = null;
+		_whois = new WhoIs();
 	}
 
 	/**
 	 * Constructor
 	 */
-	public ServiceFactory(final SplashScreen splash, TraceRouteFrame main) {
+	public ServiceFactory(final SplashScreen splash, final JFrame main) {
 		_splash = splash;
 		_main = main;
+		_headless = false;
 
-		_networkService = new EmptyNetworkService();
+		if (Env.INSTANCE.getOs() == OS.linux && LinuxPacketSocket.isSupported()) {
+			_networkService = new LinuxNetworkService();
+			_sniffer = new LinuxPacketSniffer();
+		} else {
+			_networkService = new EmptyNetworkService();
+			_sniffer = new EmptyPacketsSniffer();
+		}
 
 		_traceroute = new OSTraceRoute();
-		_sniffer = new EmptyPacketsSniffer();
 		_dnsLookup = new DNSLookupService();
 		_geo = new GeoService();
 		_autocomplete = new AutoCompleteProvider();
@@ -92,12 +136,18 @@ public class ServiceFactory {
 	}
 
 	public void init() throws Exception {
+		if (!_headless) {
+			// the flags are loaded while the services start
+			_runtime.io().execute(CountryFlagManager::preload);
+		}
 		_dnsLookup.init(this);
 		_geo.init(this);
 		_networkService.init(this);
 		_traceroute.init(this);
 		_sniffer.init(this);
-		_autocomplete.init(this);
+		if (_autocomplete != null) {
+			_autocomplete.init(this);
+		}
 		_whois.init(this);
 		Arrays.asList(Mode.values()).forEach(_networkService::notifyInterface);
 		if (!isEmbeddedTRAvailable()) {
@@ -108,19 +158,43 @@ public class ServiceFactory {
 		if (isSnifferAvailable()) {
 			_networkService.setCurrentNetworkDevice(Mode.SNIFFER, Env.INSTANCE.getSnifferInterfaceIndex());
 		}
+		if (Env.INSTANCE.getApiPort() > 0) {
+			final ApiServer api = new ApiServer(this, new InetSocketAddress(Env.INSTANCE.getApiHost(), Env.INSTANCE.getApiPort()));
+			try {
+				api.start();
+				_api = api;
+			} catch (final IOException e) {
+				// the application works without it
+				LOGGER.error("Failed to start the API on {}:{}", Env.INSTANCE.getApiHost(), Env.INSTANCE.getApiPort(), e);
+			}
+		}
 	}
 
 	/**
 	 * Dispose services
 	 */
 	public void dispose() {
+		if (_api != null) {
+			_api.stop();
+		}
 		_networkService.dispose();
 		_dnsLookup.dispose();
 		_geo.dispose();
 		_traceroute.dispose();
 		_sniffer.dispose();
-		_autocomplete.dispose();
+		if (_autocomplete != null) {
+			_autocomplete.dispose();
+		}
 		_whois.dispose();
+		_runtime.shutdown();
+	}
+
+	/**
+	 * Return the value of the field runtime
+	 * @return the value of runtime
+	 */
+	public ExecutionRuntime getRuntime() {
+		return _runtime;
 	}
 
 	/**
@@ -180,7 +254,7 @@ public class ServiceFactory {
 
 	/**
 	 * Return the value of the field autocomplete
-	 * @return the value of autocomplete
+	 * @return the value of autocomplete, null in headless mode
 	 */
 	public AutoCompleteProvider getAutocomplete() {
 		return _autocomplete;
@@ -194,6 +268,37 @@ public class ServiceFactory {
 		return _whois;
 	}
 
+	/**
+	 * Return the value of the field api
+	 * @return the embedded API, null if disabled
+	 */
+	public ApiServer getApi() {
+		return _api;
+	}
+
+	/**
+	 * Return the value of the field monitor
+	 * @return the monitor of the targets, null if none
+	 */
+	public MonitorScheduler getMonitor() {
+		return _monitor;
+	}
+
+	/**
+	 * Set the value of the field monitor
+	 * @param monitor the monitor of the targets, null if none
+	 */
+	public void setMonitor(final MonitorScheduler monitor) {
+		_monitor = monitor;
+	}
+
+	/**
+	 * @return true if the services run without UI
+	 */
+	public boolean isHeadless() {
+		return _headless;
+	}
+
 	public SplashScreen getSplash() {
 		return _splash;
 	}
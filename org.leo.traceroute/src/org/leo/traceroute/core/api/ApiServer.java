@@ -0,0 +1,473 @@
+/**
+ * Open Visual Trace Route
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.leo.traceroute.core.api;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.leo.traceroute.core.ServiceFactory;
+import org.leo.traceroute.core.export.JsonRecord;
+import org.leo.traceroute.core.export.JsonRecord.IFields;
+import org.leo.traceroute.core.monitor.MonitorScheduler;
+import org.leo.traceroute.core.monitor.TargetHealth;
+import org.leo.traceroute.core.route.IRouteListener;
+import org.leo.traceroute.core.route.RoutePoint;
+import org.leo.traceroute.core.sniffer.AbstractPacketPoint;
+import org.leo.traceroute.core.sniffer.AbstractPacketPoint.Protocol;
+import org.leo.traceroute.core.sniffer.IPacketListener;
+import org.leo.traceroute.core.sniffer.flow.FlowUpdate;
+import org.leo.traceroute.core.whois.WhoIs;
+import org.leo.traceroute.core.whois.WhoIsClient.Answer;
+import org.leo.traceroute.install.Env;
+import org.leo.traceroute.ui.task.CancelMonitor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.net.InetAddresses;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * ApiServer $Id$
+ * <pre>
+ * Embedded HTTP API of the services, JSON in and out :
+ *  - POST   /api/trace?dest=...[&timeout=s&maxHops=n&dns=false&ipv6=true]  start a traceroute (202, 409 if one is running)
+ *  - DELETE /api/trace                                                      cancel the traceroute
+ *  - GET    /api/route                                                      the last route
+ *  - GET    /api/whois?host=...                                             whois of a host
+ *  - POST   /api/capture?[protocols=TCP,UDP&port=...&host=...&length=n&seconds=s]  start a capture (503 if no sniffer)
+ *  - DELETE /api/capture                                                    end the capture
+ *  - GET    /api/events/route, /api/events/packets                          events as Server-Sent Events
+ *  - GET    /api/status                                                     clients and dropped events of the streams
+ *  - GET    /api/monitor                                                    health of the monitored targets (404 if none)
+ * The requests are served by the io threads, a stream holds its thread for the life of the connection.
+ * There is no authentication : the requests of the browsers (with an Origin) are refused, and so are the requests
+ * whose Host is not localhost or the address listened to, so a web page can't reach the API, even by DNS rebinding.
+ * </pre>
+ * @author Leo Lewis
+ */
+public class ApiServer implements IRouteListener, IPacketListener {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(ApiServer.class);
+
+	private final ServiceFactory _services;
+	private final InetSocketAddress _address;
+	private final EventStream _routeEvents = new EventStream("route", EventStream.DEFAULT_CAPACITY);
+	private final EventStream _packetEvents = new EventStream("packets", EventStream.DEFAULT_CAPACITY);
+	private final AtomicBoolean _tracing = new AtomicBoolean();
+	private volatile CancelMonitor _monitor;
+	private HttpServer _server;
+
+	/**
+	 * Constructor
+	 * @param services the services
+	 * @param address address to listen to, port 0 for any
+	 */
+	public ApiServer(final ServiceFactory services, final InetSocketAddress address) {
+		_services = services;
+		_address = address;
+	}
+
+	/**
+	 * Start to listen
+	 * @throws IOException if the port can't be bound
+	 */
+	public synchronized void start() throws IOException {
+		_server = HttpServer.create(_address, 0);
+		_server.setExecutor(_services.getRuntime().io());
+		_server.createContext("/api/trace", handler(this::trace));
+		_server.createContext("/api/route", handler(this::route));
+		_server.createContext("/api/whois", handler(this::whois));
+		_server.createContext("/api/capture", handler(this::capture));
+		_server.createContext("/api/events/route", handler(exchange -> stream(exchange, _routeEvents)));
+		_server.createContext("/api/events/packets", handler(exchange -> stream(exchange, _packetEvents)));
+		_server.createContext("/api/status", handler(this::status));
+		_server.createContext("/api/monitor", handler(this::monitor));
+		_services.getTraceroute().addListener(this);
+		_services.getSniffer().addListener(this);
+		_server.start();
+		LOGGER.info("API listening on {}", _server.getAddress());
+	}
+
+	/**
+	 * Stop to listen, disconnect the clients of the streams
+	 */
+	public synchronized void stop() {
+		if (_server == null) {
+			return;
+		}
+		_services.getTraceroute().removeListener(this);
+		_services.getSniffer().removeListener(this);
+		_routeEvents.close();
+		_packetEvents.close();
+		// lets the streams end their response
+		_server.stop(1);
+		_server = null;
+	}
+
+	/**
+	 * @return the port listened to
+	 */
+	public synchronized int getPort() {
+		return _server != null ? _server.getAddress().getPort() : -1;
+	}
+
+	private void trace(final HttpExchange exchange) throws IOException {
+		switch (exchange.getRequestMethod()) {
+		case "POST":
+			final Map<String, String> params = params(exchange);
+			final String dest = params.get("dest");
+			if (dest == null || dest.trim().isEmpty()) {
+				error(exchange, 400, "Missing dest");
+				return;
+			}
+			final long timeOutMs = number(params, "timeout", 60) * 1000;
+			final int maxHops = (int) number(params, "maxHops", Env.INSTANCE.getTrMaxHop());
+			final boolean dns = !"false".equals(params.get("dns"));
+			final boolean ipV4 = !"true".equals(params.get("ipv6"));
+			if (!_tracing.compareAndSet(false, true)) {
+				error(exchange, 409, "A traceroute is running");
+				return;
+			}
+			final CancelMonitor monitor = new CancelMonitor();
+			_monitor = monitor;
+			// waits for the end of the previous traceroute
+			_services.getRuntime().io().execute(() -> _services.getTraceroute().compute(dest.trim(), monitor, dns, timeOutMs, ipV4, maxHops));
+			send(exchange, 202, JsonRecord.of(json -> json.writeStringField("dest", dest.trim())));
+			break;
+		case "DELETE":
+			final CancelMonitor current = _monitor;
+			if (current != null) {
+				current.setCanceled(true);
+			}
+			exchange.sendResponseHeaders(204, -1);
+			break;
+		default:
+			error(exchange, 405, "Method not allowed");
+		}
+	}
+
+	private void route(final HttpExchange exchange) throws IOException {
+		if (!"GET".equals(exchange.getRequestMethod())) {
+			error(exchange, 405, "Method not allowed");
+			return;
+		}
+		final List<RoutePoint> route = _services.getTraceroute().getRoute();
+		send(exchange, 200, JsonRecord.of(json -> {
+			json.writeStringField("dest", _services.getTraceroute().getDestination());
+			json.writeBooleanField("tracing", _tracing.get());
+			json.writeArrayFieldStart("hops");
+			for (final RoutePoint point : route.toArray(new RoutePoint[0])) {
+				json.writeStartObject();
+				JsonRecord.writeRoutePoint(json, point);
+				json.writeEndObject();
+			}
+			json.writeEndArray();
+		}));
+	}
+
+	private void whois(final HttpExchange exchange) throws IOException {
+		if (!"GET".equals(exchange.getRequestMethod())) {
+			error(exchange, 405, "Method not allowed");
+			return;
+		}
+		final String host = params(exchange).get("host");
+		if (host == null || host.trim().isEmpty()) {
+			error(exchange, 400, "Missing host");
+			return;
+		}
+		final Answer answer;
+		try {
+			answer = _services.getWhois().query(host.trim());
+		} catch (final IOException e) {
+			error(exchange, 502, "WhoIs failed : " + e.getMessage());
+			return;
+		}
+		send(exchange, 200, JsonRecord.of(json -> {
+			json.writeStringField("host", host.trim());
+			json.writeStringField("server", answer.getServer());
+			json.writeStringField("netblock", answer.getNetblock() != null ? answer.getNetblock().toString() : null);
+			json.writeStringField("text", WhoIs.format(answer.getText()));
+		}));
+	}
+
+	private void capture(final HttpExchange exchange) throws IOException {
+		switch (exchange.getRequestMethod()) {
+		case "POST":
+			if (!_services.isSnifferAvailable()) {
+				error(exchange, 503, "Capture not available");
+				return;
+			}
+			final Map<String, String> params = params(exchange);
+			final Set<Protocol> protocols = EnumSet.noneOf(Protocol.class);
+			try {
+				for (final String protocol : params.getOrDefault("protocols", "TCP,UDP,ICMP").split(",")) {
+					protocols.add(Protocol.valueOf(protocol.trim().toUpperCase()));
+				}
+			} catch (final IllegalArgumentException e) {
+				error(exchange, 400, "Invalid protocols");
+				return;
+			}
+			final int length = (int) number(params, "length", 0);
+			final int seconds = (int) number(params, "seconds", 0);
+			_services.getSniffer().startCapture(protocols, params.get("port"), length > 0, length, params.get("host"), seconds);
+			send(exchange, 202, "{}");
+			break;
+		case "DELETE":
+			_services.getSniffer().endCapture();
+			exchange.sendResponseHeaders(204, -1);
+			break;
+		default:
+			error(exchange, 405, "Method not allowed");
+		}
+	}
+
+	private void stream(final HttpExchange exchange, final EventStream stream) throws IOException {
+		if (!"GET".equals(exchange.getRequestMethod())) {
+			error(exchange, 405, "Method not allowed");
+			return;
+		}
+		stream.serve(exchange);
+	}
+
+	private void status(final HttpExchange exchange) throws IOException {
+		send(exchange, 200, JsonRecord.of(json -> {
+			json.writeBooleanField("tracing", _tracing.get());
+			json.writeBooleanField("snifferAvailable", _services.isSnifferAvailable());
+			for (final EventStream stream : new EventStream[] { _routeEvents, _packetEvents }) {
+				json.writeObjectFieldStart(stream.getName());
+				json.writeNumberField("clients", stream.getClients());
+				json.writeNumberField("dropped", stream.getDropped());
+				json.writeEndObject();
+			}
+		}));
+	}
+
+	private void monitor(final HttpExchange exchange) throws IOException {
+		if (!"GET".equals(exchange.getRequestMethod())) {
+			error(exchange, 405, "Method not allowed");
+			return;
+		}
+		final MonitorScheduler monitor = _services.getMonitor();
+		if (monitor == null) {
+			error(exchange, 404, "No monitor");
+			return;
+		}
+		send(exchange, 200, JsonRecord.of(json -> {
+			json.writeArrayFieldStart("targets");
+			for (final TargetHealth health : monitor.getHealth()) {
+				json.writeStartObject();
+				health.write(json);
+				json.writeEndObject();
+			}
+			json.writeEndArray();
+		}));
+	}
+
+	/**
+	 * Handler answering 403 to the requests of other origins, 404 to the sub paths and 400 to the invalid parameters
+	 */
+	private HttpHandler handler(final HttpHandler handler) {
+		return exchange -> {
+			try {
+				if (exchange.getRequestHeaders().containsKey("Origin") || !isAllowedHost(exchange.getRequestHeaders().getFirst("Host"))) {
+					error(exchange, 403, "Forbidden");
+				} else if (!exchange.getRequestURI().getPath().equals(exchange.getHttpContext().getPath())) {
+					error(exchange, 404, "Not found");
+				} else {
+					handler.handle(exchange);
+				}
+			} catch (final IllegalArgumentException e) {
+				error(exchange, 400, e.getMessage());
+			} catch (final IOException | RuntimeException e) {
+				LOGGER.warn("API request {} failed", exchange.getRequestURI(), e);
+			} finally {
+				exchange.close();
+			}
+		};
+	}
+
+	/**
+	 * @param header the Host header
+	 * @return true if it is localhost or the address listened to (any address if listening to all)
+	 */
+	private boolean isAllowedHost(final String header) {
+		if (header == null) {
+			return false;
+		}
+		String host = header.trim();
+		if (host.startsWith("[")) {
+			final int end = host.indexOf(']');
+			host = end > 0 ? host.substring(1, end) : host;
+		} else if (host.indexOf(':') == host.lastIndexOf(':') && host.indexOf(':') >= 0) {
+			host = host.substring(0, host.indexOf(':'));
+		}
+		if ("localhost".equalsIgnoreCase(host) || host.equalsIgnoreCase(_address.getHostString())) {
+			return true;
+		}
+		if (!InetAddresses.isInetAddress(host)) {
+			// a name may resolve to anything
+			return false;
+		}
+		final InetAddress address = InetAddresses.forString(host);
+		final InetAddress bound = _address.getAddress();
+		return address.isLoopbackAddress() || bound == null || bound.isAnyLocalAddress() || bound.equals(address);
+	}
+
+	private static Map<String, String> params(final HttpExchange exchange) {
+		final Map<String, String> params = new HashMap<>();
+		final String query = exchange.getRequestURI().getRawQuery();
+		if (query != null) {
+			for (final String param : query.split("&")) {
+				final int eq = param.indexOf('=');
+				if (eq > 0) {
+					params.put(URLDecoder.decode(param.substring(0, eq), StandardCharsets.UTF_8),
+							URLDecoder.decode(param.substring(eq + 1), StandardCharsets.UTF_8));
+				}
+			}
+		}
+		return params;
+	}
+
+	private static long number(final Map<String, String> params, final String name, final long defaultValue) {
+		final String value = params.get(name);
+		if (value == null) {
+			return defaultValue;
+		}
+		try {
+			final long number = Long.parseLong(value);
+			if (number < 0) {
+				throw new NumberFormatException();
+			}
+			return number;
+		} catch (final NumberFormatException e) {
+			throw new IllegalArgumentException("Invalid value of " + name + " : " + value);
+		}
+	}
+
+	private static void send(final HttpExchange exchange, final int status, final String json) throws IOException {
+		final byte[] body = json.getBytes(StandardCharsets.UTF_8);
+		exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+		exchange.sendResponseHeaders(status, body.length);
+		try (OutputStream out = exchange.getResponseBody()) {
+			out.write(body);
+		}
+	}
+
+	private static void error(final HttpExchange exchange, final int status, final String message) throws IOException {
+		send(exchange, status, JsonRecord.of(json -> json.writeStringField("error", message)));
+	}
+
+	private void endRoute(final String status, final IFields fields) {
+		_tracing.set(false);
+		_routeEvents.publish("end", json -> {
+			json.writeStringField("status", status);
+			fields.write(json);
+		});
+	}
+
+	@Override
+	public void newRoute(final boolean dnsLookup) {
+		// the traceroutes started by the UI are streamed too
+		_tracing.set(true);
+		final String dest = _services.getTraceroute().getDestination();
+		_routeEvents.publish("start", json -> {
+			json.writeNumberField("ts", System.currentTimeMillis());
+			json.writeStringField("dest", dest);
+		});
+	}
+
+	@Override
+	public void routePointAdded(final RoutePoint point) {
+		_routeEvents.publish("hop", json -> JsonRecord.writeRoutePoint(json, point));
+	}
+
+	@Override
+	public void routeDone(final long tracerouteTime, final long lengthInKm) {
+		endRoute("done", json -> {
+			json.writeNumberField("duration", tracerouteTime);
+			json.writeNumberField("lengthKm", lengthInKm);
+		});
+	}
+
+	@Override
+	public void routeTimeout() {
+		endRoute("timeout", json -> {
+		});
+	}
+
+	@Override
+	public void maxHops() {
+		endRoute("max_hops", json -> {
+		});
+	}
+
+	@Override
+	public void routeCancelled() {
+		endRoute("cancelled", json -> {
+		});
+	}
+
+	@Override
+	public void error(final Exception exception, final Object origin) {
+		final String message = exception.getMessage() != null ? exception.getMessage() : exception.getClass().getSimpleName();
+		if (origin == _services.getSniffer()) {
+			_packetEvents.publish("error", json -> json.writeStringField("error", message));
+		} else {
+			endRoute("error", json -> json.writeStringField("error", message));
+		}
+	}
+
+	@Override
+	public void focusRoute(final RoutePoint point, final boolean isTracing, final boolean animation) {
+	}
+
+	@Override
+	public void startCapture() {
+		_packetEvents.publish("start", json -> json.writeNumberField("ts", System.currentTimeMillis()));
+	}
+
+	@Override
+	public void packetAdded(final AbstractPacketPoint point) {
+		_packetEvents.publish("packet", json -> JsonRecord.writePacket(json, point));
+	}
+
+	@Override
+	public void flowsUpdated(final FlowUpdate update) {
+	}
+
+	@Override
+	public void captureStopped() {
+		_packetEvents.publish("stop", json -> json.writeNumberField("ts", System.currentTimeMillis()));
+	}
+
+	@Override
+	public void focusPacket(final AbstractPacketPoint point, final boolean isCapturing, final boolean animation) {
+	}
+}
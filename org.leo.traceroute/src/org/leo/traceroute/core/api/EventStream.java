@@ -0,0 +1,206 @@
+/**
+ * Open Visual Trace Route
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.leo.traceroute.core.api;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.leo.traceroute.core.export.JsonRecord;
+import org.leo.traceroute.core.export.JsonRecord.IFields;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.sun.net.httpserver.HttpExchange;
+
+/**
+ * EventStream $Id$
+ * <pre>
+ * Server-Sent Events to many clients. Each client has its own bounded buffer, filled by the producers without
+ * ever blocking and drained by the thread of its request :
+ *  - an event is framed once, whatever the number of clients
+ *  - when the buffer of a slow client is full the new events are dropped for this client only, a "dropped" event
+ *    with their number is inserted before the next event delivered
+ *  - a comment is sent when idle so the dead connections are detected
+ * </pre>
+ * @author Leo Lewis
+ */
+public class EventStream {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(EventStream.class);
+
+	public static final int DEFAULT_CAPACITY = 1024;
+	private static final long KEEP_ALIVE_MS = TimeUnit.SECONDS.toMillis(15);
+	private static final byte[] KEEP_ALIVE = ":\n\n".getBytes(StandardCharsets.UTF_8);
+	/** Ends the loop of a client */
+	private static final String END = new String();
+
+	private final String _name;
+	private final int _capacity;
+	private final Set<Client> _clients = ConcurrentHashMap.newKeySet();
+	private final AtomicLong _dropped = new AtomicLong();
+	private volatile boolean _closed;
+
+	/**
+	 * Constructor
+	 * @param name name of the stream
+	 * @param capacity number of events buffered by client
+	 */
+	public EventStream(final String name, final int capacity) {
+		_name = name;
+		_capacity = Math.max(2, capacity);
+	}
+
+	/**
+	 * Send an event to all the clients, never blocks
+	 * @param event type of the event
+	 * @param data fields of the data of the event, written only if there are clients
+	 */
+	public void publish(final String event, final IFields data) {
+		if (_clients.isEmpty()) {
+			return;
+		}
+		final String frame = frame(event, JsonRecord.of(data));
+		for (final Client client : _clients) {
+			client.offer(frame);
+		}
+	}
+
+	static String frame(final String event, final String data) {
+		return "event: " + event + "\ndata: " + data + "\n\n";
+	}
+
+	/**
+	 * Serve a client until it disconnects or the stream is closed, on the thread of the request
+	 * @param exchange the request
+	 * @throws IOException
+	 */
+	public void serve(final HttpExchange exchange) throws IOException {
+		exchange.getResponseHeaders().set("Content-Type", "text/event-stream; charset=utf-8");
+		exchange.getResponseHeaders().set("Cache-Control", "no-cache");
+		exchange.sendResponseHeaders(200, 0);
+		final Client client = new Client();
+		_clients.add(client);
+		if (_closed) {
+			// closed meanwhile
+			client.close();
+		}
+		LOGGER.debug("Client {} connected to {}", exchange.getRemoteAddress(), _name);
+		try (OutputStream out = exchange.getResponseBody()) {
+			while (true) {
+				final String frame = client.take(KEEP_ALIVE_MS);
+				if (frame == END) {
+					break;
+				}
+				out.write(frame != null ? frame.getBytes(StandardCharsets.UTF_8) : KEEP_ALIVE);
+				out.flush();
+			}
+		} catch (final IOException e) {
+			LOGGER.debug("Client {} disconnected from {}", exchange.getRemoteAddress(), _name);
+		} catch (final InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} finally {
+			_clients.remove(client);
+			_dropped.addAndGet(client._totalDropped);
+			exchange.close();
+		}
+	}
+
+	/**
+	 * Disconnect all the clients
+	 */
+	public void close() {
+		_closed = true;
+		for (final Client client : _clients) {
+			client.close();
+		}
+	}
+
+	/**
+	 * @return the name of the stream
+	 */
+	public String getName() {
+		return _name;
+	}
+
+	/**
+	 * @return the number of connected clients
+	 */
+	public int getClients() {
+		return _clients.size();
+	}
+
+	/**
+	 * @return the number of events dropped for the slow clients, connected or not
+	 */
+	public long getDropped() {
+		long dropped = _dropped.get();
+		for (final Client client : _clients) {
+			dropped += client._totalDropped;
+		}
+		return dropped;
+	}
+
+	/**
+	 * Buffer of a client
+	 */
+	private final class Client {
+
+		private final BlockingQueue<String> _queue = new ArrayBlockingQueue<>(_capacity + 1);
+		/** Dropped since the last event delivered */
+		private int _pendingDrops;
+		private volatile long _totalDropped;
+
+		/**
+		 * Buffer the frame, or drop it if the buffer is full
+		 */
+		synchronized void offer(final String frame) {
+			// room for the notification of the drops and the frame
+			final int needed = _pendingDrops > 0 ? 2 : 1;
+			if (_queue.size() + needed > _capacity) {
+				_pendingDrops++;
+				_totalDropped++;
+				return;
+			}
+			if (_pendingDrops > 0) {
+				_queue.offer(frame("dropped", "{\"count\":" + _pendingDrops + "}"));
+				_pendingDrops = 0;
+			}
+			_queue.offer(frame);
+		}
+
+		/**
+		 * @return the next frame, null if none within the time out, {@link EventStream#END} when closed
+		 */
+		String take(final long timeOutMs) throws InterruptedException {
+			return _queue.poll(timeOutMs, TimeUnit.MILLISECONDS);
+		}
+
+		synchronized void close() {
+			_queue.clear();
+			// the extra slot is kept for the end
+			_queue.offer(END);
+		}
+	}
+}
@@ -18,36 +18,30 @@
  */
 package org.leo.traceroute.core.autocomplete;
 
+import java.io.EOFException;
 import java.io.FileInputStream;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.ObjectInput;
 import java.io.ObjectInputStream;
-import java.io.ObjectOutput;
-import java.io.ObjectOutputStream;
+import java.io.ObjectStreamException;
 import java.util.ArrayList;
-import java.util.Collections;
-import java.util.Comparator;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
 
-import org.apache.commons.io.IOUtils;
 import org.leo.traceroute.core.AbstractObject;
 import org.leo.traceroute.core.ServiceFactory;
 import org.leo.traceroute.install.Env;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import com.googlecode.concurrenttrees.common.KeyValuePair;
-import com.googlecode.concurrenttrees.radix.ConcurrentRadixTree;
-import com.googlecode.concurrenttrees.radix.RadixTree;
-import com.googlecode.concurrenttrees.radix.node.concrete.DefaultByteArrayNodeFactory;
-
 /**
  * AutoCompleteProvider $Id$
  * <pre>
+ * History of the searched hosts. The history is an append-only journal loaded in background after the startup,
+ * each search is appended when it happens, the journal is compacted periodically and when disposed.
  * </pre>
  * @author Leo
  */
@@ -56,50 +50,93 @@ public class AutoCompleteProvider extends AbstractObject<Void> {
 	private static final Logger LOGGER = LoggerFactory.getLogger(AutoCompleteProvider.class);
 
 	private static final int MAX = 20;
+	private static final long COMPACTION_PERIOD_MINUTES = 10;
 
-	/** Prefix tries */
-	private RadixTree<Integer> _tree = new ConcurrentRadixTree<>(new DefaultByteArrayNodeFactory());
-	/** For serialization */
-	private Map<String, Integer> _map;
-
-	private final Comparator<KeyValuePair<Integer>> _comp = (o1, o2) -> (o2.getValue() == null ? 0 : o2.getValue()) - (o1.getValue() == null ? 0 : o1.getValue());
+	/** Prefix tree, ranked by frecency */
+	private final CompletionIndex _index = new CompletionIndex(MAX);
+	/** Journal of the history, lock of the updates of the history */
+	private final HistoryJournal _journal = new HistoryJournal(Env.HISTORY_JOURNAL);
+	private ScheduledFuture<?> _compaction;
+	/** Searches done before the history is loaded, guarded by the journal */
+	private List<Use> _pending = new ArrayList<>();
 
 	/**
 	 * @see org.leo.traceroute.core.AbstractObject#init(org.leo.traceroute.core.ServiceFactory)
 	 */
-	@SuppressWarnings("unchecked")
 	@Override
-	public void init(final ServiceFactory factory) throws IOException, ClassNotFoundException {
-		if (Env.HISTORY.exists()) {
-			try (FileInputStream is = new FileInputStream(Env.HISTORY); ObjectInput input = new ObjectInputStream(is)){
-				_map = (HashMap<String, Integer>) input.readObject();
+	public void init(final ServiceFactory factory) throws Exception {
+		super.init(factory);
+		_executor.execute(this::load);
+		_compaction = _runtime.scheduleAtFixedRate(() -> _executor.execute(() -> compact()), COMPACTION_PERIOD_MINUTES,
+				COMPACTION_PERIOD_MINUTES, TimeUnit.MINUTES);
+	}
+
+	/**
+	 * Load the history, then add the searches done meanwhile
+	 */
+	private void load() {
+		synchronized (_journal) {
+			final long start = System.currentTimeMillis();
+			try {
+				if (!_journal.exists() && Env.HISTORY.exists()) {
+					migrate();
+				}
+				_journal.load(_index);
+				LOGGER.info("History of {} entries loaded in {}ms", _index.size(), System.currentTimeMillis() - start);
 			} catch (final Exception e) {
-				Env.HISTORY.delete();
+				LOGGER.error("Failed to load history", e);
+			}
+			final List<Use> pending = _pending;
+			_pending = null;
+			for (final Use use : pending) {
+				add(use._value, use._time);
 			}
 		}
-		if (_map == null) {
-			_map = new HashMap<>();
-		} else {
-			for (final Entry<String, Integer> entry : _map.entrySet()) {
-				_tree.put(entry.getKey(), entry.getValue());
+		compact();
+	}
+
+	/**
+	 * Import the history of the previous versions (serialized map, without time) into the journal
+	 */
+	@SuppressWarnings("unchecked")
+	private void migrate() throws IOException {
+		try (FileInputStream is = new FileInputStream(Env.HISTORY); ObjectInput input = new ObjectInputStream(is)) {
+			final Map<String, Integer> map = (Map<String, Integer>) input.readObject();
+			// the uses are dated from its last save
+			final long time = Env.HISTORY.lastModified();
+			for (final Entry<String, Integer> entry : map.entrySet()) {
+				_index.add(entry.getKey(), entry.getValue(), time);
 			}
+			_journal.compact(_index);
+			_index.clear();
+		} catch (final ClassNotFoundException | ClassCastException | ObjectStreamException | EOFException e) {
+			LOGGER.warn("Invalid history {}", Env.HISTORY, e);
 		}
+		Env.HISTORY.delete();
+	}
 
+	/**
+	 * Compact the journal if it has too many records
+	 */
+	private void compact() {
+		synchronized (_journal) {
+			if (_journal.needsCompaction(_index.size())) {
+				try {
+					_journal.compact(_index);
+				} catch (final IOException e) {
+					LOGGER.error("Failed to compact history", e);
+				}
+			}
+		}
 	}
 
 	/**
 	 * Get from history
 	 * @param prefix
-	 * @return
+	 * @return the best ranked values starting with the prefix, best first
 	 */
-	public List<KeyValuePair<Integer>> getFromHistory(final String prefix) {
-		final List<KeyValuePair<Integer>> res = new ArrayList<>();
-		final Iterable<KeyValuePair<Integer>> entries = _tree.getKeyValuePairsForKeysStartingWith(prefix);
-		for (final KeyValuePair<Integer> entry : entries) {
-			res.add(entry);
-		}
-		Collections.sort(res, _comp);
-		return res.subList(0, Math.min(res.size(), MAX));
+	public List<String> getFromHistory(final String prefix) {
+		return _index.complete(prefix, MAX);
 	}
 
 	/**
@@ -107,14 +144,24 @@ public class AutoCompleteProvider extends AbstractObject<Void> {
 	 * @param value
 	 */
 	public void addToHistory(final String value) {
-		Integer occurence = _tree.getValueForExactKey(value);
-		if (occurence == null) {
-			occurence = 1;
-		} else {
-			occurence++;
+		final long time = System.currentTimeMillis();
+		synchronized (_journal) {
+			if (_pending != null) {
+				// not loaded yet, the journal is not read twice
+				_pending.add(new Use(value, time));
+			} else {
+				add(value, time);
+			}
+		}
+	}
+
+	private void add(final String value, final long time) {
+		_index.add(value, 1, time);
+		try {
+			_journal.append(value, time);
+		} catch (final IOException e) {
+			LOGGER.error("Failed to persist history", e);
 		}
-		_tree.put(value, occurence);
-		_map.put(value, occurence);
 	}
 
 	/**
@@ -122,22 +169,52 @@ public class AutoCompleteProvider extends AbstractObject<Void> {
 	 */
 	@Override
 	public void dispose() {
-		if (_map != null) {
-			try (FileOutputStream os = new FileOutputStream(Env.HISTORY); ObjectOutput output = new ObjectOutputStream(os)) {
-				output.writeObject(_map);
-				output.flush();
-			} catch (final Exception e) {
-				LOGGER.error("Failed to persist history", e);
-				Env.HISTORY.delete();
+		if (_compaction != null) {
+			_compaction.cancel(false);
+		}
+		compact();
+		synchronized (_journal) {
+			try {
+				_journal.close();
+			} catch (final IOException e) {
+				LOGGER.error("Failed to close history", e);
 			}
 		}
+		super.dispose();
 	}
 
 	/**
 	 * Clear history
 	 */
 	public void clear() {
-		_map.clear();
-		_tree = new ConcurrentRadixTree<>(new DefaultByteArrayNodeFactory());
+		synchronized (_journal) {
+			_index.clear();
+			if (_pending != null) {
+				_pending.clear();
+			}
+			try {
+				_journal.clear();
+			} catch (final IOException e) {
+				LOGGER.error("Failed to clear history", e);
+			}
+		}
+	}
+
+	/**
+	 * Use $Id$
+	 * <pre>
+	 * Search done before the history is loaded.
+	 * </pre>
+	 * @author Leo
+	 */
+	private static class Use {
+
+		private final String _value;
+		private final long _time;
+
+		private Use(final String value, final long time) {
+			_value = value;
+			_time = time;
+		}
 	}
 }
@@ -0,0 +1,352 @@
+/**
+ * Open Visual Trace Route
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.leo.traceroute.core.autocomplete;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * CompletionIndex $Id$
+ * <pre>
+ * Radix tree of the history, each node keeps the best ranked entries of its subtree,
+ * a completion is O(prefix + k) whatever the size of the history.
+ * The entries are ranked by frecency : each use counts for 1, halved every {@link #HALF_LIFE_MILLIS}.
+ * The score is kept in log2 so that it never overflows, and is only increased by an update,
+ * the best entries of the nodes stay exact without ranking again the history when the time goes.
+ * Thread safe.
+ * </pre>
+ * @author Leo Lewis
+ */
+public class CompletionIndex {
+
+	/** Half life of the weight of a use */
+	public static final long HALF_LIFE_MILLIS = TimeUnit.DAYS.toMillis(30);
+	/** Origin of the scores, 2010-01-01 */
+	private static final long EPOCH_MILLIS = 1262304000000L;
+
+	/**
+	 * An entry of the history
+	 */
+	public static final class Entry {
+		private final String _key;
+		private int _count;
+		private long _lastUse;
+		/** log2 of the sum of the weights of the uses */
+		private double _score = Double.NEGATIVE_INFINITY;
+
+		private Entry(final String key) {
+			_key = key;
+		}
+
+		/**
+		 * Return the value of the field key
+		 * @return the value of key
+		 */
+		public String getKey() {
+			return _key;
+		}
+
+		/**
+		 * Return the number of uses
+		 * @return the value of count
+		 */
+		public int getCount() {
+			return _count;
+		}
+
+		/**
+		 * Return the time of the last use (ms since the epoch)
+		 * @return the value of lastUse
+		 */
+		public long getLastUse() {
+			return _lastUse;
+		}
+
+		/**
+		 * Return the score, log2 of the sum of the weights of the uses
+		 * @return the value of score
+		 */
+		public double getScore() {
+			return _score;
+		}
+	}
+
+	private final int _k;
+	private final Map<String, Entry> _entries = new HashMap<>();
+	private Node _root;
+
+	/**
+	 * Constructor
+	 * @param k number of entries kept by each node, the maximum size of a completion
+	 */
+	public CompletionIndex(final int k) {
+		_k = k;
+		clear();
+	}
+
+	/**
+	 * Remove all the entries
+	 */
+	public synchronized void clear() {
+		_root = new Node("");
+		_entries.clear();
+	}
+
+	/**
+	 * @return the number of entries
+	 */
+	public synchronized int size() {
+		return _entries.size();
+	}
+
+	/**
+	 * Add uses of a key
+	 * @param key the key
+	 * @param count number of uses
+	 * @param time time of the uses (ms since the epoch)
+	 * @return the updated entry
+	 */
+	public Entry add(final String key, final int count, final long time) {
+		return merge(key, count, time, log2(count) + (double) (time - EPOCH_MILLIS) / HALF_LIFE_MILLIS);
+	}
+
+	/**
+	 * Add the uses of an entry saved before
+	 * @param key the key
+	 * @param count number of uses
+	 * @param lastUse time of the last use (ms since the epoch)
+	 * @param score score of the uses, see {@link Entry#getScore()}
+	 * @return the updated entry
+	 */
+	public synchronized Entry merge(final String key, final int count, final long lastUse, final double score) {
+		Entry entry = _entries.get(key);
+		if (entry == null) {
+			entry = new Entry(key);
+			_entries.put(key, entry);
+		}
+		entry._count += count;
+		entry._lastUse = Math.max(entry._lastUse, lastUse);
+		entry._score = logAdd(entry._score, score);
+		// the score only grows, the entry moves up in the nodes of its path
+		final List<Node> path = insert(key);
+		for (final Node node : path) {
+			node.rank(entry, _k);
+		}
+		return entry;
+	}
+
+	/**
+	 * @param key the key
+	 * @return the entry of the key, null if none
+	 */
+	public synchronized Entry get(final String key) {
+		return _entries.get(key);
+	}
+
+	/**
+	 * @param prefix the prefix
+	 * @param max maximum number of completions, at most k
+	 * @return the best ranked keys starting with the prefix, best first
+	 */
+	public synchronized List<String> complete(final String prefix, final int max) {
+		Node node = _root;
+		int index = 0;
+		while (index < prefix.length()) {
+			final Node child = node.child(prefix.charAt(index));
+			if (child == null) {
+				return new ArrayList<>(0);
+			}
+			final int common = commonPrefix(child._label, prefix, index);
+			if (index + common == prefix.length()) {
+				// the prefix ends on the edge
+				node = child;
+				break;
+			}
+			if (common < child._label.length()) {
+				return new ArrayList<>(0);
+			}
+			index += common;
+			node = child;
+		}
+		final int size = Math.min(max, node._top.length);
+		final List<String> res = new ArrayList<>(size);
+		for (int i = 0; i < size; i++) {
+			res.add(node._top[i]._key);
+		}
+		return res;
+	}
+
+	/**
+	 * Visit all the entries
+	 * @param visitor the visitor, called under the lock of the index
+	 */
+	public synchronized void forEach(final Consumer<Entry> visitor) {
+		_entries.values().forEach(visitor);
+	}
+
+	/**
+	 * Insert the nodes of a key, splitting the edges
+	 * @return the nodes from the root to the node of the key
+	 */
+	private List<Node> insert(final String key) {
+		final List<Node> path = new ArrayList<>();
+		Node node = _root;
+		path.add(node);
+		int index = 0;
+		while (index < key.length()) {
+			final Node child = node.child(key.charAt(index));
+			if (child == null) {
+				final Node leaf = new Node(key.substring(index));
+				node.addChild(leaf);
+				path.add(leaf);
+				return path;
+			}
+			final int common = commonPrefix(child._label, key, index);
+			if (common < child._label.length()) {
+				// split the edge, the new node has the same entries as the child
+				final Node split = new Node(child._label.substring(0, common));
+				split._top = child._top.clone();
+				node.replaceChild(split);
+				child._label = child._label.substring(common);
+				split.addChild(child);
+				node = split;
+			} else {
+				node = child;
+			}
+			path.add(node);
+			index += common;
+		}
+		return path;
+	}
+
+	private static int commonPrefix(final String label, final String key, final int offset) {
+		final int max = Math.min(label.length(), key.length() - offset);
+		int i = 0;
+		while (i < max && label.charAt(i) == key.charAt(offset + i)) {
+			i++;
+		}
+		return i;
+	}
+
+	private static double log2(final double value) {
+		return Math.log(value) / Math.log(2);
+	}
+
+	/**
+	 * @return log2(2^a + 2^b)
+	 */
+	private static double logAdd(final double a, final double b) {
+		if (a == Double.NEGATIVE_INFINITY) {
+			return b;
+		}
+		final double max = Math.max(a, b);
+		return max + log2(1 + Math.pow(2, Math.min(a, b) - max));
+	}
+
+	/**
+	 * @return true if the first entry is ranked before the second
+	 */
+	private static boolean before(final Entry e1, final Entry e2) {
+		return e1._score > e2._score || (e1._score == e2._score && e1._key.compareTo(e2._key) < 0);
+	}
+
+	/**
+	 * Node of the tree
+	 */
+	private static final class Node {
+		private static final Node[] NO_CHILDREN = new Node[0];
+		private static final Entry[] NO_ENTRIES = new Entry[0];
+
+		/** Label of the edge from the parent */
+		private String _label;
+		/** Sorted by first char */
+		private Node[] _children = NO_CHILDREN;
+		/** Best entries of the subtree, best first */
+		private Entry[] _top = NO_ENTRIES;
+
+		private Node(final String label) {
+			_label = label;
+		}
+
+		private int search(final char c) {
+			int low = 0;
+			int high = _children.length - 1;
+			while (low <= high) {
+				final int mid = (low + high) >>> 1;
+				final char m = _children[mid]._label.charAt(0);
+				if (m < c) {
+					low = mid + 1;
+				} else if (m > c) {
+					high = mid - 1;
+				} else {
+					return mid;
+				}
+			}
+			return -(low + 1);
+		}
+
+		private Node child(final char c) {
+			final int index = search(c);
+			return index >= 0 ? _children[index] : null;
+		}
+
+		private void addChild(final Node child) {
+			final int index = -search(child._label.charAt(0)) - 1;
+			final Node[] children = new Node[_children.length + 1];
+			System.arraycopy(_children, 0, children, 0, index);
+			children[index] = child;
+			System.arraycopy(_children, index, children, index + 1, _children.length - index);
+			_children = children;
+		}
+
+		private void replaceChild(final Node child) {
+			_children[search(child._label.charAt(0))] = child;
+		}
+
+		/**
+		 * Move up (or in) an entry whose score grew
+		 */
+		private void rank(final Entry entry, final int k) {
+			int from = -1;
+			for (int i = 0; i < _top.length; i++) {
+				if (_top[i] == entry) {
+					from = i;
+					break;
+				}
+			}
+			if (from < 0) {
+				if (_top.length == k && !before(entry, _top[k - 1])) {
+					return;
+				}
+				from = Math.min(_top.length, k - 1);
+				_top = Arrays.copyOf(_top, Math.min(_top.length + 1, k));
+			}
+			int to = from;
+			while (to > 0 && before(entry, _top[to - 1])) {
+				_top[to] = _top[to - 1];
+				to--;
+			}
+			_top[to] = entry;
+		}
+	}
+}
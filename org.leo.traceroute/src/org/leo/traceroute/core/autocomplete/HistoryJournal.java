@@ -0,0 +1,223 @@
+/**
+ * Open Visual Trace Route
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.leo.traceroute.core.autocomplete;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.RandomAccessFile;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * HistoryJournal $Id$
+ * <pre>
+ * Append-only journal of the history, one line per record (UTF-8) :
+ *  - a use : + [time] [key] $
+ *  - an entry, written by the compaction : = [count] [last use] [score] [key] $
+ * Each use is appended and flushed when it happens, a crash loses at most the line being written,
+ * which is skipped by the next load : a record without its end marker is incomplete, even when
+ * it was cut within the key. The compaction rewrites the journal with one line per entry
+ * in a temporary file that replaces the journal.
+ * Not thread safe, the caller locks.
+ * </pre>
+ * @author Leo Lewis
+ */
+public class HistoryJournal {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(HistoryJournal.class);
+
+	private static final String USE = "+";
+	private static final String ENTRY = "=";
+	private static final String SEPARATOR = "\t";
+	/** Last field of a complete record */
+	private static final String END = SEPARATOR + "$";
+	/** Decoded in place of the invalid bytes */
+	private static final char REPLACEMENT = '\uFFFD';
+	/** Below, the journal is not compacted */
+	private static final int MIN_RECORDS_TO_COMPACT = 10000;
+
+	private final File _file;
+	private Writer _writer;
+	/** Records in the journal */
+	private int _records;
+
+	/**
+	 * Constructor
+	 * @param file the journal
+	 */
+	public HistoryJournal(final File file) {
+		_file = file;
+	}
+
+	/**
+	 * @return true if the journal exists
+	 */
+	public boolean exists() {
+		return _file.exists();
+	}
+
+	/**
+	 * Load the journal into the index
+	 * @param index the index
+	 * @throws IOException
+	 */
+	public void load(final CompletionIndex index) throws IOException {
+		_records = 0;
+		if (!_file.exists()) {
+			return;
+		}
+		int skipped = 0;
+		// the reader replaces the invalid bytes (a multi-byte character cut by a crash) instead of failing
+		try (BufferedReader reader = new BufferedReader(new InputStreamReader(Files.newInputStream(_file.toPath()), StandardCharsets.UTF_8))) {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				_records++;
+				try {
+					if (!line.endsWith(END) || line.indexOf(REPLACEMENT) >= 0) {
+						// truncated by a crash, possibly within a character
+						skipped++;
+						continue;
+					}
+					final String record = line.substring(0, line.length() - END.length());
+					if (record.startsWith(USE)) {
+						final String[] fields = record.split(SEPARATOR, 3);
+						index.add(fields[2], 1, Long.parseLong(fields[1]));
+					} else if (record.startsWith(ENTRY)) {
+						final String[] fields = record.split(SEPARATOR, 5);
+						index.merge(fields[4], Integer.parseInt(fields[1]), Long.parseLong(fields[2]), Double.parseDouble(fields[3]));
+					} else {
+						skipped++;
+					}
+				} catch (final RuntimeException e) {
+					// truncated by a crash
+					skipped++;
+				}
+			}
+		}
+		if (skipped > 0) {
+			LOGGER.warn("{} invalid records skipped in {}", skipped, _file);
+		}
+	}
+
+	/**
+	 * Append a use
+	 * @param key the key
+	 * @param time time of the use
+	 * @throws IOException
+	 */
+	public void append(final String key, final long time) throws IOException {
+		if (key.indexOf('\n') >= 0 || key.indexOf('\r') >= 0) {
+			// would break the journal, not typed in a text field anyway
+			return;
+		}
+		if (_writer == null) {
+			final boolean truncated = endsWithPartialRecord();
+			_writer = Files.newBufferedWriter(_file.toPath(), StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+			if (truncated) {
+				// terminate the record of the crash, skipped by the load
+				_writer.write("\n");
+			}
+		}
+		_writer.write(USE + SEPARATOR + time + SEPARATOR + key + END + "\n");
+		_writer.flush();
+		_records++;
+	}
+
+	/**
+	 * @return true if the last record of the journal is not terminated
+	 */
+	private boolean endsWithPartialRecord() throws IOException {
+		if (!_file.exists() || _file.length() == 0) {
+			return false;
+		}
+		try (RandomAccessFile file = new RandomAccessFile(_file, "r")) {
+			file.seek(file.length() - 1);
+			return file.read() != '\n';
+		}
+	}
+
+	/**
+	 * @param entries number of entries of the index
+	 * @return true if the journal has much more records than the index has entries
+	 */
+	public boolean needsCompaction(final int entries) {
+		return _records > MIN_RECORDS_TO_COMPACT && _records > 2 * entries;
+	}
+
+	/**
+	 * Rewrite the journal with one record per entry of the index
+	 * @param index the index
+	 * @throws IOException
+	 */
+	public void compact(final CompletionIndex index) throws IOException {
+		close();
+		final long start = System.currentTimeMillis();
+		final File tmp = new File(_file.getAbsolutePath() + ".tmp");
+		final IOException[] error = new IOException[1];
+		try (BufferedWriter writer = Files.newBufferedWriter(tmp.toPath(), StandardCharsets.UTF_8)) {
+			index.forEach(entry -> {
+				if (error[0] == null) {
+					try {
+						writer.write(ENTRY + SEPARATOR + entry.getCount() + SEPARATOR + entry.getLastUse() + SEPARATOR + entry.getScore() + SEPARATOR
+								+ entry.getKey() + END + "\n");
+					} catch (final IOException e) {
+						error[0] = e;
+					}
+				}
+			});
+		}
+		if (error[0] != null) {
+			tmp.delete();
+			throw error[0];
+		}
+		Files.move(tmp.toPath(), _file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		LOGGER.info("History compacted from {} to {} records in {}ms", _records, index.size(), System.currentTimeMillis() - start);
+		_records = index.size();
+	}
+
+	/**
+	 * Delete the journal
+	 * @throws IOException
+	 */
+	public void clear() throws IOException {
+		close();
+		Files.deleteIfExists(_file.toPath());
+		_records = 0;
+	}
+
+	/**
+	 * Close the journal, it is opened again by the next use
+	 * @throws IOException
+	 */
+	public void close() throws IOException {
+		if (_writer != null) {
+			final Writer writer = _writer;
+			_writer = null;
+			writer.close();
+		}
+	}
+}
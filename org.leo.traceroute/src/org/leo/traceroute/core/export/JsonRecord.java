@@ -0,0 +1,118 @@
+/**
+ * Open Visual Trace Route
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.leo.traceroute.core.export;
+
+import java.io.IOException;
+import java.io.StringWriter;
+
+import org.leo.traceroute.core.route.RoutePoint;
+import org.leo.traceroute.core.sniffer.AbstractPacketPoint;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+
+/**
+ * JsonRecord $Id$
+ * <pre>
+ * JSON object on one line, for the NDJSON output and the event streams of the API.
+ * </pre>
+ * @author Leo Lewis
+ */
+public final class JsonRecord {
+
+	private static final JsonFactory JSON = new JsonFactory();
+
+	private JsonRecord() {
+
+	}
+
+	/**
+	 * @param fields the fields of the object
+	 * @return the object, on one line
+	 */
+	public static String of(final IFields fields) {
+		final StringWriter writer = new StringWriter();
+		try (JsonGenerator json = JSON.createGenerator(writer)) {
+			json.writeStartObject();
+			fields.write(json);
+			json.writeEndObject();
+		} catch (final IOException e) {
+			// in memory
+			throw new IllegalStateException(e);
+		}
+		return writer.toString();
+	}
+
+	/**
+	 * Write the fields of a point of a route
+	 * @param json the generator
+	 * @param point the point
+	 * @throws IOException
+	 */
+	public static void writeRoutePoint(final JsonGenerator json, final RoutePoint point) throws IOException {
+		json.writeNumberField("hop", point.getNumber());
+		json.writeStringField("ip", point.getIp());
+		json.writeStringField("host", point.getHostname());
+		json.writeBooleanField("unknown", point.isUnknown());
+		json.writeNumberField("latency", point.getLatency());
+		json.writeNumberField("dnsLookupTime", point.getDnsLookUpTime());
+		json.writeStringField("country", point.getCountry());
+		json.writeStringField("countryIso", point.getCountryIso());
+		json.writeStringField("town", point.getTown());
+		json.writeNumberField("lat", point.getLat());
+		json.writeNumberField("lon", point.getLon());
+		json.writeNumberField("distance", point.getDistanceToPrevious());
+	}
+
+	/**
+	 * Write the fields of a captured packet
+	 * @param json the generator
+	 * @param point the packet
+	 * @throws IOException
+	 */
+	public static void writePacket(final JsonGenerator json, final AbstractPacketPoint point) throws IOException {
+		json.writeNumberField("ts", point.getTs());
+		json.writeStringField("protocol", point.getProtocol() != null ? point.getProtocol().name() : null);
+		json.writeStringField("ip", point.getIp());
+		json.writeStringField("host", point.getHostname());
+		writeNumberOrNull(json, "sourcePort", point.getSourcePort());
+		writeNumberOrNull(json, "destPort", point.getDestPort());
+		json.writeNumberField("length", point.getDataLength());
+		json.writeStringField("country", point.getCountry());
+		json.writeStringField("countryIso", point.getCountryIso());
+		json.writeStringField("town", point.getTown());
+		json.writeNumberField("lat", point.getLat());
+		json.writeNumberField("lon", point.getLon());
+	}
+
+	private static void writeNumberOrNull(final JsonGenerator json, final String name, final Integer value) throws IOException {
+		if (value == null) {
+			json.writeNullField(name);
+		} else {
+			json.writeNumberField(name, value);
+		}
+	}
+
+	/**
+	 * Fields of a record
+	 */
+	public interface IFields {
+
+		void write(JsonGenerator json) throws IOException;
+	}
+}
@@ -0,0 +1,268 @@
+/**
+ * Open Visual Trace Route
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.leo.traceroute.core.export;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.Writer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+
+/**
+ * TableExporter $Id$
+ * <pre>
+ * Streaming export of the rows of a table (route points, captured packets) to CSV, text, JSON or NDJSON.
+ * The rows are written one by one to the writer, the memory used does not depend on the number of rows.
+ * </pre>
+ * @author Leo Lewis
+ */
+public class TableExporter<T> {
+
+	/** Export format */
+	public enum Format {
+		/** Comma separated, quoted when needed */
+		CSV(".csv"),
+		/** Tab separated, as displayed */
+		TEXT(".txt"),
+		/** One array of objects */
+		JSON(".json"),
+		/** One object per line */
+		NDJSON(".ndjson");
+
+		private final String _extension;
+
+		private Format(final String extension) {
+			_extension = extension;
+		}
+
+		/**
+		 * Return the value of the field extension
+		 * @return the value of extension
+		 */
+		public String getExtension() {
+			return _extension;
+		}
+
+		/**
+		 * @param fileName a file name
+		 * @return the format matching the extension of the file, null if none
+		 */
+		public static Format fromFileName(final String fileName) {
+			final String name = fileName.toLowerCase(Locale.ROOT);
+			for (final Format format : values()) {
+				if (name.endsWith(format.getExtension())) {
+					return format;
+				}
+			}
+			return null;
+		}
+	}
+
+	/**
+	 * A column of the table, implemented by the column enums of the tables
+	 */
+	public interface IColumn<T> {
+
+		/**
+		 * @return the name of the column, the key of the JSON objects
+		 */
+		String name();
+
+		/**
+		 * @return the label of the column, the header of the CSV/text
+		 */
+		String getLabel();
+
+		/**
+		 * @return if the column is exported
+		 */
+		boolean isExport();
+
+		/**
+		 * @param row the row
+		 * @return the value of the column for the row
+		 */
+		Object getValue(T row);
+	}
+
+	/**
+	 * Progress of an export
+	 */
+	public interface IProgressListener {
+
+		/**
+		 * @param done number of rows exported
+		 * @param total number of rows to export
+		 * @return false to cancel the export
+		 */
+		boolean progress(int done, int total);
+	}
+
+	private static final int PROGRESS_ROWS = 1000;
+	private static final JsonFactory JSON = new JsonFactory();
+
+	private final List<IColumn<T>> _columns = new ArrayList<>();
+	private final String[] _keys;
+
+	/**
+	 * Constructor
+	 * @param columns the columns of the table, only the exported ones are written
+	 */
+	public TableExporter(final IColumn<T>[] columns) {
+		for (final IColumn<T> column : columns) {
+			if (column.isExport()) {
+				_columns.add(column);
+			}
+		}
+		_keys = new String[_columns.size()];
+		for (int i = 0; i < _keys.length; i++) {
+			_keys[i] = _columns.get(i).name().toLowerCase(Locale.ROOT);
+		}
+	}
+
+	/**
+	 * Export the rows to a channel, in UTF-8
+	 * @param format the format
+	 * @param rows the rows
+	 * @param channel the channel, not closed
+	 * @param listener progress listener, may be null
+	 * @throws IOException
+	 */
+	public void export(final Format format, final List<T> rows, final WritableByteChannel channel, final IProgressListener listener)
+			throws IOException {
+		final Writer writer = new BufferedWriter(Channels.newWriter(channel, StandardCharsets.UTF_8.newEncoder(), -1));
+		export(format, rows, writer, listener);
+	}
+
+	/**
+	 * Export the rows to a writer.
+	 * The rows added while exporting are not exported.
+	 * @param format the format
+	 * @param rows the rows
+	 * @param writer the writer, flushed but not closed
+	 * @param listener progress listener, may be null
+	 * @throws IOException, InterruptedIOException if cancelled by the listener
+	 */
+	public void export(final Format format, final List<T> rows, final Writer writer, final IProgressListener listener) throws IOException {
+		final int total = rows.size();
+		if (format == Format.JSON || format == Format.NDJSON) {
+			final JsonGenerator json = JSON.createGenerator(writer).disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+			if (format == Format.JSON) {
+				json.writeStartArray();
+			} else {
+				json.setRootValueSeparator(null);
+			}
+			for (int row = 0; row < total; row++) {
+				final T value = rows.get(row);
+				json.writeStartObject();
+				for (int col = 0; col < _keys.length; col++) {
+					json.writeFieldName(_keys[col]);
+					writeJson(json, _columns.get(col).getValue(value));
+				}
+				json.writeEndObject();
+				if (format == Format.NDJSON) {
+					json.writeRaw('\n');
+				}
+				progress(listener, row + 1, total);
+			}
+			if (format == Format.JSON) {
+				json.writeEndArray();
+			}
+			json.close();
+		} else {
+			final char separator = format == Format.CSV ? ',' : '\t';
+			for (int col = 0; col < _columns.size(); col++) {
+				if (col > 0) {
+					writer.write(separator);
+				}
+				writeText(writer, format, _columns.get(col).getLabel());
+			}
+			writer.write('\n');
+			for (int row = 0; row < total; row++) {
+				final T value = rows.get(row);
+				for (int col = 0; col < _columns.size(); col++) {
+					if (col > 0) {
+						writer.write(separator);
+					}
+					final Object cell = _columns.get(col).getValue(value);
+					writeText(writer, format, cell == null ? "" : cell.toString());
+				}
+				writer.write('\n');
+				progress(listener, row + 1, total);
+			}
+		}
+		writer.flush();
+		if (listener != null) {
+			listener.progress(total, total);
+		}
+	}
+
+	private static void progress(final IProgressListener listener, final int done, final int total) throws InterruptedIOException {
+		if (listener != null && done % PROGRESS_ROWS == 0 && !listener.progress(done, total)) {
+			throw new InterruptedIOException("Export cancelled");
+		}
+	}
+
+	private static void writeJson(final JsonGenerator json, final Object value) throws IOException {
+		if (value == null) {
+			json.writeNull();
+		} else if (value instanceof Integer || value instanceof Long || value instanceof Short) {
+			json.writeNumber(((Number) value).longValue());
+		} else if (value instanceof Float || value instanceof Double) {
+			json.writeNumber(((Number) value).doubleValue());
+		} else if (value instanceof Boolean) {
+			json.writeBoolean((Boolean) value);
+		} else {
+			json.writeString(value.toString());
+		}
+	}
+
+	private static void writeText(final Writer writer, final Format format, final String value) throws IOException {
+		if (format != Format.CSV || !needsQuotes(value)) {
+			writer.write(value);
+			return;
+		}
+		writer.write('"');
+		for (int i = 0; i < value.length(); i++) {
+			final char c = value.charAt(i);
+			if (c == '"') {
+				writer.write('"');
+			}
+			writer.write(c);
+		}
+		writer.write('"');
+	}
+
+	private static boolean needsQuotes(final String value) {
+		for (int i = 0; i < value.length(); i++) {
+			final char c = value.charAt(i);
+			if (c == ',' || c == '"' || c == '\n' || c == '\r') {
+				return true;
+			}
+		}
+		return false;
+	}
+}
@@ -0,0 +1,356 @@
+/**
+ * Open Visual Trace Route
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.leo.traceroute.core.geo;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * GeoIndex $Id$
+ * <pre>
+ * Quadtree of the displayed points on lat/lon, shared by the maps for the picking, the tooltips and the culling.
+ * The values at the same coordinates are grouped in one entry.
+ * Longitudes are normalized to [-180, 180[, the queries handle the antimeridian.
+ * Not thread safe, used on the EDT.
+ * </pre>
+ * @author Leo Lewis
+ */
+public class GeoIndex<T> {
+
+	/** Entries of a leaf before splitting it */
+	private static final int NODE_CAPACITY = 16;
+	/** Below, the leaves are not split anymore (~1m) */
+	private static final int MAX_DEPTH = 24;
+
+	/**
+	 * The values at a coordinate
+	 */
+	public static final class Entry<T> {
+		private final double _lat;
+		private final double _lon;
+		private final List<T> _values = new ArrayList<>(1);
+
+		private Entry(final double lat, final double lon) {
+			_lat = lat;
+			_lon = lon;
+		}
+
+		/**
+		 * Return the value of the field lat
+		 * @return the value of lat
+		 */
+		public double getLat() {
+			return _lat;
+		}
+
+		/**
+		 * Return the value of the field lon
+		 * @return the value of lon
+		 */
+		public double getLon() {
+			return _lon;
+		}
+
+		/**
+		 * Return the values at the coordinate, in insertion order
+		 * @return the value of values
+		 */
+		public List<T> getValues() {
+			return Collections.unmodifiableList(_values);
+		}
+	}
+
+	private Node<T> _root;
+	private int _size;
+
+	/**
+	 * Constructor
+	 */
+	public GeoIndex() {
+		clear();
+	}
+
+	/**
+	 * Remove all the entries
+	 */
+	public void clear() {
+		_root = new Node<>(-90, -180, 90, 180, 0);
+		_size = 0;
+	}
+
+	/**
+	 * @return the number of coordinates
+	 */
+	public int size() {
+		return _size;
+	}
+
+	/**
+	 * Add a value at a coordinate
+	 * @param lat latitude
+	 * @param lon longitude
+	 * @param value the value
+	 * @return the entry of the coordinate
+	 */
+	public Entry<T> add(final double lat, final double lon, final T value) {
+		final double la = clampLat(lat);
+		final double lo = normalizeLon(lon);
+		Entry<T> entry = _root.find(la, lo);
+		if (entry == null) {
+			entry = new Entry<>(la, lo);
+			_root.insert(entry);
+			_size++;
+		}
+		entry._values.add(value);
+		return entry;
+	}
+
+	/**
+	 * Remove a value
+	 * @param lat latitude
+	 * @param lon longitude
+	 * @param value the value
+	 * @return true if the value was indexed at this coordinate
+	 */
+	public boolean remove(final double lat, final double lon, final T value) {
+		final double la = clampLat(lat);
+		final double lo = normalizeLon(lon);
+		final Entry<T> entry = _root.find(la, lo);
+		if (entry == null || !entry._values.remove(value)) {
+			return false;
+		}
+		if (entry._values.isEmpty()) {
+			_root.remove(entry);
+			_size--;
+		}
+		return true;
+	}
+
+	/**
+	 * @param lat latitude
+	 * @param lon longitude
+	 * @return the entry of the coordinate, null if none
+	 */
+	public Entry<T> get(final double lat, final double lon) {
+		return _root.find(clampLat(lat), normalizeLon(lon));
+	}
+
+	/**
+	 * Visit the entries of a box
+	 * @param minLat south
+	 * @param minLon west, greater than east when the box crosses the antimeridian
+	 * @param maxLat north
+	 * @param maxLon east
+	 * @param visitor the visitor
+	 */
+	public void query(final double minLat, final double minLon, final double maxLat, final double maxLon, final Consumer<Entry<T>> visitor) {
+		if (maxLon - minLon >= 360) {
+			_root.query(minLat, -180, maxLat, 180, visitor);
+			return;
+		}
+		final double west = normalizeLon(minLon);
+		final double east = normalizeLon(maxLon);
+		if (west <= east) {
+			_root.query(minLat, west, maxLat, east, visitor);
+		} else {
+			_root.query(minLat, west, maxLat, 180, visitor);
+			_root.query(minLat, -180, maxLat, east, visitor);
+		}
+	}
+
+	/**
+	 * @param lat latitude
+	 * @param lon longitude
+	 * @param maxDistance maximum distance (degrees)
+	 * @return the closest entry, null if none is closer than the max distance
+	 */
+	public Entry<T> nearest(final double lat, final double lon, final double maxDistance) {
+		final Nearest<T> nearest = new Nearest<>(clampLat(lat), normalizeLon(lon), maxDistance);
+		_root.nearest(nearest);
+		return nearest._entry;
+	}
+
+	private static double clampLat(final double lat) {
+		return Math.max(-90, Math.min(90, lat));
+	}
+
+	private static double normalizeLon(final double lon) {
+		if (lon >= -180 && lon < 180) {
+			return lon;
+		}
+		return ((lon + 180) % 360 + 360) % 360 - 180;
+	}
+
+	/**
+	 * Longitude difference, across the antimeridian
+	 */
+	private static double deltaLon(final double lon1, final double lon2) {
+		final double d = Math.abs(lon1 - lon2);
+		return Math.min(d, 360 - d);
+	}
+
+	/**
+	 * Search of the nearest entry
+	 */
+	private static final class Nearest<T> {
+		private final double _lat;
+		private final double _lon;
+		private double _distance;
+		private Entry<T> _entry;
+
+		private Nearest(final double lat, final double lon, final double maxDistance) {
+			_lat = lat;
+			_lon = lon;
+			_distance = maxDistance;
+		}
+	}
+
+	/**
+	 * Node of the tree, a leaf holds the entries
+	 */
+	private static final class Node<T> {
+		private final double _minLat;
+		private final double _minLon;
+		private final double _maxLat;
+		private final double _maxLon;
+		private final int _depth;
+		private List<Entry<T>> _entries = new ArrayList<>();
+		/** SW, SE, NW, NE, null for a leaf */
+		private Node<T>[] _children;
+
+		private Node(final double minLat, final double minLon, final double maxLat, final double maxLon, final int depth) {
+			_minLat = minLat;
+			_minLon = minLon;
+			_maxLat = maxLat;
+			_maxLon = maxLon;
+			_depth = depth;
+		}
+
+		private Node<T> child(final double lat, final double lon) {
+			final int index = (lat >= (_minLat + _maxLat) / 2 ? 2 : 0) + (lon >= (_minLon + _maxLon) / 2 ? 1 : 0);
+			return _children[index];
+		}
+
+		private Entry<T> find(final double lat, final double lon) {
+			Node<T> node = this;
+			while (node._children != null) {
+				node = node.child(lat, lon);
+			}
+			for (final Entry<T> entry : node._entries) {
+				if (entry._lat == lat && entry._lon == lon) {
+					return entry;
+				}
+			}
+			return null;
+		}
+
+		private void insert(final Entry<T> entry) {
+			Node<T> node = this;
+			while (node._children != null) {
+				node = node.child(entry._lat, entry._lon);
+			}
+			node._entries.add(entry);
+			if (node._entries.size() > NODE_CAPACITY && node._depth < MAX_DEPTH) {
+				final double midLat = (node._minLat + node._maxLat) / 2;
+				final double midLon = (node._minLon + node._maxLon) / 2;
+				final int depth = node._depth + 1;
+				final Node<T>[] children = newChildren();
+				children[0] = new Node<>(node._minLat, node._minLon, midLat, midLon, depth);
+				children[1] = new Node<>(node._minLat, midLon, midLat, node._maxLon, depth);
+				children[2] = new Node<>(midLat, node._minLon, node._maxLat, midLon, depth);
+				children[3] = new Node<>(midLat, midLon, node._maxLat, node._maxLon, depth);
+				node._children = children;
+				final List<Entry<T>> entries = node._entries;
+				node._entries = null;
+				for (final Entry<T> e : entries) {
+					node.insert(e);
+				}
+			}
+		}
+
+		/**
+		 * @return an array for the 4 children, a generic array can't be created
+		 */
+		@SuppressWarnings({ "rawtypes", "unchecked" })
+		private static <T> Node<T>[] newChildren() {
+			return new Node[4];
+		}
+
+		private void remove(final Entry<T> entry) {
+			Node<T> node = this;
+			while (node._children != null) {
+				node = node.child(entry._lat, entry._lon);
+			}
+			node._entries.remove(entry);
+		}
+
+		private void query(final double minLat, final double minLon, final double maxLat, final double maxLon, final Consumer<Entry<T>> visitor) {
+			if (minLat > _maxLat || maxLat < _minLat || minLon > _maxLon || maxLon < _minLon) {
+				return;
+			}
+			if (_children != null) {
+				for (final Node<T> child : _children) {
+					child.query(minLat, minLon, maxLat, maxLon, visitor);
+				}
+				return;
+			}
+			for (final Entry<T> entry : _entries) {
+				if (entry._lat >= minLat && entry._lat <= maxLat && entry._lon >= minLon && entry._lon <= maxLon) {
+					visitor.accept(entry);
+				}
+			}
+		}
+
+		/**
+		 * Distance (degrees) from a point to the box of the node
+		 */
+		private double distance(final double lat, final double lon) {
+			final double dLat = Math.max(0, Math.max(_minLat - lat, lat - _maxLat));
+			final double dLon = lon >= _minLon && lon <= _maxLon ? 0 : Math.min(deltaLon(lon, _minLon), deltaLon(lon, _maxLon));
+			return Math.sqrt(dLat * dLat + dLon * dLon);
+		}
+
+		private void nearest(final Nearest<T> nearest) {
+			if (distance(nearest._lat, nearest._lon) > nearest._distance) {
+				return;
+			}
+			if (_children != null) {
+				// the child containing the point first, to shrink the search early
+				final Node<T> first = child(nearest._lat, nearest._lon);
+				first.nearest(nearest);
+				for (final Node<T> child : _children) {
+					if (child != first) {
+						child.nearest(nearest);
+					}
+				}
+				return;
+			}
+			for (final Entry<T> entry : _entries) {
+				final double dLat = entry._lat - nearest._lat;
+				final double dLon = deltaLon(entry._lon, nearest._lon);
+				final double d = Math.sqrt(dLat * dLat + dLon * dLon);
+				if (d <= nearest._distance) {
+					nearest._distance = d;
+					nearest._entry = entry;
+				}
+			}
+		}
+	}
+}
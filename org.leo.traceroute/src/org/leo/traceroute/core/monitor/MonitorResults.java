@@ -0,0 +1,254 @@
+/**
+ * Open Visual Trace Route
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.leo.traceroute.core.monitor;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.leo.traceroute.core.route.RouteRunner.Status;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * MonitorResults $Id$
+ * <pre>
+ * Rolling file of the results of the monitored traceroutes, one line of tab separated values by traceroute :
+ *   ts  destination  status  duration(ms)  hops  latency of the last hop(ms)  ip of the last hop
+ * When the file reaches its max size, it replaces the previous one (.1) and a new one is started, so at most twice
+ * the max size is kept. The two files are read at startup to restore the health of the targets.
+ * </pre>
+ * @author Leo Lewis
+ */
+public class MonitorResults {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(MonitorResults.class);
+
+	public static final long DEFAULT_MAX_BYTES = 1024 * 1024;
+
+	private final File _file;
+	private final File _previous;
+	private final long _maxBytes;
+	private Writer _writer;
+	private long _size;
+
+	/**
+	 * Constructor
+	 * @param file the file
+	 * @param maxBytes size of the file before it is rolled
+	 */
+	public MonitorResults(final File file, final long maxBytes) {
+		_file = file;
+		_previous = new File(file.getAbsolutePath() + ".1");
+		_maxBytes = maxBytes;
+	}
+
+	/**
+	 * Read the results of the previous runs, oldest first
+	 * @return the results, the invalid lines are ignored
+	 */
+	public synchronized List<Result> load() {
+		final List<Result> results = new ArrayList<>();
+		for (final File file : new File[] { _previous, _file }) {
+			if (!file.exists()) {
+				continue;
+			}
+			try (BufferedReader reader = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8)) {
+				String line;
+				while ((line = reader.readLine()) != null) {
+					final Result result = Result.parse(line);
+					if (result != null) {
+						results.add(result);
+					}
+				}
+			} catch (final IOException e) {
+				LOGGER.warn("Failed to read the monitor results {}", file, e);
+			}
+		}
+		return results;
+	}
+
+	/**
+	 * Append a result, roll the file if full
+	 * @param result the result
+	 */
+	public synchronized void append(final Result result) {
+		try {
+			if (_writer == null) {
+				_writer = Files.newBufferedWriter(_file.toPath(), StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+				_size = _file.length();
+			}
+			final String line = result.toLine() + "\n";
+			_writer.write(line);
+			_writer.flush();
+			_size += line.length();
+			if (_size >= _maxBytes) {
+				_writer.close();
+				_writer = null;
+				Files.move(_file.toPath(), _previous.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			}
+		} catch (final IOException e) {
+			LOGGER.warn("Failed to write the monitor result to {}", _file, e);
+			close();
+		}
+	}
+
+	/**
+	 * Close the file
+	 */
+	public synchronized void close() {
+		if (_writer != null) {
+			try {
+				_writer.close();
+			} catch (final IOException e) {
+				LOGGER.warn("Failed to close the monitor results {}", _file, e);
+			}
+			_writer = null;
+		}
+	}
+
+	/**
+	 * Result $Id$
+	 * <pre>
+	 * Result of a traceroute of a target.
+	 * </pre>
+	 * @author Leo Lewis
+	 */
+	public static class Result {
+
+		private final long _ts;
+		private final String _destination;
+		private final Status _status;
+		private final long _duration;
+		private final int _hops;
+		private final int _latency;
+		private final String _ip;
+
+		/**
+		 * Constructor
+		 * @param ts time of the start of the traceroute
+		 * @param destination the destination
+		 * @param status the status
+		 * @param duration duration (ms)
+		 * @param hops number of hops
+		 * @param latency latency of the last hop (ms), -1 if none
+		 * @param ip ip of the last hop, null if none
+		 */
+		public Result(final long ts, final String destination, final Status status, final long duration, final int hops, final int latency,
+				final String ip) {
+			_ts = ts;
+			_destination = destination;
+			_status = status;
+			_duration = duration;
+			_hops = hops;
+			_latency = latency;
+			_ip = ip;
+		}
+
+		String toLine() {
+			return _ts + "\t" + _destination + "\t" + _status.name().toLowerCase() + "\t" + _duration + "\t" + _hops + "\t" + _latency + "\t"
+					+ (_ip != null ? _ip : "-");
+		}
+
+		/**
+		 * @return the result, null if the line is invalid
+		 */
+		static Result parse(final String line) {
+			final String[] fields = line.split("\t");
+			if (fields.length != 7) {
+				return null;
+			}
+			try {
+				return new Result(Long.parseLong(fields[0]), fields[1], Status.valueOf(fields[2].toUpperCase()), Long.parseLong(fields[3]),
+						Integer.parseInt(fields[4]), Integer.parseInt(fields[5]), "-".equals(fields[6]) ? null : fields[6]);
+			} catch (final IllegalArgumentException e) {
+				return null;
+			}
+		}
+
+		/**
+		 * @return true if the destination was reached
+		 */
+		public boolean isSuccess() {
+			return _status == Status.DONE;
+		}
+
+		/**
+		 * Return the value of the field ts
+		 * @return the value of ts
+		 */
+		public long getTs() {
+			return _ts;
+		}
+
+		/**
+		 * Return the value of the field destination
+		 * @return the value of destination
+		 */
+		public String getDestination() {
+			return _destination;
+		}
+
+		/**
+		 * Return the value of the field status
+		 * @return the value of status
+		 */
+		public Status getStatus() {
+			return _status;
+		}
+
+		/**
+		 * Return the value of the field duration
+		 * @return the value of duration
+		 */
+		public long getDuration() {
+			return _duration;
+		}
+
+		/**
+		 * Return the value of the field hops
+		 * @return the value of hops
+		 */
+		public int getHops() {
+			return _hops;
+		}
+
+		/**
+		 * Return the latency of the last hop
+		 * @return the value of latency, -1 if none
+		 */
+		public int getLatency() {
+			return _latency;
+		}
+
+		/**
+		 * Return the ip of the last hop
+		 * @return the value of ip, null if none
+		 */
+		public String getIp() {
+			return _ip;
+		}
+	}
+}
@@ -0,0 +1,251 @@
+/**
+ * Open Visual Trace Route
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.leo.traceroute.core.monitor;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import org.leo.traceroute.core.ExecutionRuntime;
+import org.leo.traceroute.core.ServiceFactory;
+import org.leo.traceroute.core.export.JsonRecord;
+import org.leo.traceroute.core.monitor.MonitorResults.Result;
+import org.leo.traceroute.core.route.ITraceRoute;
+import org.leo.traceroute.core.route.RoutePoint;
+import org.leo.traceroute.core.route.RouteRunner;
+import org.leo.traceroute.core.route.RouteRunner.Status;
+import org.leo.traceroute.core.route.impl.OSTraceRoute;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * MonitorScheduler $Id$
+ * <pre>
+ * Traces the targets periodically, each at its own interval :
+ *  - a traceroute service runs one traceroute at a time, the scheduler has its own services (lanes), the targets
+ *    wait for a free one
+ *  - the runs are io tasks (virtual threads when available), waiting for a lane or for the probes costs nothing
+ *  - the probes of all the traceroutes are limited by a {@link ProbeRateLimiter}, a traceroute reserves the probes of its
+ *    max hops and gives back the ones it didn't send ({@link OSTraceRoute#getProbes(int, int)}), the probes sent at
+ *    the same time by a traceroute are within its reservation
+ *  - the first run of a target is at a random time within its interval, the next ones are shifted by a random
+ *    jitter of +/- {@link #JITTER} of the interval, so the targets don't start in bursts
+ *  - each result is appended to the {@link MonitorResults} and updates the {@link TargetHealth} of the target
+ * The records of the traceroutes and the health after each one are given to the output as JSON, like the headless
+ * mode does.
+ * </pre>
+ * @author Leo Lewis
+ */
+public class MonitorScheduler {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(MonitorScheduler.class);
+
+	/** Jitter of the interval */
+	public static final double JITTER = 0.1;
+
+	private final ServiceFactory _services;
+	private final List<MonitorTarget> _targets;
+	private final int _lanes;
+	private final ProbeRateLimiter _limiter;
+	private final MonitorResults _results;
+	private final Consumer<String> _output;
+	private final Map<String, TargetHealth> _health = new LinkedHashMap<>();
+	private final BlockingQueue<RouteRunner> _runners;
+	private final List<RouteRunner> _allRunners = new ArrayList<>();
+	private final List<ITraceRoute> _traceroutes = new ArrayList<>();
+	private final Map<MonitorTarget, ScheduledFuture<?>> _scheduled = new LinkedHashMap<>();
+
+	private long _timeOutMs = TimeUnit.SECONDS.toMillis(60);
+	private int _maxHops = 30;
+	private boolean _resolveHostname = true;
+	private boolean _ipV4 = true;
+	private volatile boolean _stopped;
+
+	/**
+	 * Constructor
+	 * @param services the services
+	 * @param targets the targets
+	 * @param lanes number of traceroutes at the same time
+	 * @param probesPerSecond max number of probes per second
+	 * @param results the file of the results
+	 * @param output receives the JSON records, one per line, may be null
+	 */
+	public MonitorScheduler(final ServiceFactory services, final List<MonitorTarget> targets, final int lanes, final double probesPerSecond,
+			final MonitorResults results, final Consumer<String> output) {
+		_services = services;
+		_targets = new ArrayList<>(targets);
+		_lanes = Math.max(1, lanes);
+		_limiter = new ProbeRateLimiter(probesPerSecond);
+		_results = results;
+		_output = output != null ? output : record -> {
+		};
+		_runners = new ArrayBlockingQueue<>(_lanes);
+		for (final MonitorTarget target : _targets) {
+			_health.putIfAbsent(target.getDestination(), new TargetHealth(target.getDestination()));
+		}
+	}
+
+	/**
+	 * Restore the health from the previous results, create the lanes and schedule the targets
+	 * @throws Exception if the traceroute services can't be started
+	 */
+	public synchronized void start() throws Exception {
+		for (final Result result : _results.load()) {
+			final TargetHealth health = _health.get(result.getDestination());
+			if (health != null) {
+				health.add(result);
+			}
+		}
+		for (int i = 0; i < _lanes; i++) {
+			final ITraceRoute traceroute = newTraceRoute();
+			_traceroutes.add(traceroute);
+			final RouteRunner runner = new RouteRunner(traceroute, _output);
+			_allRunners.add(runner);
+			_runners.add(runner);
+		}
+		for (final MonitorTarget target : _targets) {
+			// spread within the first interval
+			schedule(target, ThreadLocalRandom.current().nextLong(target.getIntervalMs()));
+		}
+		LOGGER.info("Monitoring {} target(s) with {} lane(s)", _targets.size(), _lanes);
+	}
+
+	/**
+	 * @return a new traceroute service for a lane
+	 * @throws Exception if the service can't be started
+	 */
+	protected ITraceRoute newTraceRoute() throws Exception {
+		final OSTraceRoute traceroute = new OSTraceRoute();
+		traceroute.init(_services);
+		return traceroute;
+	}
+
+	private synchronized void schedule(final MonitorTarget target, final long delayMs) {
+		if (_stopped) {
+			return;
+		}
+		final long start = System.currentTimeMillis() + delayMs;
+		final ExecutionRuntime runtime = _services.getRuntime();
+		_scheduled.put(target, runtime.schedule(() -> runtime.io().execute(() -> run(target, start)), delayMs, TimeUnit.MILLISECONDS));
+	}
+
+	/**
+	 * Trace the target, schedule the next run
+	 * @param target the target
+	 * @param plannedStart time the run was planned at
+	 */
+	private void run(final MonitorTarget target, final long plannedStart) {
+		RouteRunner runner = null;
+		try {
+			runner = _runners.take();
+			if (_stopped) {
+				return;
+			}
+			final int maxHops = _maxHops;
+			final int reserved = OSTraceRoute.getProbes(maxHops, maxHops);
+			_limiter.acquire(reserved);
+			final long ts = System.currentTimeMillis();
+			final Status status;
+			try {
+				status = runner.trace(target.getDestination(), _resolveHostname, _timeOutMs, _ipV4, maxHops);
+			} finally {
+				// give back the probes not sent, even if the trace failed
+				_limiter.release(reserved - OSTraceRoute.getProbes(Math.min(runner.getHops(), maxHops), maxHops));
+			}
+			final RoutePoint last = runner.getLastPoint();
+			final long duration = runner.getDuration() > 0 ? runner.getDuration() : System.currentTimeMillis() - ts;
+			final Result result = new Result(ts, target.getDestination(), status, duration, runner.getHops(),
+					last != null && !last.isUnknown() ? last.getLatency() : -1, last != null && !last.isUnknown() ? last.getIp() : null);
+			if (status != Status.CANCELLED || !_stopped) {
+				_results.append(result);
+				final TargetHealth health = _health.get(target.getDestination());
+				health.add(result);
+				_output.accept(JsonRecord.of(json -> {
+					json.writeStringField("type", "health");
+					json.writeNumberField("ts", System.currentTimeMillis());
+					health.write(json);
+				}));
+			}
+		} catch (final InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return;
+		} catch (final RuntimeException e) {
+			LOGGER.error("Monitoring of {} failed", target.getDestination(), e);
+		} finally {
+			if (runner != null) {
+				_runners.offer(runner);
+			}
+		}
+		// fixed rate with jitter, a late run starts the next one now
+		final long interval = target.getIntervalMs();
+		final long jitter = (long) (interval * JITTER);
+		final long next = plannedStart + interval + (jitter > 0 ? ThreadLocalRandom.current().nextLong(-jitter, jitter + 1) : 0);
+		schedule(target, Math.max(0, next - System.currentTimeMillis()));
+	}
+
+	/**
+	 * Stop the scheduling, cancel the traceroutes in progress
+	 */
+	public void stop() {
+		final Collection<ScheduledFuture<?>> scheduled;
+		synchronized (this) {
+			_stopped = true;
+			scheduled = new ArrayList<>(_scheduled.values());
+			_scheduled.clear();
+		}
+		scheduled.forEach(future -> future.cancel(false));
+		for (final RouteRunner runner : _allRunners) {
+			runner.cancel();
+			runner.dispose();
+		}
+		for (final ITraceRoute traceroute : _traceroutes) {
+			traceroute.dispose();
+		}
+		_results.close();
+	}
+
+	/**
+	 * Set the options of the traceroutes
+	 * @param timeOutMs time out (ms), 0 for none
+	 * @param maxHops max number of hops
+	 * @param resolveHostname if resolve the host names
+	 * @param ipV4 true to use ipv4, false for ipv6
+	 */
+	public void setOptions(final long timeOutMs, final int maxHops, final boolean resolveHostname, final boolean ipV4) {
+		_timeOutMs = timeOutMs;
+		_maxHops = maxHops;
+		_resolveHostname = resolveHostname;
+		_ipV4 = ipV4;
+	}
+
+	/**
+	 * @return the health of the targets, in their order
+	 */
+	public Collection<TargetHealth> getHealth() {
+		return Collections.unmodifiableCollection(_health.values());
+	}
+}
@@ -0,0 +1,85 @@
+/**
+ * Open Visual Trace Route
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.leo.traceroute.core.monitor;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * MonitorTarget $Id$
+ * <pre>
+ * Destination traced periodically by the {@link MonitorScheduler}.
+ * </pre>
+ * @author Leo Lewis
+ */
+public class MonitorTarget {
+
+	private final String _destination;
+	private final long _intervalMs;
+
+	/**
+	 * Constructor
+	 * @param destination the destination
+	 * @param intervalMs interval between two traceroutes (ms)
+	 */
+	public MonitorTarget(final String destination, final long intervalMs) {
+		if (intervalMs <= 0) {
+			throw new IllegalArgumentException("Invalid interval of " + destination + " : " + intervalMs);
+		}
+		_destination = destination;
+		_intervalMs = intervalMs;
+	}
+
+	/**
+	 * Parse a target : the destination and optionally its interval in seconds, separated by spaces
+	 * @param line the line
+	 * @param defaultIntervalMs interval if none given (ms)
+	 * @return the target
+	 * @throws IllegalArgumentException if invalid
+	 */
+	public static MonitorTarget parse(final String line, final long defaultIntervalMs) {
+		final String[] fields = line.trim().split("\\s+");
+		if (fields.length > 2 || fields[0].isEmpty()) {
+			throw new IllegalArgumentException("Invalid target " + line);
+		}
+		long intervalMs = defaultIntervalMs;
+		if (fields.length == 2) {
+			try {
+				intervalMs = TimeUnit.SECONDS.toMillis(Long.parseLong(fields[1]));
+			} catch (final NumberFormatException e) {
+				throw new IllegalArgumentException("Invalid interval of " + fields[0] + " : " + fields[1]);
+			}
+		}
+		return new MonitorTarget(fields[0], intervalMs);
+	}
+
+	/**
+	 * Return the value of the field destination
+	 * @return the value of destination
+	 */
+	public String getDestination() {
+		return _destination;
+	}
+
+	/**
+	 * Return the value of the field intervalMs
+	 * @return the value of intervalMs
+	 */
+	public long getIntervalMs() {
+		return _intervalMs;
+	}
+}
@@ -0,0 +1,91 @@
+/**
+ * Open Visual Trace Route
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.leo.traceroute.core.monitor;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * ProbeRateLimiter $Id$
+ * <pre>
+ * Token bucket limiting the number of probes sent per second, all the traceroutes together.
+ * A traceroute reserves its max number of probes before starting, waiting for them if needed, and gives back
+ * the ones it did not send. The reservation is taken under the lock, the wait is done outside, so the callers
+ * are served in order without holding each other.
+ * A burst of one second of probes is allowed.
+ * </pre>
+ * @author Leo Lewis
+ */
+public class ProbeRateLimiter {
+
+	private final double _permitsPerNano;
+	private final double _maxPermits;
+	/** Permits available, negative when reserved ahead */
+	private double _permits;
+	private long _lastNanos = System.nanoTime();
+
+	/**
+	 * Constructor
+	 * @param probesPerSecond the rate
+	 */
+	public ProbeRateLimiter(final double probesPerSecond) {
+		if (probesPerSecond <= 0) {
+			throw new IllegalArgumentException("Invalid rate " + probesPerSecond);
+		}
+		_permitsPerNano = probesPerSecond / TimeUnit.SECONDS.toNanos(1);
+		_maxPermits = probesPerSecond;
+		_permits = _maxPermits;
+	}
+
+	/**
+	 * Reserve the probes, wait until they are available
+	 * @param probes number of probes
+	 * @throws InterruptedException
+	 */
+	public void acquire(final int probes) throws InterruptedException {
+		final long waitNanos = reserve(probes);
+		if (waitNanos > 0) {
+			TimeUnit.NANOSECONDS.sleep(waitNanos);
+		}
+	}
+
+	/**
+	 * Give back probes reserved but not sent
+	 * @param probes number of probes
+	 */
+	public synchronized void release(final int probes) {
+		if (probes > 0) {
+			refill();
+			_permits = Math.min(_maxPermits, _permits + probes);
+		}
+	}
+
+	/**
+	 * @return the wait before the reserved probes are available (ns)
+	 */
+	synchronized long reserve(final int probes) {
+		refill();
+		_permits -= probes;
+		return _permits >= 0 ? 0 : (long) (-_permits / _permitsPerNano);
+	}
+
+	private void refill() {
+		final long now = System.nanoTime();
+		_permits = Math.min(_maxPermits, _permits + (now - _lastNanos) * _permitsPerNano);
+		_lastNanos = now;
+	}
+}
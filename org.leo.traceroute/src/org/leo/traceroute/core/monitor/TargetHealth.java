@@ -0,0 +1,146 @@
+/**
+ * Open Visual Trace Route
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.leo.traceroute.core.monitor;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+import org.leo.traceroute.core.monitor.MonitorResults.Result;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+
+/**
+ * TargetHealth $Id$
+ * <pre>
+ * Health of a monitored target, from its last results :
+ *  - UNKNOWN until the first result
+ *  - DOWN after {@link #DOWN_AFTER} failures in a row
+ *  - DEGRADED if some of the last results failed, or the latency is over twice its average
+ *  - UP otherwise
+ * </pre>
+ * @author Leo Lewis
+ */
+public class TargetHealth {
+
+	public enum State {
+		UNKNOWN,
+		UP,
+		DEGRADED,
+		DOWN
+	}
+
+	/** Number of results kept */
+	public static final int WINDOW = 20;
+	/** Failures in a row for a target to be down */
+	public static final int DOWN_AFTER = 3;
+
+	private final String _destination;
+	private final Deque<Result> _window = new ArrayDeque<>(WINDOW);
+	private int _consecutiveFailures;
+
+	/**
+	 * Constructor
+	 * @param destination the destination
+	 */
+	public TargetHealth(final String destination) {
+		_destination = destination;
+	}
+
+	/**
+	 * Add a result
+	 * @param result the result
+	 */
+	public synchronized void add(final Result result) {
+		if (_window.size() == WINDOW) {
+			_window.removeFirst();
+		}
+		_window.addLast(result);
+		_consecutiveFailures = result.isSuccess() ? 0 : _consecutiveFailures + 1;
+	}
+
+	/**
+	 * @return the state
+	 */
+	public synchronized State getState() {
+		if (_window.isEmpty()) {
+			return State.UNKNOWN;
+		}
+		if (_consecutiveFailures >= DOWN_AFTER) {
+			return State.DOWN;
+		}
+		if (_consecutiveFailures > 0 || getSuccessRate() < 1) {
+			return State.DEGRADED;
+		}
+		final double average = getAverageLatency();
+		return average > 0 && _window.getLast().getLatency() > 2 * average ? State.DEGRADED : State.UP;
+	}
+
+	/**
+	 * @return the ratio of the last results that reached the destination, 0 if none
+	 */
+	public synchronized double getSuccessRate() {
+		if (_window.isEmpty()) {
+			return 0;
+		}
+		return (double) _window.stream().filter(Result::isSuccess).count() / _window.size();
+	}
+
+	/**
+	 * @return the average latency of the destination in the last results that reached it (ms), -1 if none
+	 */
+	public synchronized double getAverageLatency() {
+		return _window.stream().filter(Result::isSuccess).filter(r -> r.getLatency() >= 0).mapToInt(Result::getLatency).average().orElse(-1);
+	}
+
+	/**
+	 * @return the last result, null if none
+	 */
+	public synchronized Result getLast() {
+		return _window.peekLast();
+	}
+
+	/**
+	 * Return the value of the field destination
+	 * @return the value of destination
+	 */
+	public String getDestination() {
+		return _destination;
+	}
+
+	/**
+	 * Write the health as JSON fields
+	 * @param json the generator
+	 * @throws IOException
+	 */
+	public synchronized void write(final JsonGenerator json) throws IOException {
+		json.writeStringField("dest", _destination);
+		json.writeStringField("state", getState().name().toLowerCase());
+		json.writeNumberField("successRate", getSuccessRate());
+		json.writeNumberField("averageLatency", getAverageLatency());
+		json.writeNumberField("consecutiveFailures", _consecutiveFailures);
+		json.writeNumberField("results", _window.size());
+		final Result last = _window.peekLast();
+		if (last != null) {
+			json.writeNumberField("lastTs", last.getTs());
+			json.writeStringField("lastStatus", last.getStatus().name().toLowerCase());
+			json.writeNumberField("lastLatency", last.getLatency());
+			json.writeNumberField("lastHops", last.getHops());
+		}
+	}
+}
@@ -0,0 +1,130 @@
+/**
+ * Open Visual Trace Route
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.leo.traceroute.core.network;
+
+import java.net.NetworkInterface;
+import java.net.SocketException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.lang3.tuple.Pair;
+import org.leo.traceroute.core.AbstractObject;
+import org.leo.traceroute.core.ServiceFactory;
+import org.leo.traceroute.core.ServiceFactory.Mode;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * LinuxNetworkService $Id$
+ * <pre>
+ * Network devices usable by the AF_PACKET sniffer.
+ * Embedded traceroute is not supported, the OS traceroute is used instead.
+ * </pre>
+ * @author Leo Lewis
+ */
+public class LinuxNetworkService extends AbstractObject<INetworkInterfaceListener<?>> implements INetworkService<NetworkInterface> {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(LinuxNetworkService.class);
+
+	private final Map<Mode, List<NetworkInterface>> _devices = new HashMap<>();
+
+	private final Map<Mode, Integer> _index = new HashMap<>();
+
+	@Override
+	public void init(final ServiceFactory services) throws Exception {
+		super.init(services);
+		try {
+			for (final NetworkInterface net : Collections.list(NetworkInterface.getNetworkInterfaces())) {
+				if (net.isUp()) {
+					_devices.computeIfAbsent(Mode.SNIFFER, m -> new ArrayList<>()).add(net);
+					LOGGER.info("Device {}({}) usable for Sniffer", net.getName(), net.getIndex());
+				}
+			}
+		} catch (final SocketException e) {
+			LOGGER.warn("Cannot list the network devices", e);
+		}
+	}
+
+	@Override
+	public int getCurrentNetworkInterfaceIndex(final Mode mode) {
+		return _index.getOrDefault(mode, 0);
+	}
+
+	/**
+	 * List of network devices
+	 *
+	 * @return the list
+	 */
+	@Override
+	public List<Pair<Integer, String>> getNetworkDevices(final Mode mode) {
+		final List<NetworkInterface> devices = getDevices(mode);
+		final List<Pair<Integer, String>> list = new ArrayList<>();
+		for (int i = 0; i < devices.size(); i++) {
+			final NetworkInterface net = devices.get(i);
+			final String text = net.getDisplayName() == null || net.getDisplayName().equals(net.getName()) ? net.getName()
+					: (net.getDisplayName() + " (" + net.getName() + ")");
+			list.add(Pair.of(i, text));
+		}
+		return list;
+	}
+
+	/**
+	 * Set the current network device
+	 */
+	@Override
+	public void setCurrentNetworkDevice(final Mode mode, final int deviceIndex) {
+		final List<NetworkInterface> devices = getDevices(mode);
+		if (!devices.isEmpty()) {
+			_index.put(mode, Math.min(Math.max(0, deviceIndex), devices.size() - 1));
+			notifyInterface(mode);
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	@Override
+	public void notifyInterface(final Mode mode) {
+		final List<NetworkInterface> devices = getDevices(mode);
+		if (!devices.isEmpty()) {
+			final NetworkInterface net = devices.get(getCurrentNetworkInterfaceIndex(mode));
+			byte[] mac = null;
+			try {
+				mac = net.getHardwareAddress();
+			} catch (final SocketException e) {
+				LOGGER.warn("Cannot get the hardware address of " + net.getName(), e);
+			}
+			final byte[] fmac = mac;
+			notifyListeners(listener -> ((INetworkInterfaceListener<NetworkInterface>) listener).notifyNewNetworkInterface(net, mode, fmac));
+		}
+	}
+
+	@Override
+	public String getCurrentNetworkInterfaceName(final Mode mode) {
+		final List<NetworkInterface> devices = getDevices(mode);
+		if (!devices.isEmpty()) {
+			return devices.get(getCurrentNetworkInterfaceIndex(mode)).getName();
+		}
+		return null;
+	}
+
+	private List<NetworkInterface> getDevices(final Mode mode) {
+		return _devices.getOrDefault(mode, Collections.emptyList());
+	}
+}
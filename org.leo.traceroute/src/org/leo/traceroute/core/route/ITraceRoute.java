@@ -17,9 +17,13 @@
  */
 package org.leo.traceroute.core.route;
 
+import java.io.IOException;
+import java.io.Writer;
 import java.util.List;
 
 import org.leo.traceroute.core.IComponent;
+import org.leo.traceroute.core.export.TableExporter.Format;
+import org.leo.traceroute.core.export.TableExporter.IProgressListener;
 import org.leo.traceroute.ui.task.CancelMonitor;
 
 /**
@@ -50,6 +54,13 @@ public interface ITraceRoute extends IComponent {
 	 */
 	List<RoutePoint> getRoute();
 
+	/**
+	 * The destination of the current route, as traced (without protocol and path)
+	 *
+	 * @return the destination, null if no route was computed
+	 */
+	String getDestination();
+
 	/**
 	 * Add a listener
 	 *
@@ -89,6 +100,15 @@ public interface ITraceRoute extends IComponent {
 	 */
 	String toText();
 
+	/**
+	 * Export the route, row by row
+	 * @param format the format
+	 * @param writer the writer
+	 * @param listener progress listener, may be null
+	 * @throws IOException
+	 */
+	void export(Format format, Writer writer, IProgressListener listener) throws IOException;
+
 	/**
 	 * Resend notification of points added to the route to the listeners
 	 */
@@ -33,8 +33,9 @@ public class RoutePoint extends GeoPoint {
 	/** Elevation  */
 	private double _elevation;
 
-	/** Color  */
-	private Color _color = Color.RED.brighter();
+	/** Color, from the latency when first asked (the headless mode does not load AWT) */
+	private Color _color;
+	private boolean _hasLatency;
 
 	/** Latency */
 	private int _latency;
@@ -71,7 +72,8 @@ public class RoutePoint extends GeoPoint {
 		_latency = latency;
 		// elevation proportional to the latency
 		setElevation(latency);
-		setColor(ColorUtil.INSTANCE.getColorForLatency(latency));
+		_hasLatency = true;
+		_color = null;
 	}
 
 	/**
@@ -131,6 +133,9 @@ public class RoutePoint extends GeoPoint {
 	 * @return the value of color
 	 */
 	public Color getColor() {
+		if (_color == null) {
+			_color = _hasLatency ? ColorUtil.INSTANCE.getColorForLatency(_latency) : Color.RED.brighter();
+		}
 		return _color;
 	}
 
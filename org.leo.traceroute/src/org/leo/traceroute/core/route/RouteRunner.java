@@ -0,0 +1,271 @@
+/**
+ * Open Visual Trace Route
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.leo.traceroute.core.route;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Consumer;
+
+import org.leo.traceroute.core.export.JsonRecord;
+import org.leo.traceroute.core.export.JsonRecord.IFields;
+import org.leo.traceroute.ui.task.CancelMonitor;
+
+/**
+ * RouteRunner $Id$
+ * <pre>
+ * Traces the destinations one after the other, and gives each event as a JSON record (one line) :
+ *  - {"type":"start","ts":...,"dest":"..."}
+ *  - {"type":"hop","ts":...,"dest":"...","hop":1,"ip":"...","host":"...","latency":12,...}
+ *  - {"type":"end","ts":...,"dest":"...","status":"done","duration":...,"lengthKm":...,"hops":...}
+ * The status of the end record is one of {@link Status}.
+ * Each trace is a run : the service runs one traceroute at a time, the trace waits for the previous one
+ * to end, so the events are only taken once the service notified the new route of the run, the late
+ * events of a previous run given up after its time out are ignored.
+ * </pre>
+ * @author Leo Lewis
+ */
+public class RouteRunner implements IRouteListener {
+
+	/**
+	 * Status of a traceroute
+	 */
+	public enum Status {
+		DONE,
+		TIMEOUT,
+		MAX_HOPS,
+		CANCELLED,
+		ERROR
+	}
+
+	/** Delay given to the traceroute after its own time out before giving up */
+	private static final long GRACE_MS = TimeUnit.SECONDS.toMillis(30);
+
+	private final ITraceRoute _traceroute;
+	private final Consumer<String> _output;
+
+	/** Run of the last trace */
+	private volatile long _run;
+	/** Run the service notified the new route of */
+	private volatile long _startedRun;
+	/** Thread of the last trace, the service notifies it of the errors preventing the start */
+	private volatile Thread _caller;
+	/** Traceroute in progress */
+	private volatile String _destination;
+	private volatile CompletableFuture<Status> _status;
+	private volatile CancelMonitor _monitor;
+	private volatile String _error;
+	private volatile long _duration;
+	private volatile long _lengthInKm;
+	private volatile int _hops;
+	private volatile RoutePoint _last;
+
+	/**
+	 * Constructor
+	 * @param traceroute the traceroute service
+	 * @param output receives the records
+	 */
+	public RouteRunner(final ITraceRoute traceroute, final Consumer<String> output) {
+		_traceroute = traceroute;
+		_output = output;
+		_traceroute.addListener(this);
+	}
+
+	/**
+	 * Trace the route to a destination, wait for the end
+	 * @param dest the destination
+	 * @param resolveHostname if resolve the host names
+	 * @param timeOutMs time out (ms), 0 for none
+	 * @param ipV4 true to use ipv4, false for ipv6
+	 * @param maxHops max number of hops
+	 * @return the status
+	 * @throws InterruptedException
+	 */
+	public synchronized Status trace(final String dest, final boolean resolveHostname, final long timeOutMs, final boolean ipV4, final int maxHops)
+			throws InterruptedException {
+		_destination = dest;
+		_error = null;
+		_duration = 0;
+		_lengthInKm = 0;
+		_hops = 0;
+		_last = null;
+		_monitor = new CancelMonitor();
+		_status = new CompletableFuture<>();
+		_caller = Thread.currentThread();
+		_run++;
+		final long start = System.currentTimeMillis();
+		emit(json -> {
+			json.writeStringField("type", "start");
+			json.writeNumberField("ts", start);
+			json.writeStringField("dest", dest);
+		});
+		_traceroute.compute(dest, _monitor, resolveHostname, timeOutMs, ipV4, maxHops);
+		Status status;
+		try {
+			status = timeOutMs > 0 ? _status.get(timeOutMs + GRACE_MS, TimeUnit.MILLISECONDS) : _status.get();
+		} catch (final TimeoutException e) {
+			_monitor.setCanceled(true);
+			status = Status.TIMEOUT;
+		} catch (final ExecutionException e) {
+			status = Status.ERROR;
+		}
+		final Status end = status;
+		final long duration = _duration > 0 ? _duration : System.currentTimeMillis() - start;
+		emit(json -> {
+			json.writeStringField("type", "end");
+			json.writeNumberField("ts", System.currentTimeMillis());
+			json.writeStringField("dest", dest);
+			json.writeStringField("status", end.name().toLowerCase());
+			json.writeNumberField("duration", duration);
+			json.writeNumberField("lengthKm", _lengthInKm);
+			json.writeNumberField("hops", _hops);
+			if (_error != null) {
+				json.writeStringField("error", _error);
+			}
+		});
+		return end;
+	}
+
+	/**
+	 * Cancel the traceroute in progress
+	 */
+	public void cancel() {
+		final CancelMonitor monitor = _monitor;
+		if (monitor != null) {
+			monitor.setCanceled(true);
+		}
+		final CompletableFuture<Status> status = _status;
+		if (status != null) {
+			status.complete(Status.CANCELLED);
+		}
+	}
+
+	/**
+	 * @return the number of hops of the last traceroute
+	 */
+	public int getHops() {
+		return _hops;
+	}
+
+	/**
+	 * @return the duration of the last traceroute (ms), 0 if not done
+	 */
+	public long getDuration() {
+		return _duration;
+	}
+
+	/**
+	 * @return the last hop of the last traceroute, null if none
+	 */
+	public RoutePoint getLastPoint() {
+		return _last;
+	}
+
+	/**
+	 * Stop to listen to the traceroute
+	 */
+	public void dispose() {
+		_traceroute.removeListener(this);
+	}
+
+	@Override
+	public void newRoute(final boolean dnsLookup) {
+		final CompletableFuture<Status> status = _status;
+		if (status != null && !status.isDone()) {
+			// the service started the run of the trace in progress
+			_startedRun = _run;
+		}
+	}
+
+	@Override
+	public void routePointAdded(final RoutePoint point) {
+		if (!isTracing()) {
+			// traceroute started by someone else (API)
+			return;
+		}
+		_hops++;
+		_last = point;
+		final String dest = _destination;
+		emit(json -> {
+			json.writeStringField("type", "hop");
+			json.writeNumberField("ts", System.currentTimeMillis());
+			json.writeStringField("dest", dest);
+			JsonRecord.writeRoutePoint(json, point);
+		});
+	}
+
+	@Override
+	public void routeDone(final long tracerouteTime, final long lengthInKm) {
+		if (!isTracing()) {
+			return;
+		}
+		_duration = tracerouteTime;
+		_lengthInKm = lengthInKm;
+		complete(Status.DONE);
+	}
+
+	@Override
+	public void routeTimeout() {
+		complete(Status.TIMEOUT);
+	}
+
+	@Override
+	public void maxHops() {
+		complete(Status.MAX_HOPS);
+	}
+
+	@Override
+	public void routeCancelled() {
+		complete(Status.CANCELLED);
+	}
+
+	@Override
+	public void error(final Exception exception, final Object origin) {
+		final CompletableFuture<Status> status = _status;
+		if (status != null && (isTracing() || Thread.currentThread() == _caller)) {
+			_error = exception.getMessage() != null ? exception.getMessage() : exception.getClass().getSimpleName();
+			status.complete(Status.ERROR);
+		}
+	}
+
+	@Override
+	public void focusRoute(final RoutePoint point, final boolean isTracing, final boolean animation) {
+	}
+
+	/**
+	 * @return true if the event belongs to the run of the trace in progress
+	 */
+	private boolean isTracing() {
+		final CompletableFuture<Status> status = _status;
+		return status != null && !status.isDone() && _startedRun == _run;
+	}
+
+	private void complete(final Status status) {
+		if (isTracing()) {
+			_status.complete(status);
+		}
+	}
+
+	/**
+	 * Write a record
+	 */
+	private void emit(final IFields fields) {
+		_output.accept(JsonRecord.of(fields));
+	}
+}
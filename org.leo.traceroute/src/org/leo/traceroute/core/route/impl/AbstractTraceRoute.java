@@ -19,14 +19,15 @@ package org.leo.traceroute.core.route.impl;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.StringWriter;
+import java.io.Writer;
 import java.lang.reflect.InvocationTargetException;
 import java.net.InetAddress;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Timer;
-import java.util.TimerTask;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
@@ -39,6 +40,9 @@ import org.apache.commons.lang3.tuple.Pair;
 import org.leo.traceroute.core.AbstractObject;
 import org.leo.traceroute.core.ServiceFactory;
 import org.leo.traceroute.core.ServiceFactory.Mode;
+import org.leo.traceroute.core.export.TableExporter;
+import org.leo.traceroute.core.export.TableExporter.Format;
+import org.leo.traceroute.core.export.TableExporter.IProgressListener;
 import org.leo.traceroute.core.network.DNSLookupService;
 import org.leo.traceroute.core.network.INetworkInterfaceListener;
 import org.leo.traceroute.core.route.IRouteListener;
@@ -82,6 +86,9 @@ public abstract class AbstractTraceRoute<T> extends AbstractObject<IRouteListene
 	/** Focused point */
 	protected RoutePoint _focusedPoint;
 
+	/** Destination of the current route */
+	protected volatile String _destination;
+
 	/** Selected Network device */
 	protected T _device;
 
@@ -120,7 +127,8 @@ public abstract class AbstractTraceRoute<T> extends AbstractObject<IRouteListene
 	}
 
 	@Override
-	public void init(final ServiceFactory services) throws IOException {
+	public void init(final ServiceFactory services) throws Exception {
+		super.init(services);
 		_services = services;
 		_notifyThread.setDaemon(true);
 		_notifyThread.start();
@@ -161,35 +169,27 @@ public abstract class AbstractTraceRoute<T> extends AbstractObject<IRouteListene
 			}
 			formatedDest = formatedDest.trim();
 			final String fdest = formatedDest;
+			_destination = fdest;
 			// launch the tracing in a thread
 			final AtomicBoolean timedOut = new AtomicBoolean();
-			_threadPool.execute(() -> {
+			_executor.execute(() -> {
 				try {
 					// notify new route
 					notifyListeners((listener) -> listener.newRoute(resolveHostname));
 					// compute route
 					final long time = System.currentTimeMillis();
 					// check for time out if required
-					Timer timer = null;
+					ScheduledFuture<?> timer = null;
 					if (timeOutMs > 0) {
-						final long startTime = System.currentTimeMillis();
-						timer = new Timer(true);
-						timer.scheduleAtFixedRate(new TimerTask() {
-							@Override
-							public void run() {
-								// check if timed out
-								if (System.currentTimeMillis() - startTime > timeOutMs) {
-									timedOut.set(true);
-									monitor.setCanceled(true);
-									cancel();
-								}
-							}
-						}, 0, 100);
+						timer = _runtime.schedule(() -> {
+							timedOut.set(true);
+							monitor.setCanceled(true);
+						}, timeOutMs, TimeUnit.MILLISECONDS);
 					}
 					LOGGER.info("Starting traceroute to {} with maxhops={} and timeout={}ms", fdest, maxHops, timeOutMs);
 					computeRoute(fdest, monitor, resolveHostname, ipV4, maxHops);
 					if (timer != null) {
-						timer.cancel();
+						timer.cancel(false);
 					}
 					// if timed out, nobody to notify (already done)
 					if (!timedOut.get()) {
@@ -198,19 +198,23 @@ public abstract class AbstractTraceRoute<T> extends AbstractObject<IRouteListene
 							notifyListeners(listener -> listener.routeCancelled());
 						} else {
 							// notify done
-							_tracerouteTime = System.currentTimeMillis() - time;
+							final long tracerouteTime = System.currentTimeMillis() - time;
+							_tracerouteTime = tracerouteTime;
 							// wait for pending notifications
 							while (_notified.get() < _route.size()) {
 								Thread.sleep(100);
 							}
-							notifyListeners(listener -> listener.routeDone(_tracerouteTime, _lengthInKm.get()));
+							final long lengthInKm = _lengthInKm.get();
+							notifyListeners(listener -> listener.routeDone(tracerouteTime, lengthInKm));
 						}
 					} else {
 						// notify listeners
 						notifyListeners(listener -> listener.routeTimeout());
 					}
 					// if the traceroute didn't failed, add it to the history
-					_services.getAutocomplete().addToHistory(dest);
+					if (_services.getAutocomplete() != null) {
+						_services.getAutocomplete().addToHistory(dest);
+					}
 					LOGGER.info("Traceroute to {} completed.", fdest);
 				} catch (final Exception e) {
 					if (!monitor.isCanceled() && !timedOut.get()) {
@@ -308,11 +312,15 @@ public abstract class AbstractTraceRoute<T> extends AbstractObject<IRouteListene
 		return _route;
 	}
 
+	@Override
+	public String getDestination() {
+		return _destination;
+	}
+
 	@Override
 	public void dispose() {
 		super.dispose();
 		_route.clear();
-		_threadPool.shutdown();
 		_notifyThread.interrupt();
 	}
 
@@ -324,45 +332,35 @@ public abstract class AbstractTraceRoute<T> extends AbstractObject<IRouteListene
 	@Override
 	public void focus(final RoutePoint point, final boolean animation) {
 		_focusedPoint = point;
-		notifyListeners(listener -> listener.focusRoute(point, false, animation));
+		notifyListeners(FOCUS_EVENT, listener -> listener.focusRoute(point, false, animation));
 	}
 
 	@Override
 	public String toCSV() {
-		return toString(", ");
+		return toString(Format.CSV);
 	}
 
 	@Override
 	public String toText() {
-		return toString("\t");
+		return toString(Format.TEXT);
 	}
 
-	public String toString(final String separator) {
-		final StringBuilder builder = new StringBuilder();
-		final int colSize = Column.values().length;
-		for (int i = 0; i < colSize; i++) {
-			final Column col = Column.values()[i];
-			if (col.isExport()) {
-				builder.append(col.getLabel());
-				if (i != colSize - 1) {
-					builder.append(separator);
-				}
-			}
-		}
-		builder.append("\n");
-		for (int row = 0; row < size(); row++) {
-			for (int col = 0; col < colSize; col++) {
-				final Column column = Column.values()[col];
-				if (column.isExport()) {
-					builder.append(column.getValue(_route.get(row)));
-					if (col != colSize - 1) {
-						builder.append(separator);
-					}
-				}
-			}
-			builder.append("\n");
+	/**
+	 * @see org.leo.traceroute.core.route.ITraceRoute#export(org.leo.traceroute.core.export.TableExporter.Format, java.io.Writer, org.leo.traceroute.core.export.TableExporter.IProgressListener)
+	 */
+	@Override
+	public void export(final Format format, final Writer writer, final IProgressListener listener) throws IOException {
+		new TableExporter<RoutePoint>(Column.values()).export(format, new ArrayList<>(_route), writer, listener);
+	}
+
+	private String toString(final Format format) {
+		final StringWriter writer = new StringWriter();
+		try {
+			export(format, writer, null);
+		} catch (final IOException e) {
+			throw new IllegalStateException(e);
 		}
-		return builder.toString();
+		return writer.toString();
 	}
 
 	@Override
@@ -26,6 +26,28 @@ public class OSTraceRoute extends AbstractTraceRoute<INetworkInterfaceListener<?
 
     private static final Logger LOGGER = LoggerFactory.getLogger(OSTraceRoute.class);
 
+    /** Probes sent by hop by tracert */
+    private static final int WINDOWS_PROBES_PER_HOP = 3;
+    /** Probes sent at the same time by the Linux traceroute (-N) */
+    private static final int LINUX_SIMULTANEOUS_PROBES = 16;
+
+    /**
+     * Number of probes sent by the command for a route : tracert sends 3 probes by hop, traceroute -q 1 one,
+     * the Linux traceroute sends up to 16 of them at the same time, so also past the destination
+     * @param hops number of hops of the route
+     * @param maxHops max number of hops
+     * @return the number of probes
+     */
+    public static int getProbes(final int hops, final int maxHops) {
+        if (Env.INSTANCE.getOs() == OS.win) {
+            return WINDOWS_PROBES_PER_HOP * hops;
+        }
+        if (Env.INSTANCE.getOs() == OS.linux && hops > 0) {
+            return Math.min(maxHops, hops + LINUX_SIMULTANEOUS_PROBES - 1);
+        }
+        return hops;
+    }
+
     /**
      * Compute the route using OS command
      * @param formatedDest
@@ -17,9 +17,6 @@
  */
 package org.leo.traceroute.core.sniffer;
 
-import java.text.SimpleDateFormat;
-import java.util.Date;
-
 import org.leo.traceroute.core.geo.GeoPoint;
 
 /**
@@ -44,19 +41,14 @@ public abstract class AbstractPacketPoint extends GeoPoint {
 		GZIP;
 	}
 
-	private static ThreadLocal<SimpleDateFormat> THREAD_LOCAL = new ThreadLocal<SimpleDateFormat>() {
-		@Override
-		protected SimpleDateFormat initialValue() {
-			return new SimpleDateFormat("YYYY-MM-dd HH:mm:ss.SSS");
-		}
-	};
-
 	private String _string;
 
 	private Protocol _protocol;
 
-	private long _ts;
+	/** Capture timestamp (ns since the epoch) */
+	private long _tsNanos;
 
+	/** Formatted timestamp, built when first displayed */
 	private String _date;
 
 	/**
@@ -80,16 +72,32 @@ public abstract class AbstractPacketPoint extends GeoPoint {
 	 * @return the value of ts
 	 */
 	public long getTs() {
-		return _ts;
+		return PacketTime.toMillis(_tsNanos);
 	}
 
 	/**
 	 * Set the value of the field ts
-	 * @param ts the new ts to set
+	 * @param ts the new ts to set (ms since the epoch)
 	 */
 	public void setTs(final long ts) {
-		_ts = ts;
-		_date = THREAD_LOCAL.get().format(new Date(_ts));
+		setTsNanos(PacketTime.fromMillis(ts));
+	}
+
+	/**
+	 * Return the capture timestamp, with the precision of the capture
+	 * @return the timestamp (ns since the epoch)
+	 */
+	public long getTsNanos() {
+		return _tsNanos;
+	}
+
+	/**
+	 * Set the capture timestamp
+	 * @param tsNanos the timestamp (ns since the epoch)
+	 */
+	public void setTsNanos(final long tsNanos) {
+		_tsNanos = tsNanos;
+		_date = null;
 	}
 
 	public abstract Integer getSourcePort();
@@ -103,6 +111,9 @@ public abstract class AbstractPacketPoint extends GeoPoint {
 	 * @return the value of date
 	 */
 	public String getDate() {
+		if (_date == null) {
+			_date = PacketTime.format(_tsNanos);
+		}
 		return _date;
 	}
 
@@ -18,6 +18,7 @@
 package org.leo.traceroute.core.sniffer;
 
 import org.leo.traceroute.core.IListener;
+import org.leo.traceroute.core.sniffer.flow.FlowUpdate;
 
 /**
  * IPacketListener $Id: IPacketListener.java 208 2015-10-12 07:07:41Z leolewis $
@@ -40,6 +41,13 @@ public interface IPacketListener extends IListener {
 	 */
 	void packetAdded(AbstractPacketPoint point);
 
+	/**
+	 * Flows updated since the previous notification
+	 *
+	 * @param update the flows, destinations and countries updated
+	 */
+	void flowsUpdated(FlowUpdate update);
+
 	/**
 	 * Capture stopped
 	 */
@@ -17,10 +17,14 @@
  */
 package org.leo.traceroute.core.sniffer;
 
+import java.io.IOException;
+import java.io.Writer;
 import java.util.List;
 import java.util.Set;
 
 import org.leo.traceroute.core.IComponent;
+import org.leo.traceroute.core.export.TableExporter.Format;
+import org.leo.traceroute.core.export.TableExporter.IProgressListener;
 import org.leo.traceroute.core.sniffer.AbstractPacketPoint.Protocol;
 
 /**
@@ -83,4 +87,13 @@ public interface IPacketsSniffer extends IComponent {
 	 * Convert capture to text
 	 */
 	String toText();
+
+	/**
+	 * Export the capture, row by row
+	 * @param format the format
+	 * @param writer the writer
+	 * @param listener progress listener, may be null
+	 * @throws IOException
+	 */
+	void export(Format format, Writer writer, IProgressListener listener) throws IOException;
 }
@@ -0,0 +1,90 @@
+/**
+ * Open Visual Trace Route
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.leo.traceroute.core.sniffer;
+
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+
+/**
+ * PacketTime $Id$
+ * <pre>
+ * Formatting of the capture timestamps (ns since the epoch), yyyy-MM-dd HH:mm:ss.SSSSSS in the local time zone.
+ * The packets of a capture mostly share the same second, the formatted second is cached
+ * and only the fraction is formatted for each packet. Thread safe.
+ * </pre>
+ * @author Leo Lewis
+ */
+public final class PacketTime {
+
+	public static final long NANOS_PER_SECOND = 1000000000L;
+	public static final long NANOS_PER_MILLI = 1000000L;
+
+	private static final DateTimeFormatter SECOND_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss").withZone(ZoneId.systemDefault());
+
+	/** Last formatted second, replaced as a whole */
+	private static volatile Second _last = new Second(Long.MIN_VALUE, "");
+
+	private PacketTime() {
+	}
+
+	/**
+	 * @param epochNanos timestamp (ns since the epoch)
+	 * @return the formatted time, with a microsecond precision
+	 */
+	public static String format(final long epochNanos) {
+		final long second = Math.floorDiv(epochNanos, NANOS_PER_SECOND);
+		final int micros = (int) (Math.floorMod(epochNanos, NANOS_PER_SECOND) / 1000);
+		Second last = _last;
+		if (last._second != second) {
+			last = new Second(second, SECOND_FORMAT.format(Instant.ofEpochSecond(second)));
+			_last = last;
+		}
+		final StringBuilder sb = new StringBuilder(last._prefix.length() + 7).append(last._prefix).append('.');
+		for (int div = 100000; div > 0; div /= 10) {
+			sb.append((char) ('0' + (micros / div) % 10));
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * @param epochMillis timestamp (ms since the epoch)
+	 * @return the timestamp in ns since the epoch
+	 */
+	public static long fromMillis(final long epochMillis) {
+		return epochMillis * NANOS_PER_MILLI;
+	}
+
+	/**
+	 * @param epochNanos timestamp (ns since the epoch)
+	 * @return the timestamp in ms since the epoch
+	 */
+	public static long toMillis(final long epochNanos) {
+		return Math.floorDiv(epochNanos, NANOS_PER_MILLI);
+	}
+
+	private static final class Second {
+		private final long _second;
+		private final String _prefix;
+
+		private Second(final long second, final String prefix) {
+			_second = second;
+			_prefix = prefix;
+		}
+	}
+}
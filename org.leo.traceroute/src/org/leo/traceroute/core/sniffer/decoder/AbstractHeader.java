@@ -0,0 +1,89 @@
+/**
+ * Open Visual Trace Route
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.leo.traceroute.core.sniffer.decoder;
+
+import java.nio.ByteBuffer;
+
+/**
+ * AbstractHeader $Id$
+ * <pre>
+ * Flyweight view of a protocol header in a buffer : the fields are read from the buffer on access,
+ * nothing is copied and the same instance is wrapped over each packet.
+ * The fields are in network byte order whatever the order of the buffer, which might be a native ring.
+ * Not thread safe.
+ * </pre>
+ * @author Leo Lewis
+ */
+public abstract class AbstractHeader {
+
+	protected ByteBuffer _buffer;
+	protected int _offset;
+	protected int _end;
+
+	/**
+	 * Wrap the header over the buffer
+	 * @param buffer the buffer
+	 * @param offset offset of the header
+	 * @param end end of the captured bytes
+	 * @param minLength minimum length of the header
+	 * @return false if the captured bytes are too short
+	 */
+	protected boolean wrap(final ByteBuffer buffer, final int offset, final int end, final int minLength) {
+		_buffer = buffer;
+		_offset = offset;
+		_end = end;
+		return offset >= 0 && offset + minLength <= end;
+	}
+
+	/**
+	 * @return the offset of the header in the buffer
+	 */
+	public int getOffset() {
+		return _offset;
+	}
+
+	/**
+	 * @return the offset of the data following the header
+	 */
+	public abstract int getPayloadOffset();
+
+	/**
+	 * @return the number of captured bytes following the header
+	 */
+	public int getPayloadLength() {
+		return Math.max(0, _end - getPayloadOffset());
+	}
+
+	/**
+	 * Append a one line description of the header
+	 * @param sb the builder
+	 */
+	public abstract void describe(StringBuilder sb);
+
+	protected int u8(final int position) {
+		return _buffer.get(_offset + position) & 0xFF;
+	}
+
+	protected int u16(final int position) {
+		return (u8(position) << 8) | u8(position + 1);
+	}
+
+	protected long u32(final int position) {
+		return ((long) u16(position) << 16) | u16(position + 2);
+	}
+}
@@ -0,0 +1,125 @@
+/**
+ * Open Visual Trace Route
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.leo.traceroute.core.sniffer.decoder;
+
+/**
+ * AbstractIpHeader $Id$
+ * <pre>
+ * Network layer header, IPv4 or IPv6.
+ * </pre>
+ * @author Leo Lewis
+ */
+public abstract class AbstractIpHeader extends AbstractHeader {
+
+	public static final int PROTO_ICMP = 1;
+	public static final int PROTO_TCP = 6;
+	public static final int PROTO_UDP = 17;
+	public static final int PROTO_ICMPV6 = 58;
+
+	/**
+	 * @return the IP version
+	 */
+	public abstract int getVersion();
+
+	/**
+	 * @return the protocol of the transport header
+	 */
+	public abstract int getTransportProtocol();
+
+	/**
+	 * @return false if the transport header is not in the packet (non first fragment)
+	 */
+	public abstract boolean hasTransportHeader();
+
+	/**
+	 * @return the TTL or hop limit
+	 */
+	public abstract int getTtl();
+
+	/**
+	 * @return the offset of the source address
+	 */
+	protected abstract int getSourcePosition();
+
+	/**
+	 * @return the offset of the dest address
+	 */
+	protected abstract int getDestPosition();
+
+	/**
+	 * @return the length of the addresses
+	 */
+	public int getAddressLength() {
+		return getVersion() == 4 ? 4 : 16;
+	}
+
+	/**
+	 * Append the source address
+	 * @param sb the builder
+	 */
+	public void appendSource(final StringBuilder sb) {
+		appendAddress(sb, getSourcePosition());
+	}
+
+	/**
+	 * Append the dest address
+	 * @param sb the builder
+	 */
+	public void appendDest(final StringBuilder sb) {
+		appendAddress(sb, getDestPosition());
+	}
+
+	/**
+	 * @return the source address, formatted as InetAddress.getHostAddress()
+	 */
+	public String getSource() {
+		final StringBuilder sb = new StringBuilder(39);
+		appendSource(sb);
+		return sb.toString();
+	}
+
+	/**
+	 * @return the dest address, formatted as InetAddress.getHostAddress()
+	 */
+	public String getDest() {
+		final StringBuilder sb = new StringBuilder(39);
+		appendDest(sb);
+		return sb.toString();
+	}
+
+	/**
+	 * Same format as InetAddress.getHostAddress() so the addresses can be compared with the ones of the interfaces
+	 */
+	private void appendAddress(final StringBuilder sb, final int position) {
+		if (getVersion() == 4) {
+			for (int i = 0; i < 4; i++) {
+				if (i > 0) {
+					sb.append('.');
+				}
+				sb.append(u8(position + i));
+			}
+		} else {
+			for (int i = 0; i < 8; i++) {
+				if (i > 0) {
+					sb.append(':');
+				}
+				sb.append(Integer.toHexString(u16(position + 2 * i)));
+			}
+		}
+	}
+}
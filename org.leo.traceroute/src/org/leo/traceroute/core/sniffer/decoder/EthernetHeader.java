@@ -0,0 +1,134 @@
+/**
+ * Open Visual Trace Route
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.leo.traceroute.core.sniffer.decoder;
+
+import java.nio.ByteBuffer;
+
+/**
+ * EthernetHeader $Id$
+ * <pre>
+ * Ethernet II header, with its 802.1Q/802.1ad VLAN tags.
+ * </pre>
+ * @author Leo Lewis
+ */
+public class EthernetHeader extends AbstractHeader {
+
+	public static final int LENGTH = 14;
+	public static final int TYPE_IPV4 = 0x0800;
+	public static final int TYPE_IPV6 = 0x86DD;
+	private static final int TYPE_VLAN = 0x8100;
+	private static final int TYPE_QINQ = 0x88A8;
+	private static final int MAX_TAGS = 2;
+
+	private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+	private int _etherType;
+	private int _vlanId;
+	private int _payloadOffset;
+
+	/**
+	 * Wrap the header over the buffer
+	 * @param buffer the buffer
+	 * @param offset offset of the header
+	 * @param end end of the captured bytes
+	 * @return false if the captured bytes are too short
+	 */
+	public boolean wrap(final ByteBuffer buffer, final int offset, final int end) {
+		if (!wrap(buffer, offset, end, LENGTH)) {
+			return false;
+		}
+		int position = 12;
+		int type = u16(position);
+		_vlanId = -1;
+		for (int tags = 0; (type == TYPE_VLAN || type == TYPE_QINQ) && tags < MAX_TAGS; tags++) {
+			if (offset + position + 6 > end) {
+				return false;
+			}
+			// the innermost tag is the VLAN of the frame
+			_vlanId = u16(position + 2) & 0xFFF;
+			position += 4;
+			type = u16(position);
+		}
+		_etherType = type;
+		_payloadOffset = offset + position + 2;
+		return true;
+	}
+
+	/**
+	 * @return the type of the payload, after the VLAN tags
+	 */
+	public int getEtherType() {
+		return _etherType;
+	}
+
+	/**
+	 * @return the VLAN id, -1 if the frame is not tagged
+	 */
+	public int getVlanId() {
+		return _vlanId;
+	}
+
+	/**
+	 * @see org.leo.traceroute.core.sniffer.decoder.AbstractHeader#getPayloadOffset()
+	 */
+	@Override
+	public int getPayloadOffset() {
+		return _payloadOffset;
+	}
+
+	/**
+	 * Append the source MAC address
+	 * @param sb the builder
+	 */
+	public void appendSource(final StringBuilder sb) {
+		appendMac(sb, 6);
+	}
+
+	/**
+	 * Append the destination MAC address
+	 * @param sb the builder
+	 */
+	public void appendDestination(final StringBuilder sb) {
+		appendMac(sb, 0);
+	}
+
+	private void appendMac(final StringBuilder sb, final int position) {
+		for (int i = 0; i < 6; i++) {
+			if (i > 0) {
+				sb.append(':');
+			}
+			final int b = u8(position + i);
+			sb.append(HEX[b >> 4]).append(HEX[b & 0xF]);
+		}
+	}
+
+	/**
+	 * @see org.leo.traceroute.core.sniffer.decoder.AbstractHeader#describe(java.lang.StringBuilder)
+	 */
+	@Override
+	public void describe(final StringBuilder sb) {
+		sb.append("Ethernet ");
+		appendSource(sb);
+		sb.append(" > ");
+		appendDestination(sb);
+		if (_vlanId >= 0) {
+			sb.append(", vlan ").append(_vlanId);
+		}
+		sb.append(", type 0x").append(Integer.toHexString(_etherType));
+	}
+}
@@ -0,0 +1,78 @@
+/**
+ * Open Visual Trace Route
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.leo.traceroute.core.sniffer.decoder;
+
+import java.nio.ByteBuffer;
+
+/**
+ * IcmpHeader $Id$
+ * <pre>
+ * ICMP or ICMPv6 header, same layout for the type and code.
+ * </pre>
+ * @author Leo Lewis
+ */
+public class IcmpHeader extends AbstractHeader {
+
+	public static final int LENGTH = 8;
+
+	private boolean _v6;
+
+	/**
+	 * Wrap the header over the buffer
+	 * @param buffer the buffer
+	 * @param offset offset of the header
+	 * @param end end of the captured bytes
+	 * @param v6 true for ICMPv6
+	 * @return false if the type and code are not captured
+	 */
+	public boolean wrap(final ByteBuffer buffer, final int offset, final int end, final boolean v6) {
+		_v6 = v6;
+		return wrap(buffer, offset, end, 2);
+	}
+
+	/**
+	 * @return true for ICMPv6
+	 */
+	public boolean isV6() {
+		return _v6;
+	}
+
+	public int getType() {
+		return u8(0);
+	}
+
+	public int getCode() {
+		return u8(1);
+	}
+
+	/**
+	 * @see org.leo.traceroute.core.sniffer.decoder.AbstractHeader#getPayloadOffset()
+	 */
+	@Override
+	public int getPayloadOffset() {
+		return Math.min(_offset + LENGTH, _end);
+	}
+
+	/**
+	 * @see org.leo.traceroute.core.sniffer.decoder.AbstractHeader#describe(java.lang.StringBuilder)
+	 */
+	@Override
+	public void describe(final StringBuilder sb) {
+		sb.append(_v6 ? "ICMPv6" : "ICMP").append(" type ").append(getType()).append(", code ").append(getCode());
+	}
+}
@@ -0,0 +1,154 @@
+/**
+ * Open Visual Trace Route
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.leo.traceroute.core.sniffer.decoder;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Ipv4Header $Id$
+ * <pre>
+ * IPv4 header.
+ * </pre>
+ * @author Leo Lewis
+ */
+public class Ipv4Header extends AbstractIpHeader {
+
+	public static final int MIN_LENGTH = 20;
+
+	/**
+	 * Wrap the header over the buffer
+	 * @param buffer the buffer
+	 * @param offset offset of the header
+	 * @param end end of the captured bytes
+	 * @return false if the header is not a valid IPv4 header
+	 */
+	public boolean wrap(final ByteBuffer buffer, final int offset, final int end) {
+		return wrap(buffer, offset, end, MIN_LENGTH) && getVersion() == 4 && getHeaderLength() >= MIN_LENGTH
+				&& offset + getHeaderLength() <= end;
+	}
+
+	/**
+	 * @see org.leo.traceroute.core.sniffer.decoder.AbstractIpHeader#getVersion()
+	 */
+	@Override
+	public int getVersion() {
+		return u8(0) >> 4;
+	}
+
+	/**
+	 * @return the length of the header with its options
+	 */
+	public int getHeaderLength() {
+		return (u8(0) & 0xF) * 4;
+	}
+
+	/**
+	 * @return the length of the packet, header included
+	 */
+	public int getTotalLength() {
+		return u16(2);
+	}
+
+	/**
+	 * @return the identification
+	 */
+	public int getId() {
+		return u16(4);
+	}
+
+	/**
+	 * @return true if the don't fragment flag is set
+	 */
+	public boolean isDontFragment() {
+		return (u16(6) & 0x4000) != 0;
+	}
+
+	/**
+	 * @return true if the more fragments flag is set
+	 */
+	public boolean isMoreFragments() {
+		return (u16(6) & 0x2000) != 0;
+	}
+
+	/**
+	 * @return the fragment offset, in bytes
+	 */
+	public int getFragmentOffset() {
+		return (u16(6) & 0x1FFF) * 8;
+	}
+
+	/**
+	 * @see org.leo.traceroute.core.sniffer.decoder.AbstractIpHeader#getTtl()
+	 */
+	@Override
+	public int getTtl() {
+		return u8(8);
+	}
+
+	/**
+	 * @see org.leo.traceroute.core.sniffer.decoder.AbstractIpHeader#getTransportProtocol()
+	 */
+	@Override
+	public int getTransportProtocol() {
+		return u8(9);
+	}
+
+	/**
+	 * @see org.leo.traceroute.core.sniffer.decoder.AbstractIpHeader#hasTransportHeader()
+	 */
+	@Override
+	public boolean hasTransportHeader() {
+		return (u16(6) & 0x1FFF) == 0;
+	}
+
+	@Override
+	protected int getSourcePosition() {
+		return 12;
+	}
+
+	@Override
+	protected int getDestPosition() {
+		return 16;
+	}
+
+	/**
+	 * @see org.leo.traceroute.core.sniffer.decoder.AbstractHeader#getPayloadOffset()
+	 */
+	@Override
+	public int getPayloadOffset() {
+		return _offset + getHeaderLength();
+	}
+
+	/**
+	 * @see org.leo.traceroute.core.sniffer.decoder.AbstractHeader#describe(java.lang.StringBuilder)
+	 */
+	@Override
+	public void describe(final StringBuilder sb) {
+		sb.append("IPv4 ");
+		appendSource(sb);
+		sb.append(" > ");
+		appendDest(sb);
+		sb.append(", ttl ").append(getTtl()).append(", id ").append(getId()).append(", length ").append(getTotalLength());
+		if (isDontFragment()) {
+			sb.append(", DF");
+		}
+		if (isMoreFragments() || getFragmentOffset() > 0) {
+			sb.append(", fragment offset ").append(getFragmentOffset());
+		}
+	}
+}
@@ -0,0 +1,162 @@
+/**
+ * Open Visual Trace Route
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.leo.traceroute.core.sniffer.decoder;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Ipv6Header $Id$
+ * <pre>
+ * IPv6 header, the extension headers are skipped to find the transport header.
+ * </pre>
+ * @author Leo Lewis
+ */
+public class Ipv6Header extends AbstractIpHeader {
+
+	public static final int LENGTH = 40;
+	private static final int HOP_BY_HOP = 0;
+	private static final int ROUTING = 43;
+	private static final int FRAGMENT = 44;
+	private static final int AUTHENTICATION = 51;
+	private static final int DESTINATION_OPTIONS = 60;
+	private static final int MAX_EXTENSIONS = 8;
+
+	private int _transportProtocol;
+	private int _payloadOffset;
+	private boolean _hasTransportHeader;
+
+	/**
+	 * Wrap the header over the buffer
+	 * @param buffer the buffer
+	 * @param offset offset of the header
+	 * @param end end of the captured bytes
+	 * @return false if the header is not a valid IPv6 header
+	 */
+	public boolean wrap(final ByteBuffer buffer, final int offset, final int end) {
+		if (!wrap(buffer, offset, end, LENGTH) || getVersion() != 6) {
+			return false;
+		}
+		int next = u8(6);
+		int position = LENGTH;
+		_hasTransportHeader = true;
+		for (int i = 0; i < MAX_EXTENSIONS && isExtension(next); i++) {
+			if (offset + position + 8 > end) {
+				// extension headers truncated, the transport header is not captured
+				_hasTransportHeader = false;
+				break;
+			}
+			final int current = next;
+			next = u8(position);
+			if (current == FRAGMENT) {
+				_hasTransportHeader &= (u16(position + 2) & 0xFFF8) == 0;
+				position += 8;
+			} else if (current == AUTHENTICATION) {
+				position += (u8(position + 1) + 2) * 4;
+			} else {
+				position += (u8(position + 1) + 1) * 8;
+			}
+		}
+		_transportProtocol = next;
+		_payloadOffset = Math.min(offset + position, end);
+		return true;
+	}
+
+	private static boolean isExtension(final int header) {
+		return header == HOP_BY_HOP || header == ROUTING || header == FRAGMENT || header == AUTHENTICATION || header == DESTINATION_OPTIONS;
+	}
+
+	/**
+	 * @see org.leo.traceroute.core.sniffer.decoder.AbstractIpHeader#getVersion()
+	 */
+	@Override
+	public int getVersion() {
+		return u8(0) >> 4;
+	}
+
+	/**
+	 * @return the flow label
+	 */
+	public int getFlowLabel() {
+		return (int) (u32(0) & 0xFFFFF);
+	}
+
+	/**
+	 * @return the length of the payload, extension headers included
+	 */
+	public int getPayloadLengthField() {
+		return u16(4);
+	}
+
+	/**
+	 * @see org.leo.traceroute.core.sniffer.decoder.AbstractIpHeader#getTtl()
+	 */
+	@Override
+	public int getTtl() {
+		return u8(7);
+	}
+
+	/**
+	 * @see org.leo.traceroute.core.sniffer.decoder.AbstractIpHeader#getTransportProtocol()
+	 */
+	@Override
+	public int getTransportProtocol() {
+		return _transportProtocol;
+	}
+
+	/**
+	 * @see org.leo.traceroute.core.sniffer.decoder.AbstractIpHeader#hasTransportHeader()
+	 */
+	@Override
+	public boolean hasTransportHeader() {
+		return _hasTransportHeader;
+	}
+
+	@Override
+	protected int getSourcePosition() {
+		return 8;
+	}
+
+	@Override
+	protected int getDestPosition() {
+		return 24;
+	}
+
+	/**
+	 * @see org.leo.traceroute.core.sniffer.decoder.AbstractHeader#getPayloadOffset()
+	 */
+	@Override
+	public int getPayloadOffset() {
+		return _payloadOffset;
+	}
+
+	/**
+	 * @see org.leo.traceroute.core.sniffer.decoder.AbstractHeader#describe(java.lang.StringBuilder)
+	 */
+	@Override
+	public void describe(final StringBuilder sb) {
+		sb.append("IPv6 ");
+		appendSource(sb);
+		sb.append(" > ");
+		appendDest(sb);
+		sb.append(", hop limit ").append(getTtl()).append(", flow label 0x").append(Integer.toHexString(getFlowLabel()))
+				.append(", payload length ").append(getPayloadLengthField());
+		if (!_hasTransportHeader) {
+			sb.append(", fragment");
+		}
+	}
+}
@@ -0,0 +1,207 @@
+/**
+ * Open Visual Trace Route
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.leo.traceroute.core.sniffer.decoder;
+
+import java.nio.ByteBuffer;
+
+import org.leo.traceroute.core.sniffer.AbstractPacketPoint.Protocol;
+
+/**
+ * PacketDecoder $Id$
+ * <pre>
+ * Decode the headers of a captured packet, independently of the capture library.
+ * The headers are flyweights wrapped over the buffer, decoding a packet does not allocate anything,
+ * so a decoder can be used on the capture ring directly. One instance per thread.
+ * </pre>
+ * @author Leo Lewis
+ */
+public class PacketDecoder {
+
+	private final EthernetHeader _ethernet = new EthernetHeader();
+	private final Ipv4Header _ipv4 = new Ipv4Header();
+	private final Ipv6Header _ipv6 = new Ipv6Header();
+	private final TcpHeader _tcp = new TcpHeader();
+	private final UdpHeader _udp = new UdpHeader();
+	private final IcmpHeader _icmp = new IcmpHeader();
+
+	private boolean _hasLink;
+	private AbstractIpHeader _ip;
+	private AbstractHeader _transport;
+	private Protocol _protocol;
+
+	/**
+	 * Decode a frame starting with an Ethernet header
+	 * @param buffer the buffer
+	 * @param offset offset of the frame
+	 * @param end end of the captured bytes
+	 * @return false if the frame is not an IP packet
+	 */
+	public boolean decodeLink(final ByteBuffer buffer, final int offset, final int end) {
+		reset();
+		if (!_ethernet.wrap(buffer, offset, end)) {
+			return false;
+		}
+		_hasLink = true;
+		return decodeNetwork(buffer, _ethernet.getPayloadOffset(), end, false);
+	}
+
+	/**
+	 * Decode a frame whose network header offset is already known (given by the capture)
+	 * @param buffer the buffer
+	 * @param linkOffset offset of the frame, the link header is decoded if it is an Ethernet header
+	 * @param netOffset offset of the network header
+	 * @param end end of the captured bytes
+	 * @return false if the frame is not an IP packet
+	 */
+	public boolean decode(final ByteBuffer buffer, final int linkOffset, final int netOffset, final int end) {
+		reset();
+		_hasLink = netOffset - linkOffset >= EthernetHeader.LENGTH && _ethernet.wrap(buffer, linkOffset, netOffset)
+				&& _ethernet.getPayloadOffset() == netOffset;
+		return decodeNetwork(buffer, netOffset, end, false);
+	}
+
+	/**
+	 * Decode a packet starting with its IP header
+	 * @param buffer the buffer
+	 * @param offset offset of the IP header
+	 * @param end end of the captured bytes
+	 * @return false if the packet is not an IP packet
+	 */
+	public boolean decodeNetwork(final ByteBuffer buffer, final int offset, final int end) {
+		return decodeNetwork(buffer, offset, end, true);
+	}
+
+	private boolean decodeNetwork(final ByteBuffer buffer, final int offset, final int end, final boolean reset) {
+		if (reset) {
+			reset();
+		}
+		if (offset >= end) {
+			return false;
+		}
+		final int version = (buffer.get(offset) >> 4) & 0xF;
+		if (version == 4 && _ipv4.wrap(buffer, offset, end)) {
+			_ip = _ipv4;
+		} else if (version == 6 && _ipv6.wrap(buffer, offset, end)) {
+			_ip = _ipv6;
+		} else {
+			return false;
+		}
+		final int proto = _ip.getTransportProtocol();
+		final int l4 = _ip.getPayloadOffset();
+		if (proto == AbstractIpHeader.PROTO_TCP) {
+			_protocol = Protocol.TCP;
+			if (_ip.hasTransportHeader() && _tcp.wrap(buffer, l4, end)) {
+				_transport = _tcp;
+			}
+		} else if (proto == AbstractIpHeader.PROTO_UDP) {
+			_protocol = Protocol.UDP;
+			if (_ip.hasTransportHeader() && _udp.wrap(buffer, l4, end)) {
+				_transport = _udp;
+			}
+		} else if ((version == 4 && proto == AbstractIpHeader.PROTO_ICMP) || (version == 6 && proto == AbstractIpHeader.PROTO_ICMPV6)) {
+			_protocol = Protocol.ICMP;
+			if (_ip.hasTransportHeader() && _icmp.wrap(buffer, l4, end, version == 6)) {
+				_transport = _icmp;
+			}
+		} else {
+			_protocol = Protocol.OTHER;
+		}
+		return true;
+	}
+
+	private void reset() {
+		_hasLink = false;
+		_ip = null;
+		_transport = null;
+		_protocol = null;
+	}
+
+	/**
+	 * @return the Ethernet header, null if not decoded
+	 */
+	public EthernetHeader getEthernet() {
+		return _hasLink ? _ethernet : null;
+	}
+
+	/**
+	 * @return the IP header of the last decoded packet
+	 */
+	public AbstractIpHeader getIp() {
+		return _ip;
+	}
+
+	/**
+	 * @return the transport header, null if not captured or not supported
+	 */
+	public AbstractHeader getTransport() {
+		return _transport;
+	}
+
+	/**
+	 * @return the protocol of the last decoded packet
+	 */
+	public Protocol getProtocol() {
+		return _protocol;
+	}
+
+	/**
+	 * @return the source port, -1 if not TCP/UDP or not captured
+	 */
+	public int getSourcePort() {
+		if (_transport == _tcp) {
+			return _tcp.getSourcePort();
+		}
+		return _transport == _udp ? _udp.getSourcePort() : -1;
+	}
+
+	/**
+	 * @return the dest port, -1 if not TCP/UDP or not captured
+	 */
+	public int getDestPort() {
+		if (_transport == _tcp) {
+			return _tcp.getDestPort();
+		}
+		return _transport == _udp ? _udp.getDestPort() : -1;
+	}
+
+	/**
+	 * @return the offset of the application data
+	 */
+	public int getPayloadOffset() {
+		return _transport != null ? _transport.getPayloadOffset() : _ip.getPayloadOffset();
+	}
+
+	/**
+	 * Append the description of the headers, one line per header
+	 * @param sb the builder
+	 */
+	public void describe(final StringBuilder sb) {
+		if (_hasLink) {
+			_ethernet.describe(sb);
+			sb.append("\n");
+		}
+		if (_ip != null) {
+			_ip.describe(sb);
+			sb.append("\n");
+		}
+		if (_transport != null) {
+			_transport.describe(sb);
+			sb.append("\n");
+		}
+	}
+}
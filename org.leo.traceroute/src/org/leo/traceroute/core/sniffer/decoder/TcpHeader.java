@@ -0,0 +1,135 @@
+/**
+ * Open Visual Trace Route
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.leo.traceroute.core.sniffer.decoder;
+
+import java.nio.ByteBuffer;
+
+/**
+ * TcpHeader $Id$
+ * <pre>
+ * TCP header.
+ * </pre>
+ * @author Leo Lewis
+ */
+public class TcpHeader extends AbstractHeader {
+
+	public static final int MIN_LENGTH = 20;
+	public static final int FIN = 0x01;
+	public static final int SYN = 0x02;
+	public static final int RST = 0x04;
+	public static final int PSH = 0x08;
+	public static final int ACK = 0x10;
+	public static final int URG = 0x20;
+
+	/**
+	 * Wrap the header over the buffer, the ports only need the first 4 bytes
+	 * @param buffer the buffer
+	 * @param offset offset of the header
+	 * @param end end of the captured bytes
+	 * @return false if the ports are not captured
+	 */
+	public boolean wrap(final ByteBuffer buffer, final int offset, final int end) {
+		return wrap(buffer, offset, end, 4);
+	}
+
+	/**
+	 * @return true if the whole header is captured
+	 */
+	public boolean isComplete() {
+		return _offset + MIN_LENGTH <= _end && _offset + getHeaderLength() <= _end;
+	}
+
+	public int getSourcePort() {
+		return u16(0);
+	}
+
+	public int getDestPort() {
+		return u16(2);
+	}
+
+	public long getSequence() {
+		return u32(4);
+	}
+
+	public long getAcknowledgment() {
+		return u32(8);
+	}
+
+	/**
+	 * @return the length of the header with its options
+	 */
+	public int getHeaderLength() {
+		return (u8(12) >> 4) * 4;
+	}
+
+	/**
+	 * @return the flags, see the constants
+	 */
+	public int getFlags() {
+		return u8(13);
+	}
+
+	public int getWindow() {
+		return u16(14);
+	}
+
+	/**
+	 * @see org.leo.traceroute.core.sniffer.decoder.AbstractHeader#getPayloadOffset()
+	 */
+	@Override
+	public int getPayloadOffset() {
+		return isComplete() ? _offset + getHeaderLength() : _end;
+	}
+
+	/**
+	 * @see org.leo.traceroute.core.sniffer.decoder.AbstractHeader#describe(java.lang.StringBuilder)
+	 */
+	@Override
+	public void describe(final StringBuilder sb) {
+		sb.append("TCP ").append(getSourcePort()).append(" > ").append(getDestPort());
+		if (!isComplete()) {
+			sb.append(", truncated");
+			return;
+		}
+		final int flags = getFlags();
+		sb.append(", flags [");
+		if ((flags & SYN) != 0) {
+			sb.append('S');
+		}
+		if ((flags & FIN) != 0) {
+			sb.append('F');
+		}
+		if ((flags & RST) != 0) {
+			sb.append('R');
+		}
+		if ((flags & PSH) != 0) {
+			sb.append('P');
+		}
+		if ((flags & URG) != 0) {
+			sb.append('U');
+		}
+		if ((flags & ACK) != 0) {
+			sb.append('.');
+		}
+		sb.append("], seq ").append(getSequence());
+		if ((flags & ACK) != 0) {
+			sb.append(", ack ").append(getAcknowledgment());
+		}
+		sb.append(", win ").append(getWindow()).append(", length ").append(getPayloadLength());
+	}
+}
@@ -0,0 +1,86 @@
+/**
+ * Open Visual Trace Route
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.leo.traceroute.core.sniffer.decoder;
+
+import java.nio.ByteBuffer;
+
+/**
+ * UdpHeader $Id$
+ * <pre>
+ * UDP header.
+ * </pre>
+ * @author Leo Lewis
+ */
+public class UdpHeader extends AbstractHeader {
+
+	public static final int LENGTH = 8;
+
+	/**
+	 * Wrap the header over the buffer, the ports only need the first 4 bytes
+	 * @param buffer the buffer
+	 * @param offset offset of the header
+	 * @param end end of the captured bytes
+	 * @return false if the ports are not captured
+	 */
+	public boolean wrap(final ByteBuffer buffer, final int offset, final int end) {
+		return wrap(buffer, offset, end, 4);
+	}
+
+	/**
+	 * @return true if the whole header is captured
+	 */
+	public boolean isComplete() {
+		return _offset + LENGTH <= _end;
+	}
+
+	public int getSourcePort() {
+		return u16(0);
+	}
+
+	public int getDestPort() {
+		return u16(2);
+	}
+
+	/**
+	 * @return the length of the datagram, header included
+	 */
+	public int getLength() {
+		return u16(4);
+	}
+
+	/**
+	 * @see org.leo.traceroute.core.sniffer.decoder.AbstractHeader#getPayloadOffset()
+	 */
+	@Override
+	public int getPayloadOffset() {
+		return isComplete() ? _offset + LENGTH : _end;
+	}
+
+	/**
+	 * @see org.leo.traceroute.core.sniffer.decoder.AbstractHeader#describe(java.lang.StringBuilder)
+	 */
+	@Override
+	public void describe(final StringBuilder sb) {
+		sb.append("UDP ").append(getSourcePort()).append(" > ").append(getDestPort());
+		if (isComplete()) {
+			sb.append(", length ").append(getLength() - LENGTH);
+		} else {
+			sb.append(", truncated");
+		}
+	}
+}
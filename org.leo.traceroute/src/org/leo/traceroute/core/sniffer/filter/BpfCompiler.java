@@ -0,0 +1,522 @@
+/**
+ * Open Visual Trace Route
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.leo.traceroute.core.sniffer.filter;
+
+import static org.leo.traceroute.core.sniffer.filter.BpfProgram.*;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+
+import org.leo.traceroute.core.sniffer.decoder.AbstractIpHeader;
+import org.leo.traceroute.core.sniffer.decoder.EthernetHeader;
+
+/**
+ * BpfCompiler $Id$
+ * <pre>
+ * Compile the subset of the libpcap filter syntax built by the sniffers into a BPF program :
+ *   ip, ip6, tcp, udp, icmp, icmp6
+ *   [tcp|udp] [src|dst] port N, [tcp|udp] [src|dst] portrange N-M
+ *   [src|dst] host ADDR (IPv4 or IPv6 literal)
+ *   greater N, less N
+ *   and (&amp;&amp;), or (||), not (!), parentheses
+ * As with libpcap, the ports are only checked on the first IPv4 fragment and when the transport
+ * header follows the IPv6 header.
+ * The ports of the same protocol and direction joined by 'or' share the checks of the IP version and
+ * of the protocol. The conditional jumps longer than 255 instructions go through an unconditional jump.
+ * </pre>
+ * @author Leo Lewis
+ */
+public final class BpfCompiler {
+
+	/** Bytes kept for an accepted frame */
+	private static final int ACCEPT = 0x40000;
+
+	/** Node of the filter expression, emits the jumps to the given labels */
+	@FunctionalInterface
+	private interface INode {
+		void emit(BpfCompiler compiler, int ifTrue, int ifFalse);
+	}
+
+	private final int _linkLength;
+	private final List<String> _tokens;
+	private int _next;
+	/** Instructions, the jumps reference labels until the end of the compilation */
+	private final List<int[]> _instructions = new ArrayList<>();
+	private final List<Integer> _labels = new ArrayList<>();
+
+	private BpfCompiler(final String filter, final int linkLength) {
+		_linkLength = linkLength;
+		_tokens = tokenize(filter);
+	}
+
+	/**
+	 * Compile a filter
+	 * @param filter the filter, empty to accept all the frames
+	 * @param linkLength length of the link header : the Ethernet type is checked for Ethernet frames,
+	 *        otherwise the IP version of the network header
+	 * @return the program
+	 * @throws IllegalArgumentException if the filter is invalid
+	 */
+	public static BpfProgram compile(final String filter, final int linkLength) {
+		final BpfCompiler compiler = new BpfCompiler(filter == null ? "" : filter, linkLength);
+		return compiler.compile();
+	}
+
+	private BpfProgram compile() {
+		final int accept = newLabel();
+		final int reject = newLabel();
+		if (!_tokens.isEmpty()) {
+			final INode root = parseOr();
+			if (_next != _tokens.size()) {
+				throw new IllegalArgumentException("Unexpected '" + _tokens.get(_next) + "' in filter");
+			}
+			root.emit(this, accept, reject);
+		}
+		place(accept);
+		emit(RET | K, ACCEPT);
+		place(reject);
+		emit(RET | K, 0);
+		insertLongJumps();
+		final int size = _instructions.size();
+		final short[] code = new short[size];
+		final byte[] jt = new byte[size];
+		final byte[] jf = new byte[size];
+		final int[] k = new int[size];
+		for (int pc = 0; pc < size; pc++) {
+			final int[] insn = _instructions.get(pc);
+			code[pc] = (short) insn[0];
+			k[pc] = insn[1];
+			if ((insn[0] & 0x07) == JMP && (insn[0] & 0xF0) == JA) {
+				k[pc] = distance(pc, insn[2]);
+			} else if ((insn[0] & 0x07) == JMP) {
+				jt[pc] = offset(pc, insn[2]);
+				jf[pc] = offset(pc, insn[3]);
+			}
+		}
+		return new BpfProgram(code, jt, jf, k);
+	}
+
+	private byte offset(final int pc, final int label) {
+		final int offset = distance(pc, label);
+		if (offset > 0xFF) {
+			throw new IllegalStateException("Jump too long at " + pc);
+		}
+		return (byte) offset;
+	}
+
+	private int distance(final int pc, final int label) {
+		return _labels.get(label) - pc - 1;
+	}
+
+	/**
+	 * Replace the targets of the conditional jumps too far for their 8 bits offsets by unconditional jumps
+	 * inserted right after them, until all the offsets fit
+	 */
+	private void insertLongJumps() {
+		boolean inserted = true;
+		while (inserted) {
+			inserted = false;
+			for (int pc = 0; pc < _instructions.size(); pc++) {
+				final int[] insn = _instructions.get(pc);
+				if ((insn[0] & 0x07) != JMP || (insn[0] & 0xF0) == JA) {
+					continue;
+				}
+				final boolean longTrue = distance(pc, insn[2]) > 0xFF;
+				final boolean longFalse = distance(pc, insn[3]) > 0xFF;
+				if (!longTrue && !longFalse) {
+					continue;
+				}
+				final int count = (longTrue ? 1 : 0) + (longFalse ? 1 : 0);
+				for (int label = 0; label < _labels.size(); label++) {
+					if (_labels.get(label) > pc) {
+						_labels.set(label, _labels.get(label) + count);
+					}
+				}
+				int at = pc + 1;
+				if (longTrue) {
+					insn[2] = longJump(at++, insn[2]);
+				}
+				if (longFalse) {
+					insn[3] = longJump(at, insn[3]);
+				}
+				inserted = true;
+			}
+		}
+	}
+
+	/**
+	 * Insert an unconditional jump
+	 * @param pc position of the jump
+	 * @param target label of the target
+	 * @return the label of the jump
+	 */
+	private int longJump(final int pc, final int target) {
+		_instructions.add(pc, new int[] { JMP | JA, 0, target, target });
+		final int label = newLabel();
+		_labels.set(label, pc);
+		return label;
+	}
+
+	// ---------------------------------------------------------------- parser
+
+	private static List<String> tokenize(final String filter) {
+		final List<String> tokens = new ArrayList<>();
+		final StringBuilder word = new StringBuilder();
+		for (int i = 0; i <= filter.length(); i++) {
+			final char c = i < filter.length() ? filter.charAt(i) : ' ';
+			if (Character.isWhitespace(c) || c == '(' || c == ')' || c == '!') {
+				if (word.length() > 0) {
+					tokens.add(word.toString().toLowerCase());
+					word.setLength(0);
+				}
+				if (!Character.isWhitespace(c)) {
+					tokens.add(String.valueOf(c));
+				}
+			} else {
+				word.append(c);
+			}
+		}
+		return tokens;
+	}
+
+	private String peek() {
+		return _next < _tokens.size() ? _tokens.get(_next) : null;
+	}
+
+	private String take() {
+		if (_next >= _tokens.size()) {
+			throw new IllegalArgumentException("Unexpected end of filter");
+		}
+		return _tokens.get(_next++);
+	}
+
+	private INode parseOr() {
+		INode node = parseAnd();
+		while ("or".equals(peek()) || "||".equals(peek())) {
+			take();
+			node = or(node, parseAnd());
+		}
+		return node;
+	}
+
+	private INode parseAnd() {
+		INode node = parseNot();
+		while ("and".equals(peek()) || "&&".equals(peek())) {
+			take();
+			node = and(node, parseNot());
+		}
+		return node;
+	}
+
+	private INode parseNot() {
+		final String token = peek();
+		if ("not".equals(token) || "!".equals(token)) {
+			take();
+			final INode node = parseNot();
+			return (c, ifTrue, ifFalse) -> node.emit(c, ifFalse, ifTrue);
+		}
+		if ("(".equals(token)) {
+			take();
+			final INode node = parseOr();
+			if (!")".equals(take())) {
+				throw new IllegalArgumentException("Missing ')' in filter");
+			}
+			return node;
+		}
+		return parsePrimitive();
+	}
+
+	private INode parsePrimitive() {
+		String token = take();
+		switch (token) {
+		case "greater": {
+			final int length = number(take());
+			return (c, ifTrue, ifFalse) -> {
+				c.emit(LD | W | LEN, 0);
+				c.jump(JGE, length, ifTrue, ifFalse);
+			};
+		}
+		case "less": {
+			final int length = number(take());
+			return (c, ifTrue, ifFalse) -> {
+				c.emit(LD | W | LEN, 0);
+				c.jump(JGT, length, ifFalse, ifTrue);
+			};
+		}
+		case "ip":
+			return ipVersion(4);
+		case "ip6":
+			return ipVersion(6);
+		case "icmp":
+			return and(ipVersion(4), transport(4, AbstractIpHeader.PROTO_ICMP));
+		case "icmp6":
+			return and(ipVersion(6), transport(6, AbstractIpHeader.PROTO_ICMPV6));
+		default:
+			break;
+		}
+		// [tcp|udp] [src|dst] (port|portrange|host)
+		int protocol = -1;
+		if ("tcp".equals(token) || "udp".equals(token)) {
+			protocol = "tcp".equals(token) ? AbstractIpHeader.PROTO_TCP : AbstractIpHeader.PROTO_UDP;
+			if (!isQualifier(peek())) {
+				return anyIp(protocol);
+			}
+			token = take();
+		}
+		Boolean dst = null;
+		if ("src".equals(token) || "dst".equals(token)) {
+			dst = "dst".equals(token);
+			token = take();
+		}
+		switch (token) {
+		case "port":
+		case "portrange": {
+			final String value = take();
+			final int dash = value.indexOf('-');
+			final int min = number(dash < 0 ? value : value.substring(0, dash));
+			final int max = dash < 0 ? min : number(value.substring(dash + 1));
+			if (min > 0xFFFF || max > 0xFFFF) {
+				throw new IllegalArgumentException("Invalid port " + value);
+			}
+			if (protocol < 0) {
+				return or(port(AbstractIpHeader.PROTO_TCP, dst, Math.min(min, max), Math.max(min, max)), port(AbstractIpHeader.PROTO_UDP, dst,
+						Math.min(min, max), Math.max(min, max)));
+			}
+			return port(protocol, dst, Math.min(min, max), Math.max(min, max));
+		}
+		case "host":
+			if (protocol >= 0) {
+				throw new IllegalArgumentException("Unsupported filter " + token + " with a protocol");
+			}
+			return host(dst, take());
+		default:
+			throw new IllegalArgumentException("Unsupported filter '" + token + "'");
+		}
+	}
+
+	private static boolean isQualifier(final String token) {
+		return "src".equals(token) || "dst".equals(token) || "port".equals(token) || "portrange".equals(token);
+	}
+
+	private static int number(final String token) {
+		try {
+			final int value = Integer.parseInt(token.trim());
+			if (value < 0) {
+				throw new IllegalArgumentException("Invalid number " + token);
+			}
+			return value;
+		} catch (final NumberFormatException e) {
+			throw new IllegalArgumentException("Invalid number " + token, e);
+		}
+	}
+
+	// ---------------------------------------------------------------- nodes
+
+	private static INode and(final INode left, final INode right) {
+		return (c, ifTrue, ifFalse) -> {
+			final int next = c.newLabel();
+			left.emit(c, next, ifFalse);
+			c.place(next);
+			right.emit(c, ifTrue, ifFalse);
+		};
+	}
+
+	private static INode or(final INode left, final INode right) {
+		if (left instanceof PortNode && right instanceof PortNode) {
+			final PortNode merged = ((PortNode) left).merge((PortNode) right);
+			if (merged != null) {
+				return merged;
+			}
+		}
+		return (c, ifTrue, ifFalse) -> {
+			final int next = c.newLabel();
+			left.emit(c, ifTrue, next);
+			c.place(next);
+			right.emit(c, ifTrue, ifFalse);
+		};
+	}
+
+	/** The frame is an IPv4 or IPv6 packet */
+	private static INode ipVersion(final int version) {
+		return (c, ifTrue, ifFalse) -> {
+			if (c._linkLength == EthernetHeader.LENGTH) {
+				c.emit(LD | H | ABS, 12);
+				c.jump(JEQ, version == 4 ? EthernetHeader.TYPE_IPV4 : EthernetHeader.TYPE_IPV6, ifTrue, ifFalse);
+			} else {
+				c.emit(LD | B | ABS, c._linkLength);
+				c.emit(ALU | AND | K, 0xF0);
+				c.jump(JEQ, version << 4, ifTrue, ifFalse);
+			}
+		};
+	}
+
+	/** The transport protocol is the given one, the IP version is already checked */
+	private static INode transport(final int version, final int protocol) {
+		return (c, ifTrue, ifFalse) -> {
+			c.emit(LD | B | ABS, c._linkLength + (version == 4 ? 9 : 6));
+			c.jump(JEQ, protocol, ifTrue, ifFalse);
+		};
+	}
+
+	private static INode anyIp(final int protocol) {
+		return or(and(ipVersion(4), transport(4, protocol)), and(ipVersion(6), transport(6, protocol)));
+	}
+
+	private static INode port(final int protocol, final Boolean dst, final int min, final int max) {
+		return new PortNode(protocol, dst, new int[][] { { min, max } });
+	}
+
+	private static INode host(final Boolean dst, final String value) {
+		if (dst == null) {
+			return or(host(Boolean.FALSE, value), host(Boolean.TRUE, value));
+		}
+		final byte[] address;
+		try {
+			if (!value.matches("[0-9a-f.:]+") || !(value.contains(":") || value.matches("\\d+\\.\\d+\\.\\d+\\.\\d+"))) {
+				throw new IllegalArgumentException("Invalid address " + value);
+			}
+			// IP literal, no name resolution
+			address = InetAddress.getByName(value).getAddress();
+		} catch (final UnknownHostException e) {
+			throw new IllegalArgumentException("Invalid address " + value, e);
+		}
+		final boolean v4 = address.length == 4;
+		final int position = v4 ? (dst ? 16 : 12) : (dst ? 24 : 8);
+		final ByteBuffer words = ByteBuffer.wrap(address);
+		final INode compare = (c, ifTrue, ifFalse) -> {
+			for (int i = 0; i < address.length / 4; i++) {
+				c.emit(LD | W | ABS, c._linkLength + position + 4 * i);
+				if (i == address.length / 4 - 1) {
+					c.jump(JEQ, words.getInt(4 * i), ifTrue, ifFalse);
+				} else {
+					final int next = c.newLabel();
+					c.jump(JEQ, words.getInt(4 * i), next, ifFalse);
+					c.place(next);
+				}
+			}
+		};
+		return and(ipVersion(v4 ? 4 : 6), compare);
+	}
+
+	// ---------------------------------------------------------------- code generation
+
+	private int newLabel() {
+		_labels.add(-1);
+		return _labels.size() - 1;
+	}
+
+	private void place(final int label) {
+		_labels.set(label, _instructions.size());
+	}
+
+	private void emit(final int code, final int k) {
+		_instructions.add(new int[] { code, k, 0, 0 });
+	}
+
+	private void jump(final int op, final int k, final int ifTrue, final int ifFalse) {
+		_instructions.add(new int[] { JMP | op | K, k, ifTrue, ifFalse });
+	}
+
+	/** A is in [min, max] */
+	private void range(final int min, final int max, final int ifTrue, final int ifFalse) {
+		if (min == max) {
+			jump(JEQ, min, ifTrue, ifFalse);
+		} else {
+			final int next = newLabel();
+			jump(JGE, min, next, ifFalse);
+			place(next);
+			jump(JGT, max, ifFalse, ifTrue);
+		}
+	}
+
+	/**
+	 * Ports of a protocol in a direction, the IP version and the protocol are checked once for all the ranges
+	 */
+	private static final class PortNode implements INode {
+
+		private final int _protocol;
+		/** null for both directions */
+		private final Boolean _dst;
+		/** min and max of each range */
+		private final int[][] _ranges;
+
+		private PortNode(final int protocol, final Boolean dst, final int[][] ranges) {
+			_protocol = protocol;
+			_dst = dst;
+			_ranges = ranges;
+		}
+
+		/**
+		 * @return the node of the ranges of both nodes, null if not the same protocol and direction
+		 */
+		private PortNode merge(final PortNode other) {
+			if (_protocol != other._protocol || !Objects.equals(_dst, other._dst)) {
+				return null;
+			}
+			final int[][] ranges = Arrays.copyOf(_ranges, _ranges.length + other._ranges.length);
+			System.arraycopy(other._ranges, 0, ranges, _ranges.length, other._ranges.length);
+			return new PortNode(_protocol, _dst, ranges);
+		}
+
+		@Override
+		public void emit(final BpfCompiler c, final int ifTrue, final int ifFalse) {
+			final int v4 = c.newLabel();
+			final int v6 = c.newLabel();
+			ipVersion(4).emit(c, v4, v6);
+			c.place(v4);
+			final int v4Protocol = c.newLabel();
+			transport(4, _protocol).emit(c, v4Protocol, ifFalse);
+			c.place(v4Protocol);
+			// no transport header in the non first fragments
+			c.emit(LD | H | ABS, c._linkLength + 6);
+			final int first = c.newLabel();
+			c.jump(JSET, 0x1FFF, ifFalse, first);
+			c.place(first);
+			c.emit(LDX | B | MSH, c._linkLength);
+			ports(c, LD | H | IND, c._linkLength, ifTrue, ifFalse);
+			c.place(v6);
+			final int v6Protocol = c.newLabel();
+			and(ipVersion(6), transport(6, _protocol)).emit(c, v6Protocol, ifFalse);
+			c.place(v6Protocol);
+			ports(c, LD | H | ABS, c._linkLength + 40, ifTrue, ifFalse);
+		}
+
+		/**
+		 * Load the ports of the transport header at the given offset and compare them to the ranges
+		 */
+		private void ports(final BpfCompiler c, final int load, final int offset, final int ifTrue, final int ifFalse) {
+			final int[] positions = _dst == null ? new int[] { 0, 2 } : new int[] { _dst ? 2 : 0 };
+			for (int p = 0; p < positions.length; p++) {
+				c.emit(load, offset + positions[p]);
+				for (int r = 0; r < _ranges.length; r++) {
+					final boolean last = p == positions.length - 1 && r == _ranges.length - 1;
+					final int next = last ? ifFalse : c.newLabel();
+					c.range(_ranges[r][0], _ranges[r][1], ifTrue, next);
+					if (!last) {
+						c.place(next);
+					}
+				}
+			}
+		}
+	}
+}
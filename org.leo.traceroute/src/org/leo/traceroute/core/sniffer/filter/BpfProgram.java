@@ -0,0 +1,345 @@
+/**
+ * Open Visual Trace Route
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.leo.traceroute.core.sniffer.filter;
+
+import java.nio.ByteBuffer;
+
+/**
+ * BpfProgram $Id$
+ * <pre>
+ * Classic BPF program (same instruction set and encoding as the kernel sock_filter) and its interpreter.
+ * The interpreter runs over the raw frame, before any decoding, and does not allocate
+ * unless the program uses the scratch memory. Programs are immutable, they can be shared between threads.
+ * </pre>
+ * @author Leo Lewis
+ */
+public class BpfProgram {
+
+	/** Instruction classes */
+	static final int LD = 0x00;
+	static final int LDX = 0x01;
+	static final int ST = 0x02;
+	static final int STX = 0x03;
+	static final int ALU = 0x04;
+	static final int JMP = 0x05;
+	static final int RET = 0x06;
+	static final int MISC = 0x07;
+	/** Sizes */
+	static final int W = 0x00;
+	static final int H = 0x08;
+	static final int B = 0x10;
+	/** Modes */
+	static final int IMM = 0x00;
+	static final int ABS = 0x20;
+	static final int IND = 0x40;
+	static final int MEM = 0x60;
+	static final int LEN = 0x80;
+	static final int MSH = 0xa0;
+	/** ALU operations */
+	static final int ADD = 0x00;
+	static final int SUB = 0x10;
+	static final int MUL = 0x20;
+	static final int DIV = 0x30;
+	static final int OR = 0x40;
+	static final int AND = 0x50;
+	static final int LSH = 0x60;
+	static final int RSH = 0x70;
+	static final int NEG = 0x80;
+	static final int MOD = 0x90;
+	static final int XOR = 0xa0;
+	/** Jumps */
+	static final int JA = 0x00;
+	static final int JEQ = 0x10;
+	static final int JGT = 0x20;
+	static final int JGE = 0x30;
+	static final int JSET = 0x40;
+	/** Operand sources */
+	static final int K = 0x00;
+	static final int X = 0x08;
+	/** Return value */
+	static final int RET_A = 0x10;
+	/** Misc operations */
+	static final int TAX = 0x00;
+	static final int TXA = 0x80;
+
+	static final int MEMORY_WORDS = 16;
+	private static final int MAX_INSTRUCTIONS = 4096;
+
+	private final short[] _code;
+	private final byte[] _jt;
+	private final byte[] _jf;
+	private final int[] _k;
+	private final boolean _usesMemory;
+
+	/**
+	 * Constructor
+	 * @param code operation codes
+	 * @param jt jump offsets if true
+	 * @param jf jump offsets if false
+	 * @param k constants
+	 */
+	public BpfProgram(final short[] code, final byte[] jt, final byte[] jf, final int[] k) {
+		if (code.length == 0 || code.length > MAX_INSTRUCTIONS || jt.length != code.length || jf.length != code.length || k.length != code.length) {
+			throw new IllegalArgumentException("Invalid program length " + code.length);
+		}
+		_code = code;
+		_jt = jt;
+		_jf = jf;
+		_k = k;
+		_usesMemory = validate();
+	}
+
+	/**
+	 * Same checks as the kernel : jumps inside the program, valid memory slots, ends with a return
+	 * @return true if the program uses the scratch memory
+	 */
+	private boolean validate() {
+		boolean memory = false;
+		for (int pc = 0; pc < _code.length; pc++) {
+			final int code = _code[pc] & 0xFFFF;
+			final int cls = code & 0x07;
+			if (cls == JMP) {
+				final long target = (code & 0xF0) == JA ? (long) pc + 1 + (_k[pc] & 0xFFFFFFFFL) : pc + 1 + Math.max(_jt[pc] & 0xFF,
+						_jf[pc] & 0xFF);
+				if (target >= _code.length) {
+					throw new IllegalArgumentException("Jump out of the program at " + pc);
+				}
+			} else if ((cls == ST || cls == STX || ((cls == LD || cls == LDX) && (code & 0xE0) == MEM))) {
+				if (_k[pc] < 0 || _k[pc] >= MEMORY_WORDS) {
+					throw new IllegalArgumentException("Invalid memory slot at " + pc);
+				}
+				memory = true;
+			}
+		}
+		if ((_code[_code.length - 1] & 0x07) != RET) {
+			throw new IllegalArgumentException("Program does not end with a return");
+		}
+		return memory;
+	}
+
+	/**
+	 * @param buffer the buffer
+	 * @param offset offset of the frame in the buffer
+	 * @param capLength captured length of the frame
+	 * @param wireLength length of the frame on the wire
+	 * @return true if the frame is accepted by the program
+	 */
+	public boolean matches(final ByteBuffer buffer, final int offset, final int capLength, final int wireLength) {
+		return run(buffer, offset, capLength, wireLength) != 0;
+	}
+
+	/**
+	 * Run the program over a frame
+	 * @param buffer the buffer
+	 * @param offset offset of the frame in the buffer
+	 * @param capLength captured length of the frame
+	 * @param wireLength length of the frame on the wire
+	 * @return the number of bytes to keep, 0 if the frame is rejected
+	 */
+	public int run(final ByteBuffer buffer, final int offset, final int capLength, final int wireLength) {
+		final int[] mem = _usesMemory ? new int[MEMORY_WORDS] : null;
+		int a = 0;
+		int x = 0;
+		for (int pc = 0; pc < _code.length; pc++) {
+			final int code = _code[pc] & 0xFFFF;
+			final int k = _k[pc];
+			switch (code & 0x07) {
+			case LD:
+				switch (code & 0xE0) {
+				case IMM:
+					a = k;
+					break;
+				case LEN:
+					a = wireLength;
+					break;
+				case MEM:
+					a = mem[k];
+					break;
+				case ABS:
+				case IND:
+					final long position = (code & 0xE0) == ABS ? k & 0xFFFFFFFFL : (x & 0xFFFFFFFFL) + (k & 0xFFFFFFFFL);
+					final int size = (code & 0x18) == W ? 4 : (code & 0x18) == H ? 2 : 1;
+					if (position + size > capLength) {
+						return 0;
+					}
+					a = load(buffer, offset + (int) position, size);
+					break;
+				default:
+					return 0;
+				}
+				break;
+			case LDX:
+				switch (code & 0xE0) {
+				case IMM:
+					x = k;
+					break;
+				case LEN:
+					x = wireLength;
+					break;
+				case MEM:
+					x = mem[k];
+					break;
+				case MSH:
+					if ((k & 0xFFFFFFFFL) >= capLength) {
+						return 0;
+					}
+					x = (buffer.get(offset + k) & 0xF) << 2;
+					break;
+				default:
+					return 0;
+				}
+				break;
+			case ST:
+				mem[k] = a;
+				break;
+			case STX:
+				mem[k] = x;
+				break;
+			case ALU:
+				final int operand = (code & 0x08) == X ? x : k;
+				switch (code & 0xF0) {
+				case ADD:
+					a += operand;
+					break;
+				case SUB:
+					a -= operand;
+					break;
+				case MUL:
+					a *= operand;
+					break;
+				case DIV:
+					if (operand == 0) {
+						return 0;
+					}
+					a = Integer.divideUnsigned(a, operand);
+					break;
+				case MOD:
+					if (operand == 0) {
+						return 0;
+					}
+					a = Integer.remainderUnsigned(a, operand);
+					break;
+				case OR:
+					a |= operand;
+					break;
+				case AND:
+					a &= operand;
+					break;
+				case XOR:
+					a ^= operand;
+					break;
+				case LSH:
+					a = operand >= 32 || operand < 0 ? 0 : a << operand;
+					break;
+				case RSH:
+					a = operand >= 32 || operand < 0 ? 0 : a >>> operand;
+					break;
+				case NEG:
+					a = -a;
+					break;
+				default:
+					return 0;
+				}
+				break;
+			case JMP:
+				if ((code & 0xF0) == JA) {
+					pc += k;
+					break;
+				}
+				final int value = (code & 0x08) == X ? x : k;
+				final boolean result;
+				switch (code & 0xF0) {
+				case JEQ:
+					result = a == value;
+					break;
+				case JGT:
+					result = Integer.compareUnsigned(a, value) > 0;
+					break;
+				case JGE:
+					result = Integer.compareUnsigned(a, value) >= 0;
+					break;
+				case JSET:
+					result = (a & value) != 0;
+					break;
+				default:
+					return 0;
+				}
+				pc += result ? _jt[pc] & 0xFF : _jf[pc] & 0xFF;
+				break;
+			case RET:
+				final int ret = (code & 0x18) == RET_A ? a : k;
+				return (int) Math.min(ret & 0xFFFFFFFFL, capLength);
+			case MISC:
+				if ((code & 0xF8) == TXA) {
+					a = x;
+				} else {
+					x = a;
+				}
+				break;
+			default:
+				return 0;
+			}
+		}
+		return 0;
+	}
+
+	/** Network byte order, whatever the order of the buffer */
+	private static int load(final ByteBuffer buffer, final int position, final int size) {
+		int value = 0;
+		for (int i = 0; i < size; i++) {
+			value = (value << 8) | (buffer.get(position + i) & 0xFF);
+		}
+		return value;
+	}
+
+	/**
+	 * @return the number of instructions
+	 */
+	public int size() {
+		return _code.length;
+	}
+
+	public int getCode(final int pc) {
+		return _code[pc] & 0xFFFF;
+	}
+
+	public int getJt(final int pc) {
+		return _jt[pc] & 0xFF;
+	}
+
+	public int getJf(final int pc) {
+		return _jf[pc] & 0xFF;
+	}
+
+	public int getK(final int pc) {
+		return _k[pc];
+	}
+
+	/**
+	 * Instructions in the tcpdump -dd format
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString() {
+		final StringBuilder sb = new StringBuilder();
+		for (int pc = 0; pc < _code.length; pc++) {
+			sb.append(String.format("{ 0x%x, %d, %d, 0x%08x },%n", getCode(pc), getJt(pc), getJf(pc), _k[pc]));
+		}
+		return sb.toString();
+	}
+}
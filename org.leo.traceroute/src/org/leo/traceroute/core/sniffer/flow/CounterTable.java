@@ -0,0 +1,308 @@
+/**
+ * Open Visual Trace Route
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.leo.traceroute.core.sniffer.flow;
+
+import java.util.Arrays;
+
+/**
+ * CounterTable $Id$
+ * <pre>
+ * Counters (packets, bytes, first/last seen) indexed by a 128 bits key.
+ * Open addressing hash table on primitive arrays : the slots reference dense entries, so an entry
+ * keeps its index until an eviction and the counters are not boxed.
+ * The entries updated since the last flush are tracked to build the deltas.
+ * The idle entries are evicted on demand, the others are moved down to keep the entries dense.
+ * Not thread safe.
+ * </pre>
+ * @author Leo Lewis
+ */
+public class CounterTable {
+
+	private static final int INITIAL_CAPACITY = 256;
+
+	/** Entry index + 1 of each slot, 0 if the slot is free */
+	private int[] _slots = new int[INITIAL_CAPACITY * 2];
+	private long[] _key1 = new long[INITIAL_CAPACITY];
+	private long[] _key2 = new long[INITIAL_CAPACITY];
+	private long[] _packets = new long[INITIAL_CAPACITY];
+	private long[] _bytes = new long[INITIAL_CAPACITY];
+	private long[] _first = new long[INITIAL_CAPACITY];
+	private long[] _last = new long[INITIAL_CAPACITY];
+	private long[] _flushedPackets = new long[INITIAL_CAPACITY];
+	private long[] _flushedBytes = new long[INITIAL_CAPACITY];
+	private int _size;
+
+	/** Entries updated since the last flush */
+	private int[] _dirty = new int[INITIAL_CAPACITY];
+	private boolean[] _isDirty = new boolean[INITIAL_CAPACITY];
+	private int _dirtyCount;
+
+	/**
+	 * Count a packet
+	 * @param key1 first part of the key
+	 * @param key2 second part of the key
+	 * @param bytes length of the packet
+	 * @param ts timestamp of the packet
+	 * @return the index of the entry
+	 */
+	public int add(final long key1, final long key2, final long bytes, final long ts) {
+		int index = find(key1, key2);
+		if (index < 0) {
+			index = insert(key1, key2, ts);
+		}
+		_packets[index]++;
+		_bytes[index] += bytes;
+		if (ts < _first[index]) {
+			_first[index] = ts;
+		}
+		if (ts > _last[index]) {
+			_last[index] = ts;
+		}
+		if (!_isDirty[index]) {
+			_isDirty[index] = true;
+			_dirty[_dirtyCount++] = index;
+		}
+		return index;
+	}
+
+	/**
+	 * Index of the entry of the given key
+	 * @param key1 first part of the key
+	 * @param key2 second part of the key
+	 * @return the index, -1 if not found
+	 */
+	public int find(final long key1, final long key2) {
+		final int mask = _slots.length - 1;
+		for (int slot = hash(key1, key2) & mask;; slot = (slot + 1) & mask) {
+			final int entry = _slots[slot] - 1;
+			if (entry < 0) {
+				return -1;
+			}
+			if (_key1[entry] == key1 && _key2[entry] == key2) {
+				return entry;
+			}
+		}
+	}
+
+	private int insert(final long key1, final long key2, final long ts) {
+		if (_size == _key1.length) {
+			growEntries();
+		}
+		// load factor of 0.5 at most
+		if ((_size + 1) * 2 > _slots.length) {
+			rehash(_slots.length * 2);
+		}
+		final int index = _size++;
+		_key1[index] = key1;
+		_key2[index] = key2;
+		_first[index] = ts;
+		_last[index] = ts;
+		_slots[freeSlot(key1, key2, _slots)] = index + 1;
+		return index;
+	}
+
+	private int freeSlot(final long key1, final long key2, final int[] slots) {
+		final int mask = slots.length - 1;
+		int slot = hash(key1, key2) & mask;
+		while (slots[slot] != 0) {
+			slot = (slot + 1) & mask;
+		}
+		return slot;
+	}
+
+	private void rehash(final int capacity) {
+		final int[] slots = new int[capacity];
+		for (int i = 0; i < _size; i++) {
+			slots[freeSlot(_key1[i], _key2[i], slots)] = i + 1;
+		}
+		_slots = slots;
+	}
+
+	private void growEntries() {
+		final int capacity = _key1.length * 2;
+		_key1 = Arrays.copyOf(_key1, capacity);
+		_key2 = Arrays.copyOf(_key2, capacity);
+		_packets = Arrays.copyOf(_packets, capacity);
+		_bytes = Arrays.copyOf(_bytes, capacity);
+		_first = Arrays.copyOf(_first, capacity);
+		_last = Arrays.copyOf(_last, capacity);
+		_flushedPackets = Arrays.copyOf(_flushedPackets, capacity);
+		_flushedBytes = Arrays.copyOf(_flushedBytes, capacity);
+		_dirty = Arrays.copyOf(_dirty, capacity);
+		_isDirty = Arrays.copyOf(_isDirty, capacity);
+	}
+
+	private static int hash(final long key1, final long key2) {
+		// murmur3 finalizer
+		long h = key1 * 0x9E3779B97F4A7C15L + key2;
+		h ^= h >>> 33;
+		h *= 0xFF51AFD7ED558CCDL;
+		h ^= h >>> 33;
+		h *= 0xC4CEB9FE1A85EC53L;
+		h ^= h >>> 33;
+		return (int) h;
+	}
+
+	/**
+	 * @return the number of entries
+	 */
+	public int size() {
+		return _size;
+	}
+
+	/**
+	 * @return the number of entries updated since the last flush
+	 */
+	public int getDirtyCount() {
+		return _dirtyCount;
+	}
+
+	/**
+	 * @param n the rank of the updated entry, from 0 to getDirtyCount() - 1
+	 * @return the index of the entry
+	 */
+	public int getDirty(final int n) {
+		return _dirty[n];
+	}
+
+	/**
+	 * Reset the deltas of the updated entries
+	 */
+	public void flush() {
+		for (int n = 0; n < _dirtyCount; n++) {
+			final int index = _dirty[n];
+			_flushedPackets[index] = _packets[index];
+			_flushedBytes[index] = _bytes[index];
+			_isDirty[index] = false;
+		}
+		_dirtyCount = 0;
+	}
+
+	public long getKey1(final int index) {
+		return _key1[index];
+	}
+
+	public long getKey2(final int index) {
+		return _key2[index];
+	}
+
+	public long getPackets(final int index) {
+		return _packets[index];
+	}
+
+	public long getBytes(final int index) {
+		return _bytes[index];
+	}
+
+	public long getFirst(final int index) {
+		return _first[index];
+	}
+
+	public long getLast(final int index) {
+		return _last[index];
+	}
+
+	/**
+	 * @param index the index of the entry
+	 * @return the number of packets since the last flush
+	 */
+	public long getDeltaPackets(final int index) {
+		return _packets[index] - _flushedPackets[index];
+	}
+
+	/**
+	 * @param index the index of the entry
+	 * @return the number of bytes since the last flush
+	 */
+	public long getDeltaBytes(final int index) {
+		return _bytes[index] - _flushedBytes[index];
+	}
+
+	/**
+	 * Remove the entries not updated since the cutoff, except the ones updated since the last flush
+	 * @param cutoff time of the last packet before which an entry is idle
+	 * @return the new index of each entry, -1 if removed, null if no entry was removed
+	 */
+	public int[] evictIdle(final long cutoff) {
+		int[] remap = null;
+		int size = 0;
+		for (int index = 0; index < _size; index++) {
+			if (_last[index] < cutoff && !_isDirty[index]) {
+				if (remap == null) {
+					remap = new int[_size];
+					for (int i = 0; i < index; i++) {
+						remap[i] = i;
+					}
+				}
+				remap[index] = -1;
+				continue;
+			}
+			if (remap != null) {
+				remap[index] = size;
+				move(index, size);
+			}
+			size++;
+		}
+		if (remap == null) {
+			return null;
+		}
+		// the counters of a new entry start from 0
+		Arrays.fill(_packets, size, _size, 0);
+		Arrays.fill(_bytes, size, _size, 0);
+		Arrays.fill(_flushedPackets, size, _size, 0);
+		Arrays.fill(_flushedBytes, size, _size, 0);
+		Arrays.fill(_isDirty, size, _size, false);
+		_size = size;
+		for (int n = 0; n < _dirtyCount; n++) {
+			_dirty[n] = remap[_dirty[n]];
+		}
+		rehash(_slots.length);
+		return remap;
+	}
+
+	private void move(final int from, final int to) {
+		_key1[to] = _key1[from];
+		_key2[to] = _key2[from];
+		_packets[to] = _packets[from];
+		_bytes[to] = _bytes[from];
+		_first[to] = _first[from];
+		_last[to] = _last[from];
+		_flushedPackets[to] = _flushedPackets[from];
+		_flushedBytes[to] = _flushedBytes[from];
+		_isDirty[to] = _isDirty[from];
+	}
+
+	/**
+	 * Remove all the entries
+	 */
+	public void clear() {
+		_slots = new int[INITIAL_CAPACITY * 2];
+		_key1 = new long[INITIAL_CAPACITY];
+		_key2 = new long[INITIAL_CAPACITY];
+		_packets = new long[INITIAL_CAPACITY];
+		_bytes = new long[INITIAL_CAPACITY];
+		_first = new long[INITIAL_CAPACITY];
+		_last = new long[INITIAL_CAPACITY];
+		_flushedPackets = new long[INITIAL_CAPACITY];
+		_flushedBytes = new long[INITIAL_CAPACITY];
+		_dirty = new int[INITIAL_CAPACITY];
+		_isDirty = new boolean[INITIAL_CAPACITY];
+		_size = 0;
+		_dirtyCount = 0;
+	}
+}
@@ -0,0 +1,237 @@
+/**
+ * Open Visual Trace Route
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.leo.traceroute.core.sniffer.flow;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.leo.traceroute.core.geo.GeoPoint;
+import org.leo.traceroute.core.sniffer.AbstractPacketPoint;
+import org.leo.traceroute.core.sniffer.AbstractPacketPoint.Protocol;
+import org.leo.traceroute.core.sniffer.impl.RawPacketPoint;
+import org.leo.traceroute.core.sniffer.store.StringDictionary;
+
+/**
+ * FlowAggregator $Id$
+ * <pre>
+ * Group the captured packets by flow (protocol, source IP/port, dest IP/port),
+ * by destination IP and by country of the destination.
+ * The strings are replaced by dictionary ids so the keys of the counter tables are primitives.
+ * The listeners get the entries updated since the previous poll instead of every packet.
+ * The entries without packet for {@link #DEFAULT_IDLE_MS} are evicted by the polls, so a long capture
+ * only keeps its active flows, a flow seen again starts from 0.
+ * </pre>
+ * @author Leo Lewis
+ */
+public class FlowAggregator {
+
+	/** Default interval between two updates */
+	public static final long DEFAULT_INTERVAL_MS = 500;
+	/** Default time without packet before an entry is evicted */
+	public static final long DEFAULT_IDLE_MS = TimeUnit.MINUTES.toMillis(5);
+
+	private static final Protocol[] PROTOCOLS = Protocol.values();
+
+	private final long _intervalMs;
+	private final long _idleMs;
+	private final StringDictionary _dictionary = new StringDictionary();
+	private final CounterTable _flows = new CounterTable();
+	private final CounterTable _destinations = new CounterTable();
+	private final CounterTable _countries = new CounterTable();
+	/** Geo location of each destination, by index of the destination entry */
+	private final List<GeoPoint> _destinationPoints = new ArrayList<>();
+	private long _lastPoll;
+	private long _lastEviction;
+
+	/**
+	 * Constructor
+	 */
+	public FlowAggregator() {
+		this(DEFAULT_INTERVAL_MS, DEFAULT_IDLE_MS);
+	}
+
+	/**
+	 * Constructor
+	 * @param intervalMs interval between two updates
+	 * @param idleMs time without packet before an entry is evicted
+	 */
+	public FlowAggregator(final long intervalMs, final long idleMs) {
+		_intervalMs = intervalMs;
+		_idleMs = idleMs;
+	}
+
+	/**
+	 * Count a packet
+	 * @param point the packet
+	 */
+	public synchronized void add(final AbstractPacketPoint point) {
+		final long ts = point.getTs();
+		final long bytes = point.getDataLength();
+		final int destId = _dictionary.id(point.getIp());
+		final int sourceId = point instanceof RawPacketPoint ? _dictionary.id(((RawPacketPoint) point).getSourceIp()) : StringDictionary.NULL_ID;
+		final Protocol protocol = point.getProtocol() == null ? Protocol.OTHER : point.getProtocol();
+		_flows.add((long) sourceId << 32 | (destId & 0xFFFFFFFFL), portKey(point.getSourcePort()) << 40 | portKey(point.getDestPort()) << 8
+				| protocol.ordinal(), bytes, ts);
+		final int dest = _destinations.add(destId, 0, bytes, ts);
+		if (dest == _destinationPoints.size()) {
+			_destinationPoints.add(copy(point));
+		}
+		_countries.add(_dictionary.id(point.getCountryIso()), _dictionary.id(point.getCountry()), bytes, ts);
+	}
+
+	/**
+	 * Entries updated since the previous poll
+	 * @param now current time
+	 * @param force true to poll even if the interval is not elapsed
+	 * @return the update, null if the interval is not elapsed or if nothing changed
+	 */
+	public synchronized FlowUpdate poll(final long now, final boolean force) {
+		final long interval = now - _lastPoll;
+		if (!force && interval < _intervalMs) {
+			return null;
+		}
+		_lastPoll = now;
+		if (now - _lastEviction >= _idleMs / 10) {
+			_lastEviction = now;
+			evictIdle(now - _idleMs);
+		}
+		if (_destinations.getDirtyCount() == 0) {
+			return null;
+		}
+		final FlowUpdate update = new FlowUpdate(false, interval, dirty(_flows, interval, this::flow), dirty(_destinations, interval,
+				this::destination), dirty(_countries, interval, this::country));
+		_flows.flush();
+		_destinations.flush();
+		_countries.flush();
+		return update;
+	}
+
+	/**
+	 * Evict the entries idle since the cutoff, a destination is evicted with its flows
+	 */
+	private void evictIdle(final long cutoff) {
+		_flows.evictIdle(cutoff);
+		final int[] remap = _destinations.evictIdle(cutoff);
+		if (remap != null) {
+			final List<GeoPoint> points = new ArrayList<>(_destinations.size());
+			for (int index = 0; index < remap.length; index++) {
+				if (remap[index] >= 0) {
+					points.add(_destinationPoints.get(index));
+				}
+			}
+			_destinationPoints.clear();
+			_destinationPoints.addAll(points);
+		}
+		_countries.evictIdle(cutoff);
+	}
+
+	/**
+	 * @return all the entries, does not change the deltas of the next poll
+	 */
+	public synchronized FlowUpdate snapshot() {
+		return new FlowUpdate(true, 0, all(_flows, this::flow), all(_destinations, this::destination), all(_countries, this::country));
+	}
+
+	/**
+	 * Remove all the entries
+	 */
+	public synchronized void clear() {
+		_flows.clear();
+		_destinations.clear();
+		_countries.clear();
+		_destinationPoints.clear();
+		_dictionary.clear();
+		_lastPoll = 0;
+		_lastEviction = 0;
+	}
+
+	private static List<FlowStats> dirty(final CounterTable table, final long interval, final IStatsFactory factory) {
+		final List<FlowStats> list = new ArrayList<>(table.getDirtyCount());
+		final double seconds = Math.max(1, interval) / 1000d;
+		for (int n = 0; n < table.getDirtyCount(); n++) {
+			final int index = table.getDirty(n);
+			list.add(factory.create(table, index, table.getDeltaPackets(index), table.getDeltaBytes(index), seconds));
+		}
+		return list;
+	}
+
+	private static List<FlowStats> all(final CounterTable table, final IStatsFactory factory) {
+		final List<FlowStats> list = new ArrayList<>(table.size());
+		for (int index = 0; index < table.size(); index++) {
+			final double seconds = Math.max(1, table.getLast(index) - table.getFirst(index)) / 1000d;
+			list.add(factory.create(table, index, table.getPackets(index), table.getBytes(index), seconds));
+		}
+		return list;
+	}
+
+	private FlowStats flow(final CounterTable table, final int index, final long deltaPackets, final long deltaBytes, final double seconds) {
+		final long key1 = table.getKey1(index);
+		final long key2 = table.getKey2(index);
+		final String destIp = _dictionary.value((int) key1);
+		final int dest = _destinations.find((int) key1, 0);
+		final GeoPoint point = dest < 0 ? null : _destinationPoints.get(dest);
+		return new FlowStats(PROTOCOLS[(int) (key2 & 0xFF)], _dictionary.value((int) (key1 >> 32)), port(key2 >>> 40), destIp,
+				port(key2 >>> 8), point == null ? null : point.getCountry(), point == null ? null : point.getCountryIso(), point,
+				table.getPackets(index), table.getBytes(index), deltaPackets, deltaBytes, table.getFirst(index), table.getLast(index),
+				deltaPackets / seconds, deltaBytes / seconds);
+	}
+
+	private FlowStats destination(final CounterTable table, final int index, final long deltaPackets, final long deltaBytes,
+			final double seconds) {
+		final GeoPoint point = _destinationPoints.get(index);
+		return new FlowStats(null, null, null, point.getIp(), null, point.getCountry(), point.getCountryIso(), point, table.getPackets(index),
+				table.getBytes(index), deltaPackets, deltaBytes, table.getFirst(index), table.getLast(index), deltaPackets / seconds,
+				deltaBytes / seconds);
+	}
+
+	private FlowStats country(final CounterTable table, final int index, final long deltaPackets, final long deltaBytes, final double seconds) {
+		return new FlowStats(null, null, null, null, null, _dictionary.value((int) table.getKey2(index)), _dictionary.value((int) table
+				.getKey1(index)), null, table.getPackets(index), table.getBytes(index), deltaPackets, deltaBytes, table.getFirst(index),
+				table.getLast(index), deltaPackets / seconds, deltaBytes / seconds);
+	}
+
+	/** Ports are stored + 1 on 17 bits, 0 if no port */
+	private static long portKey(final Integer port) {
+		return port == null ? 0 : (port & 0xFFFF) + 1;
+	}
+
+	private static Integer port(final long key) {
+		final int port = (int) (key & 0x1FFFF);
+		return port == 0 ? null : port - 1;
+	}
+
+	/** Keep the geo data of the packet only, not the packet and its frame */
+	private static GeoPoint copy(final AbstractPacketPoint point) {
+		final GeoPoint geo = new GeoPoint();
+		geo.setIp(point.getIp());
+		geo.setHostname(point.getHostname());
+		geo.setTown(point.getTown());
+		geo.setCountry(point.getCountry());
+		geo.setCountryIso(point.getCountryIso());
+		geo.setLat(point.getLat());
+		geo.setLon(point.getLon());
+		geo.setUnknownGeo(point.isUnknownGeo());
+		return geo;
+	}
+
+	@FunctionalInterface
+	private interface IStatsFactory {
+		FlowStats create(CounterTable table, int index, long deltaPackets, long deltaBytes, double seconds);
+	}
+}
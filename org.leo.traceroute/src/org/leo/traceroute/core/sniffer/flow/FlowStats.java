@@ -0,0 +1,230 @@
+/**
+ * Open Visual Trace Route
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.leo.traceroute.core.sniffer.flow;
+
+import org.leo.traceroute.core.geo.GeoPoint;
+import org.leo.traceroute.core.sniffer.AbstractPacketPoint.Protocol;
+
+/**
+ * FlowStats $Id$
+ * <pre>
+ * Immutable counters of a flow (5-tuple), a destination IP or a country.
+ * The fields that are not part of the key are null.
+ * </pre>
+ * @author Leo Lewis
+ */
+public class FlowStats {
+
+	private final Protocol _protocol;
+	private final String _sourceIp;
+	private final Integer _sourcePort;
+	private final String _destIp;
+	private final Integer _destPort;
+	private final String _country;
+	private final String _countryIso;
+	/** Geo location of the destination */
+	private final GeoPoint _point;
+	private final long _packets;
+	private final long _bytes;
+	private final long _deltaPackets;
+	private final long _deltaBytes;
+	private final long _firstSeen;
+	private final long _lastSeen;
+	private final double _packetRate;
+	private final double _byteRate;
+
+	/**
+	 * Constructor
+	 */
+	public FlowStats(final Protocol protocol, final String sourceIp, final Integer sourcePort, final String destIp, final Integer destPort,
+			final String country, final String countryIso, final GeoPoint point, final long packets, final long bytes, final long deltaPackets,
+			final long deltaBytes, final long firstSeen, final long lastSeen, final double packetRate, final double byteRate) {
+		_protocol = protocol;
+		_sourceIp = sourceIp;
+		_sourcePort = sourcePort;
+		_destIp = destIp;
+		_destPort = destPort;
+		_country = country;
+		_countryIso = countryIso;
+		_point = point;
+		_packets = packets;
+		_bytes = bytes;
+		_deltaPackets = deltaPackets;
+		_deltaBytes = deltaBytes;
+		_firstSeen = firstSeen;
+		_lastSeen = lastSeen;
+		_packetRate = packetRate;
+		_byteRate = byteRate;
+	}
+
+	/**
+	 * Return the value of the field protocol
+	 * @return the value of protocol
+	 */
+	public Protocol getProtocol() {
+		return _protocol;
+	}
+
+	/**
+	 * Return the value of the field sourceIp
+	 * @return the value of sourceIp
+	 */
+	public String getSourceIp() {
+		return _sourceIp;
+	}
+
+	/**
+	 * Return the value of the field sourcePort
+	 * @return the value of sourcePort
+	 */
+	public Integer getSourcePort() {
+		return _sourcePort;
+	}
+
+	/**
+	 * Return the value of the field destIp
+	 * @return the value of destIp
+	 */
+	public String getDestIp() {
+		return _destIp;
+	}
+
+	/**
+	 * Return the value of the field destPort
+	 * @return the value of destPort
+	 */
+	public Integer getDestPort() {
+		return _destPort;
+	}
+
+	/**
+	 * Return the value of the field country
+	 * @return the value of country
+	 */
+	public String getCountry() {
+		return _country;
+	}
+
+	/**
+	 * Return the value of the field countryIso
+	 * @return the value of countryIso
+	 */
+	public String getCountryIso() {
+		return _countryIso;
+	}
+
+	/**
+	 * Return the value of the field point
+	 * @return the value of point
+	 */
+	public GeoPoint getPoint() {
+		return _point;
+	}
+
+	/**
+	 * Return the value of the field packets
+	 * @return the value of packets
+	 */
+	public long getPackets() {
+		return _packets;
+	}
+
+	/**
+	 * Return the value of the field bytes
+	 * @return the value of bytes
+	 */
+	public long getBytes() {
+		return _bytes;
+	}
+
+	/**
+	 * Packets since the previous update, all the packets in a full update
+	 * @return the value of deltaPackets
+	 */
+	public long getDeltaPackets() {
+		return _deltaPackets;
+	}
+
+	/**
+	 * Bytes since the previous update, all the bytes in a full update
+	 * @return the value of deltaBytes
+	 */
+	public long getDeltaBytes() {
+		return _deltaBytes;
+	}
+
+	/**
+	 * Return the value of the field firstSeen
+	 * @return the value of firstSeen
+	 */
+	public long getFirstSeen() {
+		return _firstSeen;
+	}
+
+	/**
+	 * Return the value of the field lastSeen
+	 * @return the value of lastSeen
+	 */
+	public long getLastSeen() {
+		return _lastSeen;
+	}
+
+	/**
+	 * Packets per second over the update interval
+	 * @return the value of packetRate
+	 */
+	public double getPacketRate() {
+		return _packetRate;
+	}
+
+	/**
+	 * Bytes per second over the update interval
+	 * @return the value of byteRate
+	 */
+	public double getByteRate() {
+		return _byteRate;
+	}
+
+	/**
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString() {
+		final StringBuilder sb = new StringBuilder();
+		if (_destIp == null) {
+			sb.append(_country);
+		} else {
+			if (_protocol != null) {
+				sb.append(_protocol).append(" ");
+			}
+			if (_sourceIp != null) {
+				sb.append(_sourceIp);
+				if (_sourcePort != null) {
+					sb.append(":").append(_sourcePort);
+				}
+				sb.append(" > ");
+			}
+			sb.append(_destIp);
+			if (_destPort != null) {
+				sb.append(":").append(_destPort);
+			}
+		}
+		sb.append(" packets ").append(_packets).append(" bytes ").append(_bytes);
+		return sb.toString();
+	}
+}
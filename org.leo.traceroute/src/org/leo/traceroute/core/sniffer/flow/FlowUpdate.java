@@ -0,0 +1,94 @@
+/**
+ * Open Visual Trace Route
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.leo.traceroute.core.sniffer.flow;
+
+import java.util.List;
+
+/**
+ * FlowUpdate $Id$
+ * <pre>
+ * Flows, destinations and countries updated during an interval of the capture.
+ * A full update holds all of them, with the deltas equal to the totals.
+ * </pre>
+ * @author Leo Lewis
+ */
+public class FlowUpdate {
+
+	private final boolean _full;
+	private final long _intervalMs;
+	private final List<FlowStats> _flows;
+	private final List<FlowStats> _destinations;
+	private final List<FlowStats> _countries;
+
+	/**
+	 * Constructor
+	 * @param full if the update holds all the flows
+	 * @param intervalMs length of the interval
+	 * @param flows updated flows
+	 * @param destinations updated destination IPs
+	 * @param countries updated countries
+	 */
+	public FlowUpdate(final boolean full, final long intervalMs, final List<FlowStats> flows, final List<FlowStats> destinations,
+			final List<FlowStats> countries) {
+		_full = full;
+		_intervalMs = intervalMs;
+		_flows = flows;
+		_destinations = destinations;
+		_countries = countries;
+	}
+
+	/**
+	 * Return the value of the field full
+	 * @return the value of full
+	 */
+	public boolean isFull() {
+		return _full;
+	}
+
+	/**
+	 * Return the value of the field intervalMs
+	 * @return the value of intervalMs
+	 */
+	public long getIntervalMs() {
+		return _intervalMs;
+	}
+
+	/**
+	 * Return the value of the field flows
+	 * @return the value of flows
+	 */
+	public List<FlowStats> getFlows() {
+		return _flows;
+	}
+
+	/**
+	 * Return the value of the field destinations
+	 * @return the value of destinations
+	 */
+	public List<FlowStats> getDestinations() {
+		return _destinations;
+	}
+
+	/**
+	 * Return the value of the field countries
+	 * @return the value of countries
+	 */
+	public List<FlowStats> getCountries() {
+		return _countries;
+	}
+}
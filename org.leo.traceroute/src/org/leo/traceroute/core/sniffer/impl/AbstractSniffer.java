@@ -18,27 +18,54 @@
  */
 package org.leo.traceroute.core.sniffer.impl;
 
-import java.util.ArrayList;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.file.Paths;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import org.leo.traceroute.core.AbstractObject;
 import org.leo.traceroute.core.ServiceFactory;
+import org.leo.traceroute.core.export.TableExporter;
+import org.leo.traceroute.core.export.TableExporter.IProgressListener;
 import org.leo.traceroute.core.sniffer.AbstractPacketPoint;
 import org.leo.traceroute.core.sniffer.AbstractPacketPoint.Protocol;
 import org.leo.traceroute.core.sniffer.IPacketListener;
 import org.leo.traceroute.core.sniffer.IPacketsSniffer;
+import org.leo.traceroute.core.sniffer.PacketTime;
+import org.leo.traceroute.core.sniffer.flow.FlowAggregator;
+import org.leo.traceroute.core.sniffer.flow.FlowUpdate;
+import org.leo.traceroute.core.sniffer.pcap.PcapWriter;
+import org.leo.traceroute.core.sniffer.pcap.PcapWriter.Format;
+import org.leo.traceroute.core.sniffer.pipeline.PacketItem;
+import org.leo.traceroute.core.sniffer.pipeline.PacketPipeline;
+import org.leo.traceroute.core.sniffer.pipeline.PacketPipeline.IPacketProcessor;
+import org.leo.traceroute.core.sniffer.pipeline.StageStats;
+import org.leo.traceroute.core.sniffer.store.CaptureStore;
+import org.leo.traceroute.install.Env;
 import org.leo.traceroute.ui.sniffer.PacketTablePanel.Column;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 /**
  * AbstractSniffer $Id$
  * <pre>
+ * The implementations capture the frames and decode them, enrichment (geo/DNS), aggregation
+ * and notification of the listeners are done by the next stages of the packet pipeline.
+ * The packets are also grouped by flow, the listeners get the updated flows periodically.
+ * When a capture directory is configured, the captured frames are also recorded to rotating pcap files.
  * </pre>
  * @author Leo
  */
-public abstract class AbstractSniffer extends AbstractObject<IPacketListener> implements IPacketsSniffer {
+public abstract class AbstractSniffer extends AbstractObject<IPacketListener> implements IPacketsSniffer, IPacketProcessor {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(AbstractSniffer.class);
 
 	/** Counter of packets */
 	protected final AtomicInteger _count = new AtomicInteger();
@@ -48,22 +75,165 @@ public abstract class AbstractSniffer extends AbstractObject<IPacketListener> im
 	protected volatile boolean _filterLenghtPackets;
 	protected volatile int _length;
 	/** Captured packets */
-	protected final List<AbstractPacketPoint> _capture = new ArrayList<>();
+	protected final CaptureStore _capture = new CaptureStore();
 	protected AbstractPacketPoint _focusedPoint;
 	protected Set<Protocol> _captureProtocols;
 	protected final Set<String> _localAddresses = new HashSet<>();
 	protected String _filter;
+	protected volatile String _host;
 	/** Services */
 	protected ServiceFactory _services;
+	/** Pipeline of the current capture */
+	protected volatile PacketPipeline _pipeline;
+	/** Flows of the capture */
+	protected final FlowAggregator _flows = new FlowAggregator();
+	private ScheduledFuture<?> _flowsTask;
+	/** Recorder of the current capture, null if not recording */
+	private volatile PcapWriter _recorder;
 
 	/**
 	 * @see org.leo.traceroute.core.IComponent#init(org.leo.traceroute.core.ServiceFactory)
 	 */
 	@Override
 	public void init(final ServiceFactory services) throws Exception {
+		super.init(services);
 		_services = services;
 	}
 
+	/**
+	 * Start a new pipeline for the capture
+	 */
+	protected void startPipeline() {
+		stopPipeline();
+		final int threads = Env.INSTANCE.getSnifferEnrichThreads();
+		_pipeline = new PacketPipeline(this, threads > 0 ? threads : 4, PacketPipeline.DEFAULT_QUEUE_CAPACITY);
+		_pipeline.start(_runtime);
+		_flowsTask = _runtime.scheduleAtFixedRate(() -> _runtime.cpu().execute(() -> publishFlows(true)), FlowAggregator.DEFAULT_INTERVAL_MS,
+				FlowAggregator.DEFAULT_INTERVAL_MS, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Stop the pipeline of the current capture
+	 */
+	protected void stopPipeline() {
+		final PacketPipeline pipeline = _pipeline;
+		if (pipeline != null) {
+			pipeline.stop();
+			getEventStats().forEach(stats -> LOGGER.info(stats.toString()));
+		}
+		if (_flowsTask != null) {
+			_flowsTask.cancel(false);
+			_flowsTask = null;
+		}
+	}
+
+	/**
+	 * Start recording the captured frames, if a capture directory is configured
+	 * @param linkType link type of the frames, see PcapWriter
+	 */
+	protected void startRecording(final int linkType) {
+		stopRecording();
+		final String dir = Env.INSTANCE.getSnifferPcapDir();
+		if (dir == null || dir.isEmpty()) {
+			return;
+		}
+		final Format format = "pcap".equalsIgnoreCase(Env.INSTANCE.getSnifferPcapFormat()) ? Format.PCAP : Format.PCAPNG;
+		_recorder = new PcapWriter(Paths.get(dir), "capture", format, linkType, Env.INSTANCE.getSnifferPcapRotateMb() * 1024L * 1024L,
+				Env.INSTANCE.getSnifferPcapRotateMinutes() * 60000L);
+		LOGGER.info("Recording the capture to " + dir);
+	}
+
+	/**
+	 * Write the recorded frames and close the current file
+	 */
+	protected void stopRecording() {
+		final PcapWriter recorder = _recorder;
+		if (recorder != null) {
+			_recorder = null;
+			try {
+				recorder.close();
+				LOGGER.info(recorder.getPackets() + " packets recorded, last file " + recorder.getFile());
+			} catch (final IOException e) {
+				LOGGER.error("Failed to close the capture file " + recorder.getFile(), e);
+			}
+		}
+	}
+
+	/**
+	 * Notify the listeners of the flows updated since the previous notification
+	 * @param force true to notify even if the update interval is not elapsed
+	 */
+	protected void publishFlows(final boolean force) {
+		final FlowUpdate update = _flows.poll(System.currentTimeMillis(), force);
+		if (update != null) {
+			notifyListeners(listener -> listener.flowsUpdated(update));
+		}
+	}
+
+	/**
+	 * @return the counters of the stages of the current capture pipeline
+	 */
+	public List<StageStats> getPipelineStats() {
+		final PacketPipeline pipeline = _pipeline;
+		return pipeline == null ? Collections.emptyList() : pipeline.getStats();
+	}
+
+	/**
+	 * Enrich stage : geo location, DNS and host filter
+	 * @see org.leo.traceroute.core.sniffer.pipeline.PacketPipeline.IPacketProcessor#enrich(org.leo.traceroute.core.sniffer.pipeline.PacketItem)
+	 */
+	@Override
+	public boolean enrich(final PacketItem item) {
+		final AbstractPacketPoint point = item.getPoint();
+		final String ip = point.getIp();
+		_services.getGeo().populateGeoDataForIP(point, ip, ip);
+		// packets with dest to local device
+		if (_localAddresses.contains(ip) || point.isUnknownGeo()) {
+			_services.getGeo().populateGeoDataForLocalIp(point, ip);
+			point.setUnknownGeo(false);
+		}
+		point.setHostname(_services.getDnsLookup().dnsLookup(ip));
+		return _host == null || _host.isEmpty() || point.getHostname().contains(_host);
+	}
+
+	/**
+	 * Aggregate stage : number the packet, add it to the capture and to its flow, record it
+	 * @see org.leo.traceroute.core.sniffer.pipeline.PacketPipeline.IPacketProcessor#aggregate(org.leo.traceroute.core.sniffer.pipeline.PacketItem)
+	 */
+	@Override
+	public boolean aggregate(final PacketItem item) {
+		if (!_capturing) {
+			return false;
+		}
+		final AbstractPacketPoint point = item.getPoint();
+		point.setNumber(_count.incrementAndGet());
+		point.setTsNanos(item.getTsSec() * PacketTime.NANOS_PER_SECOND + item.getTsNsec());
+		_capture.add(point);
+		_flows.add(point);
+		final PcapWriter recorder = _recorder;
+		if (recorder != null) {
+			try {
+				recorder.write(item.getFrame(), item.getNetOffset(), item.getWireLength(), item.getTsSec(), item.getTsNsec());
+			} catch (final IOException e) {
+				// keep capturing, without the recording
+				LOGGER.error("Failed to record the capture to " + recorder.getFile(), e);
+				stopRecording();
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Publish stage : notify the listeners
+	 * @see org.leo.traceroute.core.sniffer.pipeline.PacketPipeline.IPacketProcessor#publish(org.leo.traceroute.core.sniffer.pipeline.PacketItem)
+	 */
+	@Override
+	public void publish(final PacketItem item) {
+		if (_capturing) {
+			notifyListeners(listener -> listener.packetAdded(item.getPoint()));
+		}
+	}
+
 	/**
 	 * @return
 	 */
@@ -78,11 +248,13 @@ public abstract class AbstractSniffer extends AbstractObject<IPacketListener> im
 	@Override
 	public void renotifyPackets() {
 		if (!_capture.isEmpty()) {
+			final FlowUpdate flows = _flows.snapshot();
 			notifyListeners(listener -> {
 				listener.startCapture();
 				for (final AbstractPacketPoint point : _capture) {
 					listener.packetAdded(point);
 				}
+				listener.flowsUpdated(flows);
 				listener.captureStopped();
 				if (_focusedPoint != null) {
 					focus(_focusedPoint, false);
@@ -91,12 +263,25 @@ public abstract class AbstractSniffer extends AbstractObject<IPacketListener> im
 		}
 	}
 
+	/**
+	 * @see org.leo.traceroute.core.AbstractObject#dispose()
+	 */
+	@Override
+	public void dispose() {
+		super.dispose();
+		stopPipeline();
+		stopRecording();
+		_capture.close();
+		_flows.clear();
+	}
+
 	/**
 	 * Clear current packets capture
 	 */
 	@Override
 	public void clear() {
 		_capture.clear();
+		_flows.clear();
 	}
 
 	/**
@@ -107,12 +292,12 @@ public abstract class AbstractSniffer extends AbstractObject<IPacketListener> im
 	@Override
 	public void focus(final AbstractPacketPoint point, final boolean animation) {
 		_focusedPoint = point;
-		notifyListeners(listener -> listener.focusPacket(point, false, animation));
+		notifyListeners(FOCUS_EVENT, listener -> listener.focusPacket(point, false, animation));
 	}
 
 	@Override
 	public String toText() {
-		return toString("\t");
+		return toString(TableExporter.Format.TEXT);
 	}
 
 	/**
@@ -120,35 +305,25 @@ public abstract class AbstractSniffer extends AbstractObject<IPacketListener> im
 	 */
 	@Override
 	public String toCSV() {
-		return toString(", ");
-	}
-
-	public String toString(final String separator) {
-		final StringBuilder builder = new StringBuilder();
-		final int colSize = Column.values().length;
-		for (int i = 0; i < colSize; i++) {
-			final Column col = Column.values()[i];
-			if (col.isExport()) {
-				builder.append(col.getLabel());
-				if (i != colSize - 1) {
-					builder.append(separator);
-				}
-			}
-		}
-		builder.append("\n");
-		for (int row = 0; row < _capture.size(); row++) {
-			for (int col = 0; col < colSize; col++) {
-				final Column column = Column.values()[col];
-				if (column.isExport()) {
-					builder.append(column.getValue(_capture.get(row)));
-					if (col != colSize - 1) {
-						builder.append(separator);
-					}
-				}
-			}
-			builder.append("\n");
+		return toString(TableExporter.Format.CSV);
+	}
+
+	/**
+	 * @see org.leo.traceroute.core.sniffer.IPacketsSniffer#export(org.leo.traceroute.core.export.TableExporter.Format, java.io.Writer, org.leo.traceroute.core.export.TableExporter.IProgressListener)
+	 */
+	@Override
+	public void export(final TableExporter.Format format, final Writer writer, final IProgressListener listener) throws IOException {
+		new TableExporter<AbstractPacketPoint>(Column.values()).export(format, _capture, writer, listener);
+	}
+
+	private String toString(final TableExporter.Format format) {
+		final StringWriter writer = new StringWriter();
+		try {
+			export(format, writer, null);
+		} catch (final IOException e) {
+			throw new IllegalStateException(e);
 		}
-		return builder.toString();
+		return writer.toString();
 	}
 
 	protected String convertPortToFilter(final String protocol, final String port) {
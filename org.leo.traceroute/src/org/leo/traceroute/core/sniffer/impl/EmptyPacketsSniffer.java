@@ -1,11 +1,14 @@
 package org.leo.traceroute.core.sniffer.impl;
 
 import org.leo.traceroute.core.ServiceFactory;
+import org.leo.traceroute.core.export.TableExporter.Format;
+import org.leo.traceroute.core.export.TableExporter.IProgressListener;
 import org.leo.traceroute.core.sniffer.AbstractPacketPoint;
 import org.leo.traceroute.core.sniffer.AbstractPacketPoint.Protocol;
 import org.leo.traceroute.core.sniffer.IPacketListener;
 import org.leo.traceroute.core.sniffer.IPacketsSniffer;
 
+import java.io.Writer;
 import java.util.List;
 import java.util.Set;
 
@@ -61,6 +64,11 @@ public class EmptyPacketsSniffer implements IPacketsSniffer {
         return null;
     }
 
+    @Override
+    public void export(Format format, Writer writer, IProgressListener listener) {
+
+    }
+
     @Override
     public void init(ServiceFactory services) throws Exception {
 
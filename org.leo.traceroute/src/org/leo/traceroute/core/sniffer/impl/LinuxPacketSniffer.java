@@ -0,0 +1,306 @@
+/**
+ * Open Visual Trace Route
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.leo.traceroute.core.sniffer.impl;
+
+import java.io.IOException;
+import java.net.InterfaceAddress;
+import java.net.NetworkInterface;
+import java.nio.charset.StandardCharsets;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Set;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.leo.traceroute.core.IComponent;
+import org.leo.traceroute.core.ServiceFactory;
+import org.leo.traceroute.core.ServiceFactory.Mode;
+import org.leo.traceroute.core.network.INetworkInterfaceListener;
+import org.leo.traceroute.core.sniffer.AbstractPacketPoint.Protocol;
+import org.leo.traceroute.core.sniffer.decoder.AbstractIpHeader;
+import org.leo.traceroute.core.sniffer.decoder.EthernetHeader;
+import org.leo.traceroute.core.sniffer.decoder.PacketDecoder;
+import org.leo.traceroute.core.sniffer.filter.BpfCompiler;
+import org.leo.traceroute.core.sniffer.filter.BpfProgram;
+import org.leo.traceroute.core.sniffer.pcap.PcapWriter;
+import org.leo.traceroute.core.sniffer.pipeline.PacketItem;
+import org.leo.traceroute.core.sniffer.pipeline.PacketPipeline;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * LinuxPacketSniffer $Id$
+ * <pre>
+ * Packet sniffer reading the frames from an AF_PACKET memory-mapped ring.
+ * The capture filter is compiled to a BPF program, attached to the socket for the Ethernet interfaces
+ * and run in place in the ring by the capture thread, only the matching frames are copied and handed
+ * to the packet pipeline.
+ * </pre>
+ * @author Leo Lewis
+ */
+public class LinuxPacketSniffer extends AbstractSniffer implements IComponent, INetworkInterfaceListener<NetworkInterface>, LinuxPacketSocket.IFrameHandler {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(LinuxPacketSniffer.class);
+
+	private static final int POLL_TIMEOUT_MS = 100;
+	private static final int MAX_LINK_LENGTH = 64;
+	/** ARPHRD_ETHER and ARPHRD_LOOPBACK interfaces have an Ethernet header */
+	private static final String ARPHRD_ETHER = "1";
+	private static final String ARPHRD_LOOPBACK = "772";
+
+	/** Current device */
+	private volatile NetworkInterface _device;
+
+	/** Socket */
+	private volatile LinuxPacketSocket _socket;
+
+	private ScheduledFuture<?> _scheduleStop;
+	/** Programs of the capture filter, by length of the link header, compiled by the capture thread on demand */
+	private BpfProgram[] _programs = new BpfProgram[MAX_LINK_LENGTH];
+	/** Decoder of the decode thread */
+	private final PacketDecoder _decoder = new PacketDecoder();
+
+	@SuppressWarnings("unchecked")
+	@Override
+	public void init(final ServiceFactory services) throws Exception {
+		super.init(services);
+		if (_services != null) {
+			_services.getNetworkService().addListener(this);
+		}
+	}
+
+	/**
+	 * Capture stage : filter the frame in place in the ring, copy it and hand it to the pipeline
+	 * @see org.leo.traceroute.core.sniffer.impl.LinuxPacketSocket.IFrameHandler#frame(java.nio.ByteBuffer, int, int, int, int, long, int)
+	 */
+	@Override
+	public void frame(final ByteBuffer ring, final int offset, final int netOffset, final int capLen, final int wireLen, final long tsSec, final int tsNsec) {
+		final PacketPipeline pipeline = _pipeline;
+		if (!_capturing || pipeline == null) {
+			return;
+		}
+		pipeline.getCaptureStats().received();
+		if (!program(netOffset - offset).matches(ring, offset, capLen, wireLen)) {
+			pipeline.getCaptureStats().processed(true);
+			return;
+		}
+		final byte[] frame = new byte[capLen];
+		final ByteBuffer view = ring.duplicate();
+		view.position(offset);
+		view.get(frame);
+		pipeline.offer(new PacketItem(frame, netOffset - offset, wireLen, tsSec, tsNsec));
+	}
+
+	/**
+	 * Decode stage : build the packet point from the frame
+	 * @see org.leo.traceroute.core.sniffer.pipeline.PacketPipeline.IPacketProcessor#decode(org.leo.traceroute.core.sniffer.pipeline.PacketItem)
+	 */
+	@Override
+	public boolean decode(final PacketItem item) {
+		final byte[] frame = item.getFrame();
+		if (!_decoder.decode(ByteBuffer.wrap(frame), 0, item.getNetOffset(), frame.length)) {
+			return false;
+		}
+		final AbstractIpHeader ip = _decoder.getIp();
+		final int sourcePort = _decoder.getSourcePort();
+		final int destPort = _decoder.getDestPort();
+		final RawPacketPoint point = new RawPacketPoint();
+		point.setIp(ip.getDest());
+		point.setPacket(frame, item.getNetOffset(), item.getWireLength(), _decoder.getProtocol(), ip.getSource(), sourcePort < 0 ? null
+				: sourcePort, destPort < 0 ? null : destPort);
+		item.setPoint(point);
+		return true;
+	}
+
+	private BpfProgram program(final int linkLength) {
+		if (linkLength < 0 || linkLength >= MAX_LINK_LENGTH) {
+			return BpfCompiler.compile(_filter, linkLength);
+		}
+		BpfProgram program = _programs[linkLength];
+		if (program == null) {
+			program = BpfCompiler.compile(_filter, linkLength);
+			_programs[linkLength] = program;
+		}
+		return program;
+	}
+
+	/**
+	 * Start the capture
+	 */
+	@Override
+	public void startCapture(final Set<Protocol> protocols, final String port, final boolean filterLenghtPackets, final int length, final String host,
+			final int captureTimeSeconds) {
+		// the stages of the previous capture must not write into the cleared capture
+		stopPipeline();
+		_focusedPoint = null;
+		_count.set(0);
+		_capture.clear();
+		_flows.clear();
+		_captureProtocols = protocols;
+		_host = host;
+		_filterLenghtPackets = filterLenghtPackets;
+		_length = length;
+		if (captureTimeSeconds > 0) {
+			_scheduleStop = _runtime.schedule(() -> _executor.execute(this::endCapture), captureTimeSeconds, TimeUnit.SECONDS);
+		}
+		// the capture loop blocks in native calls for its whole life, it gets its own thread
+		_runtime.startThread("sniffer-capture", () -> {
+			notifyListeners(listener -> listener.startCapture());
+			_capturing = true;
+			String filter = "";
+			String previous = "";
+			for (final Protocol prot : _captureProtocols) {
+				String s = "";
+				if (prot == Protocol.ICMP) {
+					s += "(icmp or icmp6)";
+				} else {
+					s += convertPortToFilter(prot.name().toLowerCase(), port);
+				}
+				if (!previous.isEmpty() && !s.isEmpty()) {
+					s = " or " + s;
+				}
+				if (filter.isEmpty() && !s.isEmpty()) {
+					filter = "(";
+				}
+				filter += s;
+				previous = s;
+			}
+			if (!filter.isEmpty()) {
+				filter += ")";
+			}
+			if (filterLenghtPackets) {
+				if (!filter.isEmpty()) {
+					filter += " and";
+				}
+				filter += " greater " + length;
+			}
+			LOGGER.info("Capture filter : " + filter);
+			try {
+				BpfCompiler.compile(filter, EthernetHeader.LENGTH);
+			} catch (final IllegalArgumentException e) {
+				// never capture more than asked
+				LOGGER.error("Invalid capture filter " + filter, e);
+				notifyListeners(listener -> listener.error(e, this));
+				endCapture();
+				return;
+			}
+			_filter = filter;
+			_programs = new BpfProgram[MAX_LINK_LENGTH];
+			startPipeline();
+			doStartCapture();
+		});
+	}
+
+	private void doStartCapture() {
+		try {
+			closeSocket();
+			if (_device == null) {
+				throw new IOException("No network device selected");
+			}
+			_socket = new LinuxPacketSocket(_device.getIndex());
+			final LinuxPacketSocket socket = _socket;
+			final boolean ethernet = isEthernet(_device);
+			startRecording(ethernet ? PcapWriter.LINKTYPE_ETHERNET : PcapWriter.LINKTYPE_RAW);
+			if (ethernet) {
+				try {
+					// the frames received before the filter is attached are filtered by the capture thread
+					socket.attachFilter(BpfCompiler.compile(_filter, EthernetHeader.LENGTH));
+				} catch (final IOException e) {
+					LOGGER.warn("Failed to attach the capture filter to the socket", e);
+				}
+			}
+			final PacketPipeline pipeline = _pipeline;
+			while (_capturing) {
+				socket.dispatch(this, POLL_TIMEOUT_MS);
+				pipeline.getCaptureStats().dropped(socket.getDrops());
+			}
+		} catch (final Exception e) {
+			LOGGER.error("Error during sniffer", e);
+			endCapture();
+		} finally {
+			closeSocket();
+		}
+	}
+
+	/**
+	 * @param device the device
+	 * @return true if the frames of the device start with an Ethernet header
+	 */
+	private static boolean isEthernet(final NetworkInterface device) {
+		try {
+			final String type = new String(Files.readAllBytes(Paths.get("/sys/class/net", device.getName(), "type")), StandardCharsets.US_ASCII)
+					.trim();
+			return ARPHRD_ETHER.equals(type) || ARPHRD_LOOPBACK.equals(type);
+		} catch (final IOException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * Stop capture
+	 */
+	@Override
+	public void endCapture() {
+		if (_scheduleStop != null) {
+			_scheduleStop.cancel(false);
+			_scheduleStop = null;
+		}
+		if (_capturing) {
+			_capturing = false;
+			stopPipeline();
+			stopRecording();
+			publishFlows(true);
+			notifyListeners(listener -> listener.captureStopped());
+		}
+	}
+
+	private void closeSocket() {
+		final LinuxPacketSocket socket = _socket;
+		if (socket != null) {
+			_socket = null;
+			socket.close();
+		}
+	}
+
+	@Override
+	public void notifyNewNetworkInterface(final NetworkInterface device, final Mode mode, final byte[] mac) {
+		if (mode != Mode.SNIFFER) {
+			return;
+		}
+		_device = device;
+		_localAddresses.clear();
+		if (_device != null) {
+			for (final InterfaceAddress add : _device.getInterfaceAddresses()) {
+				// strip the IPv6 scope
+				_localAddresses.add(add.getAddress().getHostAddress().split("%")[0]);
+			}
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	@Override
+	public void dispose() {
+		endCapture();
+		closeSocket();
+		super.dispose();
+		if (_services != null) {
+			_services.getNetworkService().removeListener(this);
+		}
+	}
+}
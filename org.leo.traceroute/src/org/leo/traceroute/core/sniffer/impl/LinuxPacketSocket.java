@@ -0,0 +1,333 @@
+/**
+ * Open Visual Trace Route
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.leo.traceroute.core.sniffer.impl;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import org.leo.traceroute.core.sniffer.filter.BpfProgram;
+
+import com.sun.jna.LastErrorException;
+import com.sun.jna.Library;
+import com.sun.jna.Memory;
+import com.sun.jna.Native;
+import com.sun.jna.NativeLong;
+import com.sun.jna.Platform;
+import com.sun.jna.Pointer;
+
+/**
+ * LinuxPacketSocket $Id$
+ * <pre>
+ * AF_PACKET socket with a TPACKET_V3 memory-mapped receive ring.
+ * The kernel fills whole blocks of frames into the ring shared with the process, the frames are then read
+ * in place from the mapped memory, one block at a time, without any syscall or copy per packet.
+ * </pre>
+ * @author Leo Lewis
+ */
+public class LinuxPacketSocket implements Closeable {
+
+	/**
+	 * Frames handler, called for each frame of a block while the block is owned by the user space.
+	 * The ring buffer content is only valid during the call.
+	 */
+	@FunctionalInterface
+	public interface IFrameHandler {
+
+		/**
+		 * @param ring the ring buffer
+		 * @param offset offset of the link layer header of the frame in the ring
+		 * @param netOffset offset of the network layer header of the frame in the ring
+		 * @param capLen number of bytes captured from the link layer header
+		 * @param wireLen length of the packet on the wire
+		 * @param tsSec timestamp of the frame (s)
+		 * @param tsNsec timestamp of the frame (ns part)
+		 */
+		void frame(ByteBuffer ring, int offset, int netOffset, int capLen, int wireLen, long tsSec, int tsNsec);
+	}
+
+	/**
+	 * libc binding
+	 */
+	interface LibC extends Library {
+
+		LibC INSTANCE = Native.load("c", LibC.class);
+
+		int socket(int domain, int type, int protocol) throws LastErrorException;
+
+		int setsockopt(int fd, int level, int optname, Pointer optval, int optlen) throws LastErrorException;
+
+		int bind(int fd, Pointer addr, int addrlen) throws LastErrorException;
+
+		Pointer mmap(Pointer addr, NativeLong length, int prot, int flags, int fd, NativeLong offset) throws LastErrorException;
+
+		int munmap(Pointer addr, NativeLong length) throws LastErrorException;
+
+		int poll(Pointer fds, int nfds, int timeout) throws LastErrorException;
+
+		int getsockopt(int fd, int level, int optname, Pointer optval, Pointer optlen) throws LastErrorException;
+
+		int close(int fd) throws LastErrorException;
+	}
+
+	private static final int AF_PACKET = 17;
+	private static final int SOCK_RAW = 3;
+	private static final int ETH_P_ALL = 0x0003;
+	private static final int SOL_PACKET = 263;
+	private static final int SOL_SOCKET = 1;
+	private static final int SO_ATTACH_FILTER = 26;
+	private static final int PACKET_RX_RING = 5;
+	private static final int PACKET_STATISTICS = 6;
+	private static final int PACKET_VERSION = 10;
+	private static final int TPACKET_V3 = 2;
+	private static final int PROT_READ = 0x1;
+	private static final int PROT_WRITE = 0x2;
+	private static final int MAP_SHARED = 0x01;
+	private static final short POLLIN = 0x1;
+	private static final short POLLERR = 0x8;
+	private static final int EINTR = 4;
+
+	private static final int TP_STATUS_KERNEL = 0;
+	private static final int TP_STATUS_USER = 1;
+
+	/** struct tpacket_block_desc, offsets of the tpacket_hdr_v1 fields */
+	private static final int BLOCK_STATUS = 8;
+	private static final int BLOCK_NUM_PKTS = 12;
+	private static final int BLOCK_OFFSET_TO_FIRST_PKT = 16;
+	/** struct tpacket3_hdr offsets */
+	private static final int PKT_NEXT_OFFSET = 0;
+	private static final int PKT_SEC = 4;
+	private static final int PKT_NSEC = 8;
+	private static final int PKT_SNAPLEN = 12;
+	private static final int PKT_LEN = 16;
+	private static final int PKT_MAC = 24;
+	private static final int PKT_NET = 26;
+
+	/** Block status is shared with the kernel, needs acquire/release semantic */
+	private static final VarHandle INT_VIEW = MethodHandles.byteBufferViewVarHandle(int[].class, ByteOrder.nativeOrder());
+
+	/** Default ring geometry: 64 blocks of 1MB, a block is handed back to user space at most every 50ms */
+	public static final int DEFAULT_BLOCK_SIZE = 1 << 20;
+	public static final int DEFAULT_BLOCK_NUMBER = 64;
+	private static final int FRAME_SIZE = 2048;
+	private static final int BLOCK_TIMEOUT_MS = 50;
+
+	private final int _fd;
+	private final int _blockSize;
+	private final int _blockNumber;
+	private final long _ringSize;
+	private final Pointer _ringPointer;
+	private final ByteBuffer _ring;
+	private final Memory _pollFd = new Memory(8);
+	private final Memory _stats = new Memory(12);
+	private final Memory _statsLength = new Memory(4);
+	private int _currentBlock;
+	private volatile boolean _closed;
+
+	/**
+	 * Open a socket on the given interface with the default ring geometry
+	 * @param ifIndex interface index
+	 * @throws IOException
+	 */
+	public LinuxPacketSocket(final int ifIndex) throws IOException {
+		this(ifIndex, DEFAULT_BLOCK_SIZE, DEFAULT_BLOCK_NUMBER);
+	}
+
+	/**
+	 * Constructor
+	 * @param ifIndex interface index
+	 * @param blockSize size of a block of the ring (multiple of the page size)
+	 * @param blockNumber number of blocks in the ring
+	 * @throws IOException
+	 */
+	public LinuxPacketSocket(final int ifIndex, final int blockSize, final int blockNumber) throws IOException {
+		_blockSize = blockSize;
+		_blockNumber = blockNumber;
+		_ringSize = (long) blockSize * blockNumber;
+		try {
+			_fd = LibC.INSTANCE.socket(AF_PACKET, SOCK_RAW, htons(ETH_P_ALL));
+		} catch (final LastErrorException e) {
+			throw new IOException("Failed to open AF_PACKET socket, errno " + e.getErrorCode(), e);
+		}
+		try {
+			final Memory version = new Memory(4);
+			version.setInt(0, TPACKET_V3);
+			LibC.INSTANCE.setsockopt(_fd, SOL_PACKET, PACKET_VERSION, version, 4);
+
+			// struct tpacket_req3
+			final Memory req = new Memory(28);
+			req.setInt(0, blockSize);
+			req.setInt(4, blockNumber);
+			req.setInt(8, FRAME_SIZE);
+			req.setInt(12, (blockSize / FRAME_SIZE) * blockNumber);
+			req.setInt(16, BLOCK_TIMEOUT_MS);
+			req.setInt(20, 0);
+			req.setInt(24, 0);
+			LibC.INSTANCE.setsockopt(_fd, SOL_PACKET, PACKET_RX_RING, req, 28);
+
+			_ringPointer = LibC.INSTANCE.mmap(null, new NativeLong(_ringSize), PROT_READ | PROT_WRITE, MAP_SHARED, _fd, new NativeLong(0));
+			_ring = _ringPointer.getByteBuffer(0, _ringSize).order(ByteOrder.nativeOrder());
+
+			// struct sockaddr_ll
+			final Memory addr = new Memory(20);
+			addr.clear();
+			addr.setShort(0, (short) AF_PACKET);
+			addr.setShort(2, (short) htons(ETH_P_ALL));
+			addr.setInt(4, ifIndex);
+			LibC.INSTANCE.bind(_fd, addr, 20);
+
+			// struct pollfd
+			_pollFd.setInt(0, _fd);
+			_pollFd.setShort(4, (short) (POLLIN | POLLERR));
+		} catch (final LastErrorException e) {
+			LibC.INSTANCE.close(_fd);
+			throw new IOException("Failed to setup the packet ring, errno " + e.getErrorCode(), e);
+		}
+	}
+
+	/**
+	 * Process the blocks released by the kernel, wait at most timeoutMs if none is available yet
+	 *
+	 * @param handler the frame handler
+	 * @param timeoutMs poll timeout
+	 * @return the number of frames processed
+	 * @throws IOException
+	 */
+	public synchronized int dispatch(final IFrameHandler handler, final int timeoutMs) throws IOException {
+		if (_closed) {
+			return 0;
+		}
+		int count = 0;
+		int blockOffset = _currentBlock * _blockSize;
+		if (((int) INT_VIEW.getAcquire(_ring, blockOffset + BLOCK_STATUS) & TP_STATUS_USER) == 0) {
+			poll(timeoutMs);
+		}
+		while (((int) INT_VIEW.getAcquire(_ring, blockOffset + BLOCK_STATUS) & TP_STATUS_USER) != 0) {
+			final int numPkts = _ring.getInt(blockOffset + BLOCK_NUM_PKTS);
+			int pktOffset = blockOffset + _ring.getInt(blockOffset + BLOCK_OFFSET_TO_FIRST_PKT);
+			for (int i = 0; i < numPkts; i++) {
+				handler.frame(_ring, pktOffset + (_ring.getShort(pktOffset + PKT_MAC) & 0xFFFF), pktOffset + (_ring.getShort(pktOffset + PKT_NET) & 0xFFFF),
+						_ring.getInt(pktOffset + PKT_SNAPLEN), _ring.getInt(pktOffset + PKT_LEN),
+						_ring.getInt(pktOffset + PKT_SEC) & 0xFFFFFFFFL, _ring.getInt(pktOffset + PKT_NSEC));
+				pktOffset += _ring.getInt(pktOffset + PKT_NEXT_OFFSET);
+			}
+			count += numPkts;
+			// give the block back to the kernel
+			INT_VIEW.setRelease(_ring, blockOffset + BLOCK_STATUS, TP_STATUS_KERNEL);
+			_currentBlock = (_currentBlock + 1) % _blockNumber;
+			blockOffset = _currentBlock * _blockSize;
+		}
+		return count;
+	}
+
+	/**
+	 * Attach a filter to the socket, the kernel drops the rejected frames before they are copied to the ring
+	 * @param program the program, compiled for the link header of the interface
+	 * @throws IOException
+	 */
+	public synchronized void attachFilter(final BpfProgram program) throws IOException {
+		if (_closed) {
+			return;
+		}
+		// struct sock_filter[]
+		final Memory filter = new Memory(8L * program.size());
+		for (int pc = 0; pc < program.size(); pc++) {
+			filter.setShort(8L * pc, (short) program.getCode(pc));
+			filter.setByte(8L * pc + 2, (byte) program.getJt(pc));
+			filter.setByte(8L * pc + 3, (byte) program.getJf(pc));
+			filter.setInt(8L * pc + 4, program.getK(pc));
+		}
+		// struct sock_fprog
+		final Memory fprog = new Memory(2L * Native.POINTER_SIZE);
+		fprog.clear();
+		fprog.setShort(0, (short) program.size());
+		fprog.setPointer(Native.POINTER_SIZE, filter);
+		try {
+			LibC.INSTANCE.setsockopt(_fd, SOL_SOCKET, SO_ATTACH_FILTER, fprog, (int) fprog.size());
+		} catch (final LastErrorException e) {
+			throw new IOException("Failed to attach the filter, errno " + e.getErrorCode(), e);
+		}
+	}
+
+	/**
+	 * Number of packets dropped by the kernel since the last call, because the ring was full
+	 * @return the number of drops
+	 */
+	public synchronized long getDrops() {
+		if (_closed) {
+			return 0;
+		}
+		// struct tpacket_stats_v3, reading the statistics resets them
+		_statsLength.setInt(0, 12);
+		try {
+			LibC.INSTANCE.getsockopt(_fd, SOL_PACKET, PACKET_STATISTICS, _stats, _statsLength);
+		} catch (final LastErrorException e) {
+			return 0;
+		}
+		return _stats.getInt(4) & 0xFFFFFFFFL;
+	}
+
+	private void poll(final int timeoutMs) throws IOException {
+		try {
+			_pollFd.setShort(6, (short) 0);
+			LibC.INSTANCE.poll(_pollFd, 1, timeoutMs);
+		} catch (final LastErrorException e) {
+			if (e.getErrorCode() != EINTR) {
+				throw new IOException("Poll failed on packet socket, errno " + e.getErrorCode(), e);
+			}
+		}
+	}
+
+	/**
+	 * Unmap the ring and close the socket, waits for a running dispatch to return
+	 * @see java.io.Closeable#close()
+	 */
+	@Override
+	public synchronized void close() {
+		if (!_closed) {
+			_closed = true;
+			try {
+				LibC.INSTANCE.munmap(_ringPointer, new NativeLong(_ringSize));
+			} finally {
+				LibC.INSTANCE.close(_fd);
+			}
+		}
+	}
+
+	/**
+	 * @return true if the current process is able to open a packet socket
+	 */
+	public static boolean isSupported() {
+		if (!Platform.isLinux()) {
+			return false;
+		}
+		try {
+			LibC.INSTANCE.close(LibC.INSTANCE.socket(AF_PACKET, SOCK_RAW, htons(ETH_P_ALL)));
+			return true;
+		} catch (final Throwable e) {
+			return false;
+		}
+	}
+
+	private static int htons(final int value) {
+		return ByteOrder.nativeOrder() == ByteOrder.LITTLE_ENDIAN ? ((value & 0xFF) << 8) | ((value >> 8) & 0xFF) : value;
+	}
+}
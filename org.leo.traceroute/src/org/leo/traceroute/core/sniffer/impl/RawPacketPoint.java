@@ -0,0 +1,157 @@
+/**
+ * Open Visual Trace Route
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.leo.traceroute.core.sniffer.impl;
+
+import java.nio.ByteBuffer;
+
+import org.leo.traceroute.core.sniffer.AbstractPacketPoint;
+import org.leo.traceroute.core.sniffer.decoder.PacketDecoder;
+
+/**
+ * RawPacketPoint $Id$
+ * <pre>
+ * Packet point backed by a copy of the captured link layer frame.
+ * The headers are only decoded again when the payload is displayed.
+ * </pre>
+ * @author Leo Lewis
+ */
+public class RawPacketPoint extends AbstractPacketPoint {
+
+	private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+	private byte[] _frame;
+	private int _netOffset;
+	private int _wireLength;
+	private Integer _sourcePort;
+	private Integer _destPort;
+	private String _sourceIp;
+
+	/**
+	 * Set the packet data
+	 * @param frame captured bytes of the frame, null if loaded on demand
+	 * @param netOffset offset of the network header in the frame
+	 * @param wireLength length of the packet on the wire
+	 * @param protocol protocol
+	 * @param sourceIp source address
+	 * @param sourcePort source port, null if not TCP/UDP
+	 * @param destPort dest port, null if not TCP/UDP
+	 */
+	public void setPacket(final byte[] frame, final int netOffset, final int wireLength, final Protocol protocol, final String sourceIp,
+			final Integer sourcePort, final Integer destPort) {
+		_frame = frame;
+		_netOffset = netOffset;
+		_wireLength = wireLength;
+		_sourceIp = sourceIp;
+		_sourcePort = sourcePort;
+		_destPort = destPort;
+		setProtocol(protocol);
+	}
+
+	/**
+	 * @see AbstractPacketPoint#getDestPort()
+	 */
+	@Override
+	public Integer getDestPort() {
+		return _destPort;
+	}
+
+	/**
+	 * @see AbstractPacketPoint#getSourcePort()
+	 */
+	@Override
+	public Integer getSourcePort() {
+		return _sourcePort;
+	}
+
+	/**
+	 * @see AbstractPacketPoint#getDataLength()
+	 */
+	@Override
+	public int getDataLength() {
+		return _wireLength;
+	}
+
+	/**
+	 * Return the captured frame
+	 * @return the frame
+	 */
+	public byte[] getFrame() {
+		return _frame;
+	}
+
+	/**
+	 * Return the value of the field netOffset
+	 * @return the value of netOffset
+	 */
+	public int getNetOffset() {
+		return _netOffset;
+	}
+
+	/**
+	 * Return the value of the field sourceIp
+	 * @return the value of sourceIp
+	 */
+	public String getSourceIp() {
+		return _sourceIp;
+	}
+
+	/**
+	 * @see AbstractPacketPoint#buildPayload()
+	 */
+	@Override
+	protected String buildPayload() {
+		final StringBuilder sb = new StringBuilder();
+		sb.append(getProtocol()).append(" ").append(_sourceIp);
+		if (_sourcePort != null) {
+			sb.append(":").append(_sourcePort);
+		}
+		sb.append(" > ").append(getIp());
+		if (_destPort != null) {
+			sb.append(":").append(_destPort);
+		}
+		sb.append(" length ").append(_wireLength).append("\n");
+		final byte[] frame = getFrame();
+		if (frame != null) {
+			final PacketDecoder decoder = new PacketDecoder();
+			if (decoder.decode(ByteBuffer.wrap(frame), 0, _netOffset, frame.length)) {
+				decoder.describe(sb);
+			}
+		}
+		for (int line = 0; frame != null && line < frame.length; line += 16) {
+			final int end = Math.min(line + 16, frame.length);
+			for (int i = 0; i < 4; i++) {
+				sb.append(HEX[(line >> (12 - 4 * i)) & 0xF]);
+			}
+			sb.append("  ");
+			for (int i = line; i < line + 16; i++) {
+				if (i < end) {
+					sb.append(HEX[(frame[i] >> 4) & 0xF]).append(HEX[frame[i] & 0xF]).append(' ');
+				} else {
+					sb.append("   ");
+				}
+			}
+			sb.append(' ');
+			for (int i = line; i < end; i++) {
+				final char c = (char) (frame[i] & 0xFF);
+				sb.append(c >= 0x20 && c < 0x7F ? c : '.');
+			}
+			sb.append("\n");
+		}
+		return sb.toString();
+	}
+}
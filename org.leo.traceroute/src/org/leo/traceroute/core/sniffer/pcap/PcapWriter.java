@@ -0,0 +1,257 @@
+/**
+ * Open Visual Trace Route
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.leo.traceroute.core.sniffer.pcap;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+
+/**
+ * PcapWriter $Id$
+ * <pre>
+ * Streaming writer of the captured frames to pcap or pcapng files, readable by tcpdump and Wireshark.
+ * The records are staged in a direct buffer and written to the channel by large blocks aligned on the
+ * file offset, only the tail of a file is written unaligned, when it is closed.
+ * A new file is started when the current one reaches the maximum size or age.
+ * Timestamps are written with a nanosecond resolution.
+ * </pre>
+ * @author Leo Lewis
+ */
+public class PcapWriter implements Closeable {
+
+	/** Format of the files */
+	public enum Format {
+		PCAP(".pcap"),
+		PCAPNG(".pcapng");
+
+		private final String _extension;
+
+		private Format(final String extension) {
+			_extension = extension;
+		}
+
+		/**
+		 * Return the value of the field extension
+		 * @return the value of extension
+		 */
+		public String getExtension() {
+			return _extension;
+		}
+	}
+
+	/** Frames starting with an Ethernet header */
+	public static final int LINKTYPE_ETHERNET = 1;
+	/** Packets starting with the IP header */
+	public static final int LINKTYPE_RAW = 101;
+
+	public static final int SNAP_LENGTH = 262144;
+
+	private static final int BUFFER_SIZE = 1 << 20;
+	private static final int BLOCK_SIZE = 1 << 16;
+
+	/** pcap, nanosecond timestamps */
+	private static final int PCAP_MAGIC = 0xa1b23c4d;
+	private static final int PCAP_HEADER_LENGTH = 24;
+	private static final int PCAP_RECORD_LENGTH = 16;
+
+	/** pcapng blocks */
+	private static final int SHB_TYPE = 0x0A0D0D0A;
+	private static final int SHB_MAGIC = 0x1A2B3C4D;
+	private static final int SHB_LENGTH = 28;
+	private static final int IDB_TYPE = 1;
+	private static final int IDB_LENGTH = 32;
+	private static final int EPB_TYPE = 6;
+	private static final int EPB_LENGTH = 32;
+	private static final short OPT_END = 0;
+	private static final short IF_TSRESOL = 9;
+
+	private final Path _directory;
+	private final String _prefix;
+	private final Format _format;
+	private final int _linkType;
+	private final long _maxFileBytes;
+	private final long _maxFileMillis;
+	private final ByteBuffer _buffer = ByteBuffer.allocateDirect(BUFFER_SIZE).order(ByteOrder.nativeOrder());
+
+	private FileChannel _channel;
+	private Path _file;
+	private long _fileBytes;
+	private long _fileStart;
+	private int _fileIndex;
+	private long _packets;
+	private boolean _closed;
+
+	/**
+	 * Constructor, the first file is created by the first packet
+	 * @param directory directory of the files
+	 * @param prefix prefix of the file names
+	 * @param format format
+	 * @param linkType link type of the frames, LINKTYPE_ETHERNET or LINKTYPE_RAW
+	 * @param maxFileBytes size of a file before starting the next one, 0 for no limit
+	 * @param maxFileMillis age of a file before starting the next one, 0 for no limit
+	 */
+	public PcapWriter(final Path directory, final String prefix, final Format format, final int linkType, final long maxFileBytes,
+			final long maxFileMillis) {
+		_directory = directory;
+		_prefix = prefix;
+		_format = format;
+		_linkType = linkType;
+		_maxFileBytes = maxFileBytes;
+		_maxFileMillis = maxFileMillis;
+	}
+
+	/**
+	 * Write a captured frame
+	 * @param frame the captured bytes, from the link layer header
+	 * @param netOffset offset of the network header in the frame
+	 * @param wireLength length of the frame on the wire
+	 * @param tsSec capture timestamp (s)
+	 * @param tsNsec capture timestamp (ns part)
+	 * @throws IOException
+	 */
+	public synchronized void write(final byte[] frame, final int netOffset, final int wireLength, final long tsSec, final int tsNsec)
+			throws IOException {
+		if (_closed) {
+			return;
+		}
+		// raw IP files do not keep the link header
+		final int offset = _linkType == LINKTYPE_RAW ? netOffset : 0;
+		final int length = Math.min(frame.length - offset, SNAP_LENGTH);
+		final int origLength = Math.max(wireLength - offset, length);
+		final long now = tsSec * 1000 + tsNsec / 1000000;
+		if (_channel == null || (_maxFileBytes > 0 && _fileBytes >= _maxFileBytes) || (_maxFileMillis > 0 && now - _fileStart >= _maxFileMillis)) {
+			rotate(now);
+		}
+		final int padded = _format == Format.PCAPNG ? (length + 3) & ~3 : length;
+		final int recordLength = (_format == Format.PCAPNG ? EPB_LENGTH : PCAP_RECORD_LENGTH) + padded;
+		reserve(recordLength);
+		if (_format == Format.PCAPNG) {
+			final long ts = tsSec * 1000000000L + tsNsec;
+			_buffer.putInt(EPB_TYPE).putInt(recordLength).putInt(0).putInt((int) (ts >>> 32)).putInt((int) ts).putInt(length).putInt(origLength);
+		} else {
+			_buffer.putInt((int) tsSec).putInt(tsNsec).putInt(length).putInt(origLength);
+		}
+		_buffer.put(frame, offset, length);
+		for (int i = length; i < padded; i++) {
+			_buffer.put((byte) 0);
+		}
+		if (_format == Format.PCAPNG) {
+			_buffer.putInt(recordLength);
+		}
+		_fileBytes += recordLength;
+		_packets++;
+	}
+
+	/**
+	 * Close the current file and start a new one
+	 * @param now time of the new file
+	 */
+	private void rotate(final long now) throws IOException {
+		closeFile();
+		Files.createDirectories(_directory);
+		// the index keeps the names unique when several files are started in the same second
+		_file = _directory.resolve(_prefix + "-" + new SimpleDateFormat("yyyyMMdd-HHmmss").format(new Date(now)) + "-" + (_fileIndex++)
+				+ _format.getExtension());
+		_channel = FileChannel.open(_file, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+		_fileStart = now;
+		if (_format == Format.PCAPNG) {
+			_buffer.putInt(SHB_TYPE).putInt(SHB_LENGTH).putInt(SHB_MAGIC).putShort((short) 1).putShort((short) 0).putLong(-1).putInt(SHB_LENGTH);
+			_buffer.putInt(IDB_TYPE).putInt(IDB_LENGTH).putShort((short) _linkType).putShort((short) 0).putInt(SNAP_LENGTH);
+			_buffer.putShort(IF_TSRESOL).putShort((short) 1).put((byte) 9).put((byte) 0).putShort((short) 0);
+			_buffer.putShort(OPT_END).putShort((short) 0).putInt(IDB_LENGTH);
+			_fileBytes = SHB_LENGTH + IDB_LENGTH;
+		} else {
+			_buffer.putInt(PCAP_MAGIC).putShort((short) 2).putShort((short) 4).putInt(0).putInt(0).putInt(SNAP_LENGTH).putInt(_linkType);
+			_fileBytes = PCAP_HEADER_LENGTH;
+		}
+	}
+
+	/**
+	 * Make room in the buffer for a record, by writing the full blocks
+	 */
+	private void reserve(final int length) throws IOException {
+		if (_buffer.remaining() >= length) {
+			return;
+		}
+		final int end = _buffer.position();
+		final int aligned = end & ~(BLOCK_SIZE - 1);
+		_buffer.flip().limit(aligned);
+		while (_buffer.hasRemaining()) {
+			_channel.write(_buffer);
+		}
+		_buffer.limit(end);
+		_buffer.compact();
+	}
+
+	/**
+	 * Write all the buffered records
+	 */
+	private void drain() throws IOException {
+		_buffer.flip();
+		while (_buffer.hasRemaining()) {
+			_channel.write(_buffer);
+		}
+		_buffer.clear();
+	}
+
+	private void closeFile() throws IOException {
+		if (_channel != null) {
+			try {
+				drain();
+			} finally {
+				_channel.close();
+				_channel = null;
+			}
+		}
+	}
+
+	/**
+	 * Return the current file, null if no packet was written yet
+	 * @return the value of file
+	 */
+	public synchronized Path getFile() {
+		return _file;
+	}
+
+	/**
+	 * Return the number of packets written
+	 * @return the value of packets
+	 */
+	public synchronized long getPackets() {
+		return _packets;
+	}
+
+	/**
+	 * Write the buffered records and close the current file, the next writes are ignored
+	 * @see java.io.Closeable#close()
+	 */
+	@Override
+	public synchronized void close() throws IOException {
+		if (!_closed) {
+			_closed = true;
+			closeFile();
+		}
+	}
+}
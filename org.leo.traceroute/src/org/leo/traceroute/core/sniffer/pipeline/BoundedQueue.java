@@ -0,0 +1,125 @@
+/**
+ * Open Visual Trace Route
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.leo.traceroute.core.sniffer.pipeline;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * BoundedQueue $Id$
+ * <pre>
+ * Lock-free bounded multi-producers/multi-consumers queue (D. Vyukov array based queue).
+ * Each cell holds a sequence number telling whether the cell is ready to be written or read
+ * for the current lap, so producers and consumers only contend on their own position counter.
+ * </pre>
+ * @author Leo Lewis
+ */
+public class BoundedQueue<E> {
+
+	private final int _mask;
+	private final AtomicLongArray _sequences;
+	private final AtomicReferenceArray<E> _buffer;
+	private final AtomicLong _enqueuePos = new AtomicLong();
+	private final AtomicLong _dequeuePos = new AtomicLong();
+
+	/**
+	 * Constructor
+	 * @param capacity capacity of the queue, rounded to the next power of 2
+	 */
+	public BoundedQueue(final int capacity) {
+		final int size = capacity <= 2 ? 2 : Integer.highestOneBit(capacity - 1) << 1;
+		_mask = size - 1;
+		_sequences = new AtomicLongArray(size);
+		_buffer = new AtomicReferenceArray<>(size);
+		for (int i = 0; i < size; i++) {
+			_sequences.set(i, i);
+		}
+	}
+
+	/**
+	 * Add an element to the queue
+	 * @param e the element
+	 * @return false if the queue is full
+	 */
+	public boolean offer(final E e) {
+		long pos = _enqueuePos.get();
+		int index;
+		for (;;) {
+			index = (int) (pos & _mask);
+			final long dif = _sequences.get(index) - pos;
+			if (dif == 0) {
+				if (_enqueuePos.compareAndSet(pos, pos + 1)) {
+					break;
+				}
+				pos = _enqueuePos.get();
+			} else if (dif < 0) {
+				return false;
+			} else {
+				pos = _enqueuePos.get();
+			}
+		}
+		_buffer.lazySet(index, e);
+		// publish the element to the consumers
+		_sequences.set(index, pos + 1);
+		return true;
+	}
+
+	/**
+	 * Remove the head of the queue
+	 * @return the element, null if the queue is empty
+	 */
+	public E poll() {
+		long pos = _dequeuePos.get();
+		int index;
+		for (;;) {
+			index = (int) (pos & _mask);
+			final long dif = _sequences.get(index) - (pos + 1);
+			if (dif == 0) {
+				if (_dequeuePos.compareAndSet(pos, pos + 1)) {
+					break;
+				}
+				pos = _dequeuePos.get();
+			} else if (dif < 0) {
+				return null;
+			} else {
+				pos = _dequeuePos.get();
+			}
+		}
+		final E e = _buffer.get(index);
+		_buffer.lazySet(index, null);
+		// give the cell back to the producers for the next lap
+		_sequences.set(index, pos + _mask + 1);
+		return e;
+	}
+
+	/**
+	 * @return approximate number of elements in the queue
+	 */
+	public int size() {
+		final long size = _enqueuePos.get() - _dequeuePos.get();
+		return (int) Math.max(0, Math.min(size, capacity()));
+	}
+
+	/**
+	 * @return capacity of the queue
+	 */
+	public int capacity() {
+		return _mask + 1;
+	}
+}
@@ -0,0 +1,115 @@
+/**
+ * Open Visual Trace Route
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.leo.traceroute.core.sniffer.pipeline;
+
+import org.leo.traceroute.core.sniffer.AbstractPacketPoint;
+
+/**
+ * PacketItem $Id$
+ * <pre>
+ * A captured frame travelling through the stages of the packet pipeline.
+ * The decode stage builds the packet point, the next stages complete it.
+ * </pre>
+ * @author Leo Lewis
+ */
+public class PacketItem {
+
+	private final byte[] _frame;
+	private final int _netOffset;
+	private final int _wireLength;
+	private final long _tsSec;
+	private final int _tsNsec;
+	private AbstractPacketPoint _point;
+
+	/** Order of the packet at the enrich stage */
+	long _seq;
+	/** Time the packet entered the current stage queue */
+	long _enqueueNanos;
+
+	/**
+	 * Constructor
+	 * @param frame captured bytes, from the link layer header
+	 * @param netOffset offset of the network layer header in the frame
+	 * @param wireLength length of the packet on the wire
+	 * @param tsSec capture timestamp (s)
+	 * @param tsNsec capture timestamp (ns part)
+	 */
+	public PacketItem(final byte[] frame, final int netOffset, final int wireLength, final long tsSec, final int tsNsec) {
+		_frame = frame;
+		_netOffset = netOffset;
+		_wireLength = wireLength;
+		_tsSec = tsSec;
+		_tsNsec = tsNsec;
+	}
+
+	/**
+	 * Return the value of the field frame
+	 * @return the value of frame
+	 */
+	public byte[] getFrame() {
+		return _frame;
+	}
+
+	/**
+	 * Return the value of the field netOffset
+	 * @return the value of netOffset
+	 */
+	public int getNetOffset() {
+		return _netOffset;
+	}
+
+	/**
+	 * Return the value of the field wireLength
+	 * @return the value of wireLength
+	 */
+	public int getWireLength() {
+		return _wireLength;
+	}
+
+	/**
+	 * Return the value of the field tsSec
+	 * @return the value of tsSec
+	 */
+	public long getTsSec() {
+		return _tsSec;
+	}
+
+	/**
+	 * Return the value of the field tsNsec
+	 * @return the value of tsNsec
+	 */
+	public int getTsNsec() {
+		return _tsNsec;
+	}
+
+	/**
+	 * Return the value of the field point
+	 * @return the value of point
+	 */
+	public AbstractPacketPoint getPoint() {
+		return _point;
+	}
+
+	/**
+	 * Set the value of the field point
+	 * @param point the new point to set
+	 */
+	public void setPoint(final AbstractPacketPoint point) {
+		_point = point;
+	}
+}
@@ -0,0 +1,373 @@
+/**
+ * Open Visual Trace Route
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.leo.traceroute.core.sniffer.pipeline;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.locks.LockSupport;
+import java.util.stream.Collectors;
+
+import org.leo.traceroute.core.ExecutionRuntime;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * PacketPipeline $Id$
+ * <pre>
+ * Packet ingestion pipeline : capture -> decode -> enrich -> aggregate -> publish.
+ * Stages are joined by bounded lock-free queues.
+ * The capture thread never waits : if the decode or the enrich stage cannot keep up, packets are dropped
+ * at the input of the stage and accounted in its counters.
+ * The enrich stage (geo/DNS) runs on several threads, the aggregate stage restores the capture order
+ * before handing the packets to the publish stage. Aggregate and publish apply backpressure to the
+ * previous stages instead of dropping, a packet that reached the enrich stage is never lost.
+ * The decode stage waits before sending a packet more than the reorder window ahead of the next one
+ * to aggregate, so a packet slow to enrich holds the stages before it instead of overflowing the window.
+ * </pre>
+ * @author Leo Lewis
+ */
+public class PacketPipeline {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(PacketPipeline.class);
+
+	/**
+	 * Processing of each stage
+	 */
+	public interface IPacketProcessor {
+
+		/**
+		 * Decode the frame and build the packet point
+		 * @return false if the packet is rejected
+		 */
+		boolean decode(PacketItem item) throws Exception;
+
+		/**
+		 * Enrich the packet point, might be called concurrently
+		 * @return false if the packet is rejected
+		 */
+		boolean enrich(PacketItem item) throws Exception;
+
+		/**
+		 * Aggregate the packet, called in the capture order
+		 * @return false if the packet is rejected
+		 */
+		boolean aggregate(PacketItem item);
+
+		/**
+		 * Publish the packet
+		 */
+		void publish(PacketItem item);
+	}
+
+	public static final int DEFAULT_QUEUE_CAPACITY = 4096;
+
+	private static final int SPIN_TRIES = 100;
+	private static final int YIELD_TRIES = 200;
+	/** Park of an idle stage, doubled up to the max while it stays idle */
+	private static final long MIN_PARK_NANOS = 100_000;
+	private static final long MAX_PARK_NANOS = 5_000_000;
+	private static final int PARK_STEPS = 6;
+	/** Wait for each stage thread to end when stopped */
+	private static final long STOP_TIMEOUT_MS = 2000;
+
+	private final IPacketProcessor _processor;
+	private final int _enrichThreads;
+	private final BoundedQueue<PacketItem> _decodeQueue;
+	private final BoundedQueue<PacketItem> _enrichQueue;
+	private final BoundedQueue<PacketItem> _aggregateQueue;
+	private final BoundedQueue<PacketItem> _publishQueue;
+	private final StageStats _captureStats;
+	private final StageStats _decodeStats;
+	private final StageStats _enrichStats;
+	private final StageStats _aggregateStats;
+	private final StageStats _publishStats;
+	private final List<Thread> _threads = new ArrayList<>();
+	private volatile boolean _running;
+
+	/** Size of the window of sequences in which the aggregate stage restores the order */
+	private final int _reorderSize;
+	/** Next enrich sequence, only accessed by the decode thread */
+	private long _nextSeq;
+	/** Next sequence to aggregate, written by the aggregate thread */
+	private volatile long _nextAggregateSeq;
+
+	/**
+	 * Constructor
+	 * @param processor stages processing
+	 * @param enrichThreads number of threads of the enrich stage
+	 * @param queueCapacity capacity of each stage queue
+	 */
+	public PacketPipeline(final IPacketProcessor processor, final int enrichThreads, final int queueCapacity) {
+		_processor = processor;
+		_enrichThreads = Math.max(1, enrichThreads);
+		_decodeQueue = new BoundedQueue<>(queueCapacity);
+		_enrichQueue = new BoundedQueue<>(queueCapacity);
+		_aggregateQueue = new BoundedQueue<>(queueCapacity);
+		_publishQueue = new BoundedQueue<>(queueCapacity);
+		_captureStats = new StageStats("capture", null);
+		_decodeStats = new StageStats("decode", _decodeQueue);
+		_enrichStats = new StageStats("enrich", _enrichQueue);
+		_aggregateStats = new StageStats("aggregate", _aggregateQueue);
+		_publishStats = new StageStats("publish", _publishQueue);
+		_reorderSize = Integer.highestOneBit(_enrichQueue.capacity() + _enrichThreads + _aggregateQueue.capacity()) << 1;
+	}
+
+	/**
+	 * Start the stages threads, a pipeline can only be started once
+	 * @param runtime runtime starting the threads
+	 */
+	public synchronized void start(final ExecutionRuntime runtime) {
+		if (!_threads.isEmpty()) {
+			return;
+		}
+		_running = true;
+		_threads.add(runtime.startThread("sniffer-decode", this::runDecode));
+		for (int i = 0; i < _enrichThreads; i++) {
+			_threads.add(runtime.startThread("sniffer-enrich-" + i, this::runEnrich));
+		}
+		_threads.add(runtime.startThread("sniffer-aggregate", this::runAggregate));
+		_threads.add(runtime.startThread("sniffer-publish", this::runPublish));
+	}
+
+	/**
+	 * Stop the stages and wait for their threads to end, the packets still in the pipeline are discarded
+	 */
+	public synchronized void stop() {
+		if (!_running) {
+			return;
+		}
+		_running = false;
+		for (final Thread thread : _threads) {
+			LockSupport.unpark(thread);
+		}
+		for (final Thread thread : _threads) {
+			if (thread == Thread.currentThread()) {
+				continue;
+			}
+			try {
+				thread.join(STOP_TIMEOUT_MS);
+			} catch (final InterruptedException e) {
+				Thread.currentThread().interrupt();
+				break;
+			}
+			if (thread.isAlive()) {
+				LOGGER.warn("Stage {} did not stop in {}ms", thread.getName(), STOP_TIMEOUT_MS);
+			}
+		}
+		LOGGER.info("Pipeline stopped\n" + getStats().stream().map(StageStats::toString).collect(Collectors.joining("\n")));
+	}
+
+	/**
+	 * Capture stage output : offer a captured packet to the decode stage, never blocks
+	 * @param item the packet
+	 * @return false if the packet was dropped
+	 */
+	public boolean offer(final PacketItem item) {
+		_captureStats.processed(false);
+		return push(_decodeQueue, _decodeStats, item);
+	}
+
+	/**
+	 * @return the counters of the capture stage, updated by the capture thread
+	 */
+	public StageStats getCaptureStats() {
+		return _captureStats;
+	}
+
+	/**
+	 * @return the counters of all the stages
+	 */
+	public List<StageStats> getStats() {
+		return Arrays.asList(_captureStats, _decodeStats, _enrichStats, _aggregateStats, _publishStats);
+	}
+
+	/**
+	 * @return true if the pipeline is running
+	 */
+	public boolean isRunning() {
+		return _running;
+	}
+
+	private void runDecode() {
+		int idle = 0;
+		while (_running) {
+			final PacketItem item = pull(_decodeQueue, _decodeStats);
+			if (item == null) {
+				idle = idle(idle);
+				continue;
+			}
+			idle = 0;
+			final boolean accepted = process(() -> _processor.decode(item));
+			_decodeStats.processed(!accepted);
+			if (accepted && awaitReorderWindow()) {
+				item._seq = _nextSeq;
+				if (push(_enrichQueue, _enrichStats, item)) {
+					_nextSeq++;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Wait for the next sequence to be in the reorder window of the aggregate stage
+	 * @return false if the pipeline was stopped
+	 */
+	private boolean awaitReorderWindow() {
+		int idle = 0;
+		while (_nextSeq - _nextAggregateSeq >= _reorderSize) {
+			if (!_running) {
+				return false;
+			}
+			idle = idle(idle);
+		}
+		return true;
+	}
+
+	private void runEnrich() {
+		int idle = 0;
+		while (_running) {
+			final PacketItem item = pull(_enrichQueue, _enrichStats);
+			if (item == null) {
+				idle = idle(idle);
+				continue;
+			}
+			idle = 0;
+			final boolean accepted = process(() -> _processor.enrich(item));
+			_enrichStats.processed(!accepted);
+			if (!accepted) {
+				// still forwarded to keep the sequence without gap
+				item.setPoint(null);
+			}
+			put(_aggregateQueue, _aggregateStats, item);
+		}
+	}
+
+	private void runAggregate() {
+		// the decode stage doesn't send a sequence past the window, the slots are never overwritten
+		final PacketItem[] reorder = new PacketItem[_reorderSize];
+		final int mask = reorder.length - 1;
+		long next = 0;
+		int idle = 0;
+		while (_running) {
+			final PacketItem item = pull(_aggregateQueue, _aggregateStats);
+			if (item == null) {
+				idle = idle(idle);
+				continue;
+			}
+			idle = 0;
+			reorder[(int) (item._seq & mask)] = item;
+			PacketItem ready;
+			while (_running && (ready = reorder[(int) (next & mask)]) != null && ready._seq == next) {
+				reorder[(int) (next & mask)] = null;
+				next++;
+				_nextAggregateSeq = next;
+				final PacketItem fready = ready;
+				final boolean accepted = ready.getPoint() != null && process(() -> _processor.aggregate(fready));
+				_aggregateStats.processed(!accepted);
+				if (accepted) {
+					put(_publishQueue, _publishStats, ready);
+				}
+			}
+		}
+	}
+
+	private void runPublish() {
+		int idle = 0;
+		while (_running) {
+			final PacketItem item = pull(_publishQueue, _publishStats);
+			if (item == null) {
+				idle = idle(idle);
+				continue;
+			}
+			idle = 0;
+			process(() -> {
+				_processor.publish(item);
+				return true;
+			});
+			_publishStats.processed(false);
+		}
+	}
+
+	private static boolean push(final BoundedQueue<PacketItem> queue, final StageStats stats, final PacketItem item) {
+		stats.received();
+		item._enqueueNanos = System.nanoTime();
+		if (queue.offer(item)) {
+			return true;
+		}
+		stats.dropped(1);
+		return false;
+	}
+
+	/**
+	 * Blocking offer, wait for the next stage to make room
+	 */
+	private void put(final BoundedQueue<PacketItem> queue, final StageStats stats, final PacketItem item) {
+		stats.received();
+		item._enqueueNanos = System.nanoTime();
+		int idle = 0;
+		while (!queue.offer(item)) {
+			if (!_running) {
+				return;
+			}
+			idle = idle(idle);
+		}
+	}
+
+	private static PacketItem pull(final BoundedQueue<PacketItem> queue, final StageStats stats) {
+		final PacketItem item = queue.poll();
+		if (item != null) {
+			stats.lag(System.nanoTime() - item._enqueueNanos);
+		}
+		return item;
+	}
+
+	private static boolean process(final IStageCall call) {
+		try {
+			return call.call();
+		} catch (final Exception e) {
+			LOGGER.error("Error while processing packet", e);
+			return false;
+		}
+	}
+
+	/**
+	 * Spin, then yield, then park longer and longer
+	 * @param idle number of tries without work
+	 * @return the next number of tries
+	 */
+	private static int idle(final int idle) {
+		if (idle < SPIN_TRIES) {
+			Thread.onSpinWait();
+		} else if (idle < YIELD_TRIES) {
+			Thread.yield();
+		} else {
+			final int step = idle - YIELD_TRIES;
+			LockSupport.parkNanos(Math.min(MIN_PARK_NANOS << step, MAX_PARK_NANOS));
+			if (step >= PARK_STEPS) {
+				return idle;
+			}
+		}
+		return idle + 1;
+	}
+
+	@FunctionalInterface
+	private interface IStageCall {
+		boolean call() throws Exception;
+	}
+}
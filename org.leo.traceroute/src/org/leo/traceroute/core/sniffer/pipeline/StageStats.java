@@ -0,0 +1,152 @@
+/**
+ * Open Visual Trace Route
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.leo.traceroute.core.sniffer.pipeline;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * StageStats $Id$
+ * <pre>
+ * Counters of a stage of the packet pipeline.
+ * The lag is the time spent by a packet in the input queue of the stage before being processed.
+ * </pre>
+ * @author Leo Lewis
+ */
+public class StageStats {
+
+	private final String _name;
+	private final BoundedQueue<?> _queue;
+	private final AtomicLong _received = new AtomicLong();
+	private final AtomicLong _dropped = new AtomicLong();
+	private final AtomicLong _processed = new AtomicLong();
+	private final AtomicLong _filtered = new AtomicLong();
+	private final AtomicLong _lastLagNanos = new AtomicLong();
+	private final AtomicLong _maxLagNanos = new AtomicLong();
+
+	/**
+	 * Constructor
+	 * @param name name of the stage
+	 * @param queue input queue of the stage, null if the stage has no queue
+	 */
+	public StageStats(final String name, final BoundedQueue<?> queue) {
+		_name = name;
+		_queue = queue;
+	}
+
+	/**
+	 * A packet is offered to the stage
+	 */
+	public void received() {
+		_received.incrementAndGet();
+	}
+
+	/**
+	 * Packets dropped before being processed by the stage
+	 * @param count number of packets
+	 */
+	public void dropped(final long count) {
+		_dropped.addAndGet(count);
+	}
+
+	/**
+	 * A packet is processed by the stage
+	 * @param filtered if the packet was rejected by the stage
+	 */
+	public void processed(final boolean filtered) {
+		_processed.incrementAndGet();
+		if (filtered) {
+			_filtered.incrementAndGet();
+		}
+	}
+
+	/**
+	 * Time spent by the last packet in the input queue of the stage
+	 * @param lagNanos the time (ns)
+	 */
+	public void lag(final long lagNanos) {
+		_lastLagNanos.lazySet(lagNanos);
+		long max;
+		while (lagNanos > (max = _maxLagNanos.get()) && !_maxLagNanos.compareAndSet(max, lagNanos)) {
+			// retry
+		}
+	}
+
+	/**
+	 * Return the value of the field name
+	 * @return the value of name
+	 */
+	public String getName() {
+		return _name;
+	}
+
+	/**
+	 * @return number of packets offered to the stage
+	 */
+	public long getReceived() {
+		return _received.get();
+	}
+
+	/**
+	 * @return number of packets dropped because the stage input queue was full
+	 */
+	public long getDropped() {
+		return _dropped.get();
+	}
+
+	/**
+	 * @return number of packets processed by the stage
+	 */
+	public long getProcessed() {
+		return _processed.get();
+	}
+
+	/**
+	 * @return number of packets rejected by the stage (capture filter)
+	 */
+	public long getFiltered() {
+		return _filtered.get();
+	}
+
+	/**
+	 * @return number of packets waiting in the stage input queue
+	 */
+	public int getQueueDepth() {
+		return _queue == null ? 0 : _queue.size();
+	}
+
+	/**
+	 * @return queue lag of the last processed packet (ms)
+	 */
+	public long getLastLagMs() {
+		return TimeUnit.NANOSECONDS.toMillis(_lastLagNanos.get());
+	}
+
+	/**
+	 * @return max queue lag since the beginning of the capture (ms)
+	 */
+	public long getMaxLagMs() {
+		return TimeUnit.NANOSECONDS.toMillis(_maxLagNanos.get());
+	}
+
+	@Override
+	public String toString() {
+		return _name + " received=" + getReceived() + " dropped=" + getDropped() + " processed=" + getProcessed() + " filtered=" + getFiltered()
+				+ (_queue == null ? "" : " queue=" + getQueueDepth() + "/" + _queue.capacity()) + " lag=" + getLastLagMs() + "ms maxLag=" + getMaxLagMs() + "ms";
+	}
+}
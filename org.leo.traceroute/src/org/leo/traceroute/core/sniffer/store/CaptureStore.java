@@ -0,0 +1,279 @@
+/**
+ * Open Visual Trace Route
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.leo.traceroute.core.sniffer.store;
+
+import java.io.Closeable;
+import java.nio.ByteBuffer;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.RandomAccess;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import org.leo.traceroute.core.sniffer.AbstractPacketPoint;
+import org.leo.traceroute.core.sniffer.AbstractPacketPoint.Protocol;
+import org.leo.traceroute.core.sniffer.impl.RawPacketPoint;
+
+/**
+ * CaptureStore $Id$
+ * <pre>
+ * Capture packets stored as fixed width off-heap records, strings are referenced through a dictionary
+ * and the frames are stored in a separate area. Both areas keep their most recent segments in direct
+ * memory and spill the older ones to the disk, so the heap usage does not grow with the capture.
+ * The packet points are rebuilt on access, a small cache keeps the recently accessed ones.
+ * Packets are added by one thread, and can be read concurrently by any thread.
+ * </pre>
+ * @author Leo Lewis
+ */
+public class CaptureStore extends AbstractList<AbstractPacketPoint> implements RandomAccess, Closeable {
+
+	/** Record layout */
+	private static final int NUMBER = 0;
+	private static final int TS = 4;
+	private static final int PROTOCOL = 12;
+	private static final int FLAGS = 13;
+	private static final int NET_OFFSET = 14;
+	private static final int SOURCE_PORT = 16;
+	private static final int DEST_PORT = 20;
+	private static final int DATA_LENGTH = 24;
+	private static final int LAT = 28;
+	private static final int LON = 32;
+	private static final int IP = 36;
+	private static final int HOSTNAME = 40;
+	private static final int TOWN = 44;
+	private static final int COUNTRY = 48;
+	private static final int COUNTRY_ISO = 52;
+	private static final int SOURCE_IP = 56;
+	private static final int FRAME_LENGTH = 60;
+	private static final int FRAME_OFFSET = 64;
+	private static final int RECORD_SIZE = 72;
+
+	private static final byte FLAG_UNKNOWN_GEO = 1;
+	private static final int NO_PORT = -1;
+
+	private static final int RECORDS_PER_SEGMENT = 16 * 1024;
+	private static final int FRAME_SEGMENT_SIZE = 4 * 1024 * 1024;
+	/** Default memory budget : 16 segments of records (~18MB) and 16 segments of frames (64MB) */
+	private static final int DEFAULT_MEMORY_SEGMENTS = 16;
+	private static final int CACHE_SIZE = 1024;
+
+	private static final Protocol[] PROTOCOLS = Protocol.values();
+
+	private final SegmentedBuffer _records;
+	private final SegmentedBuffer _frames;
+	private final StringDictionary _dictionary = new StringDictionary();
+	/** Segments hold a whole number of records, the offset of a record is index * RECORD_SIZE */
+	private volatile int _size;
+	private final AtomicReferenceArray<StoredPacketPoint> _cache = new AtomicReferenceArray<>(CACHE_SIZE);
+
+	/**
+	 * Constructor
+	 */
+	public CaptureStore() {
+		this(DEFAULT_MEMORY_SEGMENTS, DEFAULT_MEMORY_SEGMENTS);
+	}
+
+	/**
+	 * Constructor
+	 * @param recordMemorySegments number of records segments kept in memory
+	 * @param frameMemorySegments number of frames segments kept in memory
+	 */
+	public CaptureStore(final int recordMemorySegments, final int frameMemorySegments) {
+		_records = new SegmentedBuffer("records", RECORDS_PER_SEGMENT * RECORD_SIZE, recordMemorySegments);
+		_frames = new SegmentedBuffer("frames", FRAME_SEGMENT_SIZE, frameMemorySegments);
+	}
+
+	/**
+	 * Append a packet to the store
+	 * @see java.util.AbstractList#add(java.lang.Object)
+	 */
+	@Override
+	public boolean add(final AbstractPacketPoint point) {
+		final long offset = _records.allocate(RECORD_SIZE);
+		final ByteBuffer r = _records.segment(offset);
+		final int o = _records.position(offset);
+		r.putInt(o + NUMBER, point.getNumber());
+		r.putLong(o + TS, point.getTsNanos());
+		r.put(o + PROTOCOL, (byte) (point.getProtocol() == null ? Protocol.OTHER : point.getProtocol()).ordinal());
+		r.put(o + FLAGS, point.isUnknownGeo() ? FLAG_UNKNOWN_GEO : 0);
+		r.putInt(o + SOURCE_PORT, point.getSourcePort() == null ? NO_PORT : point.getSourcePort());
+		r.putInt(o + DEST_PORT, point.getDestPort() == null ? NO_PORT : point.getDestPort());
+		r.putInt(o + DATA_LENGTH, point.getDataLength());
+		r.putFloat(o + LAT, point.getLat());
+		r.putFloat(o + LON, point.getLon());
+		r.putInt(o + IP, _dictionary.id(point.getIp()));
+		r.putInt(o + HOSTNAME, _dictionary.id(point.getHostname()));
+		r.putInt(o + TOWN, _dictionary.id(point.getTown()));
+		r.putInt(o + COUNTRY, _dictionary.id(point.getCountry()));
+		r.putInt(o + COUNTRY_ISO, _dictionary.id(point.getCountryIso()));
+		int frameLength = 0;
+		long frameOffset = 0;
+		if (point instanceof RawPacketPoint) {
+			final RawPacketPoint raw = (RawPacketPoint) point;
+			r.putInt(o + SOURCE_IP, _dictionary.id(raw.getSourceIp()));
+			r.putShort(o + NET_OFFSET, (short) raw.getNetOffset());
+			final byte[] frame = raw.getFrame();
+			if (frame != null) {
+				frameLength = Math.min(frame.length, FRAME_SEGMENT_SIZE);
+				frameOffset = _frames.allocate(frameLength);
+				_frames.put(frameOffset, frameLength == frame.length ? frame : Arrays.copyOf(frame, frameLength));
+			}
+		} else {
+			r.putInt(o + SOURCE_IP, StringDictionary.NULL_ID);
+			r.putShort(o + NET_OFFSET, (short) 0);
+		}
+		r.putInt(o + FRAME_LENGTH, frameLength);
+		r.putLong(o + FRAME_OFFSET, frameOffset);
+		// publish the record
+		_size++;
+		return true;
+	}
+
+	/**
+	 * Packet at the given index
+	 * @see java.util.AbstractList#get(int)
+	 */
+	@Override
+	public AbstractPacketPoint get(final int index) {
+		if (index < 0 || index >= _size) {
+			throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + _size);
+		}
+		final int slot = index & (CACHE_SIZE - 1);
+		StoredPacketPoint point = _cache.get(slot);
+		if (point == null || point.getIndex() != index) {
+			point = read(index);
+			_cache.set(slot, point);
+		}
+		return point;
+	}
+
+	private StoredPacketPoint read(final int index) {
+		final long offset = (long) index * RECORD_SIZE;
+		final ByteBuffer r = _records.segment(offset);
+		final int o = _records.position(offset);
+		final StoredPacketPoint point = new StoredPacketPoint(this, index);
+		point.setNumber(r.getInt(o + NUMBER));
+		point.setTsNanos(r.getLong(o + TS));
+		final int sourcePort = r.getInt(o + SOURCE_PORT);
+		final int destPort = r.getInt(o + DEST_PORT);
+		point.setPacket(null, r.getShort(o + NET_OFFSET) & 0xFFFF, r.getInt(o + DATA_LENGTH), PROTOCOLS[r.get(o + PROTOCOL)], _dictionary.value(r.getInt(o + SOURCE_IP)),
+				sourcePort == NO_PORT ? null : sourcePort, destPort == NO_PORT ? null : destPort);
+		point.setUnknownGeo((r.get(o + FLAGS) & FLAG_UNKNOWN_GEO) != 0);
+		point.setLat(r.getFloat(o + LAT));
+		point.setLon(r.getFloat(o + LON));
+		point.setIp(_dictionary.value(r.getInt(o + IP)));
+		point.setHostname(_dictionary.value(r.getInt(o + HOSTNAME)));
+		point.setTown(_dictionary.value(r.getInt(o + TOWN)));
+		point.setCountry(_dictionary.value(r.getInt(o + COUNTRY)));
+		point.setCountryIso(_dictionary.value(r.getInt(o + COUNTRY_ISO)));
+		return point;
+	}
+
+	/**
+	 * Frame of the packet at the given index
+	 * @param index the index
+	 * @return the frame, null if not stored
+	 */
+	byte[] getFrame(final int index) {
+		final long offset = (long) index * RECORD_SIZE;
+		final ByteBuffer r = _records.segment(offset);
+		final int o = _records.position(offset);
+		final int length = r.getInt(o + FRAME_LENGTH);
+		if (length == 0) {
+			return null;
+		}
+		final byte[] frame = new byte[length];
+		_frames.get(r.getLong(o + FRAME_OFFSET), frame);
+		return frame;
+	}
+
+	/**
+	 * Points of the store are found by index, other points by number
+	 * @see java.util.AbstractList#indexOf(java.lang.Object)
+	 */
+	@Override
+	public int indexOf(final Object o) {
+		if (o instanceof StoredPacketPoint && ((StoredPacketPoint) o).getStore() == this) {
+			return ((StoredPacketPoint) o).getIndex();
+		}
+		if (!(o instanceof AbstractPacketPoint)) {
+			return -1;
+		}
+		final int number = ((AbstractPacketPoint) o).getNumber();
+		final int size = _size;
+		// packets are numbered in the insertion order
+		if (number >= 1 && number <= size && getNumber(number - 1) == number) {
+			return number - 1;
+		}
+		for (int i = 0; i < size; i++) {
+			if (getNumber(i) == number) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	private int getNumber(final int index) {
+		final long offset = (long) index * RECORD_SIZE;
+		return _records.segment(offset).getInt(_records.position(offset) + NUMBER);
+	}
+
+	/**
+	 * @see java.util.AbstractCollection#size()
+	 */
+	@Override
+	public int size() {
+		return _size;
+	}
+
+	/**
+	 * Remove all the packets, must be called by the writer thread or when no packet is added
+	 * @see java.util.AbstractList#clear()
+	 */
+	@Override
+	public void clear() {
+		_size = 0;
+		for (int i = 0; i < CACHE_SIZE; i++) {
+			_cache.set(i, null);
+		}
+		_records.clear();
+		_frames.clear();
+		_dictionary.clear();
+	}
+
+	/**
+	 * @return the number of bytes held in direct memory
+	 */
+	public long getMemorySize() {
+		return _records.getMemorySize() + _frames.getMemorySize();
+	}
+
+	/**
+	 * @return the number of bytes spilled to the disk
+	 */
+	public long getSpilledSize() {
+		return _records.getSpilledSize() + _frames.getSpilledSize();
+	}
+
+	/**
+	 * @see java.io.Closeable#close()
+	 */
+	@Override
+	public void close() {
+		clear();
+	}
+}
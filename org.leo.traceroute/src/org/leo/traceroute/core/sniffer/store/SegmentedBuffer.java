@@ -0,0 +1,216 @@
+/**
+ * Open Visual Trace Route
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.leo.traceroute.core.sniffer.store;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * SegmentedBuffer $Id$
+ * <pre>
+ * Append only storage made of fixed size off-heap segments.
+ * Only the most recent segments are kept in direct memory, the older ones are written to a spill file
+ * and replaced by a read-only mapping of the file, the OS pages them in and out on demand.
+ * One writer thread, any number of reader threads.
+ * </pre>
+ * @author Leo Lewis
+ */
+public class SegmentedBuffer implements Closeable {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(SegmentedBuffer.class);
+
+	private final String _name;
+	private final int _segmentSize;
+	private final int _maxMemorySegments;
+
+	/** Segments, the array is replaced when it grows or when a segment is spilled */
+	private volatile ByteBuffer[] _segments = new ByteBuffer[0];
+	/** Number of segments in use */
+	private volatile int _segmentCount;
+	/** Write position in the last segment */
+	private int _position;
+	/** Index of the first segment still in direct memory */
+	private int _firstMemorySegment;
+
+	private File _spillFile;
+	private FileChannel _spillChannel;
+
+	/**
+	 * Constructor
+	 * @param name name of the buffer, used for the spill file
+	 * @param segmentSize size of a segment
+	 * @param maxMemorySegments number of segments kept in direct memory
+	 */
+	public SegmentedBuffer(final String name, final int segmentSize, final int maxMemorySegments) {
+		_name = name;
+		_segmentSize = segmentSize;
+		_maxMemorySegments = Math.max(1, maxMemorySegments);
+	}
+
+	/**
+	 * Reserve a contiguous area in the buffer
+	 * @param length length of the area, at most the segment size
+	 * @return the offset of the area
+	 */
+	public long allocate(final int length) {
+		if (length > _segmentSize) {
+			throw new IllegalArgumentException("Cannot allocate " + length + " bytes in segments of " + _segmentSize);
+		}
+		if (_segmentCount == 0 || _position + length > _segmentSize) {
+			newSegment();
+		}
+		final long offset = (long) (_segmentCount - 1) * _segmentSize + _position;
+		_position += length;
+		return offset;
+	}
+
+	/**
+	 * @param offset an offset returned by allocate
+	 * @return the segment holding the offset, use position(offset) to access the data
+	 */
+	public ByteBuffer segment(final long offset) {
+		return _segments[(int) (offset / _segmentSize)];
+	}
+
+	/**
+	 * @param offset an offset returned by allocate
+	 * @return the position of the offset in its segment
+	 */
+	public int position(final long offset) {
+		return (int) (offset % _segmentSize);
+	}
+
+	/**
+	 * Write data at the given offset
+	 * @param offset an offset returned by allocate
+	 * @param data the data
+	 */
+	public void put(final long offset, final byte[] data) {
+		final ByteBuffer view = segment(offset).duplicate();
+		view.position(position(offset));
+		view.put(data);
+	}
+
+	/**
+	 * Read data at the given offset
+	 * @param offset the offset
+	 * @param data the destination
+	 */
+	public void get(final long offset, final byte[] data) {
+		final ByteBuffer view = segment(offset).duplicate();
+		view.position(position(offset));
+		view.get(data);
+	}
+
+	/**
+	 * @return the number of bytes held in direct memory
+	 */
+	public long getMemorySize() {
+		return (long) (_segmentCount - _firstMemorySegment) * _segmentSize;
+	}
+
+	/**
+	 * @return the number of bytes spilled to the disk
+	 */
+	public long getSpilledSize() {
+		return (long) _firstMemorySegment * _segmentSize;
+	}
+
+	private void newSegment() {
+		if (_segmentCount - _firstMemorySegment >= _maxMemorySegments) {
+			spill();
+		}
+		ByteBuffer[] segments = _segments;
+		if (_segmentCount == segments.length) {
+			segments = Arrays.copyOf(segments, Math.max(8, segments.length * 2));
+		} else {
+			segments = segments.clone();
+		}
+		segments[_segmentCount] = ByteBuffer.allocateDirect(_segmentSize);
+		_segments = segments;
+		_segmentCount++;
+		_position = 0;
+	}
+
+	/**
+	 * Move the oldest memory segment to the spill file
+	 */
+	private void spill() {
+		final int index = _firstMemorySegment;
+		try {
+			if (_spillChannel == null) {
+				_spillFile = File.createTempFile("ovtr-" + _name, ".spill");
+				_spillFile.deleteOnExit();
+				_spillChannel = FileChannel.open(_spillFile.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE);
+			}
+			final long fileOffset = (long) index * _segmentSize;
+			final ByteBuffer data = _segments[index].duplicate();
+			data.clear();
+			while (data.hasRemaining()) {
+				_spillChannel.write(data, fileOffset + data.position());
+			}
+			final ByteBuffer mapped = _spillChannel.map(MapMode.READ_ONLY, fileOffset, _segmentSize);
+			final ByteBuffer[] segments = _segments.clone();
+			segments[index] = mapped;
+			_segments = segments;
+			_firstMemorySegment++;
+		} catch (final IOException e) {
+			// keep the segment in memory
+			LOGGER.error("Failed to spill segment " + index + " of " + _name, e);
+		}
+	}
+
+	/**
+	 * Remove all the data
+	 */
+	public void clear() {
+		_segments = new ByteBuffer[0];
+		_segmentCount = 0;
+		_position = 0;
+		_firstMemorySegment = 0;
+		close();
+	}
+
+	/**
+	 * Release the spill file
+	 * @see java.io.Closeable#close()
+	 */
+	@Override
+	public void close() {
+		if (_spillChannel != null) {
+			try {
+				_spillChannel.close();
+			} catch (final IOException e) {
+				LOGGER.warn("Failed to close spill file", e);
+			}
+			// might fail while the file is still mapped, deleted on exit then
+			_spillFile.delete();
+			_spillChannel = null;
+			_spillFile = null;
+		}
+	}
+}
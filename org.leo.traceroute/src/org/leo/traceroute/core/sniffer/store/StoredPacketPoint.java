@@ -0,0 +1,67 @@
+/**
+ * Open Visual Trace Route
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.leo.traceroute.core.sniffer.store;
+
+import org.leo.traceroute.core.sniffer.impl.RawPacketPoint;
+
+/**
+ * StoredPacketPoint $Id$
+ * <pre>
+ * Packet point read from the capture store, the frame is only loaded when the payload is displayed.
+ * </pre>
+ * @author Leo Lewis
+ */
+public class StoredPacketPoint extends RawPacketPoint {
+
+	private final CaptureStore _store;
+	private final int _index;
+
+	/**
+	 * Constructor
+	 * @param store the store
+	 * @param index index of the packet in the store
+	 */
+	StoredPacketPoint(final CaptureStore store, final int index) {
+		_store = store;
+		_index = index;
+	}
+
+	/**
+	 * Return the value of the field index
+	 * @return the value of index
+	 */
+	public int getIndex() {
+		return _index;
+	}
+
+	/**
+	 * Return the value of the field store
+	 * @return the value of store
+	 */
+	CaptureStore getStore() {
+		return _store;
+	}
+
+	/**
+	 * @see org.leo.traceroute.core.sniffer.impl.RawPacketPoint#getFrame()
+	 */
+	@Override
+	public byte[] getFrame() {
+		return _store.getFrame(_index);
+	}
+}
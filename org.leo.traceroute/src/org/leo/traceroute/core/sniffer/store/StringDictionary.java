@@ -0,0 +1,88 @@
+/**
+ * Open Visual Trace Route
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.leo.traceroute.core.sniffer.store;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * StringDictionary $Id$
+ * <pre>
+ * Strings repeated in the capture (IPs, hostnames, towns, countries) are stored once and referenced by id.
+ * One writer thread, any number of reader threads.
+ * </pre>
+ * @author Leo Lewis
+ */
+public class StringDictionary {
+
+	public static final int NULL_ID = -1;
+
+	private final Map<String, Integer> _ids = new HashMap<>();
+	private volatile String[] _values = new String[256];
+	private int _size;
+
+	/**
+	 * Id of the given string, added to the dictionary if needed
+	 * @param value the string
+	 * @return the id
+	 */
+	public int id(final String value) {
+		if (value == null) {
+			return NULL_ID;
+		}
+		final Integer id = _ids.get(value);
+		if (id != null) {
+			return id;
+		}
+		String[] values = _values;
+		if (_size == values.length) {
+			values = Arrays.copyOf(values, values.length * 2);
+		}
+		values[_size] = value;
+		// publish the new value to the readers before the id is used
+		_values = values;
+		_ids.put(value, _size);
+		return _size++;
+	}
+
+	/**
+	 * String of the given id
+	 * @param id the id
+	 * @return the string
+	 */
+	public String value(final int id) {
+		return id == NULL_ID ? null : _values[id];
+	}
+
+	/**
+	 * @return the number of strings
+	 */
+	public int size() {
+		return _size;
+	}
+
+	/**
+	 * Remove all the strings
+	 */
+	public void clear() {
+		_ids.clear();
+		_values = new String[256];
+		_size = 0;
+	}
+}
@@ -0,0 +1,172 @@
+/**
+ * Open Visual Trace Route
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.leo.traceroute.core.whois;
+
+import java.math.BigInteger;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.Locale;
+
+/**
+ * Netblock $Id$
+ * <pre>
+ * Range of addresses allocated by a registry, parsed from a WHOIS answer :
+ *  - inetnum: 193.0.0.0 - 193.0.7.255 (RIPE, APNIC, AFRINIC)
+ *  - inetnum: 200.160/12 (LACNIC)
+ *  - inet6num: 2001:db8::/32
+ *  - NetRange: 8.0.0.0 - 8.255.255.255 (ARIN)
+ * </pre>
+ * @author Leo Lewis
+ */
+public final class Netblock {
+
+	private final BigInteger _start;
+	private final BigInteger _end;
+	private final int _length;
+
+	private Netblock(final BigInteger start, final BigInteger end, final int length) {
+		_start = start;
+		_end = end;
+		_length = length;
+	}
+
+	/**
+	 * @param text a WHOIS answer
+	 * @param address the address asked
+	 * @return the smallest block of the answer containing the address, null if none
+	 */
+	public static Netblock parse(final String text, final InetAddress address) {
+		Netblock best = null;
+		for (final String line : text.split("\n")) {
+			final int colon = line.indexOf(':');
+			if (colon <= 0) {
+				continue;
+			}
+			final String key = line.substring(0, colon).trim().toLowerCase(Locale.ROOT);
+			if (!key.equals("inetnum") && !key.equals("inet6num") && !key.equals("netrange")) {
+				continue;
+			}
+			final Netblock block = parse(line.substring(colon + 1).trim());
+			if (block != null && block.contains(address) && (best == null || block.size().compareTo(best.size()) < 0)) {
+				best = block;
+			}
+		}
+		return best;
+	}
+
+	/**
+	 * @param value start - end, or prefix/length
+	 * @return the block, null if invalid
+	 */
+	static Netblock parse(final String value) {
+		try {
+			final int dash = value.indexOf(" - ");
+			if (dash > 0) {
+				final byte[] start = toBytes(value.substring(0, dash).trim());
+				final byte[] end = toBytes(value.substring(dash + 3).trim());
+				if (start.length != end.length) {
+					return null;
+				}
+				return new Netblock(new BigInteger(1, start), new BigInteger(1, end), start.length);
+			}
+			final int slash = value.indexOf('/');
+			if (slash > 0) {
+				String prefix = value.substring(0, slash).trim();
+				if (prefix.indexOf(':') < 0) {
+					// abbreviated IPv4 prefix
+					while (prefix.split("\\.").length < 4) {
+						prefix += ".0";
+					}
+				}
+				final byte[] bytes = toBytes(prefix);
+				final int bits = bytes.length * 8;
+				final int length = Integer.parseInt(value.substring(slash + 1).trim().split("\\s")[0]);
+				if (length < 0 || length > bits) {
+					return null;
+				}
+				final BigInteger mask = BigInteger.ONE.shiftLeft(bits - length).subtract(BigInteger.ONE);
+				final BigInteger start = new BigInteger(1, bytes).andNot(mask);
+				return new Netblock(start, start.or(mask), bytes.length);
+			}
+		} catch (final UnknownHostException | RuntimeException e) {
+			// not an address
+		}
+		return null;
+	}
+
+	/**
+	 * @return the bytes of an address literal, never resolved as a host name
+	 */
+	private static byte[] toBytes(final String literal) throws UnknownHostException {
+		if (literal.isEmpty() || !literal.chars().allMatch(c -> Character.digit(c, 16) >= 0 || c == '.' || c == ':')) {
+			throw new UnknownHostException(literal);
+		}
+		return InetAddress.getByName(literal).getAddress();
+	}
+
+	/**
+	 * @param address an address
+	 * @return true if the address is in the block
+	 */
+	public boolean contains(final InetAddress address) {
+		final byte[] bytes = address.getAddress();
+		if (bytes.length != _length) {
+			return false;
+		}
+		final BigInteger value = new BigInteger(1, bytes);
+		return value.compareTo(_start) >= 0 && value.compareTo(_end) <= 0;
+	}
+
+	/**
+	 * @return the number of addresses of the block
+	 */
+	public BigInteger size() {
+		return _end.subtract(_start).add(BigInteger.ONE);
+	}
+
+	private String toAddress(final BigInteger value) {
+		final byte[] raw = value.toByteArray();
+		final byte[] bytes = new byte[_length];
+		final int copy = Math.min(raw.length, _length);
+		System.arraycopy(raw, raw.length - copy, bytes, _length - copy, copy);
+		try {
+			return InetAddress.getByAddress(bytes).getHostAddress();
+		} catch (final UnknownHostException e) {
+			return value.toString();
+		}
+	}
+
+	@Override
+	public boolean equals(final Object obj) {
+		if (!(obj instanceof Netblock)) {
+			return false;
+		}
+		final Netblock other = (Netblock) obj;
+		return _start.equals(other._start) && _end.equals(other._end) && _length == other._length;
+	}
+
+	@Override
+	public int hashCode() {
+		return _start.hashCode() * 31 + _end.hashCode();
+	}
+
+	@Override
+	public String toString() {
+		return toAddress(_start) + " - " + toAddress(_end);
+	}
+}
@@ -19,27 +19,33 @@
 package org.leo.traceroute.core.whois;
 
 import java.io.IOException;
-import java.io.InputStream;
 import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
 
-import org.apache.commons.io.IOUtils;
 import org.leo.traceroute.core.AbstractObject;
 import org.leo.traceroute.core.ServiceFactory;
 import org.leo.traceroute.core.geo.GeoPoint;
 import org.leo.traceroute.core.geo.GeoService;
 import org.leo.traceroute.core.network.DNSLookupService;
-import org.leo.traceroute.install.Env;
-import org.leo.traceroute.install.Env.OS;
-import org.leo.traceroute.util.Util;
+import org.leo.traceroute.core.whois.WhoIsClient.Answer;
+import org.leo.traceroute.ui.task.CancelMonitor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
  * WhoIs $Id$
  * <pre>
+ * WhoIs of the address of a host, asked in process by the {@link WhoIsClient}.
+ * The bulk WhoIs asks all the addresses of a route or a capture at once : the addresses are grouped by block
+ * of a registry, the groups run concurrently within the limits of the registries, and the addresses of a group
+ * in a netblock already answered are not asked again.
  * </pre>
  * @author Leo
  */
@@ -47,9 +53,9 @@ public class WhoIs extends AbstractObject<IWhoIsListener> {
 
 	private static final Logger LOGGER = LoggerFactory.getLogger(WhoIs.class);
 
-	private ExecutorService _executor;
 	private GeoService _geo;
 	private DNSLookupService _dns;
+	private final WhoIsClient _client = new WhoIsClient();
 
 	/** Last result */
 	private volatile String _whois;
@@ -61,7 +67,7 @@ public class WhoIs extends AbstractObject<IWhoIsListener> {
 	 */
 	@Override
 	public void init(final ServiceFactory services) throws Exception {
-		_executor = Executors.newFixedThreadPool(3);
+		super.init(services);
 		_geo = services.getGeo();
 		_dns = services.getDnsLookup();
 	}
@@ -71,15 +77,13 @@ public class WhoIs extends AbstractObject<IWhoIsListener> {
 	 */
 	@Override
 	public void dispose() {
-		if (_executor != null) {
-			_executor.shutdown();
-		}
+		super.dispose();
 	}
 
 	public void whoIs(final String ipOrHost) {
 		try {
 			_cancel = false;
-			_executor.execute(() -> doRun(ipOrHost, "whois"));
+			_executor.execute(() -> doRun(ipOrHost));
 		} catch (final Exception e) {
 			_whois = null;
 			_point = null;
@@ -87,77 +91,146 @@ public class WhoIs extends AbstractObject<IWhoIsListener> {
 		}
 	}
 
-	private void doRun(final String ipOrHost, String cmd) {
+	private void doRun(final String ipOrHost) {
 		try {
 			notifyListeners(listener -> listener.startWhoIs(ipOrHost));
 			final InetAddress address = InetAddress.getByName(ipOrHost);
 			_point = _geo.populateGeoDataForIP(new GeoPoint(), address.getHostAddress(), address.getHostName());
 
 			_point.setHostname(_dns.dnsLookup(_point.getIp()));
-			notifyListeners(listener -> listener.focusWhoIs(_point));
+			final GeoPoint point = _point;
+			notifyListeners(listener -> listener.focusWhoIs(point));
 
-			if (Env.INSTANCE.getOs() == OS.win) {
-				cmd = Env.NATIVE_FOLDER + Util.FILE_SEPARATOR + OS.win.name() + Util.FILE_SEPARATOR + cmd + ".exe";
+			final String whois = format(_client.query(address).getText());
+			_whois = whois;
+			if (!_cancel) {
+				notifyListeners(listener -> listener.whoIsResult(whois));
+			}
+		} catch (final Exception e) {
+			LOGGER.error("WhoIs failed", e);
+			_whois = null;
+			_point = null;
+			notifyListeners(listener -> listener.error(new IOException("Failed to get the whois info", e), WhoIs.this));
+		}
+	}
+
+	/**
+	 * WhoIs of a host, on the calling thread, without notifying the listeners
+	 * @param ipOrHost the address or name of the host
+	 * @return the answer
+	 * @throws IOException if the host can't be resolved or the servers fail
+	 */
+	public Answer query(final String ipOrHost) throws IOException {
+		return _client.query(InetAddress.getByName(ipOrHost));
+	}
+
+	/**
+	 * Remove the comments and the successive empty lines of an answer
+	 * @param text the answer
+	 * @return the formatted answer
+	 */
+	public static String format(final String text) {
+		final StringBuilder res = new StringBuilder(text.length());
+		boolean empty = false;
+		for (final String line : text.split("\n")) {
+			if (line.startsWith("#") || line.startsWith("%")) {
+				continue;
 			}
-			final Process process = Runtime.getRuntime().exec(cmd + " " + address.getHostAddress());
-			final InputStream input = process.getInputStream();
-			final int exit = process.waitFor();
-			final StringBuilder res = new StringBuilder();
-			final List<String> lines = IOUtils.readLines(input);
-			boolean empty = false;
-			for (int i = 0; i < lines.size(); i++) {
-				final String line = lines.get(i);
-				if ((Env.INSTANCE.getOs() == OS.win && i <= 4) || line.startsWith("#") || line.startsWith("%%")) {
+			if (line.trim().isEmpty()) {
+				if (empty) {
 					continue;
 				}
-				if (line.length() == 0) {
-					if (empty) {
-						continue;
+				empty = true;
+			} else {
+				empty = false;
+			}
+			res.append(line).append("\n");
+		}
+		return res.toString().replace("&gt;", "").trim();
+	}
+
+	/**
+	 * WhoIs of several addresses
+	 * @param addresses the addresses, the duplicates are asked once
+	 * @param monitor to cancel the addresses not asked yet
+	 * @param onResult called for each address, from the io threads
+	 * @return completed when all the addresses are done
+	 */
+	public CompletableFuture<Void> bulkWhoIs(final Collection<String> addresses, final CancelMonitor monitor, final Consumer<BulkResult> onResult) {
+		final List<String> distinct = new ArrayList<>(new LinkedHashSet<>(addresses));
+		return CompletableFuture.runAsync(() -> {
+			// address by ip, by block
+			final Map<String, Map<String, InetAddress>> groups = new LinkedHashMap<>();
+			for (final String ip : distinct) {
+				try {
+					final InetAddress address = InetAddress.getByName(ip);
+					if (isPublic(address)) {
+						groups.computeIfAbsent(WhoIsClient.getBlock(address), block -> new LinkedHashMap<>()).put(ip, address);
 					} else {
-						empty = true;
+						onResult.accept(new BulkResult(ip, BulkResult.Status.PRIVATE, null, null));
 					}
-				} else {
-					empty = false;
-				}
-				res.append(line);
-				if (Env.INSTANCE.getOs() == OS.win) {
-					res.append(System.lineSeparator());
-				} else {
-					res.append("\n");
+				} catch (final IOException e) {
+					onResult.accept(new BulkResult(ip, BulkResult.Status.FAILED, null, e));
 				}
 			}
-			final InputStream error = process.getErrorStream();
+			final List<CompletableFuture<Void>> futures = new ArrayList<>();
+			for (final Map<String, InetAddress> group : groups.values()) {
+				futures.add(CompletableFuture.runAsync(() -> bulkWhoIs(group, monitor, onResult), _executor));
+			}
+			CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).join();
+		}, _executor);
+	}
 
-			final List<String> errors = Util.readUTF8File(error);
-			if (!errors.isEmpty()) {
-				final StringBuilder m = new StringBuilder();
-				for (final String e : errors) {
-					m.append(e).append("\n");
-				}
-				// notify error
-				if (!m.toString().isEmpty()) {
-					throw new IOException(m.toString());
-				}
+	/**
+	 * WhoIs of the addresses of a block, one after the other to reuse the netblocks
+	 */
+	private void bulkWhoIs(final Map<String, InetAddress> group, final CancelMonitor monitor, final Consumer<BulkResult> onResult) {
+		final List<Answer> answers = new ArrayList<>();
+		for (final Map.Entry<String, InetAddress> entry : group.entrySet()) {
+			final String ip = entry.getKey();
+			final InetAddress address = entry.getValue();
+			if (monitor.isCanceled()) {
+				return;
 			}
-			if (exit != 0) {
-				throw new IOException("Exit with code " + exit + " " + res);
+			Answer shared = null;
+			for (final Answer answer : answers) {
+				if (answer.getNetblock() != null && answer.getNetblock().contains(address)) {
+					shared = answer;
+					break;
+				}
 			}
-			_whois = res.toString().replace("&gt;", "").replace("\n\n", "");
-			if (!_cancel) {
-				notifyListeners(listener -> listener.whoIsResult(_whois));
+			if (shared != null) {
+				onResult.accept(new BulkResult(ip, BulkResult.Status.SHARED, shared, null));
+				continue;
 			}
-		} catch (final Exception e) {
-			if ((Env.INSTANCE.getOs() == OS.linux || Env.INSTANCE.getOs() == OS.solaris) && e.getMessage().contains("Cannot run program \"" + cmd + "\": error=2, No such file or directory")) {
-				doRun(ipOrHost, "jwhois");
-				return;
+			try {
+				final Answer answer = _client.query(address);
+				answers.add(answer);
+				onResult.accept(new BulkResult(ip, BulkResult.Status.OK, answer, null));
+			} catch (final IOException e) {
+				LOGGER.warn("WhoIs of {} failed", ip, e);
+				onResult.accept(new BulkResult(ip, BulkResult.Status.FAILED, null, e));
 			}
-			LOGGER.error("WhoIs failed", e);
-			_whois = null;
-			_point = null;
-			notifyListeners(listener -> listener.error(new IOException("Failed to get the whois info", e), WhoIs.this));
 		}
 	}
 
+	/**
+	 * @return true if the address is allocated by a registry (not private, loopback...)
+	 */
+	private static boolean isPublic(final InetAddress address) {
+		if (address.isAnyLocalAddress() || address.isLoopbackAddress() || address.isLinkLocalAddress() || address.isSiteLocalAddress()
+				|| address.isMulticastAddress()) {
+			return false;
+		}
+		final byte[] bytes = address.getAddress();
+		if (bytes.length == 4) {
+			// shared address space 100.64.0.0/10
+			return !((bytes[0] & 0xFF) == 100 && (bytes[1] & 0xC0) == 64);
+		}
+		// unique local fc00::/7
+		return (bytes[0] & 0xFE) != 0xFC;
+	}
+
 	/**
 	 * Last who is result
 	 * @return
@@ -170,11 +243,13 @@ public class WhoIs extends AbstractObject<IWhoIsListener> {
 	 * Renotify whois last result
 	 */
 	public void renotifyWhoIs() {
-		if (_point != null) {
+		final GeoPoint point = _point;
+		final String whois = _whois;
+		if (point != null) {
 			notifyListeners(listener -> {
-				listener.startWhoIs(_point.getHostname());
-				listener.focusWhoIs(_point);
-				listener.whoIsResult(_whois);
+				listener.startWhoIs(point.getHostname());
+				listener.focusWhoIs(point);
+				listener.whoIsResult(whois);
 			});
 		}
 	}
@@ -186,4 +261,82 @@ public class WhoIs extends AbstractObject<IWhoIsListener> {
 	public void clear() {
 		_whois = null;
 	}
+
+	/**
+	 * BulkResult $Id$
+	 * <pre>
+	 * WhoIs of an address of a bulk.
+	 * </pre>
+	 * @author Leo Lewis
+	 */
+	public static class BulkResult {
+
+		public enum Status {
+			/** Answered */
+			OK,
+			/** In the netblock of an address answered before */
+			SHARED,
+			/** Not allocated by a registry, not asked */
+			PRIVATE,
+			FAILED
+		}
+
+		private final String _address;
+		private final Status _status;
+		private final Answer _answer;
+		private final Exception _error;
+
+		BulkResult(final String address, final Status status, final Answer answer, final Exception error) {
+			_address = address;
+			_status = status;
+			_answer = answer;
+			_error = error;
+		}
+
+		/**
+		 * Return the value of the field address
+		 * @return the value of address
+		 */
+		public String getAddress() {
+			return _address;
+		}
+
+		/**
+		 * Return the value of the field status
+		 * @return the value of status
+		 */
+		public Status getStatus() {
+			return _status;
+		}
+
+		/**
+		 * Return the answer, null if not answered
+		 * @return the value of answer
+		 */
+		public Answer getAnswer() {
+			return _answer;
+		}
+
+		/**
+		 * Return the error, null if none
+		 * @return the value of error
+		 */
+		public Exception getError() {
+			return _error;
+		}
+
+		/**
+		 * @return the name of the network, null if unknown
+		 */
+		public String getNetName() {
+			return _answer != null ? _answer.getValue("netname", "NetName", "owner", "OrgName", "descr") : null;
+		}
+
+		/**
+		 * @return the country of the network, null if unknown
+		 */
+		public String getCountry() {
+			return _answer != null ? _answer.getValue("country", "Country") : null;
+		}
+	}
 }
@@ -0,0 +1,415 @@
+/**
+ * Open Visual Trace Route
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.leo.traceroute.core.whois;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousSocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * WhoIsClient $Id$
+ * <pre>
+ * WHOIS client (RFC 3912) on NIO sockets.
+ * An address is asked to the root server (IANA), which refers to the registry (RIR) of the address,
+ * the referrals of the registries (ARIN ReferralServer) are followed too.
+ * The registry of an IPv4 /8 (IPv6 /32) is kept, the next addresses of the block are asked to the registry directly.
+ * The answers are kept in a cache for {@link #DEFAULT_TTL_MILLIS}.
+ * The requests to a server are limited to a few at a time and spaced by a minimum interval,
+ * the registries block the clients that flood them.
+ * Thread safe, the calls block, to run on the io threads.
+ * </pre>
+ * @author Leo Lewis
+ */
+public class WhoIsClient {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(WhoIsClient.class);
+
+	public static final String IANA = "whois.iana.org";
+	public static final int PORT = 43;
+	public static final long DEFAULT_TTL_MILLIS = TimeUnit.HOURS.toMillis(1);
+	public static final int DEFAULT_MAX_REQUESTS_PER_SERVER = 2;
+	public static final long DEFAULT_MIN_INTERVAL_MILLIS = 100;
+
+	private static final long TIMEOUT_MILLIS = 10000;
+	private static final int MAX_REFERRALS = 3;
+	private static final int MAX_ANSWER_SIZE = 1 << 20;
+	private static final int MAX_CACHED = 1000;
+
+	private final Server _root;
+	private final int _maxRequestsPerServer;
+	private final long _minIntervalNanos;
+	private final long _ttlMillis;
+	/** Requests running per server */
+	private final Map<Server, Semaphore> _permits = new ConcurrentHashMap<>();
+	/** Time of the next request per server */
+	private final Map<Server, Long> _nextRequests = new ConcurrentHashMap<>();
+	/** Registry by address block */
+	private final Map<String, Server> _registries = new ConcurrentHashMap<>();
+	/** Answers by address, LRU */
+	private final Map<String, Answer> _cache = new LinkedHashMap<String, Answer>(16, 0.75f, true) {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(final Map.Entry<String, Answer> eldest) {
+			return size() > MAX_CACHED;
+		}
+	};
+
+	/**
+	 * Constructor, asking IANA first
+	 */
+	public WhoIsClient() {
+		this(IANA, PORT, DEFAULT_MAX_REQUESTS_PER_SERVER, DEFAULT_MIN_INTERVAL_MILLIS, DEFAULT_TTL_MILLIS);
+	}
+
+	/**
+	 * Constructor
+	 * @param rootHost server asked first
+	 * @param rootPort its port
+	 * @param maxRequestsPerServer requests running at the same time on a server
+	 * @param minIntervalMillis minimum time between the starts of two requests to a server
+	 * @param ttlMillis time the answers are kept
+	 */
+	public WhoIsClient(final String rootHost, final int rootPort, final int maxRequestsPerServer, final long minIntervalMillis,
+			final long ttlMillis) {
+		_root = new Server(rootHost, rootPort);
+		_maxRequestsPerServer = maxRequestsPerServer;
+		_minIntervalNanos = TimeUnit.MILLISECONDS.toNanos(minIntervalMillis);
+		_ttlMillis = ttlMillis;
+	}
+
+	/**
+	 * An answer of a server
+	 */
+	public static final class Answer {
+		private final String _server;
+		private final String _text;
+		private final Netblock _netblock;
+		private final long _expiry;
+
+		private Answer(final String server, final String text, final Netblock netblock, final long expiry) {
+			_server = server;
+			_text = text;
+			_netblock = netblock;
+			_expiry = expiry;
+		}
+
+		/**
+		 * Return the server that answered
+		 * @return the value of server
+		 */
+		public String getServer() {
+			return _server;
+		}
+
+		/**
+		 * Return the value of the field text
+		 * @return the value of text
+		 */
+		public String getText() {
+			return _text;
+		}
+
+		/**
+		 * Return the smallest block of the answer containing the address asked, null if none
+		 * @return the value of netblock
+		 */
+		public Netblock getNetblock() {
+			return _netblock;
+		}
+
+		/**
+		 * @param keys keys of the field, the first one found is returned
+		 * @return the value of the first field of the answer with one of the keys (case insensitive), null if none
+		 */
+		public String getValue(final String... keys) {
+			for (final String key : keys) {
+				for (final String line : _text.split("\n")) {
+					if (line.length() > key.length() && line.charAt(key.length()) == ':' && line.regionMatches(true, 0, key, 0, key.length())) {
+						return line.substring(key.length() + 1).trim();
+					}
+				}
+			}
+			return null;
+		}
+	}
+
+	/**
+	 * Query the WHOIS of an address
+	 * @param address the address
+	 * @return the answer of the last server of the referrals
+	 * @throws IOException if the first server cannot be asked
+	 */
+	public Answer query(final InetAddress address) throws IOException {
+		final String query = address.getHostAddress();
+		synchronized (_cache) {
+			final Answer cached = _cache.get(query);
+			if (cached != null && cached._expiry > System.currentTimeMillis()) {
+				return cached;
+			}
+		}
+		final String block = getBlock(address);
+		final Server registry = _registries.get(block);
+		Server server = registry != null ? registry : _root;
+		String text;
+		try {
+			text = send(server, query);
+		} catch (final IOException e) {
+			if (registry == null) {
+				throw e;
+			}
+			// the registry may have moved, ask the root again
+			LOGGER.warn("WhoIs to {} failed, ask {}", registry, _root, e);
+			_registries.remove(block);
+			server = _root;
+			text = send(server, query);
+		}
+		final Set<Server> visited = new HashSet<>();
+		visited.add(server);
+		for (int i = 0; i < MAX_REFERRALS; i++) {
+			final Server referral = getReferral(text);
+			if (referral == null || !visited.add(referral)) {
+				break;
+			}
+			try {
+				final String referred = send(referral, query);
+				if (server.equals(_root)) {
+					_registries.put(block, referral);
+				}
+				server = referral;
+				text = referred;
+			} catch (final IOException e) {
+				// keep the previous answer
+				LOGGER.warn("WhoIs referral to {} failed", referral, e);
+				break;
+			}
+		}
+		final Answer answer = new Answer(server.toString(), text, Netblock.parse(text, address), System.currentTimeMillis() + _ttlMillis);
+		synchronized (_cache) {
+			_cache.put(query, answer);
+		}
+		return answer;
+	}
+
+	/**
+	 * @param address an address
+	 * @return the registry of the block of the address, null if not known yet
+	 */
+	public String getRegistry(final InetAddress address) {
+		final Server registry = _registries.get(getBlock(address));
+		return registry != null ? registry.toString() : null;
+	}
+
+	/**
+	 * Remove the cached answers
+	 */
+	public void clear() {
+		synchronized (_cache) {
+			_cache.clear();
+		}
+	}
+
+	/**
+	 * @return the block of the address with a single registry, IPv4 /8, IPv6 /32
+	 */
+	static String getBlock(final InetAddress address) {
+		final byte[] bytes = address.getAddress();
+		final int length = bytes.length == 4 ? 1 : 4;
+		final StringBuilder block = new StringBuilder(bytes.length == 4 ? "4:" : "6:");
+		for (int i = 0; i < length; i++) {
+			block.append(bytes[i] & 0xFF).append('.');
+		}
+		return block.toString();
+	}
+
+	/**
+	 * @param text answer of a server
+	 * @return the server referred by the answer, null if none
+	 */
+	static Server getReferral(final String text) {
+		for (final String line : text.split("\n")) {
+			final int colon = line.indexOf(':');
+			if (colon <= 0) {
+				continue;
+			}
+			final String key = line.substring(0, colon).trim().toLowerCase(Locale.ROOT);
+			String value = line.substring(colon + 1).trim();
+			if (!key.equals("refer") && !key.equals("whois") && !key.equals("referralserver")) {
+				continue;
+			}
+			if (value.contains("://")) {
+				// whois://host:port, the other protocols (rwhois, http) are not supported
+				if (!value.toLowerCase(Locale.ROOT).startsWith("whois://")) {
+					continue;
+				}
+				value = value.substring("whois://".length());
+			}
+			final int slash = value.indexOf('/');
+			if (slash >= 0) {
+				value = value.substring(0, slash);
+			}
+			if (value.isEmpty()) {
+				continue;
+			}
+			final int port = value.lastIndexOf(':');
+			if (port > 0 && value.indexOf(':') == port) {
+				try {
+					return new Server(value.substring(0, port), Integer.parseInt(value.substring(port + 1)));
+				} catch (final NumberFormatException e) {
+					continue;
+				}
+			}
+			return new Server(value, PORT);
+		}
+		return null;
+	}
+
+	/**
+	 * Send a query to a server, waiting for a permit of the server
+	 * @return the answer
+	 */
+	private String send(final Server server, final String query) throws IOException {
+		final long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(TIMEOUT_MILLIS);
+		final Semaphore permits = _permits.computeIfAbsent(server, s -> new Semaphore(_maxRequestsPerServer, true));
+		try {
+			if (!permits.tryAcquire(remaining(deadline), TimeUnit.NANOSECONDS)) {
+				throw new SocketTimeoutException("Too many requests to " + server);
+			}
+		} catch (final InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("WhoIs to " + server + " interrupted");
+		}
+		try (AsynchronousSocketChannel channel = AsynchronousSocketChannel.open()) {
+			waitInterval(server, deadline);
+			final InetSocketAddress address = new InetSocketAddress(server._host, server._port);
+			if (address.isUnresolved()) {
+				throw new UnknownHostException(server._host);
+			}
+			channel.connect(address).get(remaining(deadline), TimeUnit.NANOSECONDS);
+			final ByteBuffer request = ByteBuffer.wrap((query + "\r\n").getBytes(StandardCharsets.US_ASCII));
+			while (request.hasRemaining()) {
+				channel.write(request).get(remaining(deadline), TimeUnit.NANOSECONDS);
+			}
+			// the server closes the connection at the end of the answer
+			final ByteArrayOutputStream answer = new ByteArrayOutputStream();
+			final ByteBuffer buffer = ByteBuffer.allocate(8192);
+			while (channel.read(buffer).get(remaining(deadline), TimeUnit.NANOSECONDS) >= 0) {
+				answer.write(buffer.array(), 0, buffer.position());
+				buffer.clear();
+				if (answer.size() > MAX_ANSWER_SIZE) {
+					throw new IOException("Answer of " + server + " too long");
+				}
+			}
+			return new String(answer.toByteArray(), StandardCharsets.UTF_8).replace("\r\n", "\n");
+		} catch (final ExecutionException e) {
+			throw e.getCause() instanceof IOException ? (IOException) e.getCause() : new IOException("WhoIs to " + server + " failed", e.getCause());
+		} catch (final TimeoutException e) {
+			throw new SocketTimeoutException("WhoIs to " + server + " timed out");
+		} catch (final InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("WhoIs to " + server + " interrupted");
+		} finally {
+			permits.release();
+		}
+	}
+
+	/**
+	 * Wait for the minimum interval since the previous request to the server
+	 */
+	private void waitInterval(final Server server, final long deadline) throws IOException {
+		if (_minIntervalNanos <= 0) {
+			return;
+		}
+		final long now = System.nanoTime();
+		// reserve the next slot of the server
+		final long start = _nextRequests.compute(server, (s, next) -> (next == null ? now : Math.max(next, now)) + _minIntervalNanos)
+				- _minIntervalNanos;
+		final long wait = start - now;
+		if (wait > 0) {
+			if (wait > remaining(deadline)) {
+				throw new SocketTimeoutException("Too many requests to " + server);
+			}
+			try {
+				TimeUnit.NANOSECONDS.sleep(wait);
+			} catch (final InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new InterruptedIOException("WhoIs to " + server + " interrupted");
+			}
+		}
+	}
+
+	private static long remaining(final long deadline) throws SocketTimeoutException {
+		final long remaining = deadline - System.nanoTime();
+		if (remaining <= 0) {
+			throw new SocketTimeoutException("WhoIs timed out");
+		}
+		return remaining;
+	}
+
+	/**
+	 * A WHOIS server
+	 */
+	static final class Server {
+		private final String _host;
+		private final int _port;
+
+		Server(final String host, final int port) {
+			_host = host.toLowerCase(Locale.ROOT);
+			_port = port;
+		}
+
+		@Override
+		public boolean equals(final Object obj) {
+			if (!(obj instanceof Server)) {
+				return false;
+			}
+			final Server other = (Server) obj;
+			return _host.equals(other._host) && _port == other._port;
+		}
+
+		@Override
+		public int hashCode() {
+			return _host.hashCode() * 31 + _port;
+		}
+
+		@Override
+		public String toString() {
+			return _port == PORT ? _host : _host + ":" + _port;
+		}
+	}
+}
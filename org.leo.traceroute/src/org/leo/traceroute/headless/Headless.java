@@ -0,0 +1,379 @@
+/**
+ * Open Visual Trace Route
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.leo.traceroute.headless;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import org.leo.traceroute.core.ServiceFactory;
+import org.leo.traceroute.core.monitor.MonitorResults;
+import org.leo.traceroute.core.monitor.MonitorScheduler;
+import org.leo.traceroute.core.monitor.MonitorTarget;
+import org.leo.traceroute.core.route.RouteRunner;
+import org.leo.traceroute.core.route.RouteRunner.Status;
+import org.leo.traceroute.install.Env;
+import org.leo.traceroute.resources.Resources;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Headless $Id$
+ * <pre>
+ * Entry point without UI : starts the core services only (no AWT, OpenGL nor WorldWind), traces the destinations
+ * given on the command line or in a file and writes the results as NDJSON, one record per line.
+ * With an interval, runs as a scheduler tracing the destinations again every interval until stopped.
+ * With the API, serves its requests until stopped, with or without destinations.
+ * With the monitor, traces the destinations concurrently, each at its own interval, under a global rate of probes,
+ * and keeps their results in a rolling file (see {@link MonitorScheduler}).
+ * Exit code : 0 if all the traceroutes are done, 1 if some failed, 2 for a usage error.
+ * </pre>
+ * @author Leo Lewis
+ */
+public class Headless {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(Headless.class);
+
+	private static final String USAGE = String.join("\n", //
+			"Usage: headless [options] [destination...]", //
+			"  -f, --file <file>         read the destinations from a file, one per line, # for comments", //
+			"  -o, --output <file>       append the records to the file instead of the standard output", //
+			"  -i, --interval <seconds>  trace the destinations again every interval, until stopped", //
+			"  -t, --timeout <seconds>   time out of a traceroute, 0 for none (default 60)", //
+			"  -m, --max-hops <hops>     max number of hops (default from the config)", //
+			"  -n, --no-dns              do not resolve the host names", //
+			"  -6, --ipv6                use IPv6", //
+			"  -a, --api [host:]port     serve the HTTP API (default host 127.0.0.1), until stopped", //
+			"  -M, --monitor             monitor the destinations until stopped, a destination may be followed by", //
+			"                            its interval in seconds (default the interval option, else 300)", //
+			"      --rate <probes/s>     max number of probes per second of the monitor (default 20)", //
+			"      --parallel <n>        max number of traceroutes at the same time of the monitor (default 4)", //
+			"      --results <file>      rolling file of the results of the monitor (default ~/ovtr/ovtr.monitor.results)", //
+			"  -h, --help                print this help");
+
+	private static final long DEFAULT_MONITOR_INTERVAL_MS = TimeUnit.MINUTES.toMillis(5);
+
+	private final List<String> _destinations = new ArrayList<>();
+	private File _output;
+	private long _intervalMs;
+	private long _timeOutMs = TimeUnit.SECONDS.toMillis(60);
+	private int _maxHops = -1;
+	private boolean _resolveHostname = true;
+	private boolean _ipV4 = true;
+	private String _apiHost = "127.0.0.1";
+	private int _apiPort;
+	private boolean _monitor;
+	private final List<MonitorTarget> _targets = new ArrayList<>();
+	private long _rate = 20;
+	private int _parallel = 4;
+	private File _results = Env.MONITOR_RESULTS;
+
+	private volatile boolean _stopped;
+	private volatile RouteRunner _runner;
+	private final CountDownLatch _terminated = new CountDownLatch(1);
+
+	/**
+	 * Main
+	 * @param args
+	 */
+	public static void main(final String[] args) {
+		final Headless headless = new Headless();
+		try {
+			headless.parse(args);
+		} catch (final IllegalArgumentException | IOException e) {
+			System.err.println(e.getMessage());
+			System.err.println(USAGE);
+			System.exit(2);
+		}
+		System.exit(headless.run());
+	}
+
+	/**
+	 * Parse the command line
+	 * @param args the arguments
+	 * @throws IllegalArgumentException if invalid
+	 * @throws IOException if the file of the destinations can't be read
+	 */
+	void parse(final String[] args) throws IOException {
+		for (int i = 0; i < args.length; i++) {
+			final String arg = args[i];
+			switch (arg) {
+			case "-f":
+			case "--file":
+				for (final String line : Files.readAllLines(new File(value(args, ++i, arg)).toPath(), StandardCharsets.UTF_8)) {
+					final String dest = line.replaceAll("#.*", "").trim();
+					if (!dest.isEmpty()) {
+						_destinations.add(dest);
+					}
+				}
+				break;
+			case "-o":
+			case "--output":
+				_output = new File(value(args, ++i, arg));
+				break;
+			case "-i":
+			case "--interval":
+				_intervalMs = TimeUnit.SECONDS.toMillis(number(args, ++i, arg));
+				break;
+			case "-t":
+			case "--timeout":
+				_timeOutMs = TimeUnit.SECONDS.toMillis(number(args, ++i, arg));
+				break;
+			case "-m":
+			case "--max-hops":
+				_maxHops = (int) number(args, ++i, arg);
+				break;
+			case "-n":
+			case "--no-dns":
+				_resolveHostname = false;
+				break;
+			case "-6":
+			case "--ipv6":
+				_ipV4 = false;
+				break;
+			case "-a":
+			case "--api":
+				final String api = value(args, ++i, arg);
+				final int colon = api.lastIndexOf(':');
+				if (colon >= 0) {
+					_apiHost = api.substring(0, colon);
+				}
+				try {
+					_apiPort = Integer.parseInt(api.substring(colon + 1));
+				} catch (final NumberFormatException e) {
+					_apiPort = -1;
+				}
+				if (_apiPort <= 0 || _apiPort > 65535) {
+					throw new IllegalArgumentException("Invalid value of " + arg + " : " + api);
+				}
+				break;
+			case "-M":
+			case "--monitor":
+				_monitor = true;
+				break;
+			case "--rate":
+				_rate = number(args, ++i, arg);
+				break;
+			case "--parallel":
+				_parallel = (int) number(args, ++i, arg);
+				break;
+			case "--results":
+				_results = new File(value(args, ++i, arg));
+				break;
+			case "-h":
+			case "--help":
+				System.out.println(USAGE);
+				System.exit(0);
+				break;
+			default:
+				if (arg.startsWith("-")) {
+					throw new IllegalArgumentException("Unknown option " + arg);
+				}
+				_destinations.add(arg);
+			}
+		}
+		if (_destinations.isEmpty() && _apiPort == 0) {
+			throw new IllegalArgumentException("No destination");
+		}
+		if (_monitor) {
+			if (_rate == 0 || _parallel == 0) {
+				throw new IllegalArgumentException("Invalid rate or parallel of the monitor");
+			}
+			for (final String dest : _destinations) {
+				_targets.add(MonitorTarget.parse(dest, _intervalMs > 0 ? _intervalMs : DEFAULT_MONITOR_INTERVAL_MS));
+			}
+		}
+	}
+
+	private static String value(final String[] args, final int i, final String option) {
+		if (i >= args.length) {
+			throw new IllegalArgumentException("Missing value of " + option);
+		}
+		return args[i];
+	}
+
+	private static long number(final String[] args, final int i, final String option) {
+		try {
+			final long value = Long.parseLong(value(args, i, option));
+			if (value < 0) {
+				throw new NumberFormatException();
+			}
+			return value;
+		} catch (final NumberFormatException e) {
+			throw new IllegalArgumentException("Invalid value of " + option + " : " + args[i]);
+		}
+	}
+
+	/**
+	 * Start the services and trace the destinations
+	 * @return the exit code
+	 */
+	int run() {
+		final long ts = System.currentTimeMillis();
+		LOGGER.info("Open Visual Traceroute " + Resources.getVersion() + " headless");
+		final ServiceFactory services;
+		final Writer writer;
+		try {
+			Env.INSTANCE.initHeadlessEnv();
+			if (_apiPort > 0) {
+				Env.INSTANCE.setApiHost(_apiHost);
+				Env.INSTANCE.setApiPort(_apiPort);
+			}
+			services = new ServiceFactory();
+			Env.INSTANCE.loadDynamicConf(services);
+			services.init();
+			writer = _output == null ? new BufferedWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8))
+					: Files.newBufferedWriter(_output.toPath(), StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+		} catch (final Exception e) {
+			LOGGER.error("Error while starting the services", e);
+			System.err.println("Error while starting the services : " + e.getMessage());
+			return 1;
+		}
+		LOGGER.info("Startup completed in {}ms", System.currentTimeMillis() - ts);
+		final Consumer<String> output = record -> {
+			synchronized (writer) {
+				try {
+					writer.write(record);
+					writer.write('\n');
+					writer.flush();
+				} catch (final IOException e) {
+					LOGGER.error("Failed to write the record", e);
+				}
+			}
+		};
+		final Thread shutdown = new Thread(this::stop, "Shutdown");
+		Runtime.getRuntime().addShutdownHook(shutdown);
+		final int maxHops = _maxHops >= 0 ? _maxHops : Env.INSTANCE.getTrMaxHop();
+		boolean failed = false;
+		try {
+			if (_monitor) {
+				monitor(services, output, maxHops);
+			} else {
+				failed = trace(new RouteRunner(services.getTraceroute(), output), maxHops);
+			}
+			if (_apiPort > 0) {
+				waitStopped();
+			}
+		} catch (final InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} catch (final Exception e) {
+			LOGGER.error("Error while tracing", e);
+			failed = true;
+		} finally {
+			services.dispose();
+			try {
+				writer.close();
+			} catch (final IOException e) {
+				LOGGER.warn("Failed to close the output", e);
+			}
+			_terminated.countDown();
+		}
+		if (!_stopped) {
+			Runtime.getRuntime().removeShutdownHook(shutdown);
+		}
+		return failed ? 1 : 0;
+	}
+
+	/**
+	 * Trace the destinations one after the other, again every interval if any
+	 * @return true if some traceroutes failed
+	 */
+	private boolean trace(final RouteRunner runner, final int maxHops) throws InterruptedException {
+		_runner = runner;
+		boolean failed = false;
+		long next = System.currentTimeMillis();
+		do {
+			for (final String dest : _destinations) {
+				if (_stopped) {
+					break;
+				}
+				failed |= runner.trace(dest, _resolveHostname, _timeOutMs, _ipV4, maxHops) != Status.DONE;
+			}
+			if (_intervalMs > 0 && !_stopped) {
+				// fixed rate, a round longer than the interval starts the next one immediately
+				next += _intervalMs;
+				final long wait = next - System.currentTimeMillis();
+				if (wait > 0) {
+					synchronized (this) {
+						if (!_stopped) {
+							wait(wait);
+						}
+					}
+				} else {
+					next = System.currentTimeMillis();
+				}
+			}
+		} while (_intervalMs > 0 && !_stopped);
+		return failed;
+	}
+
+	/**
+	 * Monitor the targets until stopped
+	 */
+	private void monitor(final ServiceFactory services, final Consumer<String> output, final int maxHops) throws Exception {
+		if (_targets.isEmpty()) {
+			return;
+		}
+		final MonitorScheduler monitor = new MonitorScheduler(services, _targets, _parallel, _rate,
+				new MonitorResults(_results, MonitorResults.DEFAULT_MAX_BYTES), output);
+		monitor.setOptions(_timeOutMs, maxHops, _resolveHostname, _ipV4);
+		monitor.start();
+		services.setMonitor(monitor);
+		try {
+			waitStopped();
+		} finally {
+			services.setMonitor(null);
+			monitor.stop();
+		}
+	}
+
+	private synchronized void waitStopped() throws InterruptedException {
+		while (!_stopped) {
+			wait();
+		}
+	}
+
+	/**
+	 * Stop the scheduler and cancel the traceroute in progress, wait for the output to be closed
+	 */
+	private void stop() {
+		synchronized (this) {
+			_stopped = true;
+			notifyAll();
+		}
+		final RouteRunner runner = _runner;
+		if (runner != null) {
+			runner.cancel();
+		}
+		try {
+			_terminated.await(5, TimeUnit.SECONDS);
+		} catch (final InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+}
@@ -0,0 +1,230 @@
+/**
+ * Open Visual Trace Route
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.leo.traceroute.install;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.io.IOUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * DynamicConf $Id$
+ * <pre>
+ * Dynamic config downloaded from the server, with a local copy :
+ *  - the copy is loaded at startup, without any network access
+ *  - the refresh asks the server with a conditional GET (ETag, Last-Modified),
+ *    the copy is replaced when the server returns a new config
+ *  - the listeners are notified of the keys whose value changed
+ * The validators of the last download are stored in the copy.
+ * </pre>
+ * @author Leo Lewis
+ */
+public class DynamicConf {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(DynamicConf.class);
+
+	private static final String ETAG = "cache.etag";
+	private static final String LAST_MODIFIED = "cache.last.modified";
+	private static final int TIMEOUT = (int) TimeUnit.SECONDS.toMillis(30);
+	private static final int MAX_REDIRECTS = 5;
+
+	private final String _url;
+	private final File _cache;
+	private final List<IDynamicConfListener> _listeners = new CopyOnWriteArrayList<>();
+	private volatile Properties _properties = new Properties();
+	private String _etag;
+	private String _lastModified;
+
+	/**
+	 * Constructor
+	 * @param url url of the config
+	 * @param cache local copy
+	 */
+	public DynamicConf(final String url, final File cache) {
+		_url = url;
+		_cache = cache;
+	}
+
+	/**
+	 * Load the local copy
+	 * @return true if there is a local copy
+	 */
+	public synchronized boolean loadCache() {
+		if (!_cache.exists()) {
+			return false;
+		}
+		final Properties prop = new Properties();
+		try (InputStream in = Files.newInputStream(_cache.toPath())) {
+			prop.load(in);
+		} catch (final IOException | IllegalArgumentException e) {
+			LOGGER.warn("Invalid dynamic config copy {}, ignored", _cache, e);
+			return false;
+		}
+		_etag = (String) prop.remove(ETAG);
+		_lastModified = (String) prop.remove(LAST_MODIFIED);
+		_properties = prop;
+		return true;
+	}
+
+	/**
+	 * Ask the server for a new config
+	 * @return true if the config changed
+	 * @throws IOException if the server can't be reached
+	 */
+	public synchronized boolean refresh() throws IOException {
+		String url = _url;
+		HttpURLConnection connection = null;
+		try {
+			int status = 0;
+			for (int i = 0; i <= MAX_REDIRECTS; i++) {
+				connection = (HttpURLConnection) new URL(url).openConnection();
+				connection.setConnectTimeout(TIMEOUT);
+				connection.setReadTimeout(TIMEOUT);
+				connection.setInstanceFollowRedirects(true);
+				if (_etag != null) {
+					connection.setRequestProperty("If-None-Match", _etag);
+				}
+				if (_lastModified != null) {
+					connection.setRequestProperty("If-Modified-Since", _lastModified);
+				}
+				status = connection.getResponseCode();
+				if (status != HttpURLConnection.HTTP_MOVED_TEMP && status != HttpURLConnection.HTTP_MOVED_PERM
+						&& status != HttpURLConnection.HTTP_SEE_OTHER) {
+					break;
+				}
+				// across protocols, not followed by the connection
+				url = new URL(new URL(url), connection.getHeaderField("Location")).toString();
+				connection.disconnect();
+			}
+			if (status == HttpURLConnection.HTTP_NOT_MODIFIED) {
+				LOGGER.info("Dynamic config not modified");
+				return false;
+			}
+			if (status != HttpURLConnection.HTTP_OK) {
+				throw new IOException("Failed to retrieve data from " + url + ", Server returned " + status);
+			}
+			final Properties prop = new Properties();
+			try (InputStream in = connection.getInputStream()) {
+				prop.load(in);
+			}
+			_etag = connection.getHeaderField("ETag");
+			_lastModified = connection.getHeaderField("Last-Modified");
+			save(prop);
+			final Set<String> changed = diff(_properties, prop);
+			_properties = prop;
+			LOGGER.info("Dynamic config downloaded, {} value(s) changed", changed.size());
+			if (changed.isEmpty()) {
+				return false;
+			}
+			final Set<String> keys = Collections.unmodifiableSet(changed);
+			for (final IDynamicConfListener listener : _listeners) {
+				try {
+					listener.dynamicConfChanged(keys);
+				} catch (final RuntimeException e) {
+					LOGGER.error("Dynamic config listener failed", e);
+				}
+			}
+			return true;
+		} finally {
+			if (connection != null) {
+				connection.disconnect();
+			}
+		}
+	}
+
+	/**
+	 * Replace the local copy, through a temporary file so a crash leaves the previous one
+	 */
+	private void save(final Properties prop) {
+		final Properties copy = new Properties();
+		copy.putAll(prop);
+		if (_etag != null) {
+			copy.setProperty(ETAG, _etag);
+		}
+		if (_lastModified != null) {
+			copy.setProperty(LAST_MODIFIED, _lastModified);
+		}
+		final File tmp = new File(_cache.getAbsolutePath() + ".tmp");
+		OutputStream out = null;
+		try {
+			out = Files.newOutputStream(tmp.toPath());
+			copy.store(out, "Dynamic config from " + _url);
+			out.close();
+			Files.move(tmp.toPath(), _cache.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} catch (final IOException e) {
+			LOGGER.warn("Failed to save the dynamic config to {}", _cache, e);
+			tmp.delete();
+		} finally {
+			IOUtils.closeQuietly(out);
+		}
+	}
+
+	private static Set<String> diff(final Properties previous, final Properties next) {
+		final Set<String> changed = new HashSet<>();
+		for (final String key : previous.stringPropertyNames()) {
+			if (!previous.getProperty(key).equals(next.getProperty(key))) {
+				changed.add(key);
+			}
+		}
+		for (final String key : next.stringPropertyNames()) {
+			if (!previous.containsKey(key)) {
+				changed.add(key);
+			}
+		}
+		return changed;
+	}
+
+	/**
+	 * @param key the key
+	 * @return the value, null if none
+	 */
+	public String getProperty(final String key) {
+		return _properties.getProperty(key);
+	}
+
+	/**
+	 * Add a listener
+	 * @param listener the listener
+	 */
+	public void addListener(final IDynamicConfListener listener) {
+		_listeners.add(listener);
+	}
+
+	/**
+	 * Remove a listener
+	 * @param listener the listener
+	 */
+	public void removeListener(final IDynamicConfListener listener) {
+		_listeners.remove(listener);
+	}
+}
@@ -20,13 +20,11 @@ package org.leo.traceroute.install;
 
 import java.awt.Container;
 import java.awt.Font;
-import java.awt.Window;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.PrintStream;
 import java.lang.reflect.Field;
@@ -56,7 +54,6 @@ import javax.net.ssl.X509TrustManager;
 import javax.security.cert.X509Certificate;
 import javax.swing.JOptionPane;
 import javax.swing.JSplitPane;
-import javax.swing.SwingUtilities;
 
 import com.jogamp.opengl.*;
 import org.apache.commons.io.IOUtils;
@@ -165,6 +162,16 @@ public enum Env {
 	public static final File GEO_DATA_FILE = new File(OVTR_FOLDER.getAbsolutePath() + Util.FILE_SEPARATOR + "GeoLite2-City.mmdb");
 	public static final File GEO_DATA_FILE_OLD = new File(OVTR_FOLDER.getAbsolutePath() + Util.FILE_SEPARATOR + "GeoLite2-City.mmdb.old");
 	public static final File HISTORY = new File(OVTR_FOLDER.getAbsolutePath() + Util.FILE_SEPARATOR + "ovtr.history");
+	public static final File HISTORY_JOURNAL = new File(OVTR_FOLDER.getAbsolutePath() + Util.FILE_SEPARATOR + "ovtr.history.journal");
+	public static final File DYNAMIC_CONF_CACHE = new File(OVTR_FOLDER.getAbsolutePath() + Util.FILE_SEPARATOR + "ovtr.dynconf.properties");
+	public static final File MONITOR_RESULTS = new File(OVTR_FOLDER.getAbsolutePath() + Util.FILE_SEPARATOR + "ovtr.monitor.results");
+
+	/** Dynamic config, created with the Env so that listeners can be added before it is loaded */
+	private static final DynamicConf DYNAMIC_CONF = new DynamicConf(Resources.getStatic("dynamic.conf.url"), DYNAMIC_CONF_CACHE);
+	static {
+		// first listener, the others see the new values
+		DYNAMIC_CONF.addListener(keys -> INSTANCE.applyDynamicConf());
+	}
 
 	/** Config file */
 	public static final File ORIG_CONFIG_FILE = new File(RES_FOLDER.getAbsolutePath() + Util.FILE_SEPARATOR + "conf.properties");
@@ -217,11 +224,18 @@ public enum Env {
 	private static final String MAP_LINE_THICKNESS = "map.line.thickness";
 	private static final String REPLAY_SPEED = "replay.speed";
 	private static final String TR_MAX_HOP = "tr.max.hop";
+	private static final String SNIFFER_ENRICH_THREADS = "sniffer.enrich.threads";
+	private static final String SNIFFER_PCAP_DIR = "sniffer.pcap.dir";
+	private static final String SNIFFER_PCAP_FORMAT = "sniffer.pcap.format";
+	private static final String SNIFFER_PCAP_ROTATE_MB = "sniffer.pcap.rotate.mb";
+	private static final String SNIFFER_PCAP_ROTATE_MINUTES = "sniffer.pcap.rotate.minutes";
 	private static final String MAP_SHOW_LABEL = "map.show.labels";
 	private static final String FONT_NAME = "font.name";
 	private static final String FONT_SIZE = "font.size";
 	private static final String FONT_STYLE = "font.style";
 	private static final String DARK_THEME = "theme.dark";
+	private static final String API_PORT = "api.port";
+	private static final String API_HOST = "api.host";
 
 	/** App config  */
 	private final Properties _conf = new Properties();
@@ -263,19 +277,27 @@ public enum Env {
 	private int _mapLineThickness;
 	private int _replaySpeed;
 	private int _trMaxHop;
+	private int _snifferEnrichThreads = 4;
+	private String _snifferPcapDir = "";
+	private String _snifferPcapFormat = "pcapng";
+	private int _snifferPcapRotateMb = 100;
+	private int _snifferPcapRotateMinutes;
 	private boolean _mapShowLabel;
 	private Font _font;
-
-	// dynamic conf
-	private String[] _ipResolvers;
-	private String[] _geoIpLocation;
-	private String _donateUrl;
-	private String _websitetUrl;
-	private String _supportUrl;
-	private String _versionUrl;
-	private String _whatsnewUrl;
-	private String _downloadUrl;
-	private String _facebookUrl;
+	/** Port of the API, 0 to disable */
+	private int _apiPort;
+	private String _apiHost = "127.0.0.1";
+
+	// dynamic conf, updated by the background refresh
+	private volatile String[] _ipResolvers;
+	private volatile String[] _geoIpLocation;
+	private volatile String _donateUrl;
+	private volatile String _websitetUrl;
+	private volatile String _supportUrl;
+	private volatile String _versionUrl;
+	private volatile String _whatsnewUrl;
+	private volatile String _downloadUrl;
+	private volatile String _facebookUrl;
 
 	private final Set<IMapConfigListener> _showLabelsListener = new HashSet<>();
 	private final Set<IConfigProvider> _configProvider = new HashSet<>();
@@ -296,18 +318,7 @@ public enum Env {
 
 
 //		System.setProperty("jogl.windows.useWGLVersionOf5WGLGDIFuncSet", "true");
-		final Proxy proxy = getProxy();
-		if (proxy != null) {
-			final InetSocketAddress addr = (InetSocketAddress) proxy.address();
-			if (addr != null) {
-				final String host = addr.getHostName();
-				final int port = addr.getPort();
-				setProxyHost(host);
-				setProxyPort(String.valueOf(port));
-				LOGGER.info("Detected system proxy " + host + ":" + port);
-			}
-
-		}
+		detectProxy();
 		System.setErr(new PrintStream(new OutputStream() {
 			@Override
 			public void write(final int b) {
@@ -333,6 +344,42 @@ public enum Env {
 		return archOs;
 	}
 
+	/**
+	 * Init the environment of the headless mode, without look and feel, OpenGL nor WorldWind
+	 *
+	 * @throws EnvException
+	 */
+	public Pair<OS, Arch> initHeadlessEnv() throws EnvException {
+		LOGGER.info("Java run-time version: " + System.getProperty("java.version"));
+		System.setProperty("java.awt.headless", "true");
+		System.setProperty("java.net.useSystemProxies", "true");
+		detectProxy();
+		final Pair<OS, Arch> archOs = checkArchAndOs();
+		_os = archOs.getLeft();
+		_arch = archOs.getRight();
+		try {
+			loadConfig();
+		} catch (final Exception e) {
+			throw new EnvException("Error while loading application saved configuration", e);
+		}
+		return archOs;
+	}
+
+	private void detectProxy() {
+		final Proxy proxy = getProxy();
+		if (proxy != null) {
+			final InetSocketAddress addr = (InetSocketAddress) proxy.address();
+			if (addr != null) {
+				final String host = addr.getHostName();
+				final int port = addr.getPort();
+				setProxyHost(host);
+				setProxyPort(String.valueOf(port));
+				LOGGER.info("Detected system proxy " + host + ":" + port);
+			}
+
+		}
+	}
+
 	private Pair<OS, Arch> checkArchAndOs() throws EnvException {
 		final String osName = System.getProperty("os.name");
 		final String archName = System.getProperty("os.arch");
@@ -368,23 +415,7 @@ public enum Env {
 			synchronized (this) {
 				if (_openGlAvailable == null) {
 					try {
-						// create an offscreen context with the current graphic device
-						final GLProfile glProfile = GLProfile.getDefault(GLProfile.getDefaultDevice());
-						final GLCapabilities caps = new GLCapabilities(glProfile);
-						caps.setOnscreen(false);
-						caps.setPBuffer(false);
-						final GLDrawable offscreenDrawable = GLDrawableFactory.getFactory(glProfile).createOffscreenDrawable(null, caps,
-								new DefaultGLCapabilitiesChooser(), 1, 1);
-						offscreenDrawable.setRealized(true);
-						final GLContext context = offscreenDrawable.createContext(null);
-						final int additionalCtxCreationFlags = 0;
-						context.setContextCreationFlags(additionalCtxCreationFlags);
-						context.makeCurrent();
-						final GL gl = context.getGL();
-						// WWJ will need those to render the globe
-						_openGlAvailable = gl.isExtensionAvailable(GLExtensions.EXT_texture_compression_s3tc)
-								|| gl.isExtensionAvailable(GLExtensions.NV_texture_compression_vtc);
-						context.release();
+						_openGlAvailable = OpenGLCheck.isAvailable();
 					} catch (final Throwable e) {
 						LOGGER.error("OpenGL", e);
 						_openGlAvailable = false;
@@ -417,7 +448,7 @@ public enum Env {
 			Locale.setDefault(new Locale("en", "GB"));
 			break;
 		}
-		System.out.println("Locale " + Locale.getDefault());
+		LOGGER.info("Locale " + Locale.getDefault());
 		Resources.initLabels();
 	}
 
@@ -425,7 +456,8 @@ public enum Env {
 		FileOutputStream os = null;
 		try {
 			LOGGER.info("Preferences saved.");
-			final Window window = SwingUtilities.getWindowAncestor(split);
+			// no conversion of the Swing types, the verification of Env would load them in headless mode
+			final Container window = split.getTopLevelAncestor();
 			_conf.put(APP_HEIGHT, String.valueOf(split.getHeight() + 42));
 			_conf.put(APP_WIDTH, String.valueOf(split.getWidth()));
 			_conf.put(APP_X, String.valueOf(window.getLocation().x));
@@ -445,11 +477,19 @@ public enum Env {
 			_conf.put(REPLAY_SPEED, String.valueOf(_replaySpeed));
 			_conf.put(HIDE_SPLASH_SCREEN, String.valueOf(_hideSplashScreen));
 			_conf.put(TR_MAX_HOP, String.valueOf(_trMaxHop));
+			_conf.put(SNIFFER_ENRICH_THREADS, String.valueOf(_snifferEnrichThreads));
+			_conf.put(SNIFFER_PCAP_DIR, _snifferPcapDir);
+			_conf.put(SNIFFER_PCAP_FORMAT, _snifferPcapFormat);
+			_conf.put(SNIFFER_PCAP_ROTATE_MB, String.valueOf(_snifferPcapRotateMb));
+			_conf.put(SNIFFER_PCAP_ROTATE_MINUTES, String.valueOf(_snifferPcapRotateMinutes));
 			_conf.put(MAP_SHOW_LABEL, String.valueOf(_mapShowLabel));
-			_conf.put(FONT_NAME, String.valueOf(_font.getFontName()));
-			_conf.put(FONT_SIZE, String.valueOf(_font.getSize()));
-			_conf.put(FONT_STYLE, String.valueOf(_font.getStyle()));
+			final Font font = getFont();
+			_conf.put(FONT_NAME, String.valueOf(font.getFontName()));
+			_conf.put(FONT_SIZE, String.valueOf(font.getSize()));
+			_conf.put(FONT_STYLE, String.valueOf(font.getStyle()));
 			_conf.put(DARK_THEME, String.valueOf(_darkTheme));
+			_conf.put(API_PORT, String.valueOf(_apiPort));
+			_conf.put(API_HOST, _apiHost);
 			for (final IConfigProvider c : _configProvider) {
 				for (final Entry<String, String> entry : c.save().entrySet()) {
 					_conf.put(c.name() + "." + entry.getKey(), entry.getValue());
@@ -511,7 +551,8 @@ public enum Env {
 			_rightSeparator = Integer.parseInt(_conf.getProperty(RIGHT_SEPARATOR, "450"));
 			_useOSTraceroute = Boolean.parseBoolean(_conf.getProperty(USE_OS_TR, "false"));
 			_fullScreen = Boolean.parseBoolean(_conf.getProperty(FULL_SCREEN, "false"));
-			_is3dMap = Env.INSTANCE.isOpenGLAvailable() ? Boolean.parseBoolean(_conf.getProperty(IS_3D, "true")) : false;
+			// OpenGL checked when the map is created, not loaded in headless mode
+			_is3dMap = Boolean.parseBoolean(_conf.getProperty(IS_3D, "true"));
 			_mode = Mode.TRACE_ROUTE;// Mode.valueOf(_conf.getProperty(MODE, Mode.TRACE_ROUTE.name()));
 			_snifferInterfaceIndex = Integer.parseInt(_conf.getProperty(SNIFFER_INTERFACE, "-1"));
 			_trInterfaceIndex = Integer.parseInt(_conf.getProperty(TR_INTERFACE, "-1"));
@@ -523,13 +564,16 @@ public enum Env {
 			_replaySpeed = Integer.parseInt(_conf.getProperty(REPLAY_SPEED, "2000"));
 			_hideSplashScreen = Boolean.parseBoolean(_conf.getProperty(HIDE_SPLASH_SCREEN, "false"));
 			_trMaxHop = Integer.parseInt(_conf.getProperty(TR_MAX_HOP, "50"));
+			_snifferEnrichThreads = Integer.parseInt(_conf.getProperty(SNIFFER_ENRICH_THREADS, "4"));
+			_snifferPcapDir = _conf.getProperty(SNIFFER_PCAP_DIR, "");
+			_snifferPcapFormat = _conf.getProperty(SNIFFER_PCAP_FORMAT, "pcapng");
+			_snifferPcapRotateMb = Integer.parseInt(_conf.getProperty(SNIFFER_PCAP_ROTATE_MB, "100"));
+			_snifferPcapRotateMinutes = Integer.parseInt(_conf.getProperty(SNIFFER_PCAP_ROTATE_MINUTES, "0"));
 			_mapShowLabel = Boolean.parseBoolean(_conf.getProperty(MAP_SHOW_LABEL, "true"));
+			_apiPort = Integer.parseInt(_conf.getProperty(API_PORT, "0"));
+			_apiHost = _conf.getProperty(API_HOST, "127.0.0.1");
 			_appX = _conf.containsKey(APP_X) ? Integer.parseInt(_conf.getProperty(APP_X)) : null;
 			_appY = _conf.containsKey(APP_Y) ? Integer.parseInt(_conf.getProperty(APP_Y)) : null;
-			final String fontName = _conf.getProperty(FONT_NAME, "SansSerif");
-			final int fontSize = Integer.parseInt(_conf.getProperty(FONT_SIZE, "9"));
-			final int fontStyle = Integer.parseInt(_conf.getProperty(FONT_STYLE, String.valueOf(Font.PLAIN)));
-			_font = new Font(fontName, fontStyle, fontSize);
 			if (!Boolean.parseBoolean(_conf.getProperty("strictSSL", "false"))) {
 				try {
 					final TrustManager[] trustAllCerts = new TrustManager[] { new X509TrustManager() {
@@ -884,64 +928,53 @@ public enum Env {
 	}
 
 	/**
-	 * Load dynamic config from server
+	 * Load dynamic config from the local copy, then refresh it from the server in background
+	 * @param factory the services, running the refresh
 	 */
 	public void loadDynamicConf(final ServiceFactory factory) {
-		InputStream dynConf = null;
-		try {
-			if (factory != null) {
-				factory.updateStartup("loading.dynamic.conf", true);
-			}
-			dynConf = Util.followRedirectOpenConnection(Resources.getStatic("dynamic.conf.url"));
-			final Properties prop = new Properties();
-			prop.load(dynConf);
-			final String ips = prop.getProperty("ip.resolver");
-			if (ips != null) {
-				_ipResolvers = ips.split(",");
-			}
-			final String geoDBs = prop.getProperty("geo.ip.location3");
-			if (geoDBs != null) {
-				_geoIpLocation = geoDBs.split(",");
-			}
-			_donateUrl = prop.getProperty("donate.url");
-			_versionUrl = prop.getProperty("version.url");
-			_whatsnewUrl = prop.getProperty("whats.new.url");
-			_downloadUrl = prop.getProperty("download.url");
-			_supportUrl = prop.getProperty("support.url");
-			_websitetUrl = prop.getProperty("website.url");
-			_facebookUrl = prop.getProperty("facebook.url");
-		} catch (final Exception e) {
-			LOGGER.error("Failed to download dynamic config. Fallback to default", e);
-		} finally {
-			IOUtils.closeQuietly(dynConf);
-		}
-		if (_geoIpLocation == null) {
-			_geoIpLocation = Resources.getStatic("update.geoip.url").split(",");
-		}
-		if (_ipResolvers == null) {
-			_ipResolvers = new String[] { "http://api.ipify.org/", "http://bot.whatismyipaddress.com/" };
-		}
-		if (_donateUrl == null) {
-			_donateUrl = Resources.getStatic("donate.url");
-		}
-		if (_versionUrl == null) {
-			_versionUrl = Resources.getStatic("version.url");
-		}
-		if (_whatsnewUrl == null) {
-			_whatsnewUrl = Resources.getStatic("whats.new.url");
-		}
-		if (_downloadUrl == null) {
-			_downloadUrl = Resources.getStatic("download.url");
-		}
-		if (_supportUrl == null) {
-			_supportUrl = Resources.getStatic("support.url");
-		}
-		if (_websitetUrl == null) {
-			_websitetUrl = Resources.getStatic("website.url");
-		}
-		if (_facebookUrl == null) {
-			_facebookUrl = Resources.getStatic("facebook.url");
+		factory.updateStartup("loading.dynamic.conf", true);
+		if (!DYNAMIC_CONF.loadCache()) {
+			LOGGER.info("No local dynamic config, use default until downloaded");
 		}
+		applyDynamicConf();
+		factory.getRuntime().io().execute(() -> {
+			try {
+				DYNAMIC_CONF.refresh();
+			} catch (final Exception e) {
+				LOGGER.error("Failed to download dynamic config. Keep the local one", e);
+			}
+		});
+	}
+
+	/**
+	 * Read the values of the dynamic config, default ones when missing
+	 */
+	private void applyDynamicConf() {
+		final String ips = DYNAMIC_CONF.getProperty("ip.resolver");
+		_ipResolvers = ips != null ? ips.split(",") : new String[] { "http://api.ipify.org/", "http://bot.whatismyipaddress.com/" };
+		final String geoDBs = DYNAMIC_CONF.getProperty("geo.ip.location3");
+		_geoIpLocation = (geoDBs != null ? geoDBs : Resources.getStatic("update.geoip.url")).split(",");
+		_donateUrl = getDynamicConf("donate.url", "donate.url");
+		_versionUrl = getDynamicConf("version.url", "version.url");
+		_whatsnewUrl = getDynamicConf("whats.new.url", "whats.new.url");
+		_downloadUrl = getDynamicConf("download.url", "download.url");
+		_supportUrl = getDynamicConf("support.url", "support.url");
+		_websitetUrl = getDynamicConf("website.url", "website.url");
+		_facebookUrl = getDynamicConf("facebook.url", "facebook.url");
+	}
+
+	private String getDynamicConf(final String key, final String defaultKey) {
+		final String value = DYNAMIC_CONF.getProperty(key);
+		return value != null ? value : Resources.getStatic(defaultKey);
+	}
+
+	/**
+	 * Add a listener notified when a refresh of the dynamic config changes some urls or resolvers, may be added
+	 * before the config is loaded
+	 * @param listener the listener, called from the refreshing thread
+	 */
+	public void addDynamicConfListener(final IDynamicConfListener listener) {
+		DYNAMIC_CONF.addListener(listener);
 	}
 
 	public String[] getIpResolvers() {
@@ -976,6 +1009,118 @@ public enum Env {
 		_trMaxHop = trMaxHop;
 	}
 
+	/**
+	 * Return the port of the API
+	 * @return the port, 0 if the API is disabled
+	 */
+	public int getApiPort() {
+		return _apiPort;
+	}
+
+	/**
+	 * Set the port of the API
+	 * @param apiPort the port, 0 to disable the API
+	 */
+	public void setApiPort(final int apiPort) {
+		_apiPort = apiPort;
+	}
+
+	/**
+	 * Return the address the API listens to
+	 * @return the value of apiHost
+	 */
+	public String getApiHost() {
+		return _apiHost;
+	}
+
+	/**
+	 * Set the address the API listens to
+	 * @param apiHost the new apiHost to set
+	 */
+	public void setApiHost(final String apiHost) {
+		_apiHost = apiHost;
+	}
+
+	/**
+	 * Return the value of the field snifferEnrichThreads
+	 * @return the value of snifferEnrichThreads
+	 */
+	public int getSnifferEnrichThreads() {
+		return _snifferEnrichThreads;
+	}
+
+	/**
+	 * Set the value of the field snifferEnrichThreads
+	 * @param snifferEnrichThreads the new snifferEnrichThreads to set
+	 */
+	public void setSnifferEnrichThreads(final int snifferEnrichThreads) {
+		_snifferEnrichThreads = snifferEnrichThreads;
+	}
+
+	/**
+	 * Return the value of the field snifferPcapDir
+	 * @return the value of snifferPcapDir
+	 */
+	public String getSnifferPcapDir() {
+		return _snifferPcapDir;
+	}
+
+	/**
+	 * Set the value of the field snifferPcapDir
+	 * @param snifferPcapDir the new snifferPcapDir to set
+	 */
+	public void setSnifferPcapDir(final String snifferPcapDir) {
+		_snifferPcapDir = snifferPcapDir;
+	}
+
+	/**
+	 * Return the value of the field snifferPcapFormat
+	 * @return the value of snifferPcapFormat
+	 */
+	public String getSnifferPcapFormat() {
+		return _snifferPcapFormat;
+	}
+
+	/**
+	 * Set the value of the field snifferPcapFormat
+	 * @param snifferPcapFormat the new snifferPcapFormat to set
+	 */
+	public void setSnifferPcapFormat(final String snifferPcapFormat) {
+		_snifferPcapFormat = snifferPcapFormat;
+	}
+
+	/**
+	 * Return the value of the field snifferPcapRotateMb
+	 * @return the value of snifferPcapRotateMb
+	 */
+	public int getSnifferPcapRotateMb() {
+		return _snifferPcapRotateMb;
+	}
+
+	/**
+	 * Set the value of the field snifferPcapRotateMb
+	 * @param snifferPcapRotateMb the new snifferPcapRotateMb to set
+	 */
+	public void setSnifferPcapRotateMb(final int snifferPcapRotateMb) {
+		_snifferPcapRotateMb = snifferPcapRotateMb;
+	}
+
+	/**
+	 * Return the value of the field snifferPcapRotateMinutes
+	 * @return the value of snifferPcapRotateMinutes
+	 */
+	public int getSnifferPcapRotateMinutes() {
+		return _snifferPcapRotateMinutes;
+	}
+
+	/**
+	 * Set the value of the field snifferPcapRotateMinutes
+	 * @param snifferPcapRotateMinutes the new snifferPcapRotateMinutes to set
+	 */
+	public void setSnifferPcapRotateMinutes(final int snifferPcapRotateMinutes) {
+		_snifferPcapRotateMinutes = snifferPcapRotateMinutes;
+	}
+
 	/**
 	 * Return the value of the field mapShowLabel
 	 * @return the value of mapShowLabel
@@ -1086,6 +1231,13 @@ public enum Env {
 	 * @return the value of font
 	 */
 	public Font getFont() {
+		if (_font == null) {
+			// created when first used, the headless mode does not load AWT
+			final String fontName = _conf.getProperty(FONT_NAME, "SansSerif");
+			final int fontSize = Integer.parseInt(_conf.getProperty(FONT_SIZE, "9"));
+			final int fontStyle = Integer.parseInt(_conf.getProperty(FONT_STYLE, String.valueOf(Font.PLAIN)));
+			_font = new Font(fontName, fontStyle, fontSize);
+		}
 		return _font;
 	}
 
@@ -1149,4 +1301,34 @@ public enum Env {
 		}
 		return null;
 	}
+
+	/**
+	 * OpenGL probe, in its own class so that JOGL is only loaded when the map needs it
+	 */
+	private static final class OpenGLCheck {
+
+		/**
+		 * @return true if the OpenGL extensions required by WorldWind are available
+		 */
+		static boolean isAvailable() {
+			// create an offscreen context with the current graphic device
+			final GLProfile glProfile = GLProfile.getDefault(GLProfile.getDefaultDevice());
+			final GLCapabilities caps = new GLCapabilities(glProfile);
+			caps.setOnscreen(false);
+			caps.setPBuffer(false);
+			final GLDrawable offscreenDrawable = GLDrawableFactory.getFactory(glProfile).createOffscreenDrawable(null, caps,
+					new DefaultGLCapabilitiesChooser(), 1, 1);
+			offscreenDrawable.setRealized(true);
+			final GLContext context = offscreenDrawable.createContext(null);
+			final int additionalCtxCreationFlags = 0;
+			context.setContextCreationFlags(additionalCtxCreationFlags);
+			context.makeCurrent();
+			final GL gl = context.getGL();
+			// WWJ will need those to render the globe
+			final boolean available = gl.isExtensionAvailable(GLExtensions.EXT_texture_compression_s3tc)
+					|| gl.isExtensionAvailable(GLExtensions.NV_texture_compression_vtc);
+			context.release();
+			return available;
+		}
+	}
 }
@@ -0,0 +1,38 @@
+/**
+ * Open Visual Trace Route
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.leo.traceroute.install;
+
+import java.util.Set;
+
+/**
+ * IDynamicConfListener $Id$
+ * <pre>
+ * Notified when a refresh of the dynamic config changes some values.
+ * The listeners are called from the refreshing thread, not from the EDT : a listener updating the UI
+ * must do it in SwingUtilities.invokeLater itself.
+ * </pre>
+ * @author Leo Lewis
+ */
+public interface IDynamicConfListener {
+
+	/**
+	 * Dynamic config changed, called from the refreshing thread
+	 * @param keys the keys whose value changed
+	 */
+	void dynamicConfChanged(final Set<String> keys);
+}
@@ -18,9 +18,20 @@
  */
 package org.leo.traceroute.resources;
 
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
+import javax.imageio.ImageIO;
 import javax.swing.ImageIcon;
 
 import org.leo.traceroute.core.geo.GeoPoint;
@@ -31,6 +42,9 @@ import org.slf4j.LoggerFactory;
  * CountryFlagManager $Id: CountryFlagManager.java 231 2016-01-27 08:24:31Z leolewis $
  *
  * <pre>
+ * Flags of the countries. All the flags of a resolution are loaded once, in one sprite image (atlas),
+ * the icons are sub-images of the atlas. Once loaded, the lookups do not lock.
+ * The atlases can be loaded in background at startup, see {@link #preload()}.
  * </pre>
  *
  * @author leo.lewis
@@ -60,8 +74,22 @@ public class CountryFlagManager {
 		}
 	}
 
-	/** cache */
-	private static final Map<String, ImageIcon> CACHE = new HashMap<>();
+	/** Codes of the flags that are not countries */
+	private static final List<String> OTHER_CODES = Arrays.asList("AN", "EU", "IC");
+	/** Flags per row of an atlas */
+	private static final int ATLAS_COLUMNS = 16;
+
+	/** Atlas of each resolution, by ordinal */
+	private static final AtomicReferenceArray<FlagAtlas> ATLASES = new AtomicReferenceArray<>(Resolution.values().length);
+
+	/**
+	 * Load the atlases of all the resolutions, to call in background at startup
+	 */
+	public static void preload() {
+		for (final Resolution resolution : Resolution.values()) {
+			getAtlas(resolution);
+		}
+	}
 
 	/**
 	 * Get the image for the given route point
@@ -80,30 +108,77 @@ public class CountryFlagManager {
 	 * @param resolution
 	 * @return image
 	 */
-	public synchronized static ImageIcon getImageFor(final GeoPoint point, final Resolution resolution) {
-		final String key = resolution.name() + "_" + point.getCountryIso();
-
-		ImageIcon icon = CACHE.get(key);
-		if (icon == null) {
-			try {
-				if (!GeoPoint.UNKNOWN.equals(point.getCountryIso()) && point.getCountryIso() != null) {
-					icon = Resources.getImageIcon("flag/" + resolution._res + "/" + point.getCountryIso() + ".png");
-				}
-			} catch (final Exception e) {
-				LOGGER.warn("Failed to load icon {}", key, e);
+	public static ImageIcon getImageFor(final GeoPoint point, final Resolution resolution) {
+		final FlagAtlas atlas = getAtlas(resolution);
+		final String iso = point.getCountryIso();
+		ImageIcon icon = null;
+		if (iso != null && !GeoPoint.UNKNOWN.equals(iso)) {
+			icon = atlas._icons.get(iso.toUpperCase(Locale.ROOT));
+		}
+		return icon != null ? icon : atlas._unknown;
+	}
+
+	/**
+	 * @return the atlas of the resolution, loaded by the first call
+	 */
+	private static FlagAtlas getAtlas(final Resolution resolution) {
+		final FlagAtlas atlas = ATLASES.get(resolution.ordinal());
+		if (atlas != null) {
+			return atlas;
+		}
+		synchronized (ATLASES) {
+			FlagAtlas loaded = ATLASES.get(resolution.ordinal());
+			if (loaded == null) {
+				loaded = new FlagAtlas(resolution);
+				ATLASES.set(resolution.ordinal(), loaded);
 			}
-			if (icon == null) {
-				switch (resolution) {
-				case R16:
-					icon = Resources.getImageIcon("info.gif");
-					break;
-				default:
-					icon = Resources.getImageIcon("info2.png");
-					break;
+			return loaded;
+		}
+	}
+
+	/**
+	 * The flags of a resolution, immutable once loaded
+	 */
+	private static final class FlagAtlas {
+
+		private final Map<String, ImageIcon> _icons;
+		private final ImageIcon _unknown;
+
+		private FlagAtlas(final Resolution resolution) {
+			final long start = System.currentTimeMillis();
+			final int size = resolution._res;
+			final List<String> codes = new ArrayList<>(Arrays.asList(Locale.getISOCountries()));
+			codes.addAll(OTHER_CODES);
+			final List<String> loadedCodes = new ArrayList<>(codes.size());
+			final List<BufferedImage> images = new ArrayList<>(codes.size());
+			for (final String code : codes) {
+				final URL url = Resources.getImageURL("flag/" + size + "/" + code + ".png");
+				if (url != null) {
+					try {
+						final BufferedImage image = ImageIO.read(url);
+						if (image != null) {
+							loadedCodes.add(code);
+							images.add(image);
+						}
+					} catch (final IOException e) {
+						LOGGER.warn("Failed to load flag {} {}", code, resolution, e);
+					}
 				}
 			}
-			CACHE.put(key, icon);
+			final int rows = Math.max(1, (images.size() + ATLAS_COLUMNS - 1) / ATLAS_COLUMNS);
+			final BufferedImage sprite = new BufferedImage(ATLAS_COLUMNS * size, rows * size, BufferedImage.TYPE_INT_ARGB);
+			final Graphics2D g = sprite.createGraphics();
+			final Map<String, ImageIcon> icons = new HashMap<>(loadedCodes.size() * 2);
+			for (int i = 0; i < images.size(); i++) {
+				final int x = (i % ATLAS_COLUMNS) * size;
+				final int y = (i / ATLAS_COLUMNS) * size;
+				g.drawImage(images.get(i), x, y, size, size, null);
+				icons.put(loadedCodes.get(i), new ImageIcon(sprite.getSubimage(x, y, size, size)));
+			}
+			g.dispose();
+			_icons = Collections.unmodifiableMap(icons);
+			_unknown = Resources.getImageIcon(resolution == Resolution.R16 ? "info.gif" : "info2.png");
+			LOGGER.info("{} flags {} loaded in {}ms", icons.size(), resolution, System.currentTimeMillis() - start);
 		}
-		return icon;
 	}
 }
@@ -137,13 +137,23 @@ public class Resources {
 	 * @return image
 	 */
 	public static Image getImage(final String key) {
-		final URL url = Resources.class.getResource("/" + RESOURCE_IMAGE + "/" + key);
+		final URL url = getImageURL(key);
 		if (url == null) {
 			throw new IllegalArgumentException();
 		}
 		return Toolkit.getDefaultToolkit().getImage(url);
 	}
 
+	/**
+	 * Get the url of the resource image corresponding to given key
+	 *
+	 * @param key key
+	 * @return url, null if the image does not exist
+	 */
+	public static URL getImageURL(final String key) {
+		return Resources.class.getResource("/" + RESOURCE_IMAGE + "/" + key);
+	}
+
 	/**
 	 * Get resource image icon corresponding to given key
 	 *
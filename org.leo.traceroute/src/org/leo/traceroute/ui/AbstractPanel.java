@@ -31,6 +31,7 @@ import org.leo.traceroute.core.route.RoutePoint;
 import org.leo.traceroute.core.sniffer.AbstractPacketPoint;
 import org.leo.traceroute.core.sniffer.IPacketListener;
 import org.leo.traceroute.core.sniffer.IPacketsSniffer;
+import org.leo.traceroute.core.sniffer.flow.FlowUpdate;
 import org.leo.traceroute.core.whois.IWhoIsListener;
 import org.leo.traceroute.core.whois.WhoIs;
 import org.leo.traceroute.resources.Resources;
@@ -98,6 +99,14 @@ public abstract class AbstractPanel extends JPanel implements IRouteListener, IP
 	public void afterShow(final Mode mode) {
 	}
 
+	/**
+	 * Most of the panels only display the packets
+	 * @see org.leo.traceroute.core.sniffer.IPacketListener#flowsUpdated(org.leo.traceroute.core.sniffer.flow.FlowUpdate)
+	 */
+	@Override
+	public void flowsUpdated(final FlowUpdate update) {
+	}
+
 	/**
 	 * Text for a point
 	 *
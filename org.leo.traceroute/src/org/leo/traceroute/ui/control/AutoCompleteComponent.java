@@ -25,9 +25,9 @@ import java.awt.event.MouseAdapter;
 import java.awt.event.MouseEvent;
 import java.util.Arrays;
 import java.util.List;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.Executor;
 import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
 import java.util.concurrent.atomic.AtomicReference;
 
 import javax.swing.JMenuItem;
@@ -42,6 +42,7 @@ import javax.swing.event.PopupMenuEvent;
 import javax.swing.event.PopupMenuListener;
 
 import org.apache.commons.lang3.exception.ExceptionUtils;
+import org.leo.traceroute.core.ServiceFactory;
 import org.leo.traceroute.core.autocomplete.AutoCompleteProvider;
 import org.leo.traceroute.core.geo.GeoPoint;
 import org.leo.traceroute.core.route.IRouteListener;
@@ -53,8 +54,6 @@ import org.leo.traceroute.resources.Resources;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import com.googlecode.concurrenttrees.common.KeyValuePair;
-
 /**
  * AutoCompleteComponent $Id: AutoCompleteComponent.java 133 2011-08-06
  * 12:53:54Z leolewis $
@@ -81,18 +80,19 @@ public class AutoCompleteComponent implements IRouteListener, IWhoIsListener {
 	/** Autocomplete in progress item */
 	private JMenuItem _autocompleteInProgressItem;
 
-	private ExecutorService _executor;
-
 	private final AtomicReference<Future<?>> _future = new AtomicReference<>();
 
 	private final AutoCompleteProvider _provider;
+	/** Executor of the completions */
+	private final Executor _executor;
 
 	/**
 	 * Constructor
 	 */
-	public AutoCompleteComponent(final JTextField textfield, final AutoCompleteProvider provider) {
+	public AutoCompleteComponent(final JTextField textfield, final ServiceFactory services) {
 		super();
-		_provider = provider;
+		_provider = services.getAutocomplete();
+		_executor = services.getRuntime().cpu();
 		_autoCompleteTextField = textfield;
 		init();
 	}
@@ -101,13 +101,6 @@ public class AutoCompleteComponent implements IRouteListener, IWhoIsListener {
 	 * Init the component
 	 */
 	protected void init() {
-		_executor = Executors.newFixedThreadPool(3, r -> {
-			final Thread t = new Thread(r);
-			t.setDaemon(true);
-			t.setName("Autocomplete");
-			t.setUncaughtExceptionHandler((t1, e) -> LOGGER.error("Unexpected error", e));
-			return t;
-		});
 		_autocompleteInProgressItem = new JMenuItem();
 		_autocompleteInProgressItem.setIcon(Resources.getImageIcon("in_progress.gif"));
 		_popup = new JPopupMenu();
@@ -254,9 +247,9 @@ public class AutoCompleteComponent implements IRouteListener, IWhoIsListener {
 	}
 
 	private void getAutoCompleteValues(final String search) {
-		final Future<?> f = _future.getAndSet(_executor.submit(() -> {
+		final FutureTask<?> task = new FutureTask<>(() -> {
 			try {
-				final List<KeyValuePair<Integer>> values = _provider.getFromHistory(search);
+				final List<String> values = _provider.getFromHistory(search);
 				final Future<?> current = _future.getAndSet(null);
 				if (current != null) {
 					// if null, been cancelled
@@ -266,10 +259,12 @@ public class AutoCompleteComponent implements IRouteListener, IWhoIsListener {
 				LOGGER.error("Fail to get autocomplete", e);
 				JOptionPane.showMessageDialog(null, "failed " + Arrays.toString(ExceptionUtils.getStackFrames(e)));
 			}
-		}));
+		}, null);
+		final Future<?> f = _future.getAndSet(task);
 		if (f != null) {
 			f.cancel(true);
 		}
+		_executor.execute(task);
 	}
 
 	/**
@@ -280,12 +275,11 @@ public class AutoCompleteComponent implements IRouteListener, IWhoIsListener {
 		if (f != null) {
 			f.cancel(true);
 		}
-		_executor.shutdownNow();
 		_autoCompleteTextField = null;
 		_popup = null;
 	}
 
-	public void asyncAutoComplete(final List<KeyValuePair<Integer>> autoCompleteFromIndex) {
+	public void asyncAutoComplete(final List<String> autoCompleteFromIndex) {
 		SwingUtilities.invokeLater(() -> {
 			try {
 				_popup.removeAll();
@@ -294,7 +288,7 @@ public class AutoCompleteComponent implements IRouteListener, IWhoIsListener {
 					_popup.setVisible(false);
 				} else {
 					for (int i = 0; i < autoCompleteFromIndex.size(); i++) {
-						final String value = autoCompleteFromIndex.get(i).getKey().toString();
+						final String value = autoCompleteFromIndex.get(i);
 						final JMenuItem menuItem = new JMenuItem(value);
 
 						menuItem.addActionListener(e -> searchWordsAndSetTextField(value));
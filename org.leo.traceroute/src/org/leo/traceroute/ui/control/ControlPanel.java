@@ -33,13 +33,19 @@ import java.awt.event.MouseEvent;
 import java.awt.event.MouseListener;
 import java.awt.image.BufferedImage;
 import java.io.File;
-import java.io.FileOutputStream;
+import java.io.InterruptedIOException;
+import java.io.Writer;
 import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.net.UnknownHostException;
 import java.text.NumberFormat;
 import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
@@ -57,6 +63,7 @@ import javax.swing.JPanel;
 import javax.swing.JSpinner;
 import javax.swing.JTextField;
 import javax.swing.JToggleButton;
+import javax.swing.ProgressMonitor;
 import javax.swing.SpinnerModel;
 import javax.swing.SpinnerNumberModel;
 import javax.swing.SwingUtilities;
@@ -65,9 +72,10 @@ import javax.swing.filechooser.FileFilter;
 import javax.swing.text.DefaultFormatterFactory;
 import javax.swing.text.NumberFormatter;
 
-import org.apache.commons.io.IOUtils;
 import org.leo.traceroute.core.ServiceFactory;
 import org.leo.traceroute.core.ServiceFactory.Mode;
+import org.leo.traceroute.core.export.TableExporter.Format;
+import org.leo.traceroute.core.export.TableExporter.IProgressListener;
 import org.leo.traceroute.core.geo.GeoPoint;
 import org.leo.traceroute.core.route.RoutePoint;
 import org.leo.traceroute.core.sniffer.AbstractPacketPoint;
@@ -83,6 +91,7 @@ import org.leo.traceroute.ui.util.ConfigDialog;
 import org.leo.traceroute.ui.util.GlassPane;
 import org.leo.traceroute.ui.util.SwingUtilities4;
 import org.leo.traceroute.ui.util.ToolTip;
+import org.leo.traceroute.ui.whois.BulkWhoIsPanel;
 import org.leo.traceroute.ui.util.WrapLayout;
 import org.leo.traceroute.util.Util;
 import org.slf4j.Logger;
@@ -123,6 +132,8 @@ public class ControlPanel extends AbstractPanel {
 	private final JButton _copyToClipboard;
 	/** Export button */
 	private final JButton _exportToFile;
+	/** Whois of all the addresses button */
+	private final JButton _bulkWhoIs;
 
 	/** 2d/3d */
 	private final JToggleButton _switch2D3D;
@@ -262,66 +273,112 @@ public class ControlPanel extends AbstractPanel {
 		_exportToFile = new JButton(Resources.getImageIcon("export.png"));
 		_exportToFile.setToolTipText(Resources.getLabel("export.button"));
 		_exportToFile.addActionListener(e -> {
-			final String ext = _mode != Mode.WHOIS ? ".csv" : ".txt";
 			final JFileChooser chooser = new JFileChooser();
 			if (_saveDirectory != null) {
 				chooser.setCurrentDirectory(_saveDirectory);
 			}
 			chooser.setFileSelectionMode(JFileChooser.FILES_ONLY);
-			chooser.setFileFilter(new FileFilter() {
-				@Override
-				public String getDescription() {
-					return "CSV file";
-				}
+			final Format[] formats = _mode != Mode.WHOIS ? new Format[] { Format.CSV, Format.JSON, Format.NDJSON } : new Format[] { Format.TEXT };
+			final Map<FileFilter, Format> filters = new HashMap<>();
+			for (final Format format : formats) {
+				final FileFilter filter = new FileFilter() {
+					@Override
+					public String getDescription() {
+						return format.name() + " file";
+					}
 
-				@Override
-				public boolean accept(final File f) {
-					if (f.isDirectory()) {
-						return true;
+					@Override
+					public boolean accept(final File f) {
+						if (f.isDirectory()) {
+							return true;
+						}
+						return f.getName().toLowerCase().endsWith(format.getExtension());
 					}
-					return f.getName().toLowerCase().endsWith(ext);
-				}
-			});
+				};
+				filters.put(filter, format);
+				chooser.addChoosableFileFilter(filter);
+			}
+			chooser.setAcceptAllFileFilterUsed(false);
+			chooser.setFileFilter(chooser.getChoosableFileFilters()[0]);
 			final Window parent = SwingUtilities.getWindowAncestor(ControlPanel.this);
-			try {
-				final int ret = chooser.showSaveDialog(parent);
-				if (ret == JFileChooser.APPROVE_OPTION) {
-					File file = chooser.getSelectedFile();
-					if (!file.getName().toLowerCase().endsWith(ext)) {
-						file = new File(file.getAbsolutePath() + ext);
-					}
-					final String csv;
-					if (_mode == Mode.TRACE_ROUTE) {
-						csv = _route.toCSV();
-					} else if (_mode == Mode.SNIFFER) {
-						csv = _sniffer.toCSV();
-					} else {
-						csv = _whois.toText();
-					}
-					final File f = file;
-					FileOutputStream stream = null;
-					try {
-						stream = new FileOutputStream(f);
-						IOUtils.write(csv, stream);
-					} finally {
-						if (stream != null) {
-							stream.flush();
-							IOUtils.closeQuietly(stream);
+			final int ret = chooser.showSaveDialog(parent);
+			if (ret != JFileChooser.APPROVE_OPTION) {
+				return;
+			}
+			File file = chooser.getSelectedFile();
+			Format format = Format.fromFileName(file.getName());
+			if (format == null || !Arrays.asList(formats).contains(format)) {
+				format = filters.getOrDefault(chooser.getFileFilter(), formats[0]);
+				file = new File(file.getAbsolutePath() + format.getExtension());
+			}
+			final File f = file;
+			final Format exportFormat = format;
+			final Mode exportMode = _mode;
+			_saveDirectory = f.getParentFile();
+			final ProgressMonitor monitor = new ProgressMonitor(parent, Resources.getLabel("export.progress", f.getName()), null, 0, 100);
+			monitor.setMillisToDecideToPopup(200);
+			// the export runs off the EDT and writes the rows as they are read, whatever the size of the capture
+			final SwingWorker<Void, Void> worker = new SwingWorker<Void, Void>() {
+				@Override
+				protected Void doInBackground() throws Exception {
+					final IProgressListener progress = (done, total) -> {
+						setProgress(total == 0 ? 100 : (int) (done * 100L / total));
+						return !monitor.isCanceled();
+					};
+					try (Writer writer = Files.newBufferedWriter(f.toPath(), StandardCharsets.UTF_8)) {
+						if (exportMode == Mode.TRACE_ROUTE) {
+							_route.export(exportFormat, writer, progress);
+						} else if (exportMode == Mode.SNIFFER) {
+							_sniffer.export(exportFormat, writer, progress);
+						} else {
+							writer.write(_whois.toText());
 						}
 					}
-					_saveDirectory = f.getParentFile();
-					SwingUtilities.invokeLater(() -> {
+					return null;
+				}
+
+				@Override
+				protected void done() {
+					monitor.close();
+					try {
+						get();
 						if (!Util.open(f)) {
 							JOptionPane.showMessageDialog(parent, Resources.getLabel("export.success", f.getAbsolutePath()), "", JOptionPane.INFORMATION_MESSAGE);
 						}
-					});
+					} catch (final Exception ex) {
+						final Throwable cause = ex.getCause() != null ? ex.getCause() : ex;
+						if (!(cause instanceof InterruptedIOException)) {
+							JOptionPane.showMessageDialog(parent, Resources.getLabel("export.failed", cause.getMessage()), Resources.getLabel("error"),
+									JOptionPane.ERROR_MESSAGE);
+							LOGGER.error(cause.getMessage(), cause);
+						}
+						f.delete();
+					}
 				}
-			} catch (final Exception ex) {
-				JOptionPane.showMessageDialog(parent, Resources.getLabel("export.failed", ex.getMessage()), Resources.getLabel("error"), JOptionPane.ERROR_MESSAGE);
-				LOGGER.error(ex.getMessage(), e);
-			}
+			};
+			worker.addPropertyChangeListener(evt -> {
+				if ("progress".equals(evt.getPropertyName())) {
+					monitor.setProgress((Integer) evt.getNewValue());
+				}
+			});
+			worker.execute();
 		});
 		otherControls.add(_exportToFile);
+		_bulkWhoIs = new JButton(Resources.getImageIcon("identity.png"));
+		_bulkWhoIs.setToolTipText(Resources.getLabel("bulk.whois"));
+		_bulkWhoIs.addActionListener(e -> {
+			final List<String> addresses = new ArrayList<>();
+			if (_mode == Mode.TRACE_ROUTE) {
+				_route.getRoute().forEach(point -> addresses.add(point.getIp()));
+			} else if (_mode == Mode.SNIFFER) {
+				_sniffer.getCapture().forEach(point -> addresses.add(point.getIp()));
+			}
+			addresses.removeIf(ip -> ip == null || ip.isEmpty());
+			if (!addresses.isEmpty()) {
+				BulkWhoIsPanel.showBulkWhoIsDialog(ControlPanel.this, _services, addresses);
+			}
+		});
+		otherControls.add(_bulkWhoIs);
 		_openConfigDialogButton = new JButton(Resources.getImageIcon("settings.png"));
 		_openConfigDialogButton.setToolTipText(Resources.getLabel("settings.tooltip"));
 		_openConfigDialogButton.addActionListener(e -> new ConfigDialog(SwingUtilities.getWindowAncestor(ControlPanel.this), services).setVisible(true));
@@ -388,6 +445,9 @@ public class ControlPanel extends AbstractPanel {
 			return;
 		}
 		_mode = mode;
+		if (_bulkWhoIs != null) {
+			_bulkWhoIs.setVisible(mode != Mode.WHOIS);
+		}
 		if (mode == Mode.TRACE_ROUTE) {
 			if (_snifferControls != null) {
 				_customControls.remove(_snifferControls);
@@ -529,6 +589,7 @@ public class ControlPanel extends AbstractPanel {
 		_copyToClipboard.setEnabled(enable);
 		_openConfigDialogButton.setEnabled(enable);
 		_exportToFile.setEnabled(enable);
+		_bulkWhoIs.setEnabled(enable);
 		if (_snifferControls != null) {
 			_snifferControls.setEnabled(enable);
 		}
@@ -656,7 +717,7 @@ public class ControlPanel extends AbstractPanel {
 			_traceRouteButton.addActionListener(arg0 -> traceroute());
 
 			_traceRouteButton.setEnabled(false);
-			_autocomplete = new AutoCompleteComponent(_hostIpTextField, _services.getAutocomplete());
+			_autocomplete = new AutoCompleteComponent(_hostIpTextField, _services);
 			final JFormattedTextField editor = ((JSpinner.DefaultEditor) _timeOut.getEditor()).getTextField();
 			editor.setFormatterFactory(new NumberFormatterFactory());
 		}
@@ -886,7 +947,7 @@ public class ControlPanel extends AbstractPanel {
 			_whoIsButton.addActionListener(arg0 -> whois());
 
 			_whoIsButton.setEnabled(false);
-			_autocomplete = new AutoCompleteComponent(_hostIpTextField, _services.getAutocomplete());
+			_autocomplete = new AutoCompleteComponent(_hostIpTextField, _services);
 		}
 
 		/**
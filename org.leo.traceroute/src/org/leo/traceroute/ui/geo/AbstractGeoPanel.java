@@ -23,6 +23,8 @@ import org.leo.traceroute.core.ServiceFactory.Mode;
 import org.leo.traceroute.core.geo.GeoPoint;
 import org.leo.traceroute.core.route.RoutePoint;
 import org.leo.traceroute.core.sniffer.AbstractPacketPoint;
+import org.leo.traceroute.core.sniffer.flow.FlowStats;
+import org.leo.traceroute.core.sniffer.flow.FlowUpdate;
 import org.leo.traceroute.install.Env;
 import org.leo.traceroute.ui.AbstractPanel;
 
@@ -67,7 +69,14 @@ public abstract class AbstractGeoPanel extends AbstractPanel implements IMapConf
 
 	@Override
 	public void packetAdded(final AbstractPacketPoint point) {
-		pointAdded(point, false);
+		// the map is drawn from the destinations rollup, see flowsUpdated
+	}
+
+	@Override
+	public void flowsUpdated(final FlowUpdate update) {
+		for (final FlowStats destination : update.getDestinations()) {
+			destinationUpdated(destination.getPoint(), destination.getDeltaPackets());
+		}
 	}
 
 	@Override
@@ -136,6 +145,13 @@ public abstract class AbstractGeoPanel extends AbstractPanel implements IMapConf
 
 	protected abstract void focusPoint(final GeoPoint point, final boolean isRunning, final boolean animation);
 
+	/**
+	 * New packets sent to the given destination
+	 * @param point geo location of the destination
+	 * @param newPackets number of packets since the previous update
+	 */
+	protected abstract void destinationUpdated(final GeoPoint point, final long newPackets);
+
 	/**
 	 * Set the value of the field mapShowLabel
 	 * @param mapShowLabel the new mapShowLabel to set
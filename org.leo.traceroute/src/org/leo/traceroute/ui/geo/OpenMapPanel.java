@@ -20,24 +20,30 @@ package org.leo.traceroute.ui.geo;
 import java.awt.BasicStroke;
 import java.awt.BorderLayout;
 import java.awt.Color;
+import java.awt.DisplayMode;
 import java.awt.Graphics;
 import java.awt.Graphics2D;
+import java.awt.GraphicsEnvironment;
 import java.awt.RenderingHints;
 import java.awt.event.MouseAdapter;
 import java.awt.event.MouseEvent;
 import java.awt.geom.Point2D;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
 
 import javax.swing.SwingUtilities;
+import javax.swing.Timer;
 
 import org.apache.commons.lang3.mutable.MutableInt;
 import org.apache.commons.lang3.tuple.Pair;
 import org.leo.traceroute.core.ServiceFactory;
 import org.leo.traceroute.core.ServiceFactory.Mode;
+import org.leo.traceroute.core.geo.GeoIndex;
+import org.leo.traceroute.core.geo.GeoIndex.Entry;
 import org.leo.traceroute.core.geo.GeoPoint;
 import org.leo.traceroute.core.route.RoutePoint;
 import org.leo.traceroute.install.Env;
@@ -70,6 +76,7 @@ import com.bbn.openmap.omGraphics.OMText;
 import com.bbn.openmap.omGraphics.OMTextLabeler;
 import com.bbn.openmap.omGraphics.event.StandardMapMouseInterpreter;
 import com.bbn.openmap.proj.Orthographic;
+import com.bbn.openmap.proj.Projection;
 import com.bbn.openmap.proj.coords.LatLonPoint;
 
 /**
@@ -103,51 +110,221 @@ public class OpenMapPanel extends AbstractGeoPanel {
 		}
 	}
 
+	/**
+	 * TraceRouteLayer
+	 * <pre>
+	 * Layer of the lines and markers of the route/capture.
+	 * Only the graphics added since the previous prepare are projected, the whole list is projected again only when the projection changes.
+	 * When clustering, the markers falling in the same cell of a screen grid are drawn as one marker
+	 * labeled with the number of hidden markers, the clusters are computed for each projection (zoom level).
+	 * The redraws are throttled to the display rate.
+	 * </pre>
+	 * @author Leo Lewis
+	 */
 	public class TraceRouteLayer extends OMGraphicHandlerLayer {
 
 		/**  */
 		private static final long serialVersionUID = -7019129484563304077L;
 
-		private final OMGraphicList _omGraphicList;
+		/** Size of a cell of the cluster grid (px) */
+		private static final int CLUSTER_CELL_SIZE = 48;
+
+		private final OMGraphicList _omGraphicList = new OMGraphicList();
+		private final OMGraphicList _markerList = new OMGraphicList();
+		private final OMGraphicList _lineList = new OMGraphicList();
+		/** Markers by label, in insertion order */
+		private final Map<OMText, Marker> _markers = new LinkedHashMap<>();
+		/** Cluster of each cell of the grid, for the current projection */
+		private final Map<Long, Marker> _cells = new HashMap<>();
+		/** Graphics to project at the next prepare */
+		private final List<OMGraphic> _pending = new ArrayList<>();
+		private final Timer _refreshTimer;
+		private Projection _projection;
+		private boolean _clustering;
+		/** Markers removed, the marker list is rebuilt at the next prepare */
+		private boolean _rebuild;
+		private OMText _pinned;
 
 		public TraceRouteLayer() {
 			super();
-			_omGraphicList = new OMGraphicList();
 			setName("Trace route layer");
+			// markers on top of the lines, the last added marker on top
+			_markerList.setTraverseMode(OMGraphicList.LAST_ADDED_ON_TOP);
+			_omGraphicList.add(_markerList);
+			_omGraphicList.add(_lineList);
 			final StandardMapMouseInterpreter mouseInterpreter = new StandardMapMouseInterpreter(this);
 			setMouseEventInterpreter(mouseInterpreter);
 			setProjectionChangePolicy(new StandardPCPolicy(this, true));
 			setRenderPolicy(new BufferedImageRenderPolicy());
+			_refreshTimer = new Timer(1000 / getDisplayRate(), e -> doPrepare());
+			_refreshTimer.setRepeats(false);
+		}
+
+		/**
+		 * @return refresh rate of the screen (Hz)
+		 */
+		private int getDisplayRate() {
+			if (!GraphicsEnvironment.isHeadless()) {
+				final int rate = GraphicsEnvironment.getLocalGraphicsEnvironment().getDefaultScreenDevice().getDisplayMode().getRefreshRate();
+				if (rate != DisplayMode.REFRESH_RATE_UNKNOWN && rate > 0) {
+					return rate;
+				}
+			}
+			return 60;
 		}
 
 		@Override
 		public synchronized OMGraphicList prepare() {
-			_omGraphicList.generate(getProjection());
+			final Projection projection = getProjection();
+			if (projection == null) {
+				return _omGraphicList;
+			}
+			if (_rebuild) {
+				_rebuild = false;
+				_markerList.clear();
+				for (final Marker marker : _markers.values()) {
+					_markerList.add(marker._image);
+					_markerList.add(marker._text);
+				}
+			}
+			if (!projection.equals(_projection)) {
+				_projection = projection;
+				cluster();
+				_omGraphicList.generate(projection);
+			} else {
+				for (final OMGraphic graphic : _pending) {
+					graphic.generate(projection);
+				}
+			}
+			_pending.clear();
 			return _omGraphicList;
 		}
 
-		public void clear() {
-			_omGraphicList.clear();
-			doPrepare();
+		/**
+		 * Redraw the layer, at most once per frame
+		 */
+		public void refresh() {
+			SwingUtilities4.invokeInEDT(() -> {
+				if (!_refreshTimer.isRunning()) {
+					_refreshTimer.start();
+				}
+			});
 		}
 
-		public void addShape(final OMGraphic shape, final boolean repaint, final boolean top) {
-			if (top) {
-				_omGraphicList.add(0, shape);
-			} else {
-				_omGraphicList.add(shape);
+		public synchronized void clear() {
+			_markerList.clear();
+			_lineList.clear();
+			_markers.clear();
+			_cells.clear();
+			_pending.clear();
+			_rebuild = false;
+			_pinned = null;
+			refresh();
+		}
+
+		/**
+		 * @param clustering if the markers are clustered
+		 */
+		public synchronized void setClustering(final boolean clustering) {
+			if (_clustering != clustering) {
+				_clustering = clustering;
+				_projection = null;
+				refresh();
+			}
+		}
+
+		/**
+		 * @param text the label of the marker that is never clustered (selection), null for none
+		 */
+		public synchronized void pin(final OMText text) {
+			if (_pinned != text) {
+				_pinned = text;
+				_projection = null;
+				refresh();
+			}
+		}
+
+		public synchronized void addLine(final OMLine line) {
+			_lineList.add(line);
+			_pending.add(line);
+			refresh();
+		}
+
+		/**
+		 * @return the lines of the layer
+		 */
+		public synchronized List<OMLine> getLines() {
+			final List<OMLine> lines = new ArrayList<>(_lineList.size());
+			for (final OMGraphic graphic : _lineList) {
+				lines.add((OMLine) graphic);
+			}
+			return lines;
+		}
+
+		/**
+		 * @param marker label and image of the marker, ignored if already displayed
+		 */
+		public synchronized void addMarker(final Pair<OMText, Image> marker) {
+			if (_markers.containsKey(marker.getLeft())) {
+				return;
+			}
+			final Marker m = new Marker(marker.getLeft(), marker.getRight());
+			_markers.put(m._text, m);
+			_markerList.add(m._image);
+			_markerList.add(m._text);
+			_pending.add(m._image);
+			_pending.add(m._text);
+			if (_projection != null) {
+				place(m);
+			}
+			refresh();
+		}
+
+		/**
+		 * @param marker label and image of the marker
+		 */
+		public synchronized void removeMarker(final Pair<OMText, Image> marker) {
+			final Marker m = _markers.remove(marker.getLeft());
+			if (m != null) {
+				m.show(true);
+				m._text.setData(m._label);
+				_rebuild = true;
+				// the clusters are computed again
+				_projection = null;
+				refresh();
+			}
+		}
+
+		/**
+		 * Compute the clusters of all the markers for the current projection
+		 */
+		private void cluster() {
+			_cells.clear();
+			for (final Marker marker : _markers.values()) {
+				marker._hidden = 0;
 			}
-			if (repaint) {
-				SwingUtilities4.invokeInEDT(() -> TraceRouteLayer.this.doPrepare());
+			for (final Marker marker : _markers.values()) {
+				place(marker);
 			}
 		}
 
-		public void removeShape(final OMGraphic shape, final boolean repaint) {
-			while (_omGraphicList.remove(shape)) {
-				;
+		/**
+		 * Put the marker in the cluster of its cell, or make it the head of a new cluster
+		 */
+		private void place(final Marker marker) {
+			Marker head = null;
+			if (_clustering && marker._text != _pinned && _projection.isPlotable(marker._image.getLat(), marker._image.getLon())) {
+				final Point2D xy = _projection.forward(marker._image.getLat(), marker._image.getLon());
+				final long cell = ((long) Math.floor(xy.getX() / CLUSTER_CELL_SIZE) << 32) ^ ((long) Math.floor(xy.getY() / CLUSTER_CELL_SIZE) & 0xFFFFFFFFL);
+				head = _cells.putIfAbsent(cell, marker);
 			}
-			if (repaint) {
-				SwingUtilities4.invokeInEDT(() -> TraceRouteLayer.this.doPrepare());
+			if (head == null) {
+				marker.show(true);
+				marker.updateLabel(_pending);
+			} else {
+				marker.show(false);
+				head._hidden++;
+				head.updateLabel(_pending);
 			}
 		}
 
@@ -165,17 +342,57 @@ public class OpenMapPanel extends AbstractGeoPanel {
 
 	}
 
+	/**
+	 * A marker of the map, head of a cluster or hidden in one
+	 */
+	private static class Marker {
+		private final OMText _text;
+		private final Image _image;
+		private final String _label;
+		/** Number of markers hidden in the cluster of this one */
+		private int _hidden;
+		private String _displayed;
+
+		private Marker(final OMText text, final Image image) {
+			_text = text;
+			_image = image;
+			_label = text.getData();
+			_displayed = _label;
+		}
+
+		private void show(final boolean visible) {
+			_text.setVisible(visible);
+			_image.setVisible(visible);
+		}
+
+		/**
+		 * Set the label to the number of hidden markers, the text is projected again if it changed
+		 */
+		private void updateLabel(final List<OMGraphic> pending) {
+			final String label = _hidden == 0 ? _label : _label + "+" + _hidden + " ";
+			if (!label.equals(_displayed)) {
+				_displayed = label;
+				_text.setData(label);
+				pending.add(_text);
+			}
+		}
+	}
+
 	/**  */
 	private static final long serialVersionUID = 4913575380062889700L;
 
 	private static final org.leo.traceroute.resources.CountryFlagManager.Resolution IMAGE_RESOLUTION = Resolution.R32;
 
+	/** Distance (px) from the mouse to pick a point */
+	private static final int PICK_RADIUS = 8;
+
 	private final TraceRouteLayer _layer;
 
 	private Pair<OMText, Image> _previousPoint;
 	private Pair<OMText, Image> _selectedPoint;
-	private final Map<OMText, List<GeoPoint>> _omLabelToPoint = new HashMap<>();
-	private final Map<Image, List<GeoPoint>> _omImageToPoint = new HashMap<>();
+	/** Displayed points, for the picking and the tooltips */
+	private final GeoIndex<GeoPoint> _index = new GeoIndex<>();
+	private Entry<GeoPoint> _pickedEntry;
 	private final Map<GeoPoint, Pair<OMText, Image>> _pointToOMPoint = new HashMap<>();
 	private final Map<String, Pair<OMText, Image>> _toAvoidDuplicatedLabels = new HashMap<>();
 	private Pair<OMText, Image> _sourcePoint;
@@ -233,37 +450,71 @@ public class OpenMapPanel extends AbstractGeoPanel {
 		_mapBean.setProjection(new Orthographic(new LatLonPoint.Double(MapBean.DEFAULT_CENTER_LAT, MapBean.DEFAULT_CENTER_LON), 50000000f, MapBean.DEFAULT_WIDTH,
 				MapBean.DEFAULT_HEIGHT));
 
-		_mapBean.addMouseListener(new MouseAdapter() {
+		final MouseAdapter mouseAdapter = new MouseAdapter() {
 			@Override
 			public void mouseClicked(final MouseEvent e) {
 				final OMGraphic omGraphic = ((StandardMapMouseInterpreter) _layer.getMouseEventInterpreter()).getGeometryUnder(e);
-				List<GeoPoint> points = null;
-				OMText text = null;
-				Image img = null;
+				Entry<GeoPoint> entry = null;
 				if (omGraphic instanceof OMText) {
-					text = (OMText) omGraphic;
-					points = _omLabelToPoint.get(omGraphic);
+					entry = _index.get(((OMText) omGraphic).getLat(), ((OMText) omGraphic).getLon());
 				} else if (omGraphic instanceof Image) {
-					img = (Image) omGraphic;
-					points = _omImageToPoint.get(omGraphic);
+					entry = _index.get(((Image) omGraphic).getLat(), ((Image) omGraphic).getLon());
+				} else {
+					entry = pick(e);
 				}
-				if (text != null || img != null) {
-					if (_selectedPoint != null && ((text != null && _selectedPoint.getLeft() == text) || (img != null && _selectedPoint.getRight() == img))) {
-						_selectionIndex = (_selectionIndex + 1) % (points.size());
+				if (entry != null) {
+					// same location, rotate between its points
+					if (entry == _pickedEntry) {
+						_selectionIndex = (_selectionIndex + 1) % entry.getValues().size();
 					} else {
 						_selectionIndex = 0;
 					}
-					focus(points.get(_selectionIndex));
+					_pickedEntry = entry;
+					focus(entry.getValues().get(_selectionIndex));
 				} else {
+					_pickedEntry = null;
 					focus(null);
 				}
 				final Point2D forward = _mapBean.getProjection().forward(e.getX(), e.getY());
 				onMousePosition(forward.getY(), forward.getX());
 			}
-		});
+
+			@Override
+			public void mouseMoved(final MouseEvent e) {
+				final Entry<GeoPoint> entry = pick(e);
+				String tooltip = null;
+				if (entry != null) {
+					tooltip = getText(entry.getValues().get(0));
+					if (entry.getValues().size() > 1) {
+						tooltip += " (" + entry.getValues().size() + ")";
+					}
+				}
+				_mapBean.setToolTipText(tooltip);
+			}
+		};
+		_mapBean.addMouseListener(mouseAdapter);
+		_mapBean.addMouseMotionListener(mouseAdapter);
 		add(BorderLayout.CENTER, mapPanel);
 	}
 
+	/**
+	 * @param e a mouse event
+	 * @return the displayed point closest to the mouse, null if none in the pick radius
+	 */
+	private Entry<GeoPoint> pick(final MouseEvent e) {
+		if (_index.size() == 0) {
+			return null;
+		}
+		final Projection projection = _mapBean.getProjection();
+		final Point2D center = projection.inverse(e.getX(), e.getY());
+		final Point2D edge = projection.inverse(e.getX() + PICK_RADIUS, e.getY());
+		final double radius = Math.hypot(center.getX() - edge.getX(), center.getY() - edge.getY());
+		if (Double.isNaN(radius)) {
+			return null;
+		}
+		return _index.nearest(center.getY(), center.getX(), radius);
+	}
+
 	@Override
 	public void afterShow(final Mode mode) {
 		super.afterShow(mode);
@@ -300,10 +551,11 @@ public class OpenMapPanel extends AbstractGeoPanel {
 		_previousPoint = null;
 		_selectedPoint = null;
 		_pointToOMPoint.clear();
-		_omLabelToPoint.clear();
-		_omImageToPoint.clear();
+		_index.clear();
+		_pickedEntry = null;
 		_toAvoidDuplicatedLabels.clear();
 		_layer.clear();
+		_layer.setClustering(_mode == Mode.SNIFFER);
 		_packetDestCoordToPath.clear();
 	}
 
@@ -325,8 +577,7 @@ public class OpenMapPanel extends AbstractGeoPanel {
 			_toAvoidDuplicatedLabels.put(coordKey, omPoint);
 			// in sniffer mode, don't add duplicated points
 			if (_mapShowLabel && _mode != Mode.SNIFFER) {
-				_layer.addShape(omPoint.getRight(), false, true);
-				_layer.addShape(omPoint.getLeft(), true, true);
+				_layer.addMarker(omPoint);
 			}
 		}
 
@@ -343,33 +594,35 @@ public class OpenMapPanel extends AbstractGeoPanel {
 				}
 				line.setStroke(new BasicStroke(_mapLineThickness));
 				//			line.putAttribute(OMGraphicConstants.LABEL, new OMTextLabeler(point.getLatency() + "ms"));
-				_layer.addShape(line, false, false);
+				_layer.addLine(line);
 				if (_mode == Mode.TRACE_ROUTE) {
 					line.addArrowHead(true);
-					_packetDestCoordToPath.put(coordKey, Pair.of(line, new MutableInt(1)));
 				}
-			} else if (_mode == Mode.SNIFFER) {
-				final OMLine line = pair.getLeft();
-				final MutableInt num = pair.getRight();
-				num.increment();
-				line.setLinePaint(ColorUtil.INSTANCE.getColorForNumOfPoints(num.intValue()));
-				_layer.repaint();
+				// in sniffer mode, the packets are counted by destinationUpdated
+				_packetDestCoordToPath.put(coordKey, Pair.of(line, new MutableInt(_mode == Mode.SNIFFER ? 0 : 1)));
 			}
 		}
-		List<GeoPoint> l = _omLabelToPoint.get(omPoint.getLeft());
-		if (l == null) {
-			l = new ArrayList<>();
-			_omLabelToPoint.put(omPoint.getLeft(), l);
-			_omImageToPoint.put(omPoint.getRight(), l);
-		}
-		l.add(point);
+		_index.add(point.getLat(), point.getLon(), point);
 		_pointToOMPoint.put(point, omPoint);
 		if (_mapShowLabel && _mode != Mode.SNIFFER) {
-			_layer.addShape(omPoint.getRight(), false, true);
-			_layer.addShape(omPoint.getLeft(), true, true);
+			_layer.addMarker(omPoint);
 		}
 		_previousPoint = omPoint;
-		_layer.doPrepare();
+	}
+
+	@Override
+	protected void destinationUpdated(final GeoPoint point, final long newPackets) {
+		final String coordKey = point.getCoordKey();
+		if (!_packetDestCoordToPath.containsKey(coordKey)) {
+			pointAdded(point, false);
+		}
+		final Pair<OMLine, MutableInt> pair = _packetDestCoordToPath.get(coordKey);
+		if (pair != null) {
+			final MutableInt num = pair.getRight();
+			num.add(newPackets);
+			pair.getLeft().setLinePaint(ColorUtil.INSTANCE.getColorForNumOfPoints(num.intValue()));
+			_layer.refresh();
+		}
 	}
 
 	@Override
@@ -379,18 +632,20 @@ public class OpenMapPanel extends AbstractGeoPanel {
 				_selectedPoint.getLeft().setLinePaint(UNSELECTED_COLOR);
 				_selectedPoint.getLeft().setMattingPaint(UNSELECTED_COLOR);
 			} else {
-				_layer.removeShape(_selectedPoint.getLeft(), false);
-				_layer.removeShape(_selectedPoint.getRight(), false);
+				_layer.removeMarker(_selectedPoint);
 			}
 		}
 		if (point != null) {
-			final Pair<OMText, Image> omPoint = _pointToOMPoint.get(point);
+			Pair<OMText, Image> omPoint = _pointToOMPoint.get(point);
+			if (omPoint == null) {
+				// packets are drawn by destination
+				omPoint = _toAvoidDuplicatedLabels.get(point.getCoordKey());
+			}
 			if (omPoint != null) {
 				omPoint.getLeft().setLinePaint(SELECTED_COLOR);
 				omPoint.getLeft().setMattingPaint(SELECTED_COLOR);
 				if (!_mapShowLabel) {
-					_layer.addShape(omPoint.getLeft(), false, true);
-					_layer.addShape(omPoint.getRight(), false, true);
+					_layer.addMarker(omPoint);
 				}
 				_mapBean.center(new CenterEvent(this, omPoint.getLeft().getLat(), omPoint.getLeft().getLon()));
 			}
@@ -398,12 +653,9 @@ public class OpenMapPanel extends AbstractGeoPanel {
 		} else {
 			_selectedPoint = null;
 		}
-		if (_mapShowLabel) {
-			_layer.repaint();
-		} else {
-			_layer.doPrepare();
-		}
-
+		// the selection is never hidden in a cluster
+		_layer.pin(_selectedPoint != null ? _selectedPoint.getLeft() : null);
+		_layer.refresh();
 	}
 
 	/**
@@ -415,19 +667,17 @@ public class OpenMapPanel extends AbstractGeoPanel {
 		if (_mapShowLabel) {
 			for (final Pair<OMText, Image> pair : _toAvoidDuplicatedLabels.values()) {
 				if (_selectedPoint == null || pair.getLeft() != _selectedPoint.getLeft()) {
-					_layer.addShape(pair.getLeft(), false, true);
-					_layer.addShape(pair.getRight(), false, true);
+					_layer.addMarker(pair);
 				}
 			}
 		} else {
 			for (final Pair<OMText, Image> pair : _toAvoidDuplicatedLabels.values()) {
 				if (_selectedPoint == null || pair.getLeft() != _selectedPoint.getLeft()) {
-					_layer.removeShape(pair.getLeft(), false);
-					_layer.removeShape(pair.getRight(), false);
+					_layer.removeMarker(pair);
 				}
 			}
 		}
-		SwingUtilities4.invokeInEDT(() -> _layer.doPrepare());
+		_layer.refresh();
 	}
 
 	/**
@@ -435,13 +685,10 @@ public class OpenMapPanel extends AbstractGeoPanel {
 	 */
 	@Override
 	protected void changeLineThickness(final int thickness) {
-		final OMGraphicList list = _layer.getList();
-		for (final OMGraphic g : list) {
-			if (g instanceof OMLine) {
-				final OMLine line = (OMLine) g;
-				line.setStroke(new BasicStroke(thickness));
-			}
+		final BasicStroke stroke = new BasicStroke(thickness);
+		for (final OMLine line : _layer.getLines()) {
+			line.setStroke(stroke);
 		}
-		SwingUtilities4.invokeInEDT(() -> _layer.doPrepare());
+		_layer.refresh();
 	}
 }
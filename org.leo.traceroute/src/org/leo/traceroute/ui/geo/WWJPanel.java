@@ -29,9 +29,14 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
 
 import javax.swing.*;
 
@@ -42,10 +47,11 @@ import gov.nasa.worldwind.formats.shapefile.ShapefileLayerFactory;
 import gov.nasa.worldwind.layers.*;
 import gov.nasa.worldwindx.applications.worldwindow.core.*;
 import gov.nasa.worldwindx.applications.worldwindow.features.swinglayermanager.*;
-import org.apache.commons.lang3.mutable.MutableInt;
 import org.apache.commons.lang3.tuple.Pair;
 import org.leo.traceroute.core.ServiceFactory;
 import org.leo.traceroute.core.ServiceFactory.Mode;
+import org.leo.traceroute.core.geo.GeoIndex;
+import org.leo.traceroute.core.geo.GeoIndex.Entry;
 import org.leo.traceroute.core.geo.GeoPoint;
 import org.leo.traceroute.core.route.RoutePoint;
 import org.leo.traceroute.install.Env;
@@ -58,9 +64,11 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import gov.nasa.worldwind.avlist.AVKey;
+import gov.nasa.worldwind.event.RenderingEvent;
 import gov.nasa.worldwind.event.SelectEvent;
 import gov.nasa.worldwind.geom.Angle;
 import gov.nasa.worldwind.geom.Position;
+import gov.nasa.worldwind.geom.Sector;
 import gov.nasa.worldwind.render.AnnotationAttributes;
 import gov.nasa.worldwind.render.BasicShapeAttributes;
 import gov.nasa.worldwind.render.Material;
@@ -87,6 +95,20 @@ public class WWJPanel extends AbstractGeoPanel {
 
 	private static final org.leo.traceroute.resources.CountryFlagManager.Resolution IMAGE_RESOLUTION = Resolution.R32;
 
+	/** Distance (px) from the mouse to pick a point */
+	private static final int PICK_RADIUS = 8;
+	private static final double METERS_PER_DEGREE = 111320;
+	/** Delay between two updates of the layer */
+	private static final int FRAME_MILLIS = 16;
+	/** Maximum number of arcs of a capture, above the destinations are aggregated by larger regions */
+	private static final int MAX_ARCS = 1000;
+	/** Maximum number of labels of destinations displayed during a capture */
+	private static final int MAX_LABELS = 500;
+	/** Size of the regions (degrees) of each level of detail, 0 for one arc per destination */
+	private static final double[] LOD_REGION_DEGREES = { 0, 1, 5, 15 };
+	/** Minimum eye altitude (m) of each level of detail */
+	private static final double[] LOD_MIN_ALTITUDE = { 0, 3e6, 8e6, Double.MAX_VALUE };
+
 	/** World Wind controller */
 	private static WWJController _controller;
 
@@ -95,12 +117,29 @@ public class WWJPanel extends AbstractGeoPanel {
 
 	/** Map between point and label */
 	private final Map<GeoPoint, LabeledPath> _pointToLabel = new HashMap<>();
-	/** Map between label and point */
-	private final Map<ScreenAnnotation, List<GeoPoint>> _annotationToPoint = new HashMap<>();
+	/** Displayed points, for the picking and the culling of the labels */
+	private final GeoIndex<GeoPoint> _index = new GeoIndex<>();
+	private Entry<GeoPoint> _pickedEntry;
 
 	/** To avoid duplicated labels */
 	private final Map<String, Pair<LabeledPath, ScreenAnnotation>> _toAvoidDuplicatedLabels = new HashMap<>();
-	private final Map<String, Pair<Path, MutableInt>> _packetDestCoordToPath = new HashMap<>();
+	/** Destinations of the capture, by coordinates */
+	private final Map<String, Destination> _destinations = new LinkedHashMap<>();
+	/** Arcs of the capture, by region of the current level of detail */
+	private final Map<Object, Arc> _arcs = new HashMap<>();
+	private final Set<Arc> _dirtyArcs = new LinkedHashSet<>();
+	/** Renderables to add at the next frame */
+	private final List<Renderable> _pendingRenderables = new ArrayList<>();
+	private final Timer _frameTimer;
+	/** Current level of detail of the arcs */
+	private int _level;
+	/** Minimum level of detail to keep the arcs under MAX_ARCS */
+	private int _capLevel;
+	private boolean _destinationsChanged;
+	/** Labels in the layer */
+	private final Set<LabeledPath> _shownLabels = new HashSet<>();
+	/** Visible sector of the last culling of the labels */
+	private Sector _culledSector;
 
 	/**  */
 	private Pair<LabeledPath, GeoPoint> _lastSelection;
@@ -116,23 +155,39 @@ public class WWJPanel extends AbstractGeoPanel {
 	 */
 	public WWJPanel(final ServiceFactory services) throws Exception {
 		super(services);
+		_frameTimer = new Timer(FRAME_MILLIS, e -> frame());
+		_frameTimer.setRepeats(false);
 		if (_controller == null) {
 			_controller = new WWJController(_services);
 			_controller.getWWd().addSelectListener(event -> {
-				if (event.getEventAction().equals(SelectEvent.LEFT_CLICK) && event.hasObjects() && event.getTopObject() instanceof ScreenAnnotation) {
-					final ScreenAnnotation sa = (ScreenAnnotation) event.getTopObject();
-					final List<GeoPoint> points = _annotationToPoint.get(sa);
-					if (_lastSelection != null && _lastSelection.getLeft().getAnnotation() == sa) {
-						// if same selection, rotate point
-						_selectionIndex = (_selectionIndex + 1) % (points.size());
-					} else {
-						_selectionIndex = 0;
+				if (!event.getEventAction().equals(SelectEvent.LEFT_CLICK)) {
+					return;
+				}
+				Entry<GeoPoint> entry = null;
+				if (event.hasObjects() && event.getTopObject() instanceof ScreenAnnotation) {
+					final Position pos = (Position) ((ScreenAnnotation) event.getTopObject()).getValue(AVKey.POSITION);
+					if (pos != null) {
+						entry = _index.get(pos.getLatitude().getDegrees(), pos.getLongitude().getDegrees());
 					}
-					if (points == null) {
-						focus(null);
+				} else {
+					entry = pick();
+				}
+				if (entry != null) {
+					// if same selection, rotate point
+					if (entry == _pickedEntry) {
+						_selectionIndex = (_selectionIndex + 1) % entry.getValues().size();
 					} else {
-						focus(points.get(_selectionIndex));
+						_selectionIndex = 0;
 					}
+					_pickedEntry = entry;
+					focus(entry.getValues().get(_selectionIndex));
+				}
+			});
+			// zooming changes the level of detail of the arcs, moving the view changes the labels displayed during a capture
+			_controller.getWWd().addRenderingListener(event -> {
+				if (event.getStage().equals(RenderingEvent.AFTER_BUFFER_SWAP) && _mode == Mode.SNIFFER
+						&& (Math.max(getAltitudeLevel(), _capLevel) != _level || isCulling() && !Objects.equals(getVisibleSector(), _culledSector))) {
+					scheduleFrame();
 				}
 			});
 			_controller.getWWd().getInputHandler().addMouseListener(new MouseAdapter() {
@@ -210,49 +265,222 @@ public class WWJPanel extends AbstractGeoPanel {
 			final ScreenAnnotation annotation = makeLabelAnnotation(getText(point), point.getCountryFlag(IMAGE_RESOLUTION));
 			final LabeledPath label = new LabeledPath(Collections.singletonList(pos), annotation);
 			if (_mapShowLabel) {
-				_controller._renderableLayer.addRenderable(label);
+				addLabel(label);
 			}
+			annotation.setValue(AVKey.POSITION, pos);
 			labelAndAnnotation = Pair.of(label, annotation);
 			_toAvoidDuplicatedLabels.put(coordKey, labelAndAnnotation);
 		}
-		// in sniffer mode, don't add duplicated points
+		// in sniffer mode, don't add duplicated points, the source has no arc
 		if (_mode == Mode.SNIFFER) {
-			final Pair<Path, MutableInt> pathAndNumberOfPackets = _packetDestCoordToPath.get(coordKey);
-			if (pathAndNumberOfPackets == null) {
-				final Path path = createPath(ColorUtil.INSTANCE.getColorForNumOfPoints(1));
-				_controller._renderableLayer.addRenderable(path);
-				path.setPositions(Arrays.asList(new Position(_sourcePos, _sourcePos.getAltitude()), pos));
-				_packetDestCoordToPath.put(coordKey, Pair.of(path, new MutableInt(1)));
-			} else {
-				// update elevation and color of the line depending on the number of packets received from the dest coordinates
-				final MutableInt num = pathAndNumberOfPackets.getRight();
-				num.increment();
-				final Path path = pathAndNumberOfPackets.getLeft();
-				final Color color = ColorUtil.INSTANCE.getColorForNumOfPoints(num.intValue());
-				path.getAttributes().setOutlineMaterial(new Material(color));
-				path.getAttributes().setInteriorMaterial(new Material(new Color(color.getRed(), color.getGreen(), color.getBlue(), 50), 50));
-				final List<Position> copy = new ArrayList<>();
-				for (final Position p : path.getPositions()) {
-					copy.add(new Position(p, normalizeElevation(num.intValue(), 5e3)));
-				}
-				path.setPositions(copy);
+			if (_sourcePoint != null && !_destinations.containsKey(coordKey)) {
+				final Destination destination = new Destination(point.getLat(), point.getLon());
+				_destinations.put(coordKey, destination);
+				_destinationsChanged = true;
+				addToArc(destination);
 			}
 		} else if (_mode == Mode.TRACE_ROUTE) {
 			if (addLine && _previousPos != null) {
 				final Path path = createPath(((RoutePoint) point).getColor());
 				path.setPositions(Arrays.asList(new Position(_previousPos, pos.getElevation()), pos));
-				_controller._renderableLayer.addRenderable(path);
+				_pendingRenderables.add(path);
 			}
 			_previousPos = pos;
 		}
 
 		_pointToLabel.put(point, labelAndAnnotation.getLeft());
-		List<GeoPoint> points = _annotationToPoint.computeIfAbsent(labelAndAnnotation.getRight(), k -> new ArrayList<>());
-		points.add(point);
-		// redraw
+		_index.add(point.getLat(), point.getLon(), point);
+		scheduleFrame();
+	}
+
+	/**
+	 * @return the displayed point closest to the mouse, null if none in the pick radius
+	 */
+	private Entry<GeoPoint> pick() {
+		final Position position = _controller.getWWd().getCurrentPosition();
+		if (position == null || _index.size() == 0) {
+			return null;
+		}
+		final View view = _controller.getWWd().getView();
+		final double metersPerPixel = view.computePixelSizeAtDistance(view.getEyePosition().getElevation());
+		final double radius = PICK_RADIUS * metersPerPixel / METERS_PER_DEGREE;
+		return _index.nearest(position.getLatitude().getDegrees(), position.getLongitude().getDegrees(), radius);
+	}
+
+	/**
+	 * Add the label of a point, during a capture at most MAX_LABELS labels are displayed
+	 */
+	private void addLabel(final LabeledPath label) {
+		if (_mode != Mode.SNIFFER || _shownLabels.size() < MAX_LABELS) {
+			if (_shownLabels.add(label)) {
+				_pendingRenderables.add(label);
+			}
+		}
+	}
+
+	/**
+	 * @return if there are too many labels to display them all, only the ones of the visible sector are displayed
+	 */
+	private boolean isCulling() {
+		return _mapShowLabel && _toAvoidDuplicatedLabels.size() > MAX_LABELS;
+	}
+
+	private Sector getVisibleSector() {
+		return _controller.getWWd().getSceneController().getDrawContext().getVisibleSector();
+	}
+
+	/**
+	 * Display the labels of the visible sector, at most MAX_LABELS
+	 */
+	private void cullLabels() {
+		final Sector sector = getVisibleSector();
+		if (sector == null || sector.equals(_culledSector)) {
+			return;
+		}
+		_culledSector = sector;
+		final Set<LabeledPath> visible = new HashSet<>();
+		_index.query(sector.getMinLatitude().getDegrees(), sector.getMinLongitude().getDegrees(), sector.getMaxLatitude().getDegrees(),
+				sector.getMaxLongitude().getDegrees(), entry -> {
+					final LabeledPath label = _pointToLabel.get(entry.getValues().get(0));
+					if (label != null && visible.size() < MAX_LABELS) {
+						visible.add(label);
+					}
+				});
+		final LabeledPath selected = _lastSelection != null ? _lastSelection.getLeft() : null;
+		for (final Iterator<LabeledPath> it = _shownLabels.iterator(); it.hasNext();) {
+			final LabeledPath label = it.next();
+			if (!visible.contains(label) && label != selected) {
+				_controller._renderableLayer.removeRenderable(label);
+				it.remove();
+			}
+		}
+		for (final LabeledPath label : visible) {
+			if (_shownLabels.add(label)) {
+				_pendingRenderables.add(label);
+			}
+		}
+	}
+
+	/**
+	 * Update the layer at the next frame
+	 */
+	private void scheduleFrame() {
+		if (!_frameTimer.isRunning()) {
+			_frameTimer.start();
+		}
+	}
+
+	/**
+	 * Apply the pending changes to the layer, and redraw once
+	 */
+	private void frame() {
+		if (_mode == Mode.SNIFFER) {
+			updateArcs();
+			if (isCulling()) {
+				cullLabels();
+			}
+		}
+		if (!_pendingRenderables.isEmpty()) {
+			_controller._renderableLayer.addRenderables(new ArrayList<>(_pendingRenderables));
+			_pendingRenderables.clear();
+		}
 		_controller.redraw();
 	}
 
+	/**
+	 * @return the level of detail for the altitude of the eye
+	 */
+	private int getAltitudeLevel() {
+		final Position eye = _controller.getWWd().getView().getEyePosition();
+		if (eye == null) {
+			return _level;
+		}
+		int level = 0;
+		while (level + 1 < LOD_MIN_ALTITUDE.length && eye.getElevation() >= LOD_MIN_ALTITUDE[level + 1]) {
+			level++;
+		}
+		return level;
+	}
+
+	/**
+	 * Update the arcs of the capture : level of detail, then color and elevation of the arcs having new packets
+	 */
+	private void updateArcs() {
+		if (_destinationsChanged) {
+			_destinationsChanged = false;
+			while (_capLevel + 1 < LOD_REGION_DEGREES.length && countRegions(_capLevel) > MAX_ARCS) {
+				_capLevel++;
+			}
+		}
+		final int level = Math.max(getAltitudeLevel(), _capLevel);
+		if (level != _level) {
+			for (final Arc arc : _arcs.values()) {
+				if (arc._path != null) {
+					_controller._renderableLayer.removeRenderable(arc._path);
+				}
+			}
+			_arcs.clear();
+			_dirtyArcs.clear();
+			_level = level;
+			for (final Destination destination : _destinations.values()) {
+				addToArc(destination);
+			}
+		}
+		for (final Arc arc : _dirtyArcs) {
+			arc.update();
+		}
+		_dirtyArcs.clear();
+	}
+
+	/**
+	 * @return the number of arcs at the given level of detail
+	 */
+	private int countRegions(final int level) {
+		final Set<Object> regions = new HashSet<>();
+		for (final Destination destination : _destinations.values()) {
+			regions.add(getRegion(destination, level));
+		}
+		return regions.size();
+	}
+
+	private Object getRegion(final Destination destination, final int level) {
+		final double size = LOD_REGION_DEGREES[level];
+		if (size == 0) {
+			return destination;
+		}
+		return (long) Math.floor((destination._lat + 90) / size) << 32 | (long) Math.floor((destination._lon + 180) / size);
+	}
+
+	private void addToArc(final Destination destination) {
+		final Arc arc = _arcs.computeIfAbsent(getRegion(destination, _level), k -> new Arc());
+		arc._destinations++;
+		arc._latSum += destination._lat;
+		arc._lonSum += destination._lon;
+		arc._packets += destination._packets;
+		arc._moved = true;
+		_dirtyArcs.add(arc);
+	}
+
+	@Override
+	protected void destinationUpdated(final GeoPoint point, final long newPackets) {
+		final String coordKey = point.getCoordKey();
+		if (!_destinations.containsKey(coordKey)) {
+			pointAdded(point, false);
+		}
+		final Destination destination = _destinations.get(coordKey);
+		if (destination == null) {
+			return;
+		}
+		// the elevation and color of the arc depend on the number of packets received from its region, updated at the next frame
+		destination._packets += newPackets;
+		final Arc arc = _arcs.get(getRegion(destination, _level));
+		if (arc != null) {
+			arc._packets += newPackets;
+			_dirtyArcs.add(arc);
+		}
+		scheduleFrame();
+	}
+
 	/**
 	 * Make screen annotation
 	 *
@@ -313,7 +541,6 @@ public class WWJPanel extends AbstractGeoPanel {
 	public void startCapture() {
 		_mode = Mode.SNIFFER;
 		reinit();
-		_packetDestCoordToPath.clear();
 		final GeoPoint localGeo = _services.getGeo().getLocalIpGeoLocation();
 		_sourcePos = new Position(Position.fromDegrees(localGeo.getLat(), localGeo.getLon()), 1e4);
 		localGeo.setTown(youAreHere);
@@ -329,11 +556,21 @@ public class WWJPanel extends AbstractGeoPanel {
 
 	@Override
 	protected void reinit() {
-		_annotationToPoint.clear();
+		_index.clear();
+		_pickedEntry = null;
+		_culledSector = null;
 		_pointToLabel.clear();
 		_toAvoidDuplicatedLabels.clear();
 		_lines.clear();
 		_previousPos = null;
+		_sourcePoint = null;
+		_destinations.clear();
+		_arcs.clear();
+		_dirtyArcs.clear();
+		_pendingRenderables.clear();
+		_level = 0;
+		_capLevel = 0;
+		_shownLabels.clear();
 		_controller._renderableLayer.removeAllRenderables();
 		_controller.redraw();
 	}
@@ -363,7 +600,11 @@ public class WWJPanel extends AbstractGeoPanel {
 			return;
 		}
 		// center the map on the given point
-		final LabeledPath label = point == null ? null : _pointToLabel.get(point);
+		LabeledPath label = point == null ? null : _pointToLabel.get(point);
+		if (label == null && point != null && _toAvoidDuplicatedLabels.containsKey(point.getCoordKey())) {
+			// packets are drawn by destination
+			label = _toAvoidDuplicatedLabels.get(point.getCoordKey()).getLeft();
+		}
 		if (label != null) {
 			highlightAnnotation(label, point);
 			final View view = _controller.getWWd().getView();
@@ -413,6 +654,10 @@ public class WWJPanel extends AbstractGeoPanel {
 		if (!_mapShowLabel) {
 			_controller._renderableLayer.addRenderable(label);
 			_controller.redraw();
+		} else if (_shownLabels.add(label)) {
+			// culled out of the labels of the capture
+			_pendingRenderables.add(label);
+			scheduleFrame();
 		}
 		_lastSelection = Pair.of(label, point);
 	}
@@ -437,17 +682,20 @@ public class WWJPanel extends AbstractGeoPanel {
 		if (mapShowLabel) {
 			for (final Pair<LabeledPath, ScreenAnnotation> pair : _toAvoidDuplicatedLabels.values()) {
 				if (_lastSelection == null || pair.getLeft() != _lastSelection.getLeft()) {
-					_controller._renderableLayer.addRenderable(pair.getLeft());
+					addLabel(pair.getLeft());
 				}
 			}
 		} else {
+			_pendingRenderables.removeIf(r -> r instanceof LabeledPath);
 			for (final Pair<LabeledPath, ScreenAnnotation> pair : _toAvoidDuplicatedLabels.values()) {
 				if (_lastSelection == null || pair.getLeft() != _lastSelection.getLeft()) {
 					_controller._renderableLayer.removeRenderable(pair.getLeft());
 				}
 			}
+			_shownLabels.clear();
+			_culledSector = null;
 		}
-		_controller.redraw();
+		scheduleFrame();
 	}
 
 	@Override
@@ -463,6 +711,58 @@ public class WWJPanel extends AbstractGeoPanel {
 		_controller.redraw();
 	}
 
+	/**
+	 * A destination of the capture
+	 */
+	private static class Destination {
+		private final double _lat;
+		private final double _lon;
+		private long _packets;
+
+		private Destination(final double lat, final double lon) {
+			_lat = lat;
+			_lon = lon;
+		}
+	}
+
+	/**
+	 * Arc from the source to the destinations of a region
+	 */
+	private class Arc {
+		private int _destinations;
+		private double _latSum;
+		private double _lonSum;
+		private long _packets;
+		private Path _path;
+		private Color _color;
+		private double _elevation;
+		/** Destination added to the region */
+		private boolean _moved;
+
+		/**
+		 * Update the color and elevation of the path, only when they change
+		 */
+		private void update() {
+			final int packets = (int) Math.min(Integer.MAX_VALUE, _packets);
+			final Color color = ColorUtil.INSTANCE.getColorForNumOfPoints(packets);
+			final double elevation = normalizeElevation(packets, 5e3);
+			if (_path == null) {
+				_path = createPath(color);
+				_pendingRenderables.add(_path);
+			} else if (!color.equals(_color)) {
+				_path.getAttributes().setOutlineMaterial(new Material(color));
+				_path.getAttributes().setInteriorMaterial(new Material(new Color(color.getRed(), color.getGreen(), color.getBlue(), 50), 50));
+			}
+			_color = color;
+			if (elevation != _elevation || _moved) {
+				_elevation = elevation;
+				_moved = false;
+				final Position target = Position.fromDegrees(_latSum / _destinations, _lonSum / _destinations, elevation);
+				_path.setPositions(Arrays.asList(new Position(_sourcePos, elevation), target));
+			}
+		}
+	}
+
 	public static class WWJController extends Controller {
 
 		private final ServiceFactory _services;
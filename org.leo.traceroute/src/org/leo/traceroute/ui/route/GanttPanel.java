@@ -21,42 +21,34 @@ import java.awt.BorderLayout;
 import java.awt.Color;
 import java.awt.Component;
 import java.awt.Dimension;
-import java.awt.Paint;
+import java.awt.FlowLayout;
 import java.awt.Point;
-import java.awt.Rectangle;
 import java.awt.event.MouseWheelEvent;
 import java.awt.event.MouseWheelListener;
-import java.util.Date;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.concurrent.atomic.AtomicLong;
 
 import javax.swing.DefaultListCellRenderer;
+import javax.swing.Icon;
 import javax.swing.JComboBox;
 import javax.swing.JLabel;
 import javax.swing.JList;
+import javax.swing.JPanel;
 import javax.swing.JScrollPane;
 
-import org.jfree.chart.ChartFactory;
-import org.jfree.chart.ChartMouseEvent;
-import org.jfree.chart.ChartMouseListener;
 import org.jfree.chart.ChartPanel;
-import org.jfree.chart.JFreeChart;
-import org.jfree.chart.LegendItem;
-import org.jfree.chart.LegendItemCollection;
-import org.jfree.chart.entity.CategoryItemEntity;
-import org.jfree.chart.entity.ChartEntity;
-import org.jfree.chart.plot.CategoryPlot;
-import org.jfree.chart.renderer.category.GanttRenderer;
-import org.jfree.chart.title.LegendTitle;
-import org.jfree.data.gantt.Task;
-import org.jfree.data.gantt.TaskSeries;
-import org.jfree.data.gantt.TaskSeriesCollection;
-import org.jfree.ui.RectangleEdge;
 import org.leo.traceroute.core.ServiceFactory;
 import org.leo.traceroute.core.network.DNSLookupService;
 import org.leo.traceroute.core.route.ITraceRoute;
 import org.leo.traceroute.core.route.RoutePoint;
 import org.leo.traceroute.install.Env;
 import org.leo.traceroute.resources.Resources;
+import org.leo.traceroute.ui.route.LatencyTimeline.Bar;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -64,6 +56,8 @@ import org.slf4j.LoggerFactory;
  * GanttPanel $Id: GanttPanel.java 232 2016-01-30 04:39:16Z leolewis $
  *
  * <pre>
+ * Timeline of the latency (or distance) of the hops of the route.
+ * The last runs to the same destination are kept and drawn behind the current one for comparison.
  * </pre>
  *
  * @author Leo Lewis
@@ -75,6 +69,11 @@ public class GanttPanel extends AbstractRoutePanel {
 	/**  */
 	private static final long serialVersionUID = -6919944810189375750L;
 
+	/** Previous runs of a destination drawn behind the current one */
+	private static final int MAX_RUNS = 5;
+	/** Destinations for which the runs are kept */
+	private static final int MAX_DESTINATIONS = 200;
+
 	enum DisplayMode {
 
 		TIME("Time"),
@@ -124,11 +123,45 @@ public class GanttPanel extends AbstractRoutePanel {
 
 	}
 
-	/** Chart */
-	private JFreeChart _chart;
+	/**
+	 * A completed run
+	 */
+	private static class Run {
+		/** First point, to recognize the run when the route is notified again */
+		private final RoutePoint _first;
+		private final List<Bar> _bars;
+
+		private Run(final RoutePoint first, final List<Bar> bars) {
+			_first = first;
+			_bars = bars;
+		}
+	}
+
+	/** Timeline */
+	private LatencyTimeline _timeline;
+
+	/** Legend */
+	private JPanel _legend;
+
+	/** Color of the previous runs */
+	private Color _overlayColor;
+
+	/** Last runs, by display mode and destination */
+	private final Map<String, Deque<Run>> _runs = new LinkedHashMap<String, Deque<Run>>(16, 0.75f, true) {
+		/**  */
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(final Map.Entry<String, Deque<Run>> eldest) {
+			return size() > MAX_DESTINATIONS;
+		}
+	};
 
-	/** points series */
-	private TaskSeries _pointsSeries;
+	/** Key of the runs of the current route */
+	private String _runKey;
+
+	/** First point of the current route */
+	private RoutePoint _first;
 
 	/** Length (distance or time) */
 	private final AtomicLong _length = new AtomicLong();
@@ -146,7 +179,6 @@ public class GanttPanel extends AbstractRoutePanel {
 
 	/** Selected point index */
 	private volatile int _selectedPoint = -1;
-	private ChartPanel _chartPanel;
 	private JScrollPane _scrollPane;
 	private final ITraceRoute _route;
 
@@ -187,153 +219,88 @@ public class GanttPanel extends AbstractRoutePanel {
 			}
 		});
 		_modeCombo.setMaximumSize(new Dimension(50, 25));
-		_pointsSeries = new TaskSeries("Route");
-
-		final TaskSeriesCollection collection = new TaskSeriesCollection();
-		collection.add(_pointsSeries);
-
-		_chart = ChartFactory.createGanttChart("", "", "", collection, true, true, false);
-		_chart.setAntiAlias(true);
-		if (Env.INSTANCE.isDarkTheme()) {
-			_chart.setBackgroundPaint(new Color( 128, 128, 128));
-		} else {
-			_chart.setBackgroundPaint(new Color(240, 240, 240));
-		}
-		_chart.setBorderVisible(false);
-		_chart.setTextAntiAlias(true);
 
-		updateLegend();
-
-		final CategoryPlot plot = _chart.getCategoryPlot();
+		final Color background;
 		final Color grey;
+		final Color text;
 		if (Env.INSTANCE.isDarkTheme()) {
+			background = new Color(128, 128, 128);
 			grey = new Color(255, 255, 255);
-			_chart.setBackgroundPaint(new Color( 128, 128, 128));
+			text = Color.WHITE;
+			_overlayColor = new Color(40, 40, 40);
 		} else {
-			plot.setBackgroundPaint(Color.WHITE);
+			background = Color.WHITE;
 			grey = new Color(200, 200, 200);
+			text = Color.DARK_GRAY;
+			_overlayColor = new Color(120, 120, 120);
 		}
-		plot.getRangeAxis().setTickLabelsVisible(false);
-		plot.getRangeAxis().setTickMarksVisible(false);
-		plot.getRangeAxis().setVisible(false);
-		plot.getRangeAxis().setAutoRange(true);
-		plot.getRangeAxis().setUpperMargin(0D);
-		plot.getRangeAxis().setLowerMargin(0D);
-		plot.setRangeGridlinesVisible(true);
-		plot.setRangeGridlinePaint(grey);
-
-		plot.getDomainAxis().setTickLabelFont(plot.getRangeAxis().getTickLabelFont().deriveFont(8));
-		plot.getDomainAxis().setLabelFont(plot.getDomainAxis().getLabelFont().deriveFont(8));
-		plot.getDomainAxis().setTickMarksVisible(false);
-		plot.setDomainCrosshairPaint(Color.RED);
-		plot.setDomainGridlinePaint(grey);
-		plot.setOutlineVisible(false);
-
-		final GanttRenderer renderer = new GanttRenderer() {
-
-			int previousCol = -1;
-			int index;
-
-			@Override
-			public Paint getItemPaint(final int row, final int col) {
-				Color color;
-				if (col != previousCol) {
-					index = 0;
-				}
-				if (index % 3 == 0) {
-					if (_selectedPoint != col) {
-						color = Legend.LATENCY.color;
-					} else {
-						color = Legend.LATENCY.selectedColor;
-					}
-				} else if (index % 1 == 0) {
-					if (_selectedPoint != col) {
-						color = Legend.DNS.color;
-					} else {
-						color = Legend.DNS.selectedColor;
-					}
-				} else {
-					if (_selectedPoint != col) {
-						color = Color.LIGHT_GRAY;
-					} else {
-						color = Color.RED;
-					}
-				}
-				index++;
-				previousCol = col;
-				return color;
-			}
-		};
-		renderer.setShadowVisible(false);
-		plot.setRenderer(renderer);
-		renderer.setBaseToolTipGenerator((dataset, row, col) -> {
-			final RoutePoint point = _route.getRoute().get(col);
-			final StringBuilder sb = new StringBuilder();
-			sb.append(point.getIp());
-			if (point.getHostname() != null && point.getHostname().length() > 0) {
-				sb.append(" (" + point.getHostname() + ")");
-			}
-			sb.append(" [ " + point.getTown() + ", " + point.getCountry() + "]");
-			sb.append(": " + point.getLatency() + "ms");
-			return sb.toString();
-		});
-		_chartPanel = new ChartPanel(_chart);
-		// chartPanel.addMouseWheelListener(new MouseWheelZoom(chartPanel));
-		_chartPanel.addChartMouseListener(new ChartMouseListener() {
-			@Override
-			public void chartMouseMoved(final ChartMouseEvent event) {
-			}
-
-			@Override
-			public void chartMouseClicked(final ChartMouseEvent event) {
-				final ChartEntity entity = event.getEntity();
-				if (entity != null && entity instanceof CategoryItemEntity) {
-					final CategoryItemEntity ent = (CategoryItemEntity) entity;
-					@SuppressWarnings("deprecation")
-					final int index = ent.getCategoryIndex();
-					_focusAdjusting = true;
-					try {
-						final RoutePoint point = _route.getRoute().get(index);
-						_route.focus(point, true);
-						selectPoint(point);
-					} catch (final Exception e) {
-						LOGGER.error("Error while focusing a point from the Gantt view", e);
-					} finally {
-						_focusAdjusting = false;
-					}
-				}
+		_timeline = new LatencyTimeline(background, grey, text, _overlayColor, index -> {
+			_focusAdjusting = true;
+			try {
+				final RoutePoint point = _route.getRoute().get(index);
+				_route.focus(point, true);
+				selectPoint(point);
+			} catch (final Exception e) {
+				LOGGER.error("Error while focusing a point from the Gantt view", e);
+			} finally {
+				_focusAdjusting = false;
 			}
 		});
-		_chartPanel.setMinimumDrawHeight(100);
-		_chartPanel.setMaximumDrawHeight(5000);
-
-		_chartPanel.setMinimumDrawWidth(100);
-		_chartPanel.setMaximumDrawWidth(5000);
+		_timeline.setFont(_timeline.getFont().deriveFont(9f));
+		_legend = new JPanel(new FlowLayout(FlowLayout.CENTER, 10, 2));
+		updateLegend(0);
 		// add(_modeCombo, BorderLayout.NORTH);
-		_scrollPane = new JScrollPane(_chartPanel);
+		_scrollPane = new JScrollPane(_timeline);
 		_scrollPane.getVerticalScrollBar().setUnitIncrement(16);
 		add(_scrollPane, BorderLayout.CENTER);
+		add(_legend, BorderLayout.SOUTH);
 	}
 
 	/**
 	 * Update legend
+	 * @param runs number of previous runs displayed
 	 */
-	private void updateLegend() {
-		_chart.removeLegend();
-		final LegendTitle legend = new LegendTitle(() -> {
-			final LegendItemCollection collection = new LegendItemCollection();
-			if (_currentMode == DisplayMode.TIME) {
-				collection.add(new LegendItem(Legend.LATENCY.label, null, null, null, new Rectangle(30, 20), Legend.LATENCY.color));
-				if (_dnsLookup && _services.isEmbeddedTRAvailable() && !Env.INSTANCE.isUseOSTraceroute()) {
-					collection.add(new LegendItem(Legend.DNS.label, null, null, null, new Rectangle(30, 20), Legend.DNS.color));
+	private void updateLegend(final int runs) {
+		_legend.removeAll();
+		if (_currentMode == DisplayMode.TIME) {
+			_legend.add(legendItem(Legend.LATENCY.label, Legend.LATENCY.color, true));
+			if (_dnsLookup && _services.isEmbeddedTRAvailable() && !Env.INSTANCE.isUseOSTraceroute()) {
+				_legend.add(legendItem(Legend.DNS.label, Legend.DNS.color, true));
+			}
+		} else {
+			_legend.add(legendItem(Legend.DISTANCE.label, Legend.DISTANCE.color, true));
+		}
+		if (runs > 0) {
+			_legend.add(legendItem(Resources.getLabel("previous.runs") + " (" + runs + ")", _overlayColor, false));
+		}
+		_legend.revalidate();
+		_legend.repaint();
+	}
+
+	private static JLabel legendItem(final String text, final Color color, final boolean fill) {
+		final JLabel label = new JLabel(text, new Icon() {
+			@Override
+			public void paintIcon(final Component c, final java.awt.Graphics g, final int x, final int y) {
+				g.setColor(color);
+				if (fill) {
+					g.fillRect(x, y, getIconWidth(), getIconHeight());
+				} else {
+					g.drawRect(x, y, getIconWidth() - 1, getIconHeight() - 1);
 				}
-			} else {
-				collection.add(new LegendItem(Legend.DISTANCE.label, Legend.DISTANCE.color));
 			}
-			return collection;
-		});
-		legend.setPosition(RectangleEdge.BOTTOM);
-		_chart.addLegend(legend);
+
+			@Override
+			public int getIconWidth() {
+				return 20;
+			}
+
+			@Override
+			public int getIconHeight() {
+				return 10;
+			}
+		}, JLabel.LEFT);
+		label.setFont(label.getFont().deriveFont(10f));
+		return label;
 	}
 
 	@Override
@@ -343,73 +310,95 @@ public class GanttPanel extends AbstractRoutePanel {
 		_modeCombo.setEditable(false);
 		_dnsLookup = dnsLookup;
 		_length.set(0);
-		_pointsSeries.removeAll();
-		updateLegend();
-		_chart.fireChartChanged();
+		_first = null;
+		_runKey = _currentMode + " " + _route.getDestination();
+		final List<List<Bar>> overlays = getOverlays(null);
+		_timeline.reset(overlays);
+		updateLegend(overlays.size());
+	}
+
+	/**
+	 * @param exclude run not to display, the current one when the route is notified again
+	 * @return the bars of the previous runs of the current destination, most recent first
+	 */
+	private List<List<Bar>> getOverlays(final RoutePoint exclude) {
+		final List<List<Bar>> overlays = new ArrayList<>();
+		final Deque<Run> runs = _runs.get(_runKey);
+		if (runs != null) {
+			for (final Run run : runs) {
+				if (run._first != exclude) {
+					overlays.add(run._bars);
+				}
+			}
+		}
+		return overlays;
 	}
 
 	@Override
 	public void routePointAdded(final RoutePoint point) {
-		final long f = 1000;
+		if (_first == null) {
+			_first = point;
+			final List<List<Bar>> overlays = getOverlays(point);
+			if (_runs.containsKey(_runKey) && overlays.size() != _runs.get(_runKey).size()) {
+				// the route is notified again, don't compare with itself
+				_timeline.reset(overlays);
+				updateLegend(overlays.size());
+			}
+		}
+		final Bar bar;
 		if (_currentMode == DisplayMode.TIME) {
 			final String name = String.valueOf(point.getNumber()) + ".";
-			//					+ ((point.getHostname().equals("") || point.getHostname().equals(DNSLookupService.UNKNOWN_HOST)) ? point
-			//							.getIp() : point.getHostname());
-
 			long latency = point.getLatency();
 			if (latency <= 0) {
 				latency = 1;
 			}
+			final StringBuilder sb = new StringBuilder();
+			sb.append(point.getIp());
+			if (point.getHostname() != null && point.getHostname().length() > 0) {
+				sb.append(" (" + point.getHostname() + ")");
+			}
+			sb.append(" [ " + point.getTown() + ", " + point.getCountry() + "]");
+			sb.append(": " + point.getLatency() + "ms");
 			long lookup = point.getDnsLookUpTime();
 			if (_dnsLookup && lookup != DNSLookupService.UNDEF) {
 				if (lookup == 0) {
 					lookup = 1;
 				}
-				long l = _length.getAndAdd((latency + lookup) * f + 2);
-				final Date beginDate = new Date(l);
-				final Task latencyTask = new Task("Latency", new Date(l), new Date(l += (latency * f)));
-				l++;
-				final Task dns = new Task("DNS", new Date(l), new Date(l += (lookup * f)));
-				final Task join = new Task(name, beginDate, new Date(l));
-				join.addSubtask(latencyTask);
-				join.addSubtask(dns);
-
-				_pointsSeries.add(join);
+				final long l = _length.getAndAdd(latency + lookup);
+				bar = new Bar(name, l, new long[] { latency, lookup }, new Color[] { Legend.LATENCY.color, Legend.DNS.color },
+						new Color[] { Legend.LATENCY.selectedColor, Legend.DNS.selectedColor }, sb.toString());
 			} else {
-				final long l = _length.getAndAdd(latency * f + 1);
-				final Task latencyTask = new Task(name, new Date(l), new Date(l + (latency * f)));
-				_pointsSeries.add(latencyTask);
+				final long l = _length.getAndAdd(latency);
+				bar = new Bar(name, l, new long[] { latency }, new Color[] { Legend.LATENCY.color }, new Color[] { Legend.LATENCY.selectedColor },
+						sb.toString());
 			}
 		} else {
-			final long l = _length.getAndAdd(point.getDistanceToPrevious() + 1);
-			final Task location = new Task(point.getNumber() + ". " + point.getCountry() + "(" + (point.getTown() != null ? point.getTown() : "?") + ")", new Date(l),
-					new Date(l + point.getDistanceToPrevious()));
-			_pointsSeries.add(location);
+			final long l = _length.getAndAdd(point.getDistanceToPrevious());
+			bar = new Bar(point.getNumber() + ".", l, new long[] { Math.max(1, point.getDistanceToPrevious()) }, new Color[] { Legend.DISTANCE.color },
+					new Color[] { Legend.DISTANCE.selectedColor },
+					point.getNumber() + ". " + point.getCountry() + "(" + (point.getTown() != null ? point.getTown() : "?") + ")");
 		}
-		_chartPanel.setPreferredSize(new Dimension(_chartPanel.getPreferredSize().width, _route.size() * 20));
-		_chartPanel.setMaximumSize(new Dimension(_chartPanel.getPreferredSize().width, _route.size() * 20));
-		_chartPanel.invalidate();
-		_scrollPane.revalidate();
+		_timeline.addBar(bar);
 	}
 
 	@Override
 	public void routeDone(final long tracerouteTime, final long lengthInKm) {
-		traceRouteEnded();
+		traceRouteEnded(true);
 	}
 
 	@Override
 	public void error(final Exception exception, final Object origin) {
-		traceRouteEnded();
+		traceRouteEnded(false);
 	}
 
 	@Override
 	public void routeCancelled() {
-		traceRouteEnded();
+		traceRouteEnded(false);
 	}
 
 	@Override
 	public void routeTimeout() {
-		traceRouteEnded();
+		traceRouteEnded(false);
 	}
 
 	/**
@@ -417,12 +406,27 @@ public class GanttPanel extends AbstractRoutePanel {
 	 */
 	@Override
 	public void maxHops() {
-		traceRouteEnded();
+		traceRouteEnded(true);
 	}
 
-	private void traceRouteEnded() {
+	/**
+	 * @param completed if the run is kept for the comparison with the next ones
+	 */
+	private void traceRouteEnded(final boolean completed) {
 		_modeCombo.setEnabled(true);
-		_chart.fireChartChanged();
+		if (completed && _first != null && _runKey != null) {
+			final Deque<Run> runs = _runs.computeIfAbsent(_runKey, k -> new ArrayDeque<>());
+			for (final Run run : runs) {
+				if (run._first == _first) {
+					// already kept, the route was notified again
+					return;
+				}
+			}
+			runs.addFirst(new Run(_first, new ArrayList<>(_timeline.getBars())));
+			while (runs.size() > MAX_RUNS) {
+				runs.removeLast();
+			}
+		}
 	}
 
 	@Override
@@ -438,7 +442,7 @@ public class GanttPanel extends AbstractRoutePanel {
 	}
 
 	/**
-	 * Select the given point
+	 * Select the given point, only the rows of the previous and new selection are repainted
 	 *
 	 * @param point
 	 */
@@ -448,7 +452,7 @@ public class GanttPanel extends AbstractRoutePanel {
 		} else {
 			_selectedPoint = -1;
 		}
-		_chart.fireChartChanged();
+		_timeline.setSelected(_selectedPoint);
 	}
 
 	/**
@@ -0,0 +1,354 @@
+/**
+ * Open Visual Trace Route
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.leo.traceroute.ui.route;
+
+import java.awt.Color;
+import java.awt.Dimension;
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.RenderingHints;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.IntConsumer;
+
+import javax.swing.JComponent;
+import javax.swing.JViewport;
+import javax.swing.Scrollable;
+import javax.swing.SwingConstants;
+
+/**
+ * LatencyTimeline $Id$
+ * <pre>
+ * Timeline of the hops of a route, one row per hop, the bars start at the end of the previous hop.
+ * The rows are rendered in a cached image : adding a hop only renders its row, selecting a hop
+ * only repaints the rows of the old and new selection. The whole image is rendered again
+ * when the scale grows (by steps, not for each hop) or the component is resized.
+ * The previous runs to the same destination are drawn as outlines behind the bars of the current run.
+ * Used on the EDT.
+ * </pre>
+ * @author Leo Lewis
+ */
+public class LatencyTimeline extends JComponent implements Scrollable {
+
+	/**  */
+	private static final long serialVersionUID = -3326017734590862215L;
+
+	public static final int ROW_HEIGHT = 20;
+	private static final int LABEL_WIDTH = 36;
+	private static final int MARGIN = 10;
+	private static final int GRID_LINES = 10;
+	/** Rows allocated in the image before the next resize */
+	private static final int ROWS_INCREMENT = 32;
+
+	/**
+	 * A bar of the timeline, made of consecutive segments (latency, dns lookup...)
+	 */
+	public static class Bar {
+		private final String _label;
+		private final long _start;
+		private final long[] _lengths;
+		private final Color[] _colors;
+		private final Color[] _selectedColors;
+		private final String _tooltip;
+
+		/**
+		 * Constructor
+		 * @param label label of the row
+		 * @param start start of the bar
+		 * @param lengths length of the segments
+		 * @param colors colors of the segments
+		 * @param selectedColors colors of the segments when selected
+		 * @param tooltip tooltip of the row
+		 */
+		public Bar(final String label, final long start, final long[] lengths, final Color[] colors, final Color[] selectedColors,
+				final String tooltip) {
+			_label = label;
+			_start = start;
+			_lengths = lengths;
+			_colors = colors;
+			_selectedColors = selectedColors;
+			_tooltip = tooltip;
+		}
+
+		/**
+		 * @return the end of the bar
+		 */
+		public long getEnd() {
+			long end = _start;
+			for (final long length : _lengths) {
+				end += length;
+			}
+			return end;
+		}
+	}
+
+	private final List<Bar> _bars = new ArrayList<>();
+	/** Previous runs, most recent first */
+	private List<List<Bar>> _overlays = Collections.emptyList();
+	private final Color _background;
+	private final Color _grid;
+	private final Color _text;
+	private final Color _overlay;
+	private long _scale;
+	private int _selected = -1;
+	private BufferedImage _cache;
+	private boolean _dirty = true;
+
+	/**
+	 * Constructor
+	 * @param background background color
+	 * @param grid color of the grid
+	 * @param text color of the labels
+	 * @param overlay color of the previous runs
+	 * @param onClick called with the index of the clicked bar
+	 */
+	public LatencyTimeline(final Color background, final Color grid, final Color text, final Color overlay, final IntConsumer onClick) {
+		_background = background;
+		_grid = grid;
+		_text = text;
+		_overlay = overlay;
+		setOpaque(true);
+		// register to the tooltip manager
+		setToolTipText("");
+		addMouseListener(new MouseAdapter() {
+			@Override
+			public void mouseClicked(final MouseEvent e) {
+				final int row = e.getY() / ROW_HEIGHT;
+				if (row < _bars.size()) {
+					onClick.accept(row);
+				}
+			}
+		});
+	}
+
+	/**
+	 * Start a new run
+	 * @param overlays bars of the previous runs to compare with, most recent first
+	 */
+	public void reset(final List<List<Bar>> overlays) {
+		_bars.clear();
+		_overlays = overlays;
+		_selected = -1;
+		_scale = 0;
+		for (final List<Bar> run : overlays) {
+			if (!run.isEmpty()) {
+				_scale = Math.max(_scale, scaleFor(run.get(run.size() - 1).getEnd()));
+			}
+		}
+		invalidateCache();
+	}
+
+	/**
+	 * @return the bars of the current run
+	 */
+	public List<Bar> getBars() {
+		return Collections.unmodifiableList(_bars);
+	}
+
+	/**
+	 * Add a bar, only its row is rendered unless the scale grows
+	 * @param bar the bar
+	 */
+	public void addBar(final Bar bar) {
+		_bars.add(bar);
+		final int row = _bars.size() - 1;
+		if (bar.getEnd() > _scale) {
+			_scale = scaleFor(bar.getEnd());
+			invalidateCache();
+		} else if (!_dirty && _cache != null && (row + 1) * ROW_HEIGHT <= _cache.getHeight()) {
+			final Graphics2D g = createGraphics();
+			paintRow(g, row);
+			g.dispose();
+			repaint(getRowBounds(row));
+		} else {
+			invalidateCache();
+		}
+		if (row >= getRowCount() - 1) {
+			revalidate();
+		}
+	}
+
+	/**
+	 * @param index index of the selected bar, -1 for none
+	 */
+	public void setSelected(final int index) {
+		if (index == _selected) {
+			return;
+		}
+		if (_selected >= 0) {
+			repaint(getRowBounds(_selected));
+		}
+		_selected = index;
+		if (_selected >= 0) {
+			repaint(getRowBounds(_selected));
+			scrollRectToVisible(getRowBounds(_selected));
+		}
+	}
+
+	/**
+	 * @return scale of the timeline for the given end, with room for the next bars
+	 */
+	private static long scaleFor(final long end) {
+		long scale = 1;
+		while (scale < end) {
+			scale *= 2;
+		}
+		return scale;
+	}
+
+	private void invalidateCache() {
+		_dirty = true;
+		repaint();
+	}
+
+	private int getRowCount() {
+		int rows = _bars.size();
+		for (final List<Bar> run : _overlays) {
+			rows = Math.max(rows, run.size());
+		}
+		return rows;
+	}
+
+	private Rectangle getRowBounds(final int row) {
+		return new Rectangle(0, row * ROW_HEIGHT, getWidth(), ROW_HEIGHT);
+	}
+
+	private int toX(final long value) {
+		final int width = Math.max(1, getWidth() - LABEL_WIDTH - MARGIN);
+		return LABEL_WIDTH + (int) (value * width / Math.max(1, _scale));
+	}
+
+	private Graphics2D createGraphics() {
+		final Graphics2D g = _cache.createGraphics();
+		g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+		g.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+		g.setFont(getFont());
+		return g;
+	}
+
+	@Override
+	protected void paintComponent(final Graphics g) {
+		final int width = Math.max(1, getWidth());
+		final int height = Math.max(1, getHeight());
+		if (_cache == null || _cache.getWidth() != width || _cache.getHeight() < height) {
+			final int rows = (height / ROW_HEIGHT / ROWS_INCREMENT + 1) * ROWS_INCREMENT;
+			_cache = new BufferedImage(width, rows * ROW_HEIGHT, BufferedImage.TYPE_INT_RGB);
+			_dirty = true;
+		}
+		if (_dirty) {
+			_dirty = false;
+			final Graphics2D cg = createGraphics();
+			cg.setColor(_background);
+			cg.fillRect(0, 0, _cache.getWidth(), _cache.getHeight());
+			for (int row = 0; row < getRowCount() && row * ROW_HEIGHT < _cache.getHeight(); row++) {
+				paintRow(cg, row);
+			}
+			cg.dispose();
+		}
+		g.drawImage(_cache, 0, 0, null);
+		if (_selected >= 0 && _selected < _bars.size()) {
+			final Graphics2D g2 = (Graphics2D) g.create();
+			g2.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+			paintBar(g2, _bars.get(_selected), _selected, true);
+			g2.dispose();
+		}
+	}
+
+	/**
+	 * Render a row : grid, label, previous runs and bar
+	 */
+	private void paintRow(final Graphics2D g, final int row) {
+		final int y = row * ROW_HEIGHT;
+		g.setColor(_background);
+		g.fillRect(0, y, _cache.getWidth(), ROW_HEIGHT);
+		g.setColor(_grid);
+		for (int i = 0; i <= GRID_LINES; i++) {
+			final int x = toX(_scale * i / GRID_LINES);
+			g.drawLine(x, y, x, y + ROW_HEIGHT);
+		}
+		int alpha = 200;
+		for (final List<Bar> run : _overlays) {
+			if (row < run.size()) {
+				final Bar bar = run.get(row);
+				g.setColor(new Color(_overlay.getRed(), _overlay.getGreen(), _overlay.getBlue(), alpha));
+				final int x = toX(bar._start);
+				g.drawRect(x, y + 2, Math.max(1, toX(bar.getEnd()) - x), ROW_HEIGHT - 4);
+			}
+			alpha = Math.max(40, alpha - 40);
+		}
+		if (row < _bars.size()) {
+			final Bar bar = _bars.get(row);
+			g.setColor(_text);
+			g.drawString(bar._label, 4, y + ROW_HEIGHT - 6);
+			paintBar(g, bar, row, false);
+		}
+	}
+
+	private void paintBar(final Graphics2D g, final Bar bar, final int row, final boolean selected) {
+		final int y = row * ROW_HEIGHT + 5;
+		long start = bar._start;
+		for (int i = 0; i < bar._lengths.length; i++) {
+			final int x = toX(start);
+			start += bar._lengths[i];
+			g.setColor(selected ? bar._selectedColors[i] : bar._colors[i]);
+			g.fillRect(x, y, Math.max(1, toX(start) - x), ROW_HEIGHT - 10);
+		}
+	}
+
+	@Override
+	public String getToolTipText(final MouseEvent event) {
+		final int row = event.getY() / ROW_HEIGHT;
+		return row < _bars.size() ? _bars.get(row)._tooltip : null;
+	}
+
+	@Override
+	public Dimension getPreferredSize() {
+		return new Dimension(super.getPreferredSize().width, getRowCount() * ROW_HEIGHT);
+	}
+
+	@Override
+	public Dimension getPreferredScrollableViewportSize() {
+		return getPreferredSize();
+	}
+
+	@Override
+	public int getScrollableUnitIncrement(final Rectangle visibleRect, final int orientation, final int direction) {
+		return orientation == SwingConstants.VERTICAL ? ROW_HEIGHT : 10;
+	}
+
+	@Override
+	public int getScrollableBlockIncrement(final Rectangle visibleRect, final int orientation, final int direction) {
+		return orientation == SwingConstants.VERTICAL ? visibleRect.height : visibleRect.width;
+	}
+
+	@Override
+	public boolean getScrollableTracksViewportWidth() {
+		return true;
+	}
+
+	@Override
+	public boolean getScrollableTracksViewportHeight() {
+		// fill the viewport when the rows don't
+		return getParent() instanceof JViewport && getParent().getHeight() > getRowCount() * ROW_HEIGHT;
+	}
+}
@@ -43,6 +43,7 @@ import javax.swing.table.JTableHeader;
 import javax.swing.table.TableColumn;
 
 import org.leo.traceroute.core.ServiceFactory;
+import org.leo.traceroute.core.export.TableExporter.IColumn;
 import org.leo.traceroute.core.network.DNSLookupService;
 import org.leo.traceroute.core.route.ITraceRoute;
 import org.leo.traceroute.core.route.RoutePoint;
@@ -63,7 +64,7 @@ public class RouteTablePanel extends AbstractRoutePanel implements IConfigProvid
 	/**
 	 * Column enum
 	 */
-	public enum Column {
+	public enum Column implements IColumn<RoutePoint> {
 
 		NUMBER("#", Integer.class, 28, true),
 		COUNTRY_FLAG("", ImageIcon.class, 24, false),
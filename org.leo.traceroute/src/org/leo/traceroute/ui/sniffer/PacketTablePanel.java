@@ -21,12 +21,12 @@ import java.awt.BorderLayout;
 import java.awt.Color;
 import java.awt.Component;
 import java.awt.Dimension;
-import java.awt.Font;
 import java.awt.Insets;
 import java.awt.Point;
 import java.awt.Rectangle;
 import java.awt.event.MouseEvent;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 import javax.swing.DefaultCellEditor;
@@ -37,6 +37,7 @@ import javax.swing.JLabel;
 import javax.swing.JScrollPane;
 import javax.swing.JTable;
 import javax.swing.ListSelectionModel;
+import javax.swing.Timer;
 import javax.swing.ToolTipManager;
 import javax.swing.table.AbstractTableModel;
 import javax.swing.table.DefaultTableCellRenderer;
@@ -45,6 +46,7 @@ import javax.swing.table.TableColumn;
 
 import org.apache.commons.io.FileUtils;
 import org.leo.traceroute.core.ServiceFactory;
+import org.leo.traceroute.core.export.TableExporter.IColumn;
 import org.leo.traceroute.core.sniffer.AbstractPacketPoint;
 import org.leo.traceroute.core.sniffer.AbstractPacketPoint.Protocol;
 import org.leo.traceroute.core.sniffer.IPacketsSniffer;
@@ -65,13 +67,13 @@ public class PacketTablePanel extends AbstractSnifferPanel implements IConfigPro
 	/**
 	 * Column enum
 	 */
-	public enum Column {
+	public enum Column implements IColumn<AbstractPacketPoint> {
 
 		NUMBER("#", Integer.class, 25, true),
 		PROTOCOL(Resources.getLabel("protocol.label"), Protocol.class, 25, true),
 		COUNTRY_FLAG("", String.class, 18, false),
 		LOCATION(Resources.getLabel("location"), String.class, 50, true),
-		TIME(Resources.getLabel("time"), String.class, 90, true),
+		TIME(Resources.getLabel("time"), String.class, 110, true),
 		SRC_PORT("Src port", Integer.class, 30, true),
 		DEST_PORT("Dest port", Integer.class, 30, true),
 		DEST_IP("Dest IP", String.class, 80, true),
@@ -186,6 +188,9 @@ public class PacketTablePanel extends AbstractSnifferPanel implements IConfigPro
 	/** Width */
 	public static final int WIDTH = 550;
 
+	/** Maximum number of times per second the captured packets are inserted in the table */
+	private static final int MAX_UPDATES_PER_SECOND = 10;
+
 	/**  */
 	private static final long serialVersionUID = 733606227606524464L;
 
@@ -299,19 +304,18 @@ public class PacketTablePanel extends AbstractSnifferPanel implements IConfigPro
 	public void startCapture() {
 		_running = true;
 		_previousSelectedIndex = -5;
-		_model.fireTableDataChanged();
+		_model.reset();
 	}
 
 	@Override
 	public void packetAdded(final AbstractPacketPoint point) {
-		final int selection = _table.getSelectionModel().getMaxSelectionIndex();
-		_model.fireTableDataChanged();
-		_table.getSelectionModel().setSelectionInterval(selection, selection);
+		_model.packetsAdded();
 	}
 
 	@Override
 	public void captureStopped() {
 		_running = false;
+		_model.flush();
 	}
 
 	@Override
@@ -320,8 +324,15 @@ public class PacketTablePanel extends AbstractSnifferPanel implements IConfigPro
 			_selectionAdjusting = true;
 			try {
 				final int index = _sniffer.getCapture().indexOf(point);
-				_table.getSelectionModel().setSelectionInterval(index, index);
-				_table.scrollRectToVisible(new Rectangle(_table.getCellRect(index, 0, true)));
+				if (index >= _model.getRowCount()) {
+					// not inserted in the table yet
+					_model.flush();
+				}
+				if (index >= 0 && index < _model.getRowCount()) {
+					final int viewIndex = _table.convertRowIndexToView(index);
+					_table.getSelectionModel().setSelectionInterval(viewIndex, viewIndex);
+					_table.scrollRectToVisible(new Rectangle(_table.getCellRect(viewIndex, 0, true)));
+				}
 			} finally {
 				_selectionAdjusting = false;
 			}
@@ -335,8 +346,12 @@ public class PacketTablePanel extends AbstractSnifferPanel implements IConfigPro
 	}
 
 	/**
-	 * RouteTableModel
-	 *
+	 * CaptureTableModel
+	 * <pre>
+	 * Table model over the indexed capture store, the rows are read from the store when displayed.
+	 * The captured packets are not inserted one by one : the new rows are inserted in one range,
+	 * at most MAX_UPDATES_PER_SECOND times per second. Only used on the EDT.
+	 * </pre>
 	 * @author Leo Lewis
 	 */
 	private class CaptureTableModel extends AbstractTableModel {
@@ -347,11 +362,57 @@ public class PacketTablePanel extends AbstractSnifferPanel implements IConfigPro
 		/** Sniffer (Data model) */
 		private final IPacketsSniffer _sniffer;
 
+		/** Rows inserted in the table, the capture may already contain more packets */
+		private int _rowCount;
+
+		/** Inserts the pending rows */
+		private final Timer _timer;
+
 		/**
 		 * Constructor
 		 */
 		public CaptureTableModel(final IPacketsSniffer sniffer) {
 			_sniffer = sniffer;
+			_rowCount = sniffer.getCapture().size();
+			_timer = new Timer(1000 / MAX_UPDATES_PER_SECOND, e -> flush());
+			_timer.setCoalesce(true);
+		}
+
+		/**
+		 * New capture, the table is emptied
+		 */
+		public void reset() {
+			_timer.stop();
+			_rowCount = _sniffer.getCapture().size();
+			fireTableDataChanged();
+		}
+
+		/**
+		 * Packets were added to the capture, they will be inserted by the timer
+		 */
+		public void packetsAdded() {
+			if (!_timer.isRunning()) {
+				_timer.start();
+			}
+		}
+
+		/**
+		 * Insert the packets added to the capture since the last call
+		 */
+		public void flush() {
+			final int size = _sniffer.getCapture().size();
+			if (size > _rowCount) {
+				final int first = _rowCount;
+				_rowCount = size;
+				fireTableRowsInserted(first, size - 1);
+			} else {
+				if (size < _rowCount) {
+					_rowCount = size;
+					fireTableDataChanged();
+				}
+				// nothing new since the last tick
+				_timer.stop();
+			}
 		}
 
 		@Override
@@ -361,13 +422,25 @@ public class PacketTablePanel extends AbstractSnifferPanel implements IConfigPro
 
 		@Override
 		public int getRowCount() {
-			return _sniffer.getCapture().size();
+			return _rowCount;
 		}
 
 		@Override
 		public Object getValueAt(final int row, final int col) {
-			final AbstractPacketPoint point = _sniffer.getCapture().get(row);
-			return _indexToColumn.get(col).getValue(point);
+			final AbstractPacketPoint point = getPoint(row);
+			return point == null ? null : _indexToColumn.get(col).getValue(point);
+		}
+
+		/**
+		 * Packet displayed at the given model row
+		 *
+		 * @param row the model row
+		 * @return the packet, null if the capture was cleared and the table not reset yet
+		 */
+		public AbstractPacketPoint getPoint(final int row) {
+			final List<AbstractPacketPoint> capture = _sniffer.getCapture();
+			// the store is cleared before the new capture resets the rows, a repaint may come in between
+			return row < capture.size() ? capture.get(row) : null;
 		}
 
 		@Override
@@ -392,7 +465,7 @@ public class PacketTablePanel extends AbstractSnifferPanel implements IConfigPro
 		 * Dispose the model
 		 */
 		public void dispose() {
-
+			_timer.stop();
 		}
 	}
 
@@ -411,27 +484,28 @@ public class PacketTablePanel extends AbstractSnifferPanel implements IConfigPro
 			final Component c = super.getTableCellRendererComponent(table, value, isSelected, hasFocus, row, column);
 			if (c instanceof JLabel) {
 				final JLabel label = (JLabel) c;
-				c.setFont(new Font(c.getFont().getName(), c.getFont().getStyle(), 9));
 				// bg selection color
 				if (isSelected) {
 					label.setBackground(new Color(250, 220, 220));
 				} else {
 					final int modelRow = table.convertRowIndexToModel(row);
-					final AbstractPacketPoint point = _sniffer.getCapture().get(modelRow);
+					final AbstractPacketPoint point = _model.getPoint(modelRow);
 					// otherwise, alternate bg color
 					Color bg = new Color(255, 255, 255);
 					final int h = 250 + ((row % 2 == 0) ? -0 : 0);
 					final int comp = 230 + ((row % 2 == 0) ? -35 : 0);
-					switch (point.getProtocol()) {
-					case ICMP:
-						bg = new Color(h, h, comp);
-						break;
-					case TCP:
-						bg = new Color(comp, h, comp);
-						break;
-					case UDP:
-						bg = new Color(comp, comp, h);
-						break;
+					if (point != null) {
+						switch (point.getProtocol()) {
+						case ICMP:
+							bg = new Color(h, h, comp);
+							break;
+						case TCP:
+							bg = new Color(comp, h, comp);
+							break;
+						case UDP:
+							bg = new Color(comp, comp, h);
+							break;
+						}
 					}
 					label.setBackground(bg);
 				}
@@ -482,8 +556,10 @@ public class PacketTablePanel extends AbstractSnifferPanel implements IConfigPro
 				button.setBorder(null);
 			}
 			button.addActionListener(e -> {
-				final AbstractPacketPoint point = _sniffer.getCapture().get(_table.convertRowIndexToModel(row));
-				WhoIsPanel.showWhoIsDialog(PacketTablePanel.this, _services, point);
+				final AbstractPacketPoint point = _model.getPoint(_table.convertRowIndexToModel(row));
+				if (point != null) {
+					WhoIsPanel.showWhoIsDialog(PacketTablePanel.this, _services, point);
+				}
 				if (table.isEditing()) {
 					table.getCellEditor().stopCellEditing();
 				}
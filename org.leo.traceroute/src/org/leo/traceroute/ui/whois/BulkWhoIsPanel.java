@@ -0,0 +1,213 @@
+/**
+ * Open Visual Trace Route
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.leo.traceroute.ui.whois;
+
+import java.awt.BorderLayout;
+import java.awt.Dialog.ModalityType;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+
+import javax.swing.*;
+import javax.swing.table.AbstractTableModel;
+
+import org.leo.traceroute.core.ServiceFactory;
+import org.leo.traceroute.core.whois.WhoIs;
+import org.leo.traceroute.core.whois.WhoIs.BulkResult;
+import org.leo.traceroute.resources.Resources;
+import org.leo.traceroute.ui.task.CancelMonitor;
+import org.leo.traceroute.ui.util.SwingUtilities4;
+
+/**
+ * BulkWhoIsPanel $Id$
+ * <pre>
+ * WhoIs of all the addresses of a route or a capture, one row per address,
+ * the WhoIs of the selected row below.
+ * </pre>
+ * @author Leo Lewis
+ */
+public class BulkWhoIsPanel extends JPanel {
+
+	/**  */
+	private static final long serialVersionUID = 5409713324806012764L;
+
+	private static final String[] COLUMNS = { Resources.getLabel("ip"), Resources.getLabel("netblock"), Resources.getLabel("netname"),
+			Resources.getLabel("country"), Resources.getLabel("registry") };
+
+	private final List<String> _addresses;
+	/** Results by address, EDT only */
+	private final Map<String, BulkResult> _results = new HashMap<>();
+	private final CancelMonitor _monitor = new CancelMonitor();
+	private final ResultTableModel _model = new ResultTableModel();
+	private final JTable _table;
+	private final JTextArea _textArea;
+	private final JLabel _progress;
+
+	/**
+	 * Constructor
+	 * @param addresses the addresses
+	 */
+	public BulkWhoIsPanel(final Collection<String> addresses) {
+		super(new BorderLayout());
+		_addresses = new ArrayList<>(new LinkedHashSet<>(addresses));
+		_progress = new JLabel(Resources.getLabel("wait"), SwingConstants.LEFT);
+		add(_progress, BorderLayout.NORTH);
+		_table = new JTable(_model);
+		_table.setAutoCreateRowSorter(true);
+		_table.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
+		_table.getSelectionModel().addListSelectionListener(e -> {
+			if (!e.getValueIsAdjusting()) {
+				showSelection();
+			}
+		});
+		_textArea = new JTextArea("", 15, 70);
+		_textArea.setEditable(false);
+		final JSplitPane split = new JSplitPane(JSplitPane.VERTICAL_SPLIT, new JScrollPane(_table), new JScrollPane(_textArea));
+		split.setResizeWeight(0.5);
+		add(split, BorderLayout.CENTER);
+	}
+
+	/**
+	 * Start the WhoIs
+	 * @param whois the service
+	 */
+	public void start(final WhoIs whois) {
+		whois.bulkWhoIs(_addresses, _monitor, result -> SwingUtilities.invokeLater(() -> addResult(result)))
+				.whenComplete((v, e) -> SwingUtilities.invokeLater(this::updateProgress));
+	}
+
+	/**
+	 * Cancel the addresses not asked yet
+	 */
+	public void cancel() {
+		_monitor.setCanceled(true);
+	}
+
+	private void addResult(final BulkResult result) {
+		_results.put(result.getAddress(), result);
+		final int row = _addresses.indexOf(result.getAddress());
+		if (row >= 0) {
+			_model.fireTableRowsUpdated(row, row);
+		}
+		updateProgress();
+		if (_table.getSelectedRow() >= 0 && _table.convertRowIndexToModel(_table.getSelectedRow()) == row) {
+			showSelection();
+		}
+	}
+
+	private void updateProgress() {
+		_progress.setText(Resources.getLabel("bulk.whois.progress", _results.size(), _addresses.size()));
+	}
+
+	private void showSelection() {
+		final int row = _table.getSelectedRow();
+		final BulkResult result = row >= 0 ? _results.get(_addresses.get(_table.convertRowIndexToModel(row))) : null;
+		if (result == null) {
+			_textArea.setText("");
+		} else if (result.getAnswer() != null) {
+			_textArea.setText(WhoIs.format(result.getAnswer().getText()));
+		} else if (result.getStatus() == BulkResult.Status.PRIVATE) {
+			_textArea.setText(Resources.getLabel("bulk.whois.private"));
+		} else {
+			_textArea.setText(Resources.getLabel("no.whois.data"));
+		}
+		_textArea.setCaretPosition(0);
+	}
+
+	/**
+	 * Model of the results, one row per address
+	 */
+	private class ResultTableModel extends AbstractTableModel {
+
+		/**  */
+		private static final long serialVersionUID = -1867385906711574453L;
+
+		@Override
+		public int getRowCount() {
+			return _addresses.size();
+		}
+
+		@Override
+		public int getColumnCount() {
+			return COLUMNS.length;
+		}
+
+		@Override
+		public String getColumnName(final int column) {
+			return COLUMNS[column];
+		}
+
+		@Override
+		public Object getValueAt(final int row, final int column) {
+			final String address = _addresses.get(row);
+			if (column == 0) {
+				return address;
+			}
+			final BulkResult result = _results.get(address);
+			if (result == null) {
+				return "";
+			}
+			if (result.getAnswer() == null) {
+				return column == 1 ? Resources.getLabel(result.getStatus() == BulkResult.Status.PRIVATE ? "bulk.whois.private" : "no.whois.data") : "";
+			}
+			switch (column) {
+			case 1:
+				return result.getAnswer().getNetblock() != null ? result.getAnswer().getNetblock().toString() : "";
+			case 2:
+				return result.getNetName() != null ? result.getNetName() : "";
+			case 3:
+				return result.getCountry() != null ? result.getCountry() : "";
+			default:
+				return result.getAnswer().getServer();
+			}
+		}
+	}
+
+	/**
+	 * Show the WhoIs of the addresses in a dialog
+	 * @param parent parent component
+	 * @param services the services
+	 * @param addresses the addresses
+	 */
+	public static void showBulkWhoIsDialog(final JComponent parent, final ServiceFactory services, final Collection<String> addresses) {
+		final BulkWhoIsPanel panel = new BulkWhoIsPanel(addresses);
+		final JDialog dialog = new JDialog(SwingUtilities.getWindowAncestor(parent), Resources.getLabel("bulk.whois.title", panel._addresses.size()),
+				ModalityType.APPLICATION_MODAL) {
+
+			private static final long serialVersionUID = -6010866338618102312L;
+
+			@Override
+			public void dispose() {
+				panel.cancel();
+				super.dispose();
+			}
+		};
+		dialog.getContentPane().add(panel, BorderLayout.CENTER);
+		final JPanel bottom = new JPanel();
+		final JButton close = new JButton(Resources.getLabel("close.button"));
+		close.addActionListener(e -> dialog.dispose());
+		bottom.add(close);
+		dialog.getContentPane().add(bottom, BorderLayout.SOUTH);
+		panel.start(services.getWhois());
+		SwingUtilities4.setUp(dialog);
+		dialog.setVisible(true);
+	}
+}
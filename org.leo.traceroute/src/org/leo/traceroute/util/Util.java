@@ -60,10 +60,6 @@ import org.leo.traceroute.resources.Resources;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import gov.nasa.worldwind.geom.Angle;
-import gov.nasa.worldwind.geom.LatLon;
-import gov.nasa.worldwind.globes.Earth;
-
 /**
  * Util $Id: Util.java 281 2016-10-11 04:09:33Z leolewis $
  *
@@ -75,6 +71,8 @@ public final class Util {
 
 	/** File separator */
 	public static final String FILE_SEPARATOR = System.getProperty("file.separator");
+	/** WGS84 equatorial radius (m) */
+	private static final double EARTH_EQUATORIAL_RADIUS = 6378137.0;
 
 	private Util() {
 
@@ -212,9 +210,14 @@ public final class Util {
 	 * @return
 	 */
 	public static int distance(final RoutePoint point1, final RoutePoint point2) {
-		final LatLon ll1 = new LatLon(Angle.fromDegrees(point1.getLat()), Angle.fromDegrees(point1.getLon()));
-		final LatLon ll2 = new LatLon(Angle.fromDegrees(point2.getLat()), Angle.fromDegrees(point2.getLon()));
-		return (int) (Earth.WGS84_EQUATORIAL_RADIUS * LatLon.greatCircleDistance(ll1, ll2).getRadians() / 1000);
+		// haversine, as the great circle distance of WorldWind which is not loaded in headless mode
+		final double lat1 = Math.toRadians(point1.getLat());
+		final double lat2 = Math.toRadians(point2.getLat());
+		final double sinLat = Math.sin((lat2 - lat1) / 2.0);
+		final double sinLon = Math.sin(Math.toRadians(point2.getLon() - point1.getLon()) / 2.0);
+		final double a = sinLat * sinLat + Math.cos(lat1) * Math.cos(lat2) * sinLon * sinLon;
+		final double radians = 2.0 * Math.asin(Math.sqrt(a));
+		return Double.isNaN(radians) ? 0 : (int) (EARTH_EQUATORIAL_RADIUS * radians / 1000);
 	}
 
 	public static String uncompress(final Request request) throws IOException {
@@ -0,0 +1,190 @@
+/**
+ * Open Visual Trace Route
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.leo.traceroute;
+
+import java.io.BufferedReader;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.net.HttpURLConnection;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.Test;
+import org.leo.traceroute.core.ServiceFactory;
+import org.leo.traceroute.core.api.ApiServer;
+import org.leo.traceroute.core.route.RoutePoint;
+
+/**
+ * ApiServerTest $Id$
+ * <pre>
+ * Requests and event streams of the API, the events being sent to the server as the traceroute would.
+ * </pre>
+ * @author Leo Lewis
+ */
+public class ApiServerTest extends TestCase {
+
+	private ApiServer _api;
+	private String _url;
+
+	@Override
+	protected void setUp() throws Exception {
+		// services not started, only their listeners are used
+		_api = new ApiServer(new ServiceFactory(), new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+		_api.start();
+		_url = "http://127.0.0.1:" + _api.getPort();
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		_api.stop();
+	}
+
+	@Test
+	public void testRequests() throws Exception {
+		assertEquals(200, request("GET", "/api/route"));
+		assertEquals(400, request("GET", "/api/whois"));
+		assertEquals(400, request("POST", "/api/trace"));
+		assertEquals(400, request("POST", "/api/trace?dest=a&timeout=x"));
+		assertEquals(405, request("PUT", "/api/trace"));
+		assertEquals(404, request("GET", "/api/route/other"));
+		assertEquals(204, request("DELETE", "/api/trace"));
+	}
+
+	@Test
+	public void testForbidden() throws Exception {
+		assertEquals(200, rawRequest("Host: localhost:" + _api.getPort() + "\r\n"));
+		assertEquals(200, rawRequest("Host: 127.0.0.1\r\n"));
+		assertEquals(200, rawRequest("Host: [::1]:" + _api.getPort() + "\r\n"));
+		// cross-site and DNS rebinding
+		assertEquals(403, rawRequest("Host: localhost\r\nOrigin: http://evil.example\r\n"));
+		assertEquals(403, rawRequest("Host: evil.example:" + _api.getPort() + "\r\n"));
+		assertEquals(403, rawRequest("Host: 10.0.0.1\r\n"));
+	}
+
+	@Test
+	public void testStream() throws Exception {
+		final HttpURLConnection connection = (HttpURLConnection) new URL(_url + "/api/events/route").openConnection();
+		assertEquals(200, connection.getResponseCode());
+		assertTrue(connection.getContentType().startsWith("text/event-stream"));
+		final BufferedReader reader = new BufferedReader(new InputStreamReader(connection.getInputStream(), StandardCharsets.UTF_8));
+		waitClients(1);
+		_api.routePointAdded(point(1));
+		_api.routeDone(100, 200);
+		assertEquals("event: hop", reader.readLine());
+		assertTrue(reader.readLine().contains("\"hop\":1"));
+		assertEquals("", reader.readLine());
+		assertEquals("event: end", reader.readLine());
+		assertTrue(reader.readLine().contains("\"status\":\"done\""));
+		_api.stop();
+		assertEquals("", reader.readLine());
+		assertNull(reader.readLine());
+	}
+
+	@Test
+	public void testSlowClient() throws Exception {
+		// a client that does not read, and a client that does
+		try (Socket slow = new Socket("127.0.0.1", _api.getPort())) {
+			slow.setReceiveBufferSize(4096);
+			slow.getOutputStream().write("GET /api/events/route HTTP/1.1\r\nHost: localhost\r\n\r\n".getBytes(StandardCharsets.US_ASCII));
+			final HttpURLConnection connection = (HttpURLConnection) new URL(_url + "/api/events/route").openConnection();
+			final InputStream fast = connection.getInputStream();
+			waitClients(2);
+			final List<String> events = new ArrayList<>();
+			final Thread reader = new Thread(() -> {
+				final BufferedReader in = new BufferedReader(new InputStreamReader(fast, StandardCharsets.UTF_8));
+				try {
+					String line;
+					while ((line = in.readLine()) != null) {
+						if (line.startsWith("event: ")) {
+							events.add(line);
+						}
+					}
+				} catch (final Exception e) {
+					// closed
+				}
+			});
+			reader.start();
+			final long start = System.currentTimeMillis();
+			final int count = 20000;
+			for (int i = 0; i < count; i++) {
+				_api.routePointAdded(point(i));
+			}
+			// the producer is not held by the slow client
+			assertTrue(System.currentTimeMillis() - start < 10000);
+			assertTrue(status().contains("\"dropped\":"));
+			assertFalse(status().contains("\"route\":{\"clients\":2,\"dropped\":0}"));
+			_api.stop();
+			reader.join(10000);
+			// the fast client may drop too, but is told so
+			int hops = 0;
+			for (final String event : events) {
+				if (event.equals("event: hop")) {
+					hops++;
+				} else {
+					assertEquals("event: dropped", event);
+				}
+			}
+			assertTrue(hops > 0);
+		}
+	}
+
+	private static RoutePoint point(final int number) {
+		final RoutePoint point = new RoutePoint();
+		point.setNumber(number);
+		point.setIp("10.0.0." + (number % 256));
+		point.setLatency(number);
+		return point;
+	}
+
+	private void waitClients(final int clients) throws Exception {
+		for (int i = 0; i < 100 && !status().contains("\"route\":{\"clients\":" + clients); i++) {
+			Thread.sleep(50);
+		}
+	}
+
+	private String status() throws Exception {
+		final HttpURLConnection connection = (HttpURLConnection) new URL(_url + "/api/status").openConnection();
+		try (InputStream in = connection.getInputStream()) {
+			return IOUtils.toString(in, StandardCharsets.UTF_8);
+		}
+	}
+
+	private int rawRequest(final String headers) throws Exception {
+		try (Socket socket = new Socket("127.0.0.1", _api.getPort())) {
+			socket.getOutputStream().write(("GET /api/route HTTP/1.1\r\n" + headers + "Connection: close\r\n\r\n").getBytes(StandardCharsets.US_ASCII));
+			final String status = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.US_ASCII)).readLine();
+			return Integer.parseInt(status.split(" ")[1]);
+		}
+	}
+
+	private int request(final String method, final String path) throws Exception {
+		final HttpURLConnection connection = (HttpURLConnection) new URL(_url + path).openConnection();
+		connection.setRequestMethod(method);
+		final int status = connection.getResponseCode();
+		connection.disconnect();
+		return status;
+	}
+}
@@ -0,0 +1,165 @@
+/**
+ * Open Visual Trace Route
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.leo.traceroute;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+import org.leo.traceroute.core.sniffer.filter.BpfCompiler;
+
+/**
+ * BpfFilterTest $Id$
+ * <pre>
+ * Capture filters compiled by the Java BPF compiler, run over Ethernet and raw IP frames.
+ * </pre>
+ * @author Leo Lewis
+ */
+public class BpfFilterTest extends TestCase {
+
+	private static final String CAPTURE_FILTER = "((tcp dst port 80) or (tcp dst portrange 8000-8100) or (udp) or (icmp or icmp6)) and greater 60";
+
+	@Test
+	public void testCaptureFilter() {
+		assertMatches(CAPTURE_FILTER, ipv4(6, 1234, 80, 10, false), true);
+		assertMatches(CAPTURE_FILTER, ipv4(6, 1234, 81, 10, false), false);
+		assertMatches(CAPTURE_FILTER, ipv4(6, 1234, 8050, 10, false), true);
+		// non first fragment, no port
+		assertMatches(CAPTURE_FILTER, ipv4(6, 1234, 80, 10, true), false);
+		// too short
+		assertMatches(CAPTURE_FILTER, ipv4(6, 1234, 80, 0, false), false);
+		assertMatches(CAPTURE_FILTER, ipv4(17, 1, 2, 10, false), true);
+		assertMatches(CAPTURE_FILTER, ipv6(58, 0, 0), true);
+		assertMatches(CAPTURE_FILTER, ipv6(6, 1, 80), true);
+		assertMatches(CAPTURE_FILTER, ipv6(6, 1, 443), false);
+	}
+
+	@Test
+	public void testPrimitives() {
+		assertMatches("port 53", ipv6(17, 53, 1), true);
+		assertMatches("src port 53", ipv6(17, 1, 53), false);
+		assertMatches("not tcp", ipv4(17, 1, 2, 0, false), true);
+		assertMatches("!tcp && ip6", ipv4(17, 1, 2, 0, false), false);
+		assertMatches("host 8.8.8.8", ipv4(17, 1, 2, 0, false), true);
+		assertMatches("src host 8.8.8.8", ipv4(17, 1, 2, 0, false), false);
+		assertMatches("dst host 2001::2", ipv6(17, 1, 2), true);
+		assertMatches("host ::1", ipv6(17, 1, 2), true);
+		assertMatches("less 60", ipv4(17, 1, 2, 0, false), true);
+		assertMatches("", ipv4(17, 1, 2, 0, false), true);
+	}
+
+	@Test
+	public void testPortList() {
+		// as built by the sniffer
+		final StringBuilder tcp = new StringBuilder();
+		final StringBuilder udp = new StringBuilder();
+		for (int i = 0; i < 40; i++) {
+			tcp.append(i > 0 ? " or " : "").append("(tcp dst port ").append(1000 + i).append(")");
+			udp.append(i > 0 ? " or " : "").append("(udp dst portrange ").append(2000 + 10 * i).append("-").append(2000 + 10 * i + 5).append(")");
+		}
+		final String filter = "(((" + tcp + ")) or ((" + udp + ")) or (icmp or icmp6)) and greater 60";
+		// the checks of the IP version and the protocol are shared by the ports
+		assertTrue(BpfCompiler.compile(filter, 14).size() < 300);
+		assertMatches(filter, ipv4(6, 1, 1000, 10, false), true);
+		assertMatches(filter, ipv4(6, 1, 1039, 10, false), true);
+		assertMatches(filter, ipv4(6, 1, 1040, 10, false), false);
+		assertMatches(filter, ipv4(6, 1000, 1, 10, false), false);
+		assertMatches(filter, ipv4(6, 1, 1020, 10, true), false);
+		assertMatches(filter, ipv6(6, 1, 1017), true);
+		assertMatches(filter, ipv4(17, 1, 1017, 10, false), false);
+		assertMatches(filter, ipv4(17, 1, 2395, 10, false), true);
+		assertMatches(filter, ipv4(17, 1, 2396, 10, false), false);
+		assertMatches(filter, ipv6(17, 1, 2000), true);
+		assertMatches(filter, ipv6(58, 0, 0), true);
+		assertMatches("port 1 or port 2 or port 3", ipv6(17, 3, 9), true);
+		assertMatches("port 1 or port 2 or port 3", ipv6(17, 9, 9), false);
+	}
+
+	@Test
+	public void testLongJumps() {
+		// more than 255 instructions between the first host and the end
+		final StringBuilder filter = new StringBuilder("(");
+		for (int i = 0; i < 40; i++) {
+			filter.append(i > 0 ? " or " : "").append("host 2001::").append(Integer.toHexString(i + 10));
+		}
+		filter.append(" or host 8.8.8.8) and not (");
+		for (int i = 0; i < 40; i++) {
+			filter.append(i > 0 ? " or " : "").append("host 9.9.9.").append(i);
+		}
+		filter.append(")");
+		assertTrue(BpfCompiler.compile(filter.toString(), 14).size() > 600);
+		// 2001::2 is the destination
+		assertMatches(filter.toString(), ipv6(17, 1, 2), false);
+		assertMatches(filter.toString().replace("2001::a ", "2001::2 "), ipv6(17, 1, 2), true);
+		assertMatches(filter.toString().replace("2001::31", "2001::2"), ipv6(17, 1, 2), true);
+		assertMatches(filter.toString(), ipv4(17, 1, 2, 0, false), true);
+		assertMatches(filter.toString().replace("host 9.9.9.0 ", "host 10.0.0.1 "), ipv4(17, 1, 2, 0, false), false);
+		assertMatches(filter.toString().replace("host 9.9.9.39)", "host 10.0.0.1)"), ipv4(17, 1, 2, 0, false), false);
+	}
+
+	@Test
+	public void testInvalidFilters() {
+		for (final String filter : new String[] { "tcp port", "foo", "(tcp", "tcp port 99999", "host example.com", "tcp dst port abc" }) {
+			try {
+				BpfCompiler.compile(filter, 14);
+				fail("No error for " + filter);
+			} catch (final IllegalArgumentException e) {
+				// expected
+			}
+		}
+	}
+
+	/** Run the filter on the Ethernet frame and on its IP packet */
+	private static void assertMatches(final String filter, final byte[] frame, final boolean expected) {
+		assertEquals(filter, expected, BpfCompiler.compile(filter, 14).matches(ByteBuffer.wrap(frame), 0, frame.length, frame.length));
+		final byte[] packet = Arrays.copyOfRange(frame, 14, frame.length);
+		assertEquals(filter, expected, BpfCompiler.compile(filter, 0).matches(ByteBuffer.wrap(packet), 0, packet.length, frame.length));
+	}
+
+	/** 10.0.0.1 > 8.8.8.8 */
+	private static byte[] ipv4(final int protocol, final int sourcePort, final int destPort, final int payload, final boolean fragment) {
+		final ByteBuffer b = ByteBuffer.allocate(14 + 20 + 20 + payload);
+		b.putShort(12, (short) 0x800);
+		b.put(14, (byte) 0x45);
+		b.put(14 + 9, (byte) protocol);
+		if (fragment) {
+			b.putShort(14 + 6, (short) 5);
+		}
+		b.putInt(14 + 12, 0x0A000001);
+		b.putInt(14 + 16, 0x08080808);
+		b.putShort(34, (short) sourcePort);
+		b.putShort(36, (short) destPort);
+		return b.array();
+	}
+
+	/** ::1 > 2001::2 */
+	private static byte[] ipv6(final int protocol, final int sourcePort, final int destPort) {
+		final ByteBuffer b = ByteBuffer.allocate(14 + 40 + 20);
+		b.putShort(12, (short) 0x86dd);
+		b.put(14, (byte) 0x60);
+		b.put(14 + 6, (byte) protocol);
+		b.put(14 + 8 + 15, (byte) 1);
+		b.putShort(14 + 24, (short) 0x2001);
+		b.put(14 + 39, (byte) 2);
+		b.putShort(54, (short) sourcePort);
+		b.putShort(56, (short) destPort);
+		return b.array();
+	}
+}
@@ -0,0 +1,141 @@
+/**
+ * Open Visual Trace Route
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.leo.traceroute;
+
+import java.util.Arrays;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+import org.leo.traceroute.core.sniffer.AbstractPacketPoint;
+import org.leo.traceroute.core.sniffer.AbstractPacketPoint.Protocol;
+import org.leo.traceroute.core.sniffer.impl.RawPacketPoint;
+import org.leo.traceroute.core.sniffer.store.CaptureStore;
+import org.leo.traceroute.core.sniffer.store.SegmentedBuffer;
+
+/**
+ * CaptureStoreTest $Id$
+ * <pre>
+ * Storage of the captured packets, in memory and spilled to the disk.
+ * </pre>
+ * @author Leo Lewis
+ */
+public class CaptureStoreTest extends TestCase {
+
+	@Test
+	public void testSegmentedBuffer() {
+		final SegmentedBuffer buffer = new SegmentedBuffer("test", 64, 2);
+		try {
+			final long[] offsets = new long[40];
+			for (int i = 0; i < offsets.length; i++) {
+				offsets[i] = buffer.allocate(10);
+				buffer.put(offsets[i], data(i, 10));
+			}
+			// 6 areas by segment, the area doesn't cross the segments
+			assertEquals(64, offsets[6]);
+			assertEquals(2 * 64, buffer.getMemorySize());
+			assertEquals(5 * 64, buffer.getSpilledSize());
+			for (int i = 0; i < offsets.length; i++) {
+				final byte[] read = new byte[10];
+				buffer.get(offsets[i], read);
+				assertTrue(String.valueOf(i), Arrays.equals(data(i, 10), read));
+			}
+			try {
+				buffer.allocate(65);
+				fail("No error");
+			} catch (final IllegalArgumentException e) {
+				// expected
+			}
+			buffer.clear();
+			assertEquals(0, buffer.getMemorySize());
+			assertEquals(0, buffer.getSpilledSize());
+			assertEquals(0, buffer.allocate(10));
+		} finally {
+			buffer.close();
+		}
+	}
+
+	@Test
+	public void testSpill() {
+		// one segment of records (16k) and one of frames (4MB) in memory
+		final CaptureStore store = new CaptureStore(1, 1);
+		try {
+			final int count = 40000;
+			for (int i = 0; i < count; i++) {
+				store.add(packet(i));
+			}
+			assertEquals(count, store.size());
+			assertTrue(store.getSpilledSize() > 0);
+			// read back in any order, from the spilled and the memory segments
+			for (final int i : new int[] { 0, count - 1, 1, 16383, 16384, 20000, 39999, 5 }) {
+				check(store.get(i), i);
+			}
+			for (int i = 0; i < count; i += 97) {
+				check(store.get(i), i);
+			}
+			final RawPacketPoint other = packet(20000);
+			assertEquals(20000, store.indexOf(other));
+			try {
+				store.get(count);
+				fail("No error");
+			} catch (final IndexOutOfBoundsException e) {
+				// expected
+			}
+			store.clear();
+			assertEquals(0, store.size());
+			assertEquals(0, store.getMemorySize());
+			assertEquals(0, store.getSpilledSize());
+			store.add(packet(7));
+			check(store.get(0), 7);
+		} finally {
+			store.close();
+		}
+	}
+
+	private static void check(final AbstractPacketPoint point, final int i) {
+		final RawPacketPoint raw = (RawPacketPoint) point;
+		assertEquals(i + 1, raw.getNumber());
+		assertEquals(1000L + i, raw.getTs());
+		assertEquals("10.0." + (i >> 8 & 0xFF) + "." + (i & 0xFF), raw.getIp());
+		assertEquals("192.168.0.1", raw.getSourceIp());
+		assertEquals(i % 2 == 0 ? Protocol.TCP : Protocol.UDP, raw.getProtocol());
+		assertEquals(Integer.valueOf(1024 + i % 1000), raw.getSourcePort());
+		assertEquals(Integer.valueOf(443), raw.getDestPort());
+		assertEquals(14, raw.getNetOffset());
+		assertTrue(String.valueOf(i), Arrays.equals(data(i, 100 + i % 200), raw.getFrame()));
+	}
+
+	private static RawPacketPoint packet(final int i) {
+		final RawPacketPoint point = new RawPacketPoint();
+		point.setNumber(i + 1);
+		point.setTs(1000L + i);
+		point.setIp("10.0." + (i >> 8 & 0xFF) + "." + (i & 0xFF));
+		point.setCountry("Country");
+		final byte[] frame = data(i, 100 + i % 200);
+		point.setPacket(frame, 14, frame.length, i % 2 == 0 ? Protocol.TCP : Protocol.UDP, "192.168.0.1", 1024 + i % 1000, 443);
+		return point;
+	}
+
+	private static byte[] data(final int seed, final int length) {
+		final byte[] data = new byte[length];
+		for (int i = 0; i < length; i++) {
+			data[i] = (byte) (seed * 31 + i);
+		}
+		return data;
+	}
+}
@@ -0,0 +1,100 @@
+/**
+ * Open Visual Trace Route
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.leo.traceroute;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+import org.leo.traceroute.core.autocomplete.CompletionIndex;
+
+/**
+ * CompletionIndexTest $Id$
+ * <pre>
+ * Ranking of the completions of the history.
+ * </pre>
+ * @author Leo Lewis
+ */
+public class CompletionIndexTest extends TestCase {
+
+	private static final long NOW = System.currentTimeMillis();
+
+	@Test
+	public void testTopK() {
+		final CompletionIndex index = new CompletionIndex(3);
+		index.add("example.com", 5, NOW);
+		index.add("example.org", 3, NOW);
+		index.add("exemple.fr", 4, NOW);
+		index.add("google.com", 10, NOW);
+		index.add("example.net", 3, NOW);
+		// best first, the ties by key
+		assertEquals(Arrays.asList("google.com", "example.com", "exemple.fr"), index.complete("", 3));
+		assertEquals(Arrays.asList("example.com", "exemple.fr", "example.net"), index.complete("ex", 3));
+		assertEquals(Arrays.asList("example.com", "example.net"), index.complete("exam", 2));
+		// prefix ending within an edge, after a key, and not found
+		assertEquals(Arrays.asList("google.com"), index.complete("goo", 3));
+		assertEquals(Arrays.asList("google.com"), index.complete("google.com", 3));
+		assertEquals(Collections.emptyList(), index.complete("google.com.", 3));
+		assertEquals(Collections.emptyList(), index.complete("gx", 3));
+		assertEquals(5, index.size());
+	}
+
+	@Test
+	public void testDecay() {
+		final CompletionIndex index = new CompletionIndex(5);
+		// 4 uses two half lives ago weigh as much as 1 use now, 3 weigh less
+		index.add("old", 3, NOW - 2 * CompletionIndex.HALF_LIFE_MILLIS);
+		index.add("new", 1, NOW);
+		assertEquals(Arrays.asList("new", "old"), index.complete("", 5));
+		index.add("old", 2, NOW - 2 * CompletionIndex.HALF_LIFE_MILLIS);
+		assertEquals(Arrays.asList("old", "new"), index.complete("", 5));
+		assertEquals(5, index.get("old").getCount());
+		assertEquals(NOW - 2 * CompletionIndex.HALF_LIFE_MILLIS, index.get("old").getLastUse());
+		// 5 uses two half lives ago weigh 5/4 of a use now
+		assertEquals(Math.log(1.25) / Math.log(2), index.get("old").getScore() - index.get("new").getScore(), 1e-9);
+	}
+
+	@Test
+	public void testUpdate() {
+		final CompletionIndex index = new CompletionIndex(2);
+		index.add("abc", 3, NOW);
+		index.add("abd", 2, NOW);
+		index.add("abe", 1, NOW);
+		index.add("b", 1, NOW);
+		assertEquals(Arrays.asList("abc", "abd"), index.complete("ab", 2));
+		// the last one moves up to the top of all the nodes of its path
+		index.add("abe", 5, NOW);
+		assertEquals(Arrays.asList("abe", "abc"), index.complete("", 2));
+		assertEquals(Arrays.asList("abe", "abc"), index.complete("a", 2));
+		assertEquals(Arrays.asList("abe", "abc"), index.complete("ab", 2));
+		// a split edge keeps the entries of its subtree
+		index.add("abcd", 1, NOW);
+		assertEquals(Arrays.asList("abc", "abcd"), index.complete("abc", 2));
+		assertEquals(Arrays.asList("abe", "abc"), index.complete("ab", 2));
+		// an entry saved then merged ranks as the uses it was made of
+		final CompletionIndex copy = new CompletionIndex(2);
+		index.forEach(entry -> copy.merge(entry.getKey(), entry.getCount(), entry.getLastUse(), entry.getScore()));
+		assertEquals(index.complete("", 2), copy.complete("", 2));
+		assertEquals(index.get("abe").getScore(), copy.get("abe").getScore(), 1e-9);
+		index.clear();
+		assertEquals(0, index.size());
+		assertEquals(Collections.emptyList(), index.complete("a", 2));
+	}
+}
@@ -0,0 +1,168 @@
+/**
+ * Open Visual Trace Route
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.leo.traceroute;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+import org.leo.traceroute.core.sniffer.AbstractPacketPoint.Protocol;
+import org.leo.traceroute.core.sniffer.flow.CounterTable;
+import org.leo.traceroute.core.sniffer.flow.FlowAggregator;
+import org.leo.traceroute.core.sniffer.flow.FlowStats;
+import org.leo.traceroute.core.sniffer.flow.FlowUpdate;
+import org.leo.traceroute.core.sniffer.impl.RawPacketPoint;
+
+/**
+ * CounterTableTest $Id$
+ * <pre>
+ * Counters of the flows : lookups, growth, deltas and eviction of the idle entries.
+ * </pre>
+ * @author Leo Lewis
+ */
+public class CounterTableTest extends TestCase {
+
+	@Test
+	public void testAddFind() {
+		final CounterTable table = new CounterTable();
+		// keys that only differ by one part
+		final int a = table.add(1, 2, 100, 10);
+		final int b = table.add(2, 1, 50, 20);
+		final int c = table.add(1, 3, 10, 30);
+		assertEquals(3, table.size());
+		assertEquals(a, table.add(1, 2, 100, 5));
+		assertEquals(a, table.find(1, 2));
+		assertEquals(b, table.find(2, 1));
+		assertEquals(c, table.find(1, 3));
+		assertEquals(-1, table.find(3, 1));
+		assertEquals(2, table.getPackets(a));
+		assertEquals(200, table.getBytes(a));
+		assertEquals(5, table.getFirst(a));
+		assertEquals(10, table.getLast(a));
+	}
+
+	@Test
+	public void testRehash() {
+		final CounterTable table = new CounterTable();
+		final int count = 10000;
+		for (int i = 0; i < count; i++) {
+			assertEquals(i, table.add(i >> 4, i & 0xF, i, i));
+		}
+		assertEquals(count, table.size());
+		// the entries keep their index through the growth
+		for (int i = 0; i < count; i++) {
+			final int index = table.find(i >> 4, i & 0xF);
+			assertEquals(i, index);
+			assertEquals(i, table.getBytes(index));
+		}
+		assertEquals(-1, table.find(count, 0));
+		table.clear();
+		assertEquals(0, table.size());
+		assertEquals(-1, table.find(0, 0));
+	}
+
+	@Test
+	public void testDeltas() {
+		final CounterTable table = new CounterTable();
+		final int a = table.add(1, 1, 100, 0);
+		table.add(1, 1, 100, 0);
+		final int b = table.add(2, 2, 10, 0);
+		assertEquals(2, table.getDirtyCount());
+		assertEquals(a, table.getDirty(0));
+		assertEquals(b, table.getDirty(1));
+		assertEquals(2, table.getDeltaPackets(a));
+		assertEquals(200, table.getDeltaBytes(a));
+		table.flush();
+		assertEquals(0, table.getDirtyCount());
+		assertEquals(0, table.getDeltaPackets(a));
+		table.add(2, 2, 5, 0);
+		assertEquals(1, table.getDirtyCount());
+		assertEquals(b, table.getDirty(0));
+		assertEquals(1, table.getDeltaPackets(b));
+		assertEquals(5, table.getDeltaBytes(b));
+		assertEquals(2, table.getPackets(b));
+	}
+
+	@Test
+	public void testEvictIdle() {
+		final CounterTable table = new CounterTable();
+		for (int i = 0; i < 300; i++) {
+			table.add(i, 0, 10, i);
+		}
+		table.flush();
+		// updated since the flush, kept even if old
+		table.add(5, 0, 10, 5);
+		assertNull(table.evictIdle(0));
+		final int[] remap = table.evictIdle(200);
+		assertEquals(300, remap.length);
+		assertEquals(101, table.size());
+		assertEquals(-1, remap[4]);
+		assertEquals(0, remap[5]);
+		assertEquals(1, remap[200]);
+		assertEquals(100, remap[299]);
+		assertEquals(0, table.find(5, 0));
+		assertEquals(-1, table.find(4, 0));
+		assertEquals(100, table.find(299, 0));
+		assertEquals(1, table.getDirtyCount());
+		assertEquals(0, table.getDirty(0));
+		assertEquals(1, table.getDeltaPackets(0));
+		assertEquals(2, table.getPackets(0));
+		assertEquals(1, table.getPackets(1));
+		// a new entry reuses a freed index, from 0
+		final int index = table.add(4, 0, 7, 400);
+		assertEquals(101, index);
+		assertEquals(1, table.getPackets(index));
+		assertEquals(7, table.getBytes(index));
+		assertEquals(1, table.getDeltaPackets(index));
+	}
+
+	@Test
+	public void testAggregatorEviction() {
+		final FlowAggregator aggregator = new FlowAggregator(0, 1000);
+		aggregator.add(packet("10.0.0.1", 1000));
+		aggregator.add(packet("10.0.0.2", 1000));
+		assertEquals(2, aggregator.poll(1000, true).getDestinations().size());
+		aggregator.add(packet("10.0.0.2", 2500));
+		// 10.0.0.1 is idle
+		FlowUpdate update = aggregator.poll(2500, true);
+		assertEquals(1, update.getDestinations().size());
+		assertEquals(1, aggregator.snapshot().getDestinations().size());
+		assertEquals(1, aggregator.snapshot().getFlows().size());
+		aggregator.add(packet("10.0.0.3", 2600));
+		aggregator.add(packet("10.0.0.1", 2600));
+		update = aggregator.poll(2600, true);
+		// the destinations keep their geo data after the eviction
+		for (final FlowStats destination : aggregator.snapshot().getDestinations()) {
+			assertEquals(destination.getDestIp(), destination.getPoint().getIp());
+		}
+		assertEquals(3, aggregator.snapshot().getDestinations().size());
+		final FlowStats flow = update.getFlows().stream().filter(f -> "10.0.0.1".equals(f.getDestIp())).findFirst().get();
+		// seen again, from 0
+		assertEquals(1, flow.getPackets());
+		assertEquals("10.0.0.1", flow.getPoint().getIp());
+	}
+
+	private static RawPacketPoint packet(final String dest, final long ts) {
+		final RawPacketPoint point = new RawPacketPoint();
+		point.setIp(dest);
+		point.setCountry("Country");
+		point.setCountryIso("CC");
+		point.setTs(ts);
+		point.setPacket(null, 0, 60, Protocol.TCP, "192.168.0.1", 40000, 443);
+		return point;
+	}
+}
@@ -0,0 +1,145 @@
+/**
+ * Open Visual Trace Route
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.leo.traceroute;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+import org.leo.traceroute.install.DynamicConf;
+
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * DynamicConfTest $Id$
+ * <pre>
+ * Dynamic config against a local stand-in server.
+ * </pre>
+ * @author Leo Lewis
+ */
+public class DynamicConfTest extends TestCase {
+
+	private HttpServer _server;
+	private File _cache;
+	private String _url;
+	private volatile String _body = "ip.resolver=http://a/,http://b/\ndonate.url=http://donate/\n";
+	private volatile String _etag = "\"v1\"";
+	private final AtomicInteger _requests = new AtomicInteger();
+	private final AtomicInteger _notModified = new AtomicInteger();
+
+	@Override
+	protected void setUp() throws Exception {
+		_cache = File.createTempFile("dynconf", ".properties");
+		_cache.delete();
+		_server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+		_server.createContext("/DynConf.properties", exchange -> {
+			_requests.incrementAndGet();
+			if (_etag.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+				_notModified.incrementAndGet();
+				exchange.sendResponseHeaders(304, -1);
+			} else {
+				final byte[] body = _body.getBytes(StandardCharsets.ISO_8859_1);
+				exchange.getResponseHeaders().add("ETag", _etag);
+				exchange.sendResponseHeaders(200, body.length);
+				try (OutputStream out = exchange.getResponseBody()) {
+					out.write(body);
+				}
+			}
+			exchange.close();
+		});
+		_server.createContext("/moved", exchange -> {
+			exchange.getResponseHeaders().add("Location", "/DynConf.properties");
+			exchange.sendResponseHeaders(301, -1);
+			exchange.close();
+		});
+		_server.start();
+		_url = "http://127.0.0.1:" + _server.getAddress().getPort();
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		_server.stop(0);
+		_cache.delete();
+	}
+
+	@Test
+	public void testRefresh() throws Exception {
+		final DynamicConf conf = new DynamicConf(_url + "/DynConf.properties", _cache);
+		assertFalse(conf.loadCache());
+		final List<Set<String>> changes = new ArrayList<>();
+		conf.addListener(changes::add);
+		assertTrue(conf.refresh());
+		assertEquals("http://a/,http://b/", conf.getProperty("ip.resolver"));
+		assertEquals(1, changes.size());
+		assertEquals(2, changes.get(0).size());
+		assertTrue(_cache.exists());
+
+		// not modified, nothing notified
+		assertFalse(conf.refresh());
+		assertEquals(1, _notModified.get());
+		assertEquals(1, changes.size());
+
+		_body = "ip.resolver=http://c/\ndonate.url=http://donate/\n";
+		_etag = "\"v2\"";
+		assertTrue(conf.refresh());
+		assertEquals(2, changes.size());
+		assertEquals(Set.of("ip.resolver"), changes.get(1));
+		assertEquals("http://c/", conf.getProperty("ip.resolver"));
+	}
+
+	@Test
+	public void testCacheFirst() throws Exception {
+		new DynamicConf(_url + "/DynConf.properties", _cache).refresh();
+		_server.stop(0);
+		_requests.set(0);
+
+		// started offline from the copy, validators included
+		final DynamicConf conf = new DynamicConf(_url + "/DynConf.properties", _cache);
+		assertTrue(conf.loadCache());
+		assertEquals("http://donate/", conf.getProperty("donate.url"));
+		assertNull(conf.getProperty("cache.etag"));
+		try {
+			conf.refresh();
+			fail("No error");
+		} catch (final IOException e) {
+			// expected
+		}
+		assertEquals("http://donate/", conf.getProperty("donate.url"));
+		assertEquals(0, _requests.get());
+	}
+
+	@Test
+	public void testConditionalAfterRestart() throws Exception {
+		new DynamicConf(_url + "/DynConf.properties", _cache).refresh();
+		final DynamicConf conf = new DynamicConf(_url + "/moved", _cache);
+		assertTrue(conf.loadCache());
+		assertFalse(conf.refresh());
+		assertEquals(1, _notModified.get());
+		assertEquals("http://a/,http://b/", conf.getProperty("ip.resolver"));
+	}
+}
@@ -0,0 +1,341 @@
+/**
+ * Open Visual Trace Route
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.leo.traceroute;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.function.BooleanSupplier;
+
+import javax.swing.SwingUtilities;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+import org.leo.traceroute.core.EventBus;
+import org.leo.traceroute.core.EventBus.QueueStats;
+import org.leo.traceroute.core.ExecutionRuntime;
+import org.leo.traceroute.core.geo.GeoPoint;
+import org.leo.traceroute.core.route.RoutePoint;
+import org.leo.traceroute.core.sniffer.AbstractPacketPoint;
+import org.leo.traceroute.core.sniffer.flow.FlowUpdate;
+import org.leo.traceroute.core.whois.IWhoIsListener;
+import org.leo.traceroute.resources.Resources;
+import org.leo.traceroute.ui.AbstractPanel;
+
+/**
+ * EventBusTest $Id$
+ * <pre>
+ * Order, coalescing and metrics of the events delivered to the listeners, by the io threads and on the EDT.
+ * </pre>
+ * @author Leo Lewis
+ */
+public class EventBusTest extends TestCase {
+
+	private ExecutionRuntime _runtime;
+
+	@Override
+	protected void setUp() throws Exception {
+		_runtime = new ExecutionRuntime();
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		_runtime.shutdown();
+	}
+
+	@Test
+	public void testOrder() throws Exception {
+		final EventBus<IWhoIsListener> bus = new EventBus<>("test", EventBus.DEFAULT_CAPACITY);
+		bus.setRuntime(_runtime);
+		final Listener first = new Listener();
+		final Listener second = new Listener();
+		bus.addListener(first);
+		bus.addListener(second);
+		bus.addListener(first);
+		final int count = 10000;
+		final List<String> expected = new ArrayList<>();
+		for (int i = 0; i < count; i++) {
+			final String value = String.valueOf(i);
+			expected.add(value);
+			bus.post(null, listener -> listener.whoIsResult(value));
+		}
+		waitFor(() -> first.count() == count && second.count() == count);
+		assertEquals(expected, first.get());
+		assertEquals(expected, second.get());
+		// not delivered once removed
+		bus.removeListener(second);
+		bus.post(null, listener -> listener.whoIsResult("last"));
+		waitFor(() -> first.count() == count + 1);
+		assertEquals(count, second.count());
+		assertEquals(1, bus.getStats().size());
+	}
+
+	@Test
+	public void testCoalescing() throws Exception {
+		final EventBus<IWhoIsListener> bus = new EventBus<>("test", EventBus.DEFAULT_CAPACITY);
+		final Listener listener = new Listener();
+		bus.addListener(listener);
+		// wait for the runtime
+		post(bus, null, "a");
+		post(bus, "progress", "p1");
+		post(bus, null, "b");
+		post(bus, "progress", "p2");
+		post(bus, "focus", "f");
+		post(bus, "progress", "p3");
+		Thread.sleep(50);
+		assertEquals(0, listener.count());
+		QueueStats stats = bus.getStats().get(0);
+		assertEquals(6, stats.getDepth());
+		bus.setRuntime(_runtime);
+		waitFor(() -> listener.count() == 4);
+		// the last event of a key takes the place of the last one
+		assertEquals(Arrays.asList("a", "b", "f", "p3"), listener.get());
+		stats = bus.getStats().get(0);
+		assertEquals(0, stats.getDepth());
+		assertEquals(6, stats.getMaxDepth());
+		assertEquals(6, stats.getPosted());
+		assertEquals(2, stats.getCoalesced());
+		assertEquals(4, stats.getDelivered());
+		assertEquals(0, stats.getBlocked());
+		assertEquals(1, stats.getBatches());
+		// the key is free once delivered
+		post(bus, "progress", "p4");
+		waitFor(() -> listener.count() == 5);
+		assertEquals("p4", listener.get().get(4));
+	}
+
+	@Test
+	public void testBlocked() throws Exception {
+		final EventBus<IWhoIsListener> bus = new EventBus<>("test", 2);
+		final Listener listener = new Listener();
+		bus.addListener(listener);
+		post(bus, null, "1");
+		post(bus, null, "2");
+		final Thread producer = new Thread(() -> post(bus, null, "3"));
+		producer.start();
+		waitFor(() -> bus.getStats().get(0).getBlocked() == 1);
+		assertTrue(producer.isAlive());
+		bus.setRuntime(_runtime);
+		producer.join(5000);
+		assertFalse(producer.isAlive());
+		waitFor(() -> listener.count() == 3);
+		assertEquals(Arrays.asList("1", "2", "3"), listener.get());
+		final QueueStats stats = bus.getStats().get(0);
+		assertEquals(2, stats.getMaxDepth());
+		assertEquals(3, stats.getDelivered());
+		// the producer is released when the listener is removed
+		final EventBus<IWhoIsListener> other = new EventBus<>("other", 1);
+		other.addListener(listener);
+		post(other, null, "4");
+		final Thread blocked = new Thread(() -> post(other, null, "5"));
+		blocked.start();
+		waitFor(() -> other.getStats().get(0).getBlocked() == 1);
+		other.removeListener(listener);
+		blocked.join(5000);
+		assertFalse(blocked.isAlive());
+	}
+
+	@Test
+	public void testUi() throws Exception {
+		final EventBus<IWhoIsListener> bus = new EventBus<>("test", EventBus.DEFAULT_CAPACITY);
+		bus.setRuntime(_runtime);
+		Resources.initLabels();
+		final Panel panel = new Panel(bus);
+		final Listener listener = new Listener();
+		bus.addListener(panel);
+		bus.addListener(listener);
+		// delivered on the EDT, the event posted by the panel goes behind the pending ones
+		final CountDownLatch posted = new CountDownLatch(1);
+		SwingUtilities.invokeLater(() -> {
+			try {
+				// both pending before the delivery
+				posted.await();
+			} catch (final InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		});
+		post(bus, null, "1");
+		post(bus, null, "2");
+		posted.countDown();
+		waitFor(() -> panel.count() == 3);
+		assertEquals(Arrays.asList("1", "2", "1-reply"), panel.get());
+		assertTrue(panel._edt);
+		// the other listeners are not delivered on the EDT
+		waitFor(() -> listener.count() == 3);
+		assertEquals(Arrays.asList("1", "2", "1-reply"), listener.get());
+		// posted on the EDT : after the pending events, in place
+		post(bus, null, "3");
+		SwingUtilities.invokeAndWait(() -> post(bus, null, "4"));
+		assertEquals(Arrays.asList("1", "2", "1-reply", "3", "4"), panel.get());
+		// a reply to an event delivered in place is queued too, before the events posted after it
+		SwingUtilities.invokeAndWait(() -> {
+			post(bus, null, "1");
+			assertEquals(6, panel.count());
+			post(bus, null, "5");
+		});
+		assertEquals(Arrays.asList("1", "2", "1-reply", "3", "4", "1", "1-reply", "5"), panel.get());
+		waitFor(() -> listener.count() == 8);
+		assertTrue(bus.getStats().get(0).getBatches() > 0);
+	}
+
+	private static void post(final EventBus<IWhoIsListener> bus, final Object key, final String value) {
+		bus.post(key, listener -> listener.whoIsResult(value));
+	}
+
+	private static void waitFor(final BooleanSupplier condition) throws InterruptedException {
+		final long end = System.currentTimeMillis() + 10000;
+		while (!condition.getAsBoolean()) {
+			assertTrue("Timeout", System.currentTimeMillis() < end);
+			Thread.sleep(5);
+		}
+	}
+
+	/**
+	 * Records the results
+	 */
+	private static class Listener implements IWhoIsListener {
+
+		protected final List<String> _results = Collections.synchronizedList(new ArrayList<>());
+
+		@Override
+		public void error(final Exception exception, final Object origin) {
+		}
+
+		@Override
+		public void startWhoIs(final String host) {
+		}
+
+		@Override
+		public void focusWhoIs(final GeoPoint point) {
+		}
+
+		@Override
+		public void whoIsResult(final String result) {
+			_results.add(result);
+		}
+
+		int count() {
+			return _results.size();
+		}
+
+		List<String> get() {
+			synchronized (_results) {
+				return new ArrayList<>(_results);
+			}
+		}
+	}
+
+	/**
+	 * UI listener, replies to the event "1"
+	 */
+	private static class Panel extends AbstractPanel {
+
+		private static final long serialVersionUID = 1L;
+
+		private final EventBus<IWhoIsListener> _bus;
+		private final List<String> _results = Collections.synchronizedList(new ArrayList<>());
+		private volatile boolean _edt = true;
+
+		private Panel(final EventBus<IWhoIsListener> bus) {
+			super(null);
+			_bus = bus;
+		}
+
+		@Override
+		public void whoIsResult(final String result) {
+			_edt &= SwingUtilities.isEventDispatchThread();
+			_results.add(result);
+			if ("1".equals(result)) {
+				post(_bus, null, "1-reply");
+			}
+		}
+
+		int count() {
+			return _results.size();
+		}
+
+		List<String> get() {
+			synchronized (_results) {
+				return new ArrayList<>(_results);
+			}
+		}
+
+		@Override
+		public void error(final Exception exception, final Object origin) {
+		}
+
+		@Override
+		public void startWhoIs(final String host) {
+		}
+
+		@Override
+		public void focusWhoIs(final GeoPoint point) {
+		}
+
+		@Override
+		public void newRoute(final boolean dnsLookup) {
+		}
+
+		@Override
+		public void routePointAdded(final RoutePoint point) {
+		}
+
+		@Override
+		public void routeDone(final long tracerouteTime, final long lengthInKm) {
+		}
+
+		@Override
+		public void routeTimeout() {
+		}
+
+		@Override
+		public void maxHops() {
+		}
+
+		@Override
+		public void routeCancelled() {
+		}
+
+		@Override
+		public void focusRoute(final RoutePoint point, final boolean isTracing, final boolean animation) {
+		}
+
+		@Override
+		public void startCapture() {
+		}
+
+		@Override
+		public void packetAdded(final AbstractPacketPoint point) {
+		}
+
+		@Override
+		public void flowsUpdated(final FlowUpdate update) {
+		}
+
+		@Override
+		public void captureStopped() {
+		}
+
+		@Override
+		public void focusPacket(final AbstractPacketPoint point, final boolean isCapturing, final boolean animation) {
+		}
+	}
+}
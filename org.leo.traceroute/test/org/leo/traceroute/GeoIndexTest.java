@@ -0,0 +1,110 @@
+/**
+ * Open Visual Trace Route
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.leo.traceroute;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+import org.leo.traceroute.core.geo.GeoIndex;
+import org.leo.traceroute.core.geo.GeoIndex.Entry;
+
+/**
+ * GeoIndexTest $Id$
+ * <pre>
+ * Box and nearest queries of the quadtree, across the antimeridian.
+ * </pre>
+ * @author Leo Lewis
+ */
+public class GeoIndexTest extends TestCase {
+
+	private GeoIndex<String> _index;
+
+	@Override
+	protected void setUp() throws Exception {
+		_index = new GeoIndex<>();
+		// a grid every 10 degrees, enough to split the nodes
+		for (int lat = -80; lat <= 80; lat += 10) {
+			for (int lon = -180; lon < 180; lon += 10) {
+				_index.add(lat, lon, lat + "," + lon);
+			}
+		}
+	}
+
+	@Test
+	public void testAddRemove() {
+		assertEquals(17 * 36, _index.size());
+		// same coordinate, one entry
+		final Entry<String> entry = _index.add(10, 20, "other");
+		assertEquals(17 * 36, _index.size());
+		assertEquals(2, entry.getValues().size());
+		// normalized longitude
+		assertSame(entry, _index.get(10, 380));
+		assertSame(_index.get(0, -180), _index.get(0, 180));
+		assertTrue(_index.remove(10, 20, "other"));
+		assertFalse(_index.remove(10, 20, "other"));
+		assertTrue(_index.remove(10, 20, "10,20"));
+		assertNull(_index.get(10, 20));
+		assertEquals(17 * 36 - 1, _index.size());
+	}
+
+	@Test
+	public void testQuery() {
+		assertEquals(set("0,0", "0,10", "10,0", "10,10"), query(-5, -5, 15, 15));
+		// crossing the antimeridian, west greater than east
+		assertEquals(set("0,170", "0,-180", "0,-170", "10,170", "10,-180", "10,-170"), query(-5, 165, 15, -165));
+		// same box with an east over 180
+		assertEquals(query(-5, 165, 15, -165), query(-5, 165, 15, 195));
+		// the whole world
+		assertEquals(17 * 36, query(-90, -200, 90, 200).size());
+		assertTrue(query(81, -180, 89, 180).isEmpty());
+	}
+
+	@Test
+	public void testNearest() {
+		assertEquals("10,20", _index.nearest(11, 21, 5).getValues().get(0));
+		assertNull(_index.nearest(15, 25, 5));
+		// the closest is across the antimeridian
+		assertEquals("0,-180", _index.nearest(1, 179, 5).getValues().get(0));
+		assertEquals("0,170", _index.nearest(1, -188, 5).getValues().get(0));
+		// near the pole, outside of the grid
+		assertEquals("80,0", _index.nearest(89, 1, 10).getValues().get(0));
+		_index.clear();
+		assertNull(_index.nearest(0, 0, 360));
+	}
+
+	private Set<String> query(final double minLat, final double minLon, final double maxLat, final double maxLon) {
+		final List<String> values = new ArrayList<>();
+		_index.query(minLat, minLon, maxLat, maxLon, entry -> values.addAll(entry.getValues()));
+		final Set<String> set = new HashSet<>(values);
+		assertEquals("Visited once", values.size(), set.size());
+		return set;
+	}
+
+	private static Set<String> set(final String... values) {
+		final Set<String> set = new HashSet<>();
+		for (final String value : values) {
+			set.add(value);
+		}
+		return set;
+	}
+}
@@ -0,0 +1,161 @@
+/**
+ * Open Visual Trace Route
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.leo.traceroute;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+import org.leo.traceroute.core.autocomplete.CompletionIndex;
+import org.leo.traceroute.core.autocomplete.HistoryJournal;
+
+/**
+ * HistoryJournalTest $Id$
+ * <pre>
+ * Append, load after a crash and compaction of the journal of the history.
+ * </pre>
+ * @author Leo Lewis
+ */
+public class HistoryJournalTest extends TestCase {
+
+	private File _file;
+
+	@Override
+	protected void setUp() throws Exception {
+		_file = File.createTempFile("history", ".journal");
+		_file.delete();
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		_file.delete();
+		new File(_file.getAbsolutePath() + ".tmp").delete();
+	}
+
+	@Test
+	public void testAppendLoad() throws Exception {
+		final long now = System.currentTimeMillis();
+		final HistoryJournal journal = new HistoryJournal(_file);
+		journal.append("example.com", now - 1000);
+		journal.append("example.org", now - 500);
+		journal.append("example.com", now);
+		journal.append("bad\nkey", now);
+		journal.close();
+
+		final CompletionIndex index = load();
+		assertEquals(2, index.size());
+		assertEquals(2, index.get("example.com").getCount());
+		assertEquals(now, index.get("example.com").getLastUse());
+		assertEquals(1, index.get("example.org").getCount());
+		assertEquals(Arrays.asList("example.com", "example.org"), index.complete("example", 10));
+	}
+
+	@Test
+	public void testTruncatedTail() throws Exception {
+		final long now = System.currentTimeMillis();
+		HistoryJournal journal = new HistoryJournal(_file);
+		journal.append("example.com", now);
+		journal.close();
+		// crash within the 2 bytes of a character, then within a number
+		try (OutputStream os = new FileOutputStream(_file, true)) {
+			os.write(("+\t" + now + "\tcaf").getBytes(StandardCharsets.UTF_8));
+			os.write("\u00e9".getBytes(StandardCharsets.UTF_8)[0]);
+		}
+		CompletionIndex index = load();
+		assertEquals(1, index.size());
+		assertEquals(1, index.get("example.com").getCount());
+
+		// the next use terminates the partial record
+		journal = new HistoryJournal(_file);
+		journal.append("caf\u00e9", now);
+		journal.close();
+		try (OutputStream os = new FileOutputStream(_file, true)) {
+			os.write("+\t12".getBytes(StandardCharsets.UTF_8));
+		}
+		journal = new HistoryJournal(_file);
+		journal.append("example.com", now);
+		journal.close();
+
+		index = load();
+		assertEquals(2, index.size());
+		assertEquals(2, index.get("example.com").getCount());
+		assertEquals(1, index.get("caf\u00e9").getCount());
+		assertNull(index.get("caf\ufffd"));
+	}
+
+	@Test
+	public void testTruncatedKey() throws Exception {
+		final long now = System.currentTimeMillis();
+		HistoryJournal journal = new HistoryJournal(_file);
+		journal.append("google.com", now);
+		journal.close();
+		// crash within an ascii key, the next use terminates the record
+		try (OutputStream os = new FileOutputStream(_file, true)) {
+			os.write(("+\t" + now + "\tgoog").getBytes(StandardCharsets.UTF_8));
+		}
+		journal = new HistoryJournal(_file);
+		journal.append("example.com", now);
+		journal.close();
+
+		final CompletionIndex index = load();
+		assertEquals(2, index.size());
+		assertNull(index.get("goog"));
+		assertEquals(1, index.get("google.com").getCount());
+		assertEquals(1, index.get("example.com").getCount());
+		assertEquals(Arrays.asList("google.com"), index.complete("goo", 10));
+	}
+
+	@Test
+	public void testCompaction() throws Exception {
+		final long now = System.currentTimeMillis();
+		final HistoryJournal journal = new HistoryJournal(_file);
+		for (int i = 0; i < 12000; i++) {
+			journal.append("host" + i % 3, now - i);
+		}
+		final CompletionIndex index = new CompletionIndex(10);
+		journal.load(index);
+		assertEquals(3, index.size());
+		assertTrue(journal.needsCompaction(index.size()));
+		final long length = _file.length();
+		journal.compact(index);
+		assertFalse(journal.needsCompaction(index.size()));
+		assertTrue(_file.length() < length / 100);
+
+		// the uses after the compaction are merged with the entries
+		journal.append("host0", now + 1);
+		journal.close();
+		final CompletionIndex loaded = load();
+		assertEquals(3, loaded.size());
+		assertEquals(4001, loaded.get("host0").getCount());
+		assertEquals(now + 1, loaded.get("host0").getLastUse());
+		assertEquals(4000, loaded.get("host2").getCount());
+		assertEquals(index.complete("host", 10), loaded.complete("host", 10).subList(0, 3));
+		assertEquals(index.get("host1").getScore(), loaded.get("host1").getScore(), 1e-9);
+	}
+
+	private CompletionIndex load() throws Exception {
+		final CompletionIndex index = new CompletionIndex(10);
+		new HistoryJournal(_file).load(index);
+		return index;
+	}
+}
@@ -0,0 +1,319 @@
+/**
+ * Open Visual Trace Route
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.leo.traceroute;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+import org.leo.traceroute.core.ServiceFactory;
+import org.leo.traceroute.core.monitor.MonitorResults;
+import org.leo.traceroute.core.monitor.MonitorResults.Result;
+import org.leo.traceroute.core.monitor.MonitorScheduler;
+import org.leo.traceroute.core.monitor.MonitorTarget;
+import org.leo.traceroute.core.monitor.ProbeRateLimiter;
+import org.leo.traceroute.core.monitor.TargetHealth;
+import org.leo.traceroute.core.monitor.TargetHealth.State;
+import org.leo.traceroute.core.route.ITraceRoute;
+import org.leo.traceroute.core.route.RoutePoint;
+import org.leo.traceroute.core.route.RouteRunner;
+import org.leo.traceroute.core.route.RouteRunner.Status;
+import org.leo.traceroute.core.route.impl.AbstractTraceRoute;
+import org.leo.traceroute.ui.task.CancelMonitor;
+
+/**
+ * MonitorTest $Id$
+ * <pre>
+ * Rate of the probes, health of the targets, rolling file of the results and scheduling of the traceroutes of the monitor.
+ * </pre>
+ * @author Leo Lewis
+ */
+public class MonitorTest extends TestCase {
+
+	private ServiceFactory _services;
+	private File _file;
+
+	@Override
+	protected void setUp() throws Exception {
+		_services = new ServiceFactory();
+		_file = File.createTempFile("monitor", ".results");
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		_services.getRuntime().shutdown();
+		_file.delete();
+		new File(_file.getAbsolutePath() + ".1").delete();
+	}
+
+	@Test
+	public void testTarget() {
+		final MonitorTarget target = MonitorTarget.parse("  example.com   30 ", 1000);
+		assertEquals("example.com", target.getDestination());
+		assertEquals(30000, target.getIntervalMs());
+		assertEquals(1000, MonitorTarget.parse("example.com", 1000).getIntervalMs());
+		try {
+			MonitorTarget.parse("example.com x", 1000);
+			fail("No error");
+		} catch (final IllegalArgumentException e) {
+			// expected
+		}
+	}
+
+	@Test
+	public void testRateLimiter() throws Exception {
+		final ProbeRateLimiter limiter = new ProbeRateLimiter(100);
+		// the burst is free
+		long start = System.nanoTime();
+		limiter.acquire(100);
+		assertTrue(System.nanoTime() - start < 50_000_000L);
+		// then 50 probes wait for half a second
+		start = System.nanoTime();
+		limiter.acquire(50);
+		final long waited = System.nanoTime() - start;
+		assertTrue(String.valueOf(waited), waited > 400_000_000L && waited < 1_000_000_000L);
+		// the probes not sent are given back
+		limiter.release(100);
+		start = System.nanoTime();
+		limiter.acquire(80);
+		assertTrue(System.nanoTime() - start < 50_000_000L);
+	}
+
+	@Test
+	public void testHealth() {
+		final TargetHealth health = new TargetHealth("a");
+		assertEquals(State.UNKNOWN, health.getState());
+		health.add(result(Status.DONE, 10));
+		health.add(result(Status.DONE, 12));
+		assertEquals(State.UP, health.getState());
+		assertEquals(11.0, health.getAverageLatency(), 0.001);
+		health.add(result(Status.TIMEOUT, -1));
+		assertEquals(State.DEGRADED, health.getState());
+		health.add(result(Status.ERROR, -1));
+		health.add(result(Status.MAX_HOPS, -1));
+		assertEquals(State.DOWN, health.getState());
+		assertEquals(0.4, health.getSuccessRate(), 0.001);
+		// the failures leave the window
+		for (int i = 0; i < TargetHealth.WINDOW; i++) {
+			health.add(result(Status.DONE, 10));
+		}
+		assertEquals(State.UP, health.getState());
+		health.add(result(Status.DONE, 50));
+		assertEquals(State.DEGRADED, health.getState());
+	}
+
+	@Test
+	public void testResults() throws Exception {
+		final File file = File.createTempFile("monitor", ".results");
+		final File previous = new File(file.getAbsolutePath() + ".1");
+		try {
+			final MonitorResults results = new MonitorResults(file, 200);
+			for (int i = 0; i < 30; i++) {
+				results.append(new Result(i, "a", Status.DONE, 100, 5, 12, "10.0.0.1"));
+			}
+			results.append(new Result(30, "b", Status.TIMEOUT, 100, 0, -1, null));
+			results.close();
+			assertTrue(previous.exists());
+			assertTrue(file.length() < 200);
+			final List<Result> loaded = new MonitorResults(file, 200).load();
+			// the oldest ones are rolled out, the order is kept
+			assertTrue(loaded.size() < 31);
+			for (int i = 1; i < loaded.size(); i++) {
+				assertTrue(loaded.get(i - 1).getTs() < loaded.get(i).getTs());
+			}
+			final Result last = loaded.get(loaded.size() - 1);
+			assertEquals("b", last.getDestination());
+			assertEquals(Status.TIMEOUT, last.getStatus());
+			assertEquals(-1, last.getLatency());
+			assertNull(last.getIp());
+		} finally {
+			file.delete();
+			previous.delete();
+		}
+	}
+
+	@Test
+	public void testSchedulerSpread() throws Exception {
+		final List<MonitorTarget> targets = new ArrayList<>();
+		for (int i = 0; i < 12; i++) {
+			targets.add(MonitorTarget.parse("10.0.0." + i, 1000));
+		}
+		final List<String> output = new CopyOnWriteArrayList<>();
+		final Scheduler scheduler = new Scheduler(targets, targets.size(), 0, output::add);
+		final long start = System.currentTimeMillis();
+		scheduler.start();
+		Thread.sleep(2500);
+		scheduler.stop();
+		long firstMin = Long.MAX_VALUE;
+		long firstMax = 0;
+		for (final MonitorTarget target : targets) {
+			final List<Long> runs = scheduler._runs.get(target.getDestination());
+			assertNotNull(runs);
+			// first run within the interval
+			final long first = runs.get(0) - start;
+			assertTrue(String.valueOf(first), first < 1000 + 200);
+			firstMin = Math.min(firstMin, first);
+			firstMax = Math.max(firstMax, first);
+			// next ones at the interval, +/- the jitter, a late run doesn't delay the next one
+			for (int i = 1; i < runs.size(); i++) {
+				final long interval = runs.get(i) - runs.get(i - 1);
+				assertTrue(String.valueOf(interval), interval >= 900 - 250 && interval <= 1100 + 250);
+			}
+		}
+		// not all at the same time
+		assertTrue(firstMax - firstMin > 300);
+		for (final TargetHealth health : scheduler.getHealth()) {
+			assertEquals(State.UP, health.getState());
+			assertEquals(2, health.getLast().getHops());
+			assertEquals("10.0.0.254", health.getLast().getIp());
+		}
+		assertTrue(output.stream().anyMatch(record -> record.contains("\"type\":\"health\"")));
+		// the traceroutes cancelled by the stop are not kept
+		final List<Result> results = new MonitorResults(_file, MonitorResults.DEFAULT_MAX_BYTES).load();
+		assertTrue(results.size() >= targets.size() && results.size() <= scheduler._count.get());
+		assertTrue(results.stream().allMatch(Result::isSuccess));
+	}
+
+	@Test
+	public void testSchedulerLanes() throws Exception {
+		final List<MonitorTarget> targets = Arrays.asList(MonitorTarget.parse("a", 200), MonitorTarget.parse("b", 200), MonitorTarget.parse("c", 200));
+		final Scheduler scheduler = new Scheduler(targets, 1, 100, null);
+		scheduler.start();
+		waitFor(() -> scheduler._runs.size() == 3 && scheduler._count.get() >= 6);
+		scheduler.stop();
+		// one traceroute at a time
+		assertEquals(1, scheduler._maxActive.get());
+		assertEquals(1, scheduler._traceroutes.size());
+	}
+
+	@Test
+	public void testSchedulerStop() throws Exception {
+		final Scheduler scheduler = new Scheduler(Collections.singletonList(MonitorTarget.parse("a", 100)), 1, -1, null);
+		scheduler.start();
+		waitFor(() -> scheduler._active.get() == 1);
+		scheduler.stop();
+		// the traceroute in progress is cancelled
+		waitFor(() -> scheduler._active.get() == 0);
+		Thread.sleep(300);
+		assertEquals(1, scheduler._count.get());
+		assertEquals(State.UNKNOWN, scheduler.getHealth().iterator().next().getState());
+		assertTrue(new MonitorResults(_file, MonitorResults.DEFAULT_MAX_BYTES).load().isEmpty());
+	}
+
+	@Test
+	public void testRunnerPreviousRun() throws Exception {
+		final Scheduler scheduler = new Scheduler(Collections.singletonList(MonitorTarget.parse("a", 100)), 1, 500, null);
+		final ITraceRoute traceroute = scheduler.newTraceRoute();
+		// a run still in progress when the trace starts, the trace waits for its end
+		traceroute.compute("previous", new CancelMonitor(), false, 0, true, 30);
+		waitFor(() -> scheduler._active.get() == 1);
+		final List<String> output = new CopyOnWriteArrayList<>();
+		final RouteRunner runner = new RouteRunner(traceroute, output::add);
+		assertEquals(Status.DONE, runner.trace("a", false, 0, true, 30));
+		// the events of the previous run are not taken for the ones of the trace
+		assertEquals(0, scheduler._active.get());
+		assertEquals(2, scheduler._count.get());
+		assertEquals(1, scheduler._runs.get("a").size());
+		assertEquals(2, runner.getHops());
+		assertEquals(2, output.stream().filter(record -> record.contains("\"type\":\"hop\"")).count());
+		runner.dispose();
+		traceroute.dispose();
+	}
+
+	private static void waitFor(final BooleanSupplier condition) throws InterruptedException {
+		final long end = System.currentTimeMillis() + 10000;
+		while (!condition.getAsBoolean()) {
+			assertTrue("Timeout", System.currentTimeMillis() < end);
+			Thread.sleep(10);
+		}
+	}
+
+	private static Result result(final Status status, final int latency) {
+		return new Result(System.currentTimeMillis(), "a", status, 100, 5, latency, latency >= 0 ? "10.0.0.1" : null);
+	}
+
+	/**
+	 * Scheduler tracing with fake traceroutes : two hops, the given duration, -1 to wait for the cancel
+	 */
+	private class Scheduler extends MonitorScheduler {
+
+		private final long _durationMs;
+		private final Map<String, List<Long>> _runs = new ConcurrentHashMap<>();
+		private final List<FakeTraceRoute> _traceroutes = new CopyOnWriteArrayList<>();
+		private final AtomicInteger _count = new AtomicInteger();
+		private final AtomicInteger _active = new AtomicInteger();
+		private final AtomicInteger _maxActive = new AtomicInteger();
+
+		private Scheduler(final List<MonitorTarget> targets, final int lanes, final long durationMs, final Consumer<String> output) {
+			super(_services, targets, lanes, 1000000, new MonitorResults(_file, MonitorResults.DEFAULT_MAX_BYTES), output);
+			_durationMs = durationMs;
+			setOptions(0, 30, false, true);
+		}
+
+		@Override
+		protected ITraceRoute newTraceRoute() throws Exception {
+			final FakeTraceRoute traceroute = new FakeTraceRoute(this);
+			traceroute.init(_services);
+			_traceroutes.add(traceroute);
+			return traceroute;
+		}
+	}
+
+	private static class FakeTraceRoute extends AbstractTraceRoute<Void> {
+
+		private final Scheduler _scheduler;
+
+		private FakeTraceRoute(final Scheduler scheduler) {
+			_scheduler = scheduler;
+		}
+
+		@Override
+		protected void computeRoute(final String formatedDest, final CancelMonitor monitor, final boolean resolveHostname, final boolean ipV4,
+				final int maxHops) throws Exception {
+			_scheduler._runs.computeIfAbsent(formatedDest, dest -> new CopyOnWriteArrayList<>()).add(System.currentTimeMillis());
+			_scheduler._count.incrementAndGet();
+			_scheduler._maxActive.accumulateAndGet(_scheduler._active.incrementAndGet(), Math::max);
+			try {
+				final long end = System.currentTimeMillis() + _scheduler._durationMs;
+				while (!monitor.isCanceled() && (_scheduler._durationMs < 0 || System.currentTimeMillis() < end)) {
+					Thread.sleep(5);
+				}
+				for (int i = 1; i <= 2 && !monitor.isCanceled(); i++) {
+					final RoutePoint point = new RoutePoint();
+					point.setNumber(i);
+					point.setIp(i == 2 ? "10.0.0.254" : "192.168.0.1");
+					point.setLatency(10 * i);
+					addPoint(point);
+				}
+			} finally {
+				_scheduler._active.decrementAndGet();
+			}
+		}
+	}
+}
@@ -0,0 +1,277 @@
+/**
+ * Open Visual Trace Route
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.leo.traceroute;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+import org.leo.traceroute.core.sniffer.AbstractPacketPoint.Protocol;
+import org.leo.traceroute.core.sniffer.decoder.EthernetHeader;
+import org.leo.traceroute.core.sniffer.decoder.IcmpHeader;
+import org.leo.traceroute.core.sniffer.decoder.Ipv4Header;
+import org.leo.traceroute.core.sniffer.decoder.Ipv6Header;
+import org.leo.traceroute.core.sniffer.decoder.PacketDecoder;
+import org.leo.traceroute.core.sniffer.decoder.TcpHeader;
+import org.leo.traceroute.core.sniffer.decoder.UdpHeader;
+
+/**
+ * PacketDecoderTest $Id$
+ * <pre>
+ * Headers of Ethernet, VLAN, IPv4, IPv6, TCP, UDP and ICMP frames decoded in place, complete and truncated.
+ * </pre>
+ * @author Leo Lewis
+ */
+public class PacketDecoderTest extends TestCase {
+
+	@Test
+	public void testTcp() {
+		final byte[] frame = ipv4(6, tcp(40000, 443, TcpHeader.SYN | TcpHeader.ACK, 4));
+		final PacketDecoder decoder = new PacketDecoder();
+		assertTrue(decoder.decodeLink(ByteBuffer.wrap(frame), 0, frame.length));
+		final EthernetHeader ethernet = decoder.getEthernet();
+		assertEquals(EthernetHeader.TYPE_IPV4, ethernet.getEtherType());
+		assertEquals(-1, ethernet.getVlanId());
+		final Ipv4Header ip = (Ipv4Header) decoder.getIp();
+		assertEquals(4, ip.getVersion());
+		assertEquals(20, ip.getHeaderLength());
+		assertEquals(44, ip.getTotalLength());
+		assertEquals(0x1234, ip.getId());
+		assertTrue(ip.isDontFragment());
+		assertEquals(64, ip.getTtl());
+		assertEquals("10.0.0.1", ip.getSource());
+		assertEquals("8.8.8.8", ip.getDest());
+		assertEquals(Protocol.TCP, decoder.getProtocol());
+		final TcpHeader tcp = (TcpHeader) decoder.getTransport();
+		assertTrue(tcp.isComplete());
+		assertEquals(40000, decoder.getSourcePort());
+		assertEquals(443, decoder.getDestPort());
+		assertEquals(1, tcp.getSequence());
+		assertEquals(0xFFFFFFFEL, tcp.getAcknowledgment());
+		assertEquals(TcpHeader.SYN | TcpHeader.ACK, tcp.getFlags());
+		assertEquals(frame.length - 4, decoder.getPayloadOffset());
+		assertEquals(4, tcp.getPayloadLength());
+		assertEquals("Ethernet 66:77:88:99:aa:bb > 00:11:22:33:44:55, type 0x800\n"
+				+ "IPv4 10.0.0.1 > 8.8.8.8, ttl 64, id 4660, length 44, DF\n"
+				+ "TCP 40000 > 443, flags [S.], seq 1, ack 4294967294, win 1024, length 4\n", describe(decoder));
+	}
+
+	@Test
+	public void testVlan() {
+		final byte[] frame = vlan(ipv4(17, udp(53, 1234, 10)), 42, 7);
+		final PacketDecoder decoder = new PacketDecoder();
+		assertTrue(decoder.decodeLink(ByteBuffer.wrap(frame), 0, frame.length));
+		// the innermost tag
+		assertEquals(7, decoder.getEthernet().getVlanId());
+		assertEquals(EthernetHeader.TYPE_IPV4, decoder.getEthernet().getEtherType());
+		assertEquals(22, decoder.getEthernet().getPayloadOffset());
+		assertEquals(Protocol.UDP, decoder.getProtocol());
+		final UdpHeader udp = (UdpHeader) decoder.getTransport();
+		assertEquals(53, udp.getSourcePort());
+		assertEquals(1234, udp.getDestPort());
+		assertEquals(18, udp.getLength());
+		assertEquals(frame.length - 10, decoder.getPayloadOffset());
+		// given the network offset
+		assertTrue(decoder.decode(ByteBuffer.wrap(frame), 0, 22, frame.length));
+		assertEquals(7, decoder.getEthernet().getVlanId());
+		assertEquals(53, decoder.getSourcePort());
+	}
+
+	@Test
+	public void testIcmp() {
+		final byte[] frame = ipv4(1, new byte[] { 11, 0, 0, 0, 0, 0, 0, 0 });
+		final PacketDecoder decoder = new PacketDecoder();
+		assertTrue(decoder.decodeLink(ByteBuffer.wrap(frame), 0, frame.length));
+		assertEquals(Protocol.ICMP, decoder.getProtocol());
+		final IcmpHeader icmp = (IcmpHeader) decoder.getTransport();
+		assertFalse(icmp.isV6());
+		assertEquals(11, icmp.getType());
+		assertEquals(0, icmp.getCode());
+		assertEquals(-1, decoder.getSourcePort());
+		assertEquals(frame.length, decoder.getPayloadOffset());
+		// ICMP is not ICMPv6 in IPv6
+		final byte[] v6 = ipv6(1, new byte[8]);
+		assertTrue(decoder.decodeLink(ByteBuffer.wrap(v6), 0, v6.length));
+		assertEquals(Protocol.OTHER, decoder.getProtocol());
+		assertNull(decoder.getTransport());
+	}
+
+	@Test
+	public void testIpv6Extensions() {
+		// hop by hop (8 bytes) > routing (24 bytes) > first fragment > TCP
+		final byte[] transport = tcp(1, 80, TcpHeader.ACK, 0);
+		byte[] frame = ipv6(0, concat(new byte[] { 43, 0, 0, 0, 0, 0, 0, 0 }, new byte[] { 44, 2, 0, 0, 0, 0, 0, 0 }, new byte[16],
+				new byte[] { 6, 0, 0, 1, 0, 0, 0, 1 }, transport));
+		final PacketDecoder decoder = new PacketDecoder();
+		assertTrue(decoder.decodeLink(ByteBuffer.wrap(frame), 0, frame.length));
+		final Ipv6Header ip = (Ipv6Header) decoder.getIp();
+		assertEquals(6, ip.getVersion());
+		assertEquals(0xABCDE, ip.getFlowLabel());
+		assertEquals(32, ip.getTtl());
+		assertEquals("2001:db8:0:0:0:0:0:1", ip.getSource());
+		assertEquals("2001:db8:0:0:0:0:0:2", ip.getDest());
+		assertTrue(ip.hasTransportHeader());
+		assertEquals(6, ip.getTransportProtocol());
+		assertEquals(14 + 40 + 40, ip.getPayloadOffset());
+		assertEquals(Protocol.TCP, decoder.getProtocol());
+		assertEquals(1, decoder.getSourcePort());
+		assertEquals(80, decoder.getDestPort());
+		// next fragment, no transport header
+		frame = ipv6(44, concat(new byte[] { 17, 0, 0, 8, 0, 0, 0, 1 }, new byte[8]));
+		assertTrue(decoder.decodeLink(ByteBuffer.wrap(frame), 0, frame.length));
+		assertFalse(decoder.getIp().hasTransportHeader());
+		assertEquals(Protocol.UDP, decoder.getProtocol());
+		assertNull(decoder.getTransport());
+		assertEquals(-1, decoder.getSourcePort());
+		// ICMPv6 behind destination options
+		frame = ipv6(60, concat(new byte[] { 58, 0, 0, 0, 0, 0, 0, 0 }, new byte[] { (byte) 128, 0, 0, 0, 0, 0, 0, 0 }));
+		assertTrue(decoder.decodeLink(ByteBuffer.wrap(frame), 0, frame.length));
+		assertEquals(Protocol.ICMP, decoder.getProtocol());
+		assertTrue(((IcmpHeader) decoder.getTransport()).isV6());
+		assertEquals(128, ((IcmpHeader) decoder.getTransport()).getType());
+	}
+
+	@Test
+	public void testNetworkOffset() {
+		// raw IP packet in the middle of a little endian buffer
+		final byte[] packet = ipv4(17, udp(1, 2, 0));
+		final ByteBuffer buffer = ByteBuffer.allocate(100).order(ByteOrder.LITTLE_ENDIAN);
+		buffer.position(10);
+		buffer.put(packet, 14, packet.length - 14);
+		final PacketDecoder decoder = new PacketDecoder();
+		assertTrue(decoder.decodeNetwork(buffer, 10, 10 + packet.length - 14));
+		assertNull(decoder.getEthernet());
+		assertEquals(Protocol.UDP, decoder.getProtocol());
+		assertEquals(1, decoder.getSourcePort());
+		assertEquals(2, decoder.getDestPort());
+		assertEquals("10.0.0.1", decoder.getIp().getSource());
+		// not IP
+		buffer.put(10, (byte) 0x25);
+		assertFalse(decoder.decodeNetwork(buffer, 10, 10 + packet.length - 14));
+		assertNull(decoder.getIp());
+		assertNull(decoder.getProtocol());
+	}
+
+	@Test
+	public void testTruncated() {
+		final byte[][] frames = { ipv4(6, tcp(40000, 443, TcpHeader.ACK, 4)), vlan(ipv4(17, udp(53, 1234, 10)), 42, 7),
+				ipv4(1, new byte[8]), ipv6(0, concat(new byte[] { 43, 0, 0, 0, 0, 0, 0, 0 }, new byte[] { 6, 2, 0, 0, 0, 0, 0, 0 }, new byte[16],
+						tcp(1, 80, TcpHeader.ACK, 0))),
+				ipv6(17, udp(1, 2, 0)), ipv6(58, new byte[8]) };
+		final PacketDecoder decoder = new PacketDecoder();
+		for (final byte[] frame : frames) {
+			for (int length = 0; length <= frame.length; length++) {
+				final ByteBuffer buffer = ByteBuffer.wrap(frame);
+				if (decoder.decodeLink(buffer, 0, length)) {
+					assertTrue(decoder.getPayloadOffset() <= length);
+					decoder.getSourcePort();
+					decoder.getDestPort();
+					describe(decoder);
+				}
+				if (length >= 14 && decoder.decode(buffer, 0, frame.length - ipLength(frame), length)) {
+					assertTrue(decoder.getPayloadOffset() <= length);
+					describe(decoder);
+				}
+			}
+		}
+		// truncated transport headers keep their ports
+		final byte[] frame = ipv4(6, tcp(40000, 443, TcpHeader.ACK, 4));
+		assertTrue(decoder.decodeLink(ByteBuffer.wrap(frame), 0, 14 + 20 + 10));
+		assertFalse(((TcpHeader) decoder.getTransport()).isComplete());
+		assertEquals(443, decoder.getDestPort());
+		assertEquals(14 + 20 + 10, decoder.getPayloadOffset());
+		assertTrue(describe(decoder).endsWith("TCP 40000 > 443, truncated\n"));
+		// header lengths larger than the frame
+		frame[14] = 0x4F;
+		assertFalse(decoder.decodeLink(ByteBuffer.wrap(frame), 0, frame.length));
+		frame[14] = 0x45;
+		frame[14 + 20 + 12] = (byte) 0xF0;
+		assertTrue(decoder.decodeLink(ByteBuffer.wrap(frame), 0, frame.length));
+		assertEquals(frame.length, decoder.getPayloadOffset());
+	}
+
+	private static String describe(final PacketDecoder decoder) {
+		final StringBuilder sb = new StringBuilder();
+		decoder.describe(sb);
+		return sb.toString();
+	}
+
+	private static int ipLength(final byte[] frame) {
+		final int type = ((frame[12] & 0xFF) << 8) | (frame[13] & 0xFF);
+		return frame.length - (type == 0x8100 ? 22 : 14);
+	}
+
+	/** 10.0.0.1 > 8.8.8.8 */
+	private static byte[] ipv4(final int protocol, final byte[] payload) {
+		final ByteBuffer b = ByteBuffer.allocate(14 + 20 + payload.length);
+		b.put(new byte[] { 0, 0x11, 0x22, 0x33, 0x44, 0x55, 0x66, 0x77, (byte) 0x88, (byte) 0x99, (byte) 0xaa, (byte) 0xbb });
+		b.putShort((short) EthernetHeader.TYPE_IPV4);
+		b.put((byte) 0x45).put((byte) 0).putShort((short) (20 + payload.length)).putShort((short) 0x1234).putShort((short) 0x4000);
+		b.put((byte) 64).put((byte) protocol).putShort((short) 0).putInt(0x0A000001).putInt(0x08080808);
+		b.put(payload);
+		return b.array();
+	}
+
+	/** 2001:db8::1 > 2001:db8::2 */
+	private static byte[] ipv6(final int next, final byte[] payload) {
+		final ByteBuffer b = ByteBuffer.allocate(14 + 40 + payload.length);
+		b.position(12);
+		b.putShort((short) EthernetHeader.TYPE_IPV6);
+		b.putInt(0x600ABCDE).putShort((short) payload.length).put((byte) next).put((byte) 32);
+		b.putInt(0x20010db8).putLong(0).putInt(1);
+		b.putInt(0x20010db8).putLong(0).putInt(2);
+		b.put(payload);
+		return b.array();
+	}
+
+	/** Insert two tags in the Ethernet frame */
+	private static byte[] vlan(final byte[] frame, final int outer, final int inner) {
+		final ByteBuffer b = ByteBuffer.allocate(frame.length + 8);
+		b.put(frame, 0, 12);
+		b.putShort((short) 0x88A8).putShort((short) outer).putShort((short) 0x8100).putShort((short) (0x2000 | inner));
+		b.put(frame, 12, frame.length - 12);
+		return b.array();
+	}
+
+	private static byte[] tcp(final int sourcePort, final int destPort, final int flags, final int payload) {
+		final ByteBuffer b = ByteBuffer.allocate(20 + payload);
+		b.putShort((short) sourcePort).putShort((short) destPort).putInt(1).putInt(0xFFFFFFFE);
+		b.put((byte) 0x50).put((byte) flags).putShort((short) 1024);
+		return b.array();
+	}
+
+	private static byte[] udp(final int sourcePort, final int destPort, final int payload) {
+		final ByteBuffer b = ByteBuffer.allocate(8 + payload);
+		b.putShort((short) sourcePort).putShort((short) destPort).putShort((short) (8 + payload));
+		return b.array();
+	}
+
+	private static byte[] concat(final byte[]... parts) {
+		int length = 0;
+		for (final byte[] part : parts) {
+			length += part.length;
+		}
+		final ByteBuffer b = ByteBuffer.allocate(length);
+		for (final byte[] part : parts) {
+			b.put(part);
+		}
+		return b.array();
+	}
+}
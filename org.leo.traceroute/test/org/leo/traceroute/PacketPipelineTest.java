@@ -0,0 +1,101 @@
+/**
+ * Open Visual Trace Route
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.leo.traceroute;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+import org.leo.traceroute.core.ExecutionRuntime;
+import org.leo.traceroute.core.sniffer.impl.RawPacketPoint;
+import org.leo.traceroute.core.sniffer.pipeline.PacketItem;
+import org.leo.traceroute.core.sniffer.pipeline.PacketPipeline;
+import org.leo.traceroute.core.sniffer.pipeline.PacketPipeline.IPacketProcessor;
+import org.leo.traceroute.core.sniffer.pipeline.StageStats;
+
+/**
+ * PacketPipelineTest $Id$
+ * <pre>
+ * Order and accounting of the packets through the stages of the pipeline, with an enrich stage stalled.
+ * </pre>
+ * @author Leo Lewis
+ */
+public class PacketPipelineTest extends TestCase {
+
+	@Test
+	public void testStalledEnrich() throws Exception {
+		final List<Long> published = new CopyOnWriteArrayList<>();
+		final PacketPipeline pipeline = new PacketPipeline(new IPacketProcessor() {
+			@Override
+			public boolean decode(final PacketItem item) {
+				item.setPoint(new RawPacketPoint());
+				return true;
+			}
+
+			@Override
+			public boolean enrich(final PacketItem item) throws Exception {
+				if (item.getTsSec() == 100) {
+					// synchronous DNS lookup
+					Thread.sleep(1500);
+				}
+				return true;
+			}
+
+			@Override
+			public boolean aggregate(final PacketItem item) {
+				return true;
+			}
+
+			@Override
+			public void publish(final PacketItem item) {
+				published.add(item.getTsSec());
+			}
+		}, 4, 64);
+		final ExecutionRuntime runtime = new ExecutionRuntime();
+		try {
+			pipeline.start(runtime);
+			// the capture goes on during the stall
+			final long end = System.currentTimeMillis() + 3000;
+			for (long i = 0; System.currentTimeMillis() < end; i++) {
+				pipeline.offer(new PacketItem(new byte[0], 0, 0, i, 0));
+				if (i % 100 == 0) {
+					Thread.sleep(1);
+				}
+			}
+			final StageStats enrich = pipeline.getStats().get(2);
+			final long enriched = enrich.getReceived() - enrich.getDropped();
+			final long timeout = System.currentTimeMillis() + 5000;
+			while (published.size() < enriched && System.currentTimeMillis() < timeout) {
+				Thread.sleep(10);
+			}
+			// every packet sent to the enrich stage is published, in order, the stall is absorbed by the drops at the decode input
+			assertEquals(enriched, published.size());
+			assertTrue(published.size() > 1000);
+			for (int i = 1; i < published.size(); i++) {
+				assertTrue(published.get(i - 1) < published.get(i));
+			}
+			assertTrue(pipeline.getStats().get(1).getDropped() > 0);
+			assertEquals(enriched, pipeline.getStats().get(3).getProcessed());
+		} finally {
+			pipeline.stop();
+			runtime.shutdown();
+		}
+	}
+}
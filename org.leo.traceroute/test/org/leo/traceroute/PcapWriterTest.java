@@ -0,0 +1,221 @@
+/**
+ * Open Visual Trace Route
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.leo.traceroute;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+import org.leo.traceroute.core.sniffer.pcap.PcapWriter;
+import org.leo.traceroute.core.sniffer.pcap.PcapWriter.Format;
+
+/**
+ * PcapWriterTest $Id$
+ * <pre>
+ * Headers, records and rotation of the pcap and pcapng files written from the capture.
+ * </pre>
+ * @author Leo Lewis
+ */
+public class PcapWriterTest extends TestCase {
+
+	private static final long TS = 1_600_000_000L;
+
+	private Path _directory;
+
+	@Override
+	protected void setUp() throws Exception {
+		_directory = Files.createTempDirectory("pcap");
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		try (Stream<Path> files = Files.list(_directory)) {
+			files.forEach(file -> file.toFile().delete());
+		}
+		Files.delete(_directory);
+	}
+
+	@Test
+	public void testPcap() throws Exception {
+		final PcapWriter writer = new PcapWriter(_directory, "test", Format.PCAP, PcapWriter.LINKTYPE_ETHERNET, 0, 0);
+		assertNull(writer.getFile());
+		// more than the staging buffer
+		final int count = 20000;
+		for (int i = 0; i < count; i++) {
+			writer.write(frame(i), 14, frame(i).length + i % 3, TS + i / 1000, i * 1000);
+		}
+		writer.close();
+		assertEquals(count, writer.getPackets());
+		// ignored once closed
+		writer.write(frame(0), 14, 100, TS, 0);
+		final List<Path> files = files();
+		assertEquals(1, files.size());
+		assertEquals(files.get(0), writer.getFile());
+		assertTrue(files.get(0).getFileName().toString().endsWith(".pcap"));
+		final ByteBuffer b = read(files.get(0));
+		assertEquals(0xa1b23c4d, b.getInt());
+		assertEquals(2, b.getShort());
+		assertEquals(4, b.getShort());
+		assertEquals(0, b.getInt());
+		assertEquals(0, b.getInt());
+		assertEquals(PcapWriter.SNAP_LENGTH, b.getInt());
+		assertEquals(PcapWriter.LINKTYPE_ETHERNET, b.getInt());
+		for (int i = 0; i < count; i++) {
+			assertEquals(TS + i / 1000, b.getInt());
+			assertEquals(i * 1000, b.getInt());
+			final byte[] frame = frame(i);
+			assertEquals(frame.length, b.getInt());
+			assertEquals(frame.length + i % 3, b.getInt());
+			final byte[] data = new byte[frame.length];
+			b.get(data);
+			assertTrue(String.valueOf(i), Arrays.equals(frame, data));
+		}
+		assertFalse(b.hasRemaining());
+	}
+
+	@Test
+	public void testPcapng() throws Exception {
+		final PcapWriter writer = new PcapWriter(_directory, "test", Format.PCAPNG, PcapWriter.LINKTYPE_RAW, 0, 0);
+		final int count = 100;
+		for (int i = 0; i < count; i++) {
+			writer.write(frame(i), 14, frame(i).length, TS, 999_999_999 - i);
+		}
+		writer.close();
+		final List<Path> files = files();
+		assertEquals(1, files.size());
+		assertTrue(files.get(0).getFileName().toString().endsWith(".pcapng"));
+		final ByteBuffer b = read(files.get(0));
+		// section header
+		assertEquals(0x0A0D0D0A, b.getInt());
+		assertEquals(28, b.getInt());
+		assertEquals(0x1A2B3C4D, b.getInt());
+		assertEquals(1, b.getShort());
+		assertEquals(0, b.getShort());
+		assertEquals(-1, b.getLong());
+		assertEquals(28, b.getInt());
+		// interface, with the nanosecond resolution
+		assertEquals(1, b.getInt());
+		assertEquals(32, b.getInt());
+		assertEquals(PcapWriter.LINKTYPE_RAW, b.getShort());
+		assertEquals(0, b.getShort());
+		assertEquals(PcapWriter.SNAP_LENGTH, b.getInt());
+		assertEquals(9, b.getShort());
+		assertEquals(1, b.getShort());
+		assertEquals(9, b.get());
+		b.position(b.position() + 3);
+		assertEquals(0, b.getInt());
+		assertEquals(32, b.getInt());
+		for (int i = 0; i < count; i++) {
+			// raw IP, without the link header
+			final byte[] packet = Arrays.copyOfRange(frame(i), 14, frame(i).length);
+			final int padded = (packet.length + 3) & ~3;
+			assertEquals(6, b.getInt());
+			assertEquals(32 + padded, b.getInt());
+			assertEquals(0, b.getInt());
+			final long ts = ((long) b.getInt() << 32) | (b.getInt() & 0xFFFFFFFFL);
+			assertEquals(TS * 1_000_000_000L + 999_999_999 - i, ts);
+			assertEquals(packet.length, b.getInt());
+			assertEquals(packet.length, b.getInt());
+			final byte[] data = new byte[packet.length];
+			b.get(data);
+			assertTrue(String.valueOf(i), Arrays.equals(packet, data));
+			for (int j = packet.length; j < padded; j++) {
+				assertEquals(0, b.get());
+			}
+			assertEquals(32 + padded, b.getInt());
+		}
+		assertFalse(b.hasRemaining());
+	}
+
+	@Test
+	public void testRotation() throws Exception {
+		// 24 bytes of header, records of 16 + 100 bytes
+		PcapWriter writer = new PcapWriter(_directory, "size", Format.PCAP, PcapWriter.LINKTYPE_ETHERNET, 1000, 0);
+		final byte[] frame = new byte[100];
+		for (int i = 0; i < 100; i++) {
+			writer.write(frame, 14, frame.length, TS, i);
+		}
+		writer.close();
+		List<Path> files = files();
+		// a file is closed by the record that reaches the size
+		assertEquals(12, files.size());
+		int packets = 0;
+		for (int i = 0; i < files.size(); i++) {
+			final long size = Files.size(files.get(i));
+			assertEquals(0, (size - 24) % 116);
+			if (i < files.size() - 1) {
+				assertEquals(24 + 9 * 116, size);
+			}
+			final ByteBuffer b = read(files.get(i));
+			assertEquals(0xa1b23c4d, b.getInt());
+			b.position(24 + 4);
+			// the records continue in the next file
+			assertEquals(packets, b.getInt());
+			packets += (size - 24) / 116;
+		}
+		assertEquals(100, packets);
+		for (final Path file : files) {
+			Files.delete(file);
+		}
+		// one file by minute
+		writer = new PcapWriter(_directory, "age", Format.PCAPNG, PcapWriter.LINKTYPE_ETHERNET, 0, 60_000);
+		for (int i = 0; i < 10; i++) {
+			writer.write(frame, 14, frame.length, TS + i * 20, 0);
+		}
+		writer.close();
+		files = files();
+		assertEquals(4, files.size());
+		assertEquals(28 + 32 + 3 * (32 + 100), Files.size(files.get(0)));
+		assertEquals(28 + 32 + 32 + 100, Files.size(files.get(3)));
+	}
+
+	/** Files in their creation order */
+	private List<Path> files() throws IOException {
+		try (Stream<Path> files = Files.list(_directory)) {
+			return files.sorted(Comparator.comparingInt(PcapWriterTest::index)).collect(Collectors.toCollection(ArrayList::new));
+		}
+	}
+
+	private static int index(final Path file) {
+		final String name = file.getFileName().toString();
+		return Integer.parseInt(name.substring(name.lastIndexOf('-') + 1, name.indexOf('.')));
+	}
+
+	private static ByteBuffer read(final Path file) throws IOException {
+		return ByteBuffer.wrap(Files.readAllBytes(file)).order(ByteOrder.nativeOrder());
+	}
+
+	private static byte[] frame(final int i) {
+		final byte[] frame = new byte[20 + i % 50];
+		for (int j = 0; j < frame.length; j++) {
+			frame[j] = (byte) (i + j);
+		}
+		return frame;
+	}
+}
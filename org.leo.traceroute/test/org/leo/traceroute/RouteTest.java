@@ -50,7 +50,6 @@ public class RouteTest extends TestCase {
 	@Override
 	protected void setUp() throws Exception {
 		Env.INSTANCE.initEnv();
-		Env.INSTANCE.loadDynamicConf(null);
 	}
 
 	@Test
@@ -77,6 +76,7 @@ public class RouteTest extends TestCase {
 		final ServiceFactory services = new ServiceFactory(null, null);
 		final AtomicReference<CountDownLatch> cd = new AtomicReference<>();
 		final AtomicReference<String> ip = new AtomicReference<>();
+		Env.INSTANCE.loadDynamicConf(services);
 		services.init();
 		services.getTraceroute().addListener(new IRouteListener() {
 			int nb;
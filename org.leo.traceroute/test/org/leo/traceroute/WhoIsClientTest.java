@@ -0,0 +1,213 @@
+/**
+ * Open Visual Trace Route
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.leo.traceroute;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+import org.leo.traceroute.core.whois.WhoIsClient;
+import org.leo.traceroute.core.whois.WhoIsClient.Answer;
+
+/**
+ * WhoIsClientTest $Id$
+ * <pre>
+ * WhoIs client against local stand-in servers : a root referring to a registry.
+ * </pre>
+ * @author Leo Lewis
+ */
+public class WhoIsClientTest extends TestCase {
+
+	private StandIn _registry;
+	private StandIn _root;
+	private WhoIsClient _client;
+
+	@Override
+	protected void setUp() throws Exception {
+		_registry = new StandIn(query -> "% registry\r\ninetnum: " + query + "\r\nnetname: TEST-NET\r\n", 0);
+		_root = new StandIn(query -> "refer:        127.0.0.1:" + _registry.getPort() + "\r\n", 0);
+		_client = new WhoIsClient("127.0.0.1", _root.getPort(), 2, 0, 60000);
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		_root.close();
+		_registry.close();
+	}
+
+	@Test
+	public void testReferral() throws Exception {
+		final Answer answer = _client.query(InetAddress.getByName("10.1.2.3"));
+		assertEquals("127.0.0.1:" + _registry.getPort(), answer.getServer());
+		assertTrue(answer.getText(), answer.getText().contains("inetnum: 10.1.2.3\n"));
+		assertEquals(1, _root._connections.get());
+		assertEquals(1, _registry._connections.get());
+	}
+
+	@Test
+	public void testCache() throws Exception {
+		final Answer answer = _client.query(InetAddress.getByName("10.1.2.3"));
+		assertSame(answer, _client.query(InetAddress.getByName("10.1.2.3")));
+		assertEquals(1, _registry._connections.get());
+		// same /8, asked to the registry directly
+		_client.query(InetAddress.getByName("10.200.0.1"));
+		assertEquals(1, _root._connections.get());
+		assertEquals(2, _registry._connections.get());
+		_client.clear();
+		_client.query(InetAddress.getByName("10.1.2.3"));
+		assertEquals(3, _registry._connections.get());
+	}
+
+	@Test
+	public void testArinReferral() throws Exception {
+		_root.close();
+		_root = new StandIn(query -> "NetRange: 10.0.0.0 - 10.255.255.255\r\nReferralServer:  whois://127.0.0.1:" + _registry.getPort() + "\r\n", 0);
+		_client = new WhoIsClient("127.0.0.1", _root.getPort(), 2, 0, 60000);
+		final Answer answer = _client.query(InetAddress.getByName("2001:db8::1"));
+		assertTrue(answer.getText(), answer.getText().contains("netname: TEST-NET"));
+	}
+
+	@Test
+	public void testNoReferral() throws Exception {
+		_root.close();
+		_root = new StandIn(query -> "ReferralServer: rwhois://127.0.0.1:4321\r\nnetname: ROOT\r\n", 0);
+		_client = new WhoIsClient("127.0.0.1", _root.getPort(), 2, 0, 60000);
+		final Answer answer = _client.query(InetAddress.getByName("10.1.2.3"));
+		assertTrue(answer.getText(), answer.getText().contains("netname: ROOT"));
+		assertEquals(0, _registry._connections.get());
+	}
+
+	@Test
+	public void testRequestsPerServer() throws Exception {
+		_registry.close();
+		_registry = new StandIn(query -> "netname: SLOW\r\n", 100);
+		// learn the registry of the block
+		_client.query(InetAddress.getByName("10.0.0.1"));
+		final ExecutorService executor = Executors.newFixedThreadPool(8);
+		try {
+			final List<Future<Answer>> answers = new ArrayList<>();
+			for (int i = 2; i < 10; i++) {
+				final InetAddress address = InetAddress.getByName("10.0.0." + i);
+				answers.add(executor.submit(() -> _client.query(address)));
+			}
+			for (final Future<Answer> answer : answers) {
+				assertTrue(answer.get().getText().contains("SLOW"));
+			}
+		} finally {
+			executor.shutdown();
+		}
+		assertEquals(9, _registry._connections.get());
+		assertTrue("max " + _registry._maxActive.get(), _registry._maxActive.get() <= 2);
+	}
+
+	@Test
+	public void testNetblock() throws Exception {
+		_registry.close();
+		_registry = new StandIn(query -> query.startsWith("200.")
+				? "inetnum:     200.160/12\r\nowner:       LACNIC NET\r\n"
+				: "NetRange:       8.0.0.0 - 8.255.255.255\r\nNetName:        LVLT-ORG-8-8\r\n\r\n"
+						+ "NetRange:       8.8.8.0 - 8.8.8.255\r\nNetName:        GOGL\r\n", 0);
+		Answer answer = _client.query(InetAddress.getByName("8.8.8.8"));
+		assertEquals("8.8.8.0 - 8.8.8.255", answer.getNetblock().toString());
+		assertTrue(answer.getNetblock().contains(InetAddress.getByName("8.8.8.4")));
+		assertFalse(answer.getNetblock().contains(InetAddress.getByName("8.8.4.4")));
+		assertEquals("LVLT-ORG-8-8", answer.getValue("netname"));
+		answer = _client.query(InetAddress.getByName("200.170.1.1"));
+		assertEquals("200.160.0.0 - 200.175.255.255", answer.getNetblock().toString());
+		assertEquals("LACNIC NET", answer.getValue("netname", "owner"));
+	}
+
+	@Test
+	public void testUnreachable() throws Exception {
+		_root.close();
+		try {
+			_client.query(InetAddress.getByName("10.1.2.3"));
+			fail("No error");
+		} catch (final IOException e) {
+			// expected
+		}
+	}
+
+	/**
+	 * Stand-in WHOIS server, answers each query and closes the connection
+	 */
+	private static class StandIn {
+		private final ServerSocket _server;
+		private final AtomicInteger _connections = new AtomicInteger();
+		private final AtomicInteger _active = new AtomicInteger();
+		private final AtomicInteger _maxActive = new AtomicInteger();
+
+		StandIn(final Function<String, String> answer, final long delay) throws IOException {
+			_server = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+			final Thread accept = new Thread(() -> {
+				while (!_server.isClosed()) {
+					try {
+						final Socket socket = _server.accept();
+						_connections.incrementAndGet();
+						new Thread(() -> serve(socket, answer, delay)).start();
+					} catch (final IOException e) {
+						// closed
+					}
+				}
+			});
+			accept.setDaemon(true);
+			accept.start();
+		}
+
+		private void serve(final Socket socket, final Function<String, String> answer, final long delay) {
+			_maxActive.accumulateAndGet(_active.incrementAndGet(), Math::max);
+			try (Socket s = socket) {
+				try {
+					final String query = new BufferedReader(new InputStreamReader(s.getInputStream(), StandardCharsets.US_ASCII)).readLine();
+					Thread.sleep(delay);
+					final OutputStream out = s.getOutputStream();
+					out.write(answer.apply(query).getBytes(StandardCharsets.UTF_8));
+					out.flush();
+				} finally {
+					// before closing, the client sends the next request when the connection is closed
+					_active.decrementAndGet();
+				}
+			} catch (final Exception e) {
+				// client gone
+			}
+		}
+
+		int getPort() {
+			return _server.getLocalPort();
+		}
+
+		void close() throws IOException {
+			_server.close();
+		}
+	}
+}